@@ -0,0 +1,178 @@
+// Java ASM application.
+// This library is distributed without any warranty; without even the
+// implied warranty of merchantability or fitness for a particular
+// purpose.  See file COPYING for details and terms of copying.
+
+//package asmjava;
+
+import swarm.defobj.Zone;
+import swarm.objectbase.SwarmImpl;
+
+/*"If the model is started with ./asm -b, then this ASMBatchSwarm acts
+  as the top level Swarm. The benefit here is that the model runs
+  faster because it is not driving a graphical interface.  It also
+  turns on data-writing."*/
+
+ /**
+ * <p>Title: ASMBatchSwarm</p>
+ * <p>Description: Swarm de mayor nivel cuando la simulación se lanza en
+ * modo batch (asm -b). Hace lo mismo que ASMBatchSwarm de la versión en
+ * ObjectiveC: crea el modelo, escribe los parámetros y los resultados a
+ * fichero cada "loggingFrequency" periodos y termina a los
+ * "experimentDuration" periodos, sin gráficos, sondas ni eventos de Tk.</p>
+ * <p>En lugar de los programas de Swarm, el modelo lo ejecuta un ASMEngine
+ * con llamadas directas, de modo que la velocidad sólo depende del propio
+ * modelo. Los resultados son los mismos que en modo gráfico con los mismos
+ * parámetros.</p>
+ */
+public class ASMBatchSwarm extends SwarmImpl {
+
+  /**Cada cuántos periodos se escriben los resultados; 0 para no
+   * escribirlos*/
+  public int loggingFrequency; /*"how often to write data "*/
+
+  /**Duración de la simulación en periodos*/
+  public int experimentDuration; /*"how long should a run last"*/
+
+  /**Objeto que gestiona la escritura en ficheros*/
+  public Output output; /*"Reference to instance of Output class, the place where data file output is controlled"*/
+
+  /**El Modelo*/
+  public ASMModelSwarm asmModelSwarm; /*"Instance of ASMModelSwarm, where agents and the world are created and scheduled"*/
+
+  /**Motor que ejecuta el modelo*/
+  public ASMEngine engine;
+
+  /**Hilo que escribe los resultados fuera del hilo del modelo, o null si
+   * pipelineDepth es 0*/
+  public PeriodPipeline writer;
+
+  /**Parámetros de la simulación, creados en la función main()*/
+  public Parameters arguments;
+
+  /**Constructor de la clase. La frecuencia de escritura y la duración se
+   * toman de los parámetros (por defecto, los valores de asmBatchSwarm en
+   * asm.scm).
+   *
+   * @param aZone Zona de memoria Swarm en la que se aloja el objeto Swarm
+   * @param arg Parámetros de la simulación
+   */
+  ASMBatchSwarm (Zone aZone, Parameters arg) {
+    super (aZone);
+
+    arguments = arg;
+    loggingFrequency = arg.getLoggingFrequency ();
+    experimentDuration = arg.getExperimentDuration ();
+  }
+
+  /*"Create a model swarm, have the model swarm build its objects, and
+    then get the output object from the model.  Later the output object is
+    instructed to write results"*/
+
+  /**Crea el modelo y le ordena construir sus objetos, prepara el fichero
+   * de resultados y escribe los parámetros.
+   *
+   * @return this
+   */
+  public Object buildObjects () {
+    ASMModelParams asmModelParams = arguments.getModelParams ();
+    BFParams bfParams = arguments.getBFParams ();
+
+    output = new Output (this.getZone ());
+    output.createEnd ();
+
+    super.buildObjects ();
+
+    asmModelSwarm = new ASMModelSwarm (getZone ());
+    asmModelSwarm.setOutputObject (output);
+
+    arguments.init ();
+    asmModelSwarm.setParamsModel$BF (asmModelParams, bfParams);
+    asmModelSwarm.buildObjects ();
+
+    engine = new ASMEngine (asmModelSwarm);
+
+    if (loggingFrequency > 0)
+      output.prepareOutputFile ();
+    if (loggingFrequency > 0 && asmModelParams.pipelineDepth > 0)
+      writer = new PeriodPipeline (output, asmModelParams.pipelineDepth, true,
+                                   "output-writer");
+    output.writeParams$BFAgent$Time (asmModelParams, bfParams, 0);
+
+    return this;
+  }
+
+  /*"Once schedules are created and activatedIn to the right part of the
+    hierarchy, then go makes processing start with actions at time 0,
+    then 1, then..."*/
+
+  /**Ejecuta la simulación: el calentamiento y los periodos de los tiempos 0
+   * a experimentDuration, escribiendo los resultados en los tiempos
+   * múltiplos de loggingFrequency, después de las acciones del modelo, como
+   * el programa displaySchedule de la versión en ObjectiveC. Si el modelo
+   * se ha leído de un punto de control, sigue desde su periodo. Con
+   * pipelineDepth mayor que 0, los resultados los escribe otro hilo
+   * (PeriodPipeline) mientras el modelo sigue con los periodos siguientes.
+   * Si las reglas de parada (StoppingRules) terminan la simulación antes de
+   * experimentDuration, se dice por qué.
+   *
+   * @return this
+   */
+  public Object go () {
+    int t;
+
+    System.out.println ("\nYou typed 'asm -batchmode'.  The simulation is running without graphics.\n");
+    System.out.println ("The Artificial Stock Market is running for "
+                        + experimentDuration
+                        + " time steps and writing its data.\n");
+    if (loggingFrequency > 0)
+      System.out.println ("It is logging data every " + loggingFrequency
+                          + " timesteps to a time-dated output.data file.\n");
+
+    engine.warmUp ();
+    for (t = (int) engine.getPeriods ();
+         t <= experimentDuration && !engine.isStopped (); t++)
+      {
+        engine.step ();
+        if (loggingFrequency > 0 && t%loggingFrequency == 0)
+          {
+            if (writer != null)
+              writer.publish (output.capture (null));
+            else
+              output.writeData ();
+          }
+      }
+    engine.finish ();
+    if (writer != null)
+      writer.close ();
+    if (engine.isStopped ())
+      System.out.println ("The simulation stopped early (" + engine.getStopReason ()
+                          + "): " + engine.getStopDetail () + "\n");
+    return this;
+  }
+
+  /*"Tell the objects that are keeping records on parameter values to
+    write them to files at the end of the simulation."*/
+
+  /**Escribe los parámetros a fichero al final de la simulación.
+   *
+   * @return this
+   */
+  public Object expostParamWrite () {
+    output.writeParams$BFAgent$Time (arguments.getModelParams (),
+                                     arguments.getBFParams (),
+                                     asmModelSwarm.getModelTime ());
+    return this;
+  }
+
+  /*" The drop method lets objects know the simulation is coming to an
+    end, so if they are waiting to write some data, they should do it"*/
+
+  /**Avisa al modelo de que la simulación ha terminado, para que cierre sus
+   * ficheros.
+   */
+  public void drop () {
+    asmModelSwarm.drop ();
+    super.drop ();
+  }
+}
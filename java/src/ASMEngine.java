@@ -0,0 +1,209 @@
+//package asmjava;
+
+/**
+ * <p>Title: ASMEngine</p>
+ * <p>Description: Motor que ejecuta el modelo sin el planificador de Swarm.
+ * Recorre la misma secuencia que los programas de ASMModelSwarm (los
+ * WARMUPSTEPS pasos de calentamiento, el grupo periodActions del programa de
+ * arranque y luego un periodActions por periodo) con llamadas directas a los
+ * métodos en un bucle, sin acciones, selectores ni llamadas por reflexión a
+ * cada agente.</p>
+ * <p>También lleva la cuenta del tiempo, que los agentes y el objeto output
+ * leen a través de SimulationClock: vale 0 durante el calentamiento, el
+ * periodo de arranque y el primer periodo, y luego aumenta en 1 por periodo,
+ * igual que el tiempo de Swarm, de modo que los resultados son los mismos
+ * que con el planificador.</p>
+ * <p>Si el modelo tiene puntos de control (Checkpoint), el motor escribe
+ * uno cada checkpointInterval periodos, y si el modelo se ha leído de uno,
+ * sigue con el tiempo y los periodos que tenía.</p>
+ * <p>Con reglas de parada (StoppingRules), el motor las aplica a cada
+ * activo al cerrar cada periodo, y run() termina antes de tiempo si algún
+ * activo diverge o si todos convergen; getStopReason() dice por qué.</p>
+ * <p>Los objetos del modelo se siguen creando con buildObjects() en una zona
+ * de Swarm, pero no hace falta llamar a buildActions() ni a activateIn().</p>
+ */
+public class ASMEngine implements SimulationClock {
+
+  /**Modelo, ya creado con buildObjects()*/
+  ASMModelSwarm model;
+  /**Tiempo de la simulación: el del último periodo ejecutado*/
+  int time;
+  /**Periodos ejecutados, sin contar el de arranque*/
+  long periods;
+  /**true cuando ya se ha hecho el calentamiento*/
+  boolean warmedUp;
+  /**Puntos de control del modelo, o null*/
+  Checkpoint checkpoint;
+  /**Reglas de parada de cada activo, o null si no se usan*/
+  StoppingRules stoppingRules[];
+  /**Motivo y explicación de la parada, "" mientras no se para*/
+  String stopReason = "";
+  String stopDetail = "";
+
+  /**Constructor de la clase. Los agentes y el objeto output del modelo
+   * pasan a tomar el tiempo de este motor.
+   *
+   * @param aModel Modelo, ya creado con buildObjects()
+   */
+  public ASMEngine (ASMModelSwarm aModel)
+  {
+    model = aModel;
+    model.setClock (this);
+    checkpoint = model.getCheckpoint ();
+    if (checkpoint != null && checkpoint.isRestored ())
+      {
+        time = checkpoint.getTime ();
+        periods = checkpoint.getPeriods ();
+        warmedUp = true;
+      }
+    if (StoppingRules.isEnabled (model.asmModelParams))
+      {
+        stoppingRules = new StoppingRules[model.numAssets];
+        for (int k = 0; k < model.numAssets; k++)
+          stoppingRules[k] = new StoppingRules (model.asmModelParams,
+                                                model.bfParams.firstgatime,
+                                                periods);
+      }
+  }
+
+  public int getCurrentTime ()
+  {
+    return time;
+  }
+
+  /**Devuelve el número de periodos ejecutados, sin contar el de arranque
+   *
+   * @return periods
+   */
+  public long getPeriods ()
+  {
+    return periods;
+  }
+
+  /**Hace los pasos de calentamiento y el periodo de arranque, todo en el
+   * tiempo 0, como el programa startupSchedule, o los lee de la caché
+   *
+   * @return this
+   */
+  public Object warmUp ()
+  {
+    model.warmUp ();
+    warmedUp = true;
+    return this;
+  }
+
+  /**Ejecuta un periodo, como el programa periodSchedule. Si no se ha hecho
+   * el calentamiento, lo hace antes. Después el reloj sigue marcando el
+   * tiempo de ese periodo, como Swarm mientras ejecuta las acciones del
+   * observador.
+   *
+   * @return this
+   */
+  public Object step ()
+  {
+    if (!warmedUp)
+      warmUp ();
+    // The first period runs at time 0, like the startup one
+    if (periods > 0)
+      time++;
+    model.stepPeriod ();
+    periods++;
+    if (checkpoint != null && checkpoint.isDue (periods))
+      checkpoint.save (this);
+    if (stoppingRules != null)
+      applyStoppingRules ();
+    return this;
+  }
+
+  /**Pasa el periodo recién cerrado a las reglas de parada de cada activo.
+   * La simulación se para en cuanto un activo diverge, o cuando todos han
+   * convergido.
+   */
+  void applyStoppingRules ()
+  {
+    WorldSnapshot s;
+    StoppingRules rules;
+    int converged = 0;
+
+    for (int k = 0; k < stoppingRules.length; k++)
+      {
+        s = model.worlds[k].getSnapshot ();
+        rules = stoppingRules[k];
+        if (!rules.observe (s.getPrice (), s.getVolume ()))
+          continue;
+        if (rules.getReason ().equals (StoppingRules.DIVERGED))
+          {
+            stop (rules, (stoppingRules.length > 1 ? "asset " + k + ": " : ""));
+            return;
+          }
+        converged++;
+      }
+    if (converged == stoppingRules.length)
+      stop (stoppingRules[0], (stoppingRules.length > 1
+                               ? "all assets; asset 0: " : ""));
+  }
+
+  /**Anota el motivo de la parada
+   *
+   * @param rules Reglas del activo que la provoca
+   * @param prefix Principio de la explicación
+   */
+  void stop (StoppingRules rules, String prefix)
+  {
+    stopReason = rules.getReason ();
+    stopDetail = prefix + rules.getDetail ();
+  }
+
+  /**Dice si las reglas de parada han terminado la simulación
+   *
+   * @return true si se ha parado
+   */
+  public boolean isStopped ()
+  {
+    return stopReason.length () > 0;
+  }
+
+  /**Devuelve el motivo de la parada
+   *
+   * @return StoppingRules.DIVERGED, StoppingRules.CONVERGED o "" si no se
+   * ha parado
+   */
+  public String getStopReason ()
+  {
+    return stopReason;
+  }
+
+  /**Devuelve la explicación de la parada
+   *
+   * @return explicación, o "" si no se ha parado
+   */
+  public String getStopDetail ()
+  {
+    return stopDetail;
+  }
+
+  /**Ejecuta varios periodos seguidos, o menos si las reglas de parada
+   * terminan la simulación
+   *
+   * @param n Número de periodos
+   * @return this
+   */
+  public Object run (long n)
+  {
+    for (long i = 0; i < n && !isStopped (); i++)
+      step ();
+    return this;
+  }
+
+  /**Espera a que se termine de escribir el último punto de control. Hay
+   * que llamarlo al terminar la simulación.
+   *
+   * @return this
+   */
+  public Object finish ()
+  {
+    if (checkpoint != null)
+      checkpoint.waitForWrite ();
+    return this;
+  }
+}
@@ -11,101 +11,153 @@ import swarm.defobj.Zone;
 
 import swarm.Globals;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
 /**
  * <p>Title: ASMModelParams</p>
- * <p>Description: Esta es la clase que contiene los parmetros asociados a
- * ASMModelSwarm. Todos ellos pueden modificarse a travs de la interfaz
- * grfica de la sonda de esta clase.</p>
- * <p>Esta clase no implementa ningn mtodo propio.</p>
+ * <p>Description: Esta es la clase que contiene los parámetros asociados a
+ * ASMModelSwarm. Todos ellos pueden modificarse a través de la interfaz
+ * gráfica de la sonda de esta clase.</p>
+ * <p>Esta clase sólo implementa copy(), para los conjuntos de
+ * simulaciones.</p>
  * <p>Copyright: Copyright (c) 2002</p>
- * <p>Depto. de Organizacin y Gestin de Empresas. Universidad de Valladolid</p>
- * @author Jos Manuel Galn & Luis R. Izquierdo
+ * <p>Depto. de Organización y Gestión de Empresas. Universidad de Valladolid</p>
+ * @author José Manuel Galán & Luis R. Izquierdo
  * @version 1.0
  *
  */
 public class ASMModelParams extends SwarmObjectImpl
 {
-  /**Nmero de agentes   */
+  /**Número de agentes   */
   public int numBFagents = 25;  /*" number of BFagents "*/
-  /**Nmero de acciones que tiene cada agente al comenzar la simulacin */
+  /**Número de activos con riesgo que se negocian. Cada activo tiene su propio
+   * proceso de dividendos, su propio mundo y su propio especialista.*/
+  public int numAssets = 1;  /*" number of risky assets "*/
+  /**Número de acciones que tiene cada agente al comenzar la simulación */
   public float initholding = 1;
-  /**Nmero de unidades de efectivo que tiene cada agente al comenzar la simulacin */
+  /**Número de unidades de efectivo que tiene cada agente al comenzar la simulación */
   public double initialcash = 20000;
-  /**Nmero mnimo de acciones que puede tener un agente. Si minholding es menor
+  /**Número mínimo de acciones que puede tener un agente. Si minholding es menor
    * que 0, estamos permitiendo la venta en corto.*/
   public double minholding = -5;
 
-  /**Nmero mnimo de unidades de efectivo que puede tener un agente. Si mincash
-   *  es menor que 0, estamos permitiendo la existencia de prstamos.*/
+  /**Número mínimo de unidades de efectivo que puede tener un agente. Si mincash
+   *  es menor que 0, estamos permitiendo la existencia de préstamos.*/
   public double mincash = 0;
 
-  /**Tasa de inters   */
+  /**Tasa de interés   */
   public double intrate = 0.1;
 
   //Dividend parameters
 
-    /**Lnea media de dividendos   */
+    /**Línea media de dividendos   */
   public double baseline = 10;   //Also used by World.
 
-    /**Dividendo mnimo  */
+    /**Dividendo mínimo  */
   public double mindividend = 0.00005;
 
-    /**Dividendo mximo   */
+    /**Dividendo máximo   */
   public double maxdividend = 100;
 
   /**La amplitud de las desviaciones del error del proceso AR(1) generador del
- * dividendo medida en unidades de "baseline". La desviacin tpica del error
+ * dividendo medida en unidades de "baseline". La desviación típica del error
  * del proceso es igual al producto de la amplitud por la "baseline"
    *  */
   public double amplitude = 0.02727;
 
-  /**El periodo medio o tiempo de autocorrelacin del proceso AR(1) generador
-   * de los dividendos. El coeficiente de autocorrelacin de primer orden
-   * (que coincide con el parmetro del proceso) es
+  /**El periodo medio o tiempo de autocorrelación del proceso AR(1) generador
+   * de los dividendos. El coeficiente de autocorrelación de primer orden
+   * (que coincide con el parámetro del proceso) es
    * igual a rho = exp(-1/period).
    */
   public double period = 19.5;
 
-  /**1 si queremos medias mviles exponenciales.
+  /**1 si queremos medias móviles exponenciales.
    */
   public int exponentialMAs = 1;   //Also used by World.//pj:was BOOL
+
+  /**Longitudes de las medias móviles de World, separadas por espacios. Pueden
+   * ser más de cuatro y de más de 500 periodos; los bits del mundo se
+   * nombran según ellas (p. ej. "p>p20").
+   */
+  public String malengths = "5 20 100 500";   //Used by World.
+
+  /**Fichero en el que se guarda la historia completa de precios,
+   * dividendos, volúmenes y precios neutrales al riesgo (proyectado en
+   * memoria, sin límite de periodos). Con varios activos se añade ".k" al
+   * nombre. Vacío para no guardarla.
+   */
+  public String historyFile = "";   //Used by World.
+
+  /**Ventanas, en periodos y separadas por espacios, sobre las que World
+   * calcula en línea la volatilidad, la curtosis y las autocorrelaciones de
+   * la rentabilidad y la correlación volumen-volatilidad. 0 es toda la
+   * simulación. Vacío para no calcularlas.
+   */
+  public String statWindows = "";   //Used by World.
+
+  /**Fichero de dividendos que se reproduce en lugar de generar el proceso
+   * AR(1): binario de doubles, o texto si termina en ".csv" o ".txt". Con
+   * varios activos se añade ".k" al nombre. Vacío para no usarlo.
+   */
+  public String dividendFile = "";   //Used by Dividend.
+
+  /**Si es mayor que 0, el proceso de dividendos se calcula por bloques de
+   * este número de periodos en una cinta. Cambia el reparto de los números
+   * aleatorios con el resto del modelo; 0 los saca periodo a periodo, como
+   * siempre.
+   */
+  public int dividendBlock = 0;
   //Specialist parameters
-  /**Precio mximo   */
+  /**Precio máximo   */
   public double maxprice = 500;
 
-   /**Precio mnimo   */
+   /**Precio mínimo   */
   public double minprice = 0.001;
 
-   /**Coeficiente para calcular la media mvil del beneficio de los agentes*/
+   /**Coeficiente para calcular la media móvil del beneficio de los agentes*/
   public double taup = 50;
   /**Indica el tipo de especialista que vamos a usar. Puede valer 0
-   * (expectativas racionales), 1 (usa la pendiente de las funciones de demanda)
-   *   2 (especialista tipo ETA).   */
+   * (expectativas racionales), 1 (usa la pendiente de las funciones de demanda),
+   *  2 (especialista tipo ETA), 3 (ETA adaptativa entre etamin y etamax)
+   *  ó 4 (rejilla de precios).   */
   public int sptype = 1;
 
-  /**Iteraciones mximas para calcular el precio de mercado
+  /**Iteraciones máximas para calcular el precio de mercado
    */
   public int maxiterations = 10;
 
-  /**Exceso de demanda mnimo para que el especialista d por finalizado el
-   * proceso de bsqueda del precio de equilibrio.
+  /**Exceso de demanda mínimo para que el especialista dé por finalizado el
+   * proceso de búsqueda del precio de equilibrio.
    */
   public double minexcess = 0.01;
 
   /**Coeficiente por el que el especialista ETA multiplica al exceso de demanda
-   * para modificar el precio de prueba en su proceso de bsqueda del precio de
+   * para modificar el precio de prueba en su proceso de búsqueda del precio de
    * equilibrio. Es una medida de la elasticidad-precio de la demanda de acciones
    */
   public double eta = 0.0005;
 
   /**
-   * eta mxima
+   * eta máxima del especialista de ETA adaptativa
    */
   public double etamax = 0.05;
   /**
-   * eta mnima
+   * eta mínima del especialista de ETA adaptativa
    */
   public double etamin = 0.00001;
+
+  /**Semiancho relativo de la rejilla de precios del especialista de rejilla
+   */
+  public double gridwidth = 0.05;
+
+  /**Especialistas en la sombra, como máscara de bits: el bit i activa un
+   * especialista de tipo i que vacía las mismas curvas de demanda que el
+   * principal sin mover el mercado. Con varios activos vacían las del
+   * activo 0. 0 desactiva la sombra.
+   */
+  public int shadowSpecialists = 0;
    /**Coeficiente por el que el especialista de las expectativas racionales
     * multiplica al dividendo para calcular el precio de equilibrio.
     *
@@ -113,24 +165,128 @@ public class ASMModelParams extends SwarmObjectImpl
   public double rea = 6.333855553;
 
   /**Coeficiente que el especialista de las expectativas racionales
-    * usa como trmino independiente para calcular el precio de equilibrio.
+    * usa como término independiente para calcular el precio de equilibrio.
     */
   public double reb = 34.71196262;
 
-  /**Semilla para generar nmeros aleatorios.
+  /**Semilla para generar números aleatorios.
    */
   public int randomSeed= 0;
+
+  /**Generador de números aleatorios: 0 usa los de Swarm (los resultados de
+   * siempre), 1 el generador xoshiro256** escrito en Java, con la semilla
+   * randomSeed, y 2 un flujo propio para cada agente, mundo y proceso de
+   * dividendos, derivado de randomSeed y de su número (RandomStreams): los
+   * resultados no dependen del orden ni del hilo en que se ejecuten.
+   */
+  public int rngType = 0;
+
+  /**Directorio de la caché del estado después del calentamiento
+   * (WarmupCache). Las simulaciones con los mismos parámetros y semilla lo
+   * leen de ahí en lugar de repetir el calentamiento. Sólo se usa con
+   * rngType 1 ó 2. Vacío para no usarla.
+   */
+  public String warmupCache = "";
+
+  /**Fichero en el que se escriben los puntos de control (Checkpoint) de
+   * la simulación en modo batch. Vacío para no escribirlos. Sólo se usa
+   * con rngType 1 ó 2; en modo gráfico no se admite.
+   */
+  public String checkpointFile = "";
+
+  /**Periodos entre dos puntos de control*/
+  public int checkpointInterval = 10000;
+
+  /**Punto de control desde el que se continúa la simulación, escrito por
+   * otra con los mismos parámetros. Vacío para empezar desde el principio.
+   * Sólo en modo batch.
+   */
+  public String resumeFrom = "";
+
+  /**Periodos que pueden esperar en la cola de cada observador (ficheros de
+   * resultados, diagramas de barras) mientras el modelo sigue con los
+   * siguientes (PeriodPipeline). 0 para ejecutarlos en el hilo del modelo,
+   * como siempre.
+   */
+  public int pipelineDepth = 0;
+
+  /**Con la cola de un gráfico llena: 1 para que el modelo espere, 0 para
+   * que el gráfico se salte ese periodo. Los ficheros nunca se saltan
+   * periodos.
+   */
+  public int pipelineBlock = 1;
+
+  /**Intervalos de decisión de los agentes, separados por espacios: el
+   * agente i decide cada n periodos, con n el elemento i módulo la
+   * longitud de la lista. Por ejemplo, "1 5 5 20" hace que un cuarto de los
+   * agentes decida todos los periodos, la mitad cada 5 y un cuarto cada 20.
+   * Entre dos decisiones el agente mantiene su función de demanda. Sus
+   * pronósticos se evalúan al decidir de nuevo, con el precio y el
+   * dividendo del periodo siguiente a la decisión anterior, que es el que
+   * pronosticaban, así que cada intervalo debe ser menor que los periodos
+   * que guardan las historias del mundo (el doble de la media móvil más
+   * larga más uno, y al menos MAXHISTORY). Vacío para que decidan todos en todos los periodos, como
+   * siempre.
+   */
+  public String decisionIntervals = "";
+
+  /**Direcciones host:puerto de los procesos AgentShard entre los que se
+   * reparten los agentes, separadas por espacios. El modelo se queda con el
+   * mundo, el dividendo y el especialista. Necesita rngType 2 y un solo
+   * activo. Vacío para tener todos los agentes en este proceso, como
+   * siempre.
+   */
+  public String agentShards = "";
+
+  /**Periodos seguidos con el precio en maxprice o en minprice tras los que
+   * la simulación se da por divergente y termina (StoppingRules). 0 para
+   * no pararla nunca por esto.
+   */
+  public int stopClipPeriods = 0;
+
+  /**Periodos de calentamiento antes de los que no se cuentan los bloques
+   * de las pruebas de convergencia. Nunca empiezan antes de firstgatime,
+   * así que las pruebas se hacen como pronto un tiempo de stopBlocks
+   * bloques después de él.
+   */
+  public int stopMinPeriods = 0;
+
+  /**Periodos de cada bloque de las pruebas de convergencia, que se hacen
+   * sobre las medias de bloque de los estadísticos. 0 para no hacerlas.
+   */
+  public int stopBlock = 0;
+
+  /**Bloques sobre los que se hacen las pruebas de convergencia: los
+   * últimos stopBlocks cerrados. Al menos 4.
+   */
+  public int stopBlocks = 20;
+
+  /**Estadísticos de las pruebas de convergencia, separados por espacios:
+   * "price", "volume" y "volatility".
+   */
+  public String stopStatistics = "price volume volatility";
+
+  /**Valor crítico de |z| de la prueba de estacionariedad, que compara la
+   * mitad más antigua de los bloques con la más reciente. 0 para no
+   * hacerla.
+   */
+  public double stopStationarity = 0;
+
+  /**Semiamplitud máxima del intervalo de confianza al 95% de la media de
+   * los bloques, relativa a la media. 0 para no exigir precisión.
+   */
+  public double stopPrecision = 0;
   //Agent parameters overridden by the BFagent.
   //These might be used for other agents that a user implements.
 
    /**Coeficiente para calcular la varianza de los predictores (forecasters).*/
   public double tauv = 75;
 
-  /**Coeficiente de aversin al riesgo de los agentes.
+  /**Coeficiente de aversión al riesgo de los agentes.
    */
   public double lambda = 0.5;
 
-  /**Mxima demanda u oferta de acciones por parte de los agentes.
+  /**Máxima demanda u oferta de acciones por parte de los agentes.
    */
   public double maxbid = 10;
 
@@ -140,17 +296,17 @@ public class ASMModelParams extends SwarmObjectImpl
   public double initvar = 3.999769641;
 
   /**
-   * Mxima desviacin de un predictor en la estimacin de la varianza.
+   * Máxima desviación de un predictor en la estimación de la varianza.
    */
   public double maxdev = 100;
 
   /**
-   * En esta versin no vale para nada.
+   * En esta versión no vale para nada.
    */
   public int setOutputForData = 0;
 
   /**Constructor: Construye la sonda (probe) que nos permite modificar
-   * los parmetros del modelo antes de que d comienzo la simulacin.
+   * los parámetros del modelo antes de que dé comienzo la simulación.
     *
     * @param aZone Zona de memoria Swarm en la que se aloja el objeto Swarm
     */
@@ -199,6 +355,7 @@ public class ASMModelParams extends SwarmObjectImpl
       public ASMModelParamsProbeMap (Zone _aZone, Class aClass) {
         super (_aZone, aClass);
         addVar ("numBFagents");
+        addVar ("numAssets");
         addVar ("initholding");
         addVar ("initialcash");
         addVar ("minholding");
@@ -209,6 +366,7 @@ public class ASMModelParams extends SwarmObjectImpl
         addVar ("maxdividend");
         addVar ("amplitude");
         addVar ("period");
+        addVar ("dividendBlock");
         addVar ("maxprice");
         addVar ("minprice");
         addVar ("taup");
@@ -219,9 +377,20 @@ public class ASMModelParams extends SwarmObjectImpl
         addVar ("eta");
         addVar ("etamin");
         addVar ("etamax");
+        addVar ("gridwidth");
+        addVar ("shadowSpecialists");
         addVar ("rea");
         addVar ("reb");
         addVar ("randomSeed");
+        addVar ("rngType");
+        addVar ("pipelineDepth");
+        addVar ("pipelineBlock");
+        addVar ("stopClipPeriods");
+        addVar ("stopMinPeriods");
+        addVar ("stopBlock");
+        addVar ("stopBlocks");
+        addVar ("stopStationarity");
+        addVar ("stopPrecision");
         addVar ("tauv");
         addVar ("lambda");
         addVar ("maxbid");
@@ -238,6 +407,32 @@ public class ASMModelParams extends SwarmObjectImpl
       (new ASMModelParamsProbeMap (aZone, getClass ()), getClass ());
   }
 
+  /**Devuelve una copia de los parámetros, campo a campo, p. ej. para
+   * cambiar la semilla de cada simulación de un conjunto
+   * (EnsembleRunner) sin tocar los originales.
+   *
+   * @param aZone Zona de memoria Swarm en la que se aloja la copia
+   * @return copia
+   */
+  public ASMModelParams copy (Zone aZone)
+  {
+    ASMModelParams copy = new ASMModelParams (aZone);
+    Field fields[] = ASMModelParams.class.getDeclaredFields ();
+
+    for (int i = 0; i < fields.length; i++)
+      if (Modifier.isPublic (fields[i].getModifiers ())
+          && !Modifier.isStatic (fields[i].getModifiers ()))
+        try
+          {
+            fields[i].set (copy, fields[i].get (this));
+          }
+        catch (IllegalAccessException e)
+          {
+            throw new RuntimeException (e.getMessage ());
+          }
+    return copy;
+  }
+
 
 }
 
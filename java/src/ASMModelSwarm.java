@@ -28,7 +28,17 @@ import swarm.objectbase.VarProbe;
 import swarm.objectbase.MessageProbe;
 import swarm.objectbase.EmptyProbeMapImpl;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Arrays;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Future;
 
 
 
@@ -87,69 +97,69 @@ import java.util.LinkedList;
 /**
  * <p>Title: ASMModelSwarm</p>
  * <p>Description: El ASMModelSwarm es donde se lleva a cabo todo el trabajo
- * de peso. Existe una nica instancia de esta clase.
+ * de peso. Existe una única instancia de esta clase.
  * La instancia de esta clase es asmModelSwarm. Cuando el usuario pone
- * en marcha la simulacin, esta instancia recibe los parmetros, probablemente
- * modificados desde las sondas. A continuacin crea todos los objetos
+ * en marcha la simulación, esta instancia recibe los parámetros, probablemente
+ * modificados desde las sondas. A continuación crea todos los objetos
  * relevantes (agentes, mundo, especialista y dividendo, principalmente)
- * por medio del mtodo buildObjects(). Una vez creados los agentes, crea una
+ * por medio del método buildObjects(). Una vez creados los agentes, crea una
  * historia ficticia del mercado para que las condiciones iniciales del mundo
- * (por ejemplo la media mvil de 500 periodos) tengan sentido. Por ltimo, hace
+ * (por ejemplo la media móvil de 500 periodos) tengan sentido. Por último, hace
  * sonar la campana de apertura del mercado y deja a los agentes que hagan el
  * resto.</p>
  *
  * <p>El programa de acciones del modelo es bastante complejo, aunque lo fue
- * muchsimo ms en las primeras versiones del mercado en ObjectiveC. Lo
+ * muchísimo más en las primeras versiones del mercado en ObjectiveC. Lo
  * que se persigue es conseguir crear una historia ficticia inicial de 502
  * periodos de forma que cuando los agentes empiecen a negociar dispongan de
- * datos que tengan un mnimo de sentido. Para conseguir este objetivo se crean
- * dos programas de acciones. El primero, llamado startupSchedule, ser el
+ * datos que tengan un mínimo de sentido. Para conseguir este objetivo se crean
+ * dos programas de acciones. El primero, llamado startupSchedule, será el
  * encargado de crear la historia ficticia inicial. El segundo, llamado
- * periodSchedule, ser el que se repita cada periodo normal de simulacin. </p>
+ * periodSchedule, será el que se repita cada periodo normal de simulación. </p>
  *
- * <p>El primer programa (startupSchedule) se compone nicamente de una accin
- * (doWarmupStep), pero que se repite 502 veces (lo matizaremos ms tarde).
- * Esta accin de calentamiento
- * lo nico que hace es crear un dividendo (mediante un proceso AR(1)) y
- * fijar el precio como el precio fundamental (dividendo/tasa de inters). Como
- * este proceso se lleva a cabo 502 veces, cuando termina la ejecucin del
- * programa startupSchedule (que no se ejecuta ms que una nica vez, aunque
+ * <p>El primer programa (startupSchedule) se compone únicamente de una acción
+ * (doWarmupStep), pero que se repite 502 veces (lo matizaremos más tarde).
+ * Esta acción de calentamiento
+ * lo único que hace es crear un dividendo (mediante un proceso AR(1)) y
+ * fijar el precio como el precio fundamental (dividendo/tasa de interés). Como
+ * este proceso se lleva a cabo 502 veces, cuando termina la ejecución del
+ * programa startupSchedule (que no se ejecuta más que una única vez, aunque
  * comprenda 502 acciones iguales), resulta
- * que disponemos de una situacin burstil ms o menos creble. Es decir,
- * todos los parmetros tales como medias mviles sobre el precio o sobre el
- * dividendo contienen datos ms o menos vlidos. De la misma forma, disponemos
- * de la historia de los 500 ltimos dividendos, as como de la historia de los
- *  500 ltimos precios (fundamentales). Cabe resaltar que durante la ejecucin
+ * que disponemos de una situación bursátil más o menos creíble. Es decir,
+ * todos los parámetros tales como medias móviles sobre el precio o sobre el
+ * dividendo contienen datos más o menos válidos. De la misma forma, disponemos
+ * de la historia de los 500 últimos dividendos, así como de la historia de los
+ *  500 últimos precios (fundamentales). Cabe resaltar que durante la ejecución
  *  de los 502 "doWarmStep", los agentes no han intervenido para nada. Este
- *  periodo de calentamiento no aparecer ni en las salidas grficas, ni en
- *  los ficheros. No forma parte de la simulacin propiamente dicha.</p>
+ *  periodo de calentamiento no aparecerá ni en las salidas gráficas, ni en
+ *  los ficheros. No forma parte de la simulación propiamente dicha.</p>
  *
- * <p>Bien es cierto que lo expuesto en el prrafo anterior con fines didcticos
- * no es del todo exacto. El programa startupSchedule tambin contiene un
- * grupo de acciones adicional (periodActions) que se ejecutar despus de las
+ * <p>Bien es cierto que lo expuesto en el párrafo anterior con fines didácticos
+ * no es del todo exacto. El programa startupSchedule también contiene un
+ * grupo de acciones adicional (periodActions) que se ejecutará después de las
  * 502 acciones de calentamiento (doWarmupStep). Este grupo de acciones es el
- * que determina la ejecucin normal de la simulacin y que luego se repetir
- * cada periodo de simulacin, aunque formando parte del segundo programa. </p>
+ * que determina la ejecución normal de la simulación y que luego se repetirá
+ * cada periodo de simulación, aunque formando parte del segundo programa. </p>
  *
  * <p>En definitiva, podemos resumir diciendo que el primer programa
- * (startupSchedule) se ejecuta una sola vez antes de nada en la simulacin
+ * (startupSchedule) se ejecuta una sola vez antes de nada en la simulación
  * (en t=0). Este programa se compone de 502 acciones
  * iguales (doWarmupStep) y un grupo de acciones (periodActions). Las primeras
  * 502 acciones de calentamiento crean la historia ficticia inicial del
- * mercado, mientras que la ejecucin del grupo de acciones periodActions se
- * encarga de que se lleve a cabo el primer intercambio burstil de la
- * simulacin. Este programa, una vez ejecutado, desaparece y deja paso al
- * programa que gestiona la ejecucin normal de la simulacin: el
+ * mercado, mientras que la ejecución del grupo de acciones periodActions se
+ * encarga de que se lleve a cabo el primer intercambio bursátil de la
+ * simulación. Este programa, una vez ejecutado, desaparece y deja paso al
+ * programa que gestiona la ejecución normal de la simulación: el
  *  periodSchedule.</p>
  *
  * <p>El segundo programa (periodSchedule) es el que determina el curso normal
- * de la simulacin. Se repite cada vez que avanza el reloj de la simulacin
+ * de la simulación. Se repite cada vez que avanza el reloj de la simulación
  * (al contrario que el primer programa: startupSchedule) y
- * comprende un nico grupo de acciones, el ya conocido periodActions. Este
- * grupo de acciones regula la ejecucin normal de la simulacin.</p>
+ * comprende un único grupo de acciones, el ya conocido periodActions. Este
+ * grupo de acciones regula la ejecución normal de la simulación.</p>
  * <p>Copyright: Copyright (c) 2002</p>
- * <p>Depto. de Organizacin y Gestin de Empresas. Universidad de Valladolid</p>
- * @author Jos Manuel Galn & Luis R. Izquierdo
+ * <p>Depto. de Organización y Gestión de Empresas. Universidad de Valladolid</p>
+ * @author José Manuel Galán & Luis R. Izquierdo
  * @version 1.0
  *
  */
@@ -157,21 +167,29 @@ public class ASMModelSwarm extends SwarmImpl
 {
   // simulation parameters
 
-  /**Entero que representa el tiempo actual en la simulacin*/
+  /**Entero que representa el tiempo actual en la simulación*/
   int modelTime;    /*"An integer used to represent the current timestep"*/
 
-  /**El grupo de acciones que se ejecutar secuencialmente en cada periodo de
-   * simulacin. Se compone de 7 acciones diferentes, entre las que se
-   * encuentran la generacin del dividendo, la determinacin del precio de
-   * mercado y la actualizacin del mundo, entre otras.*/
+  /**Número de pasos de calentamiento con que se crea la historia inicial*/
+  public static final int WARMUPSTEPS = 502;
+
+  /**Cerrojo para construir modelos que luego corren en hilos distintos
+   * (EnsembleRunner, MarketFork): la construcción crea objetos de Swarm,
+   * que no se pueden crear a la vez desde varios hilos*/
+  public static final Object BUILDLOCK = new Object ();
+
+  /**El grupo de acciones que se ejecutará secuencialmente en cada periodo de
+   * simulación. Se compone de 7 acciones diferentes, entre las que se
+   * encuentran la generación del dividendo, la determinación del precio de
+   * mercado y la actualización del mundo, entre otras.*/
   public ActionGroup periodActions; /*" An ActionGroup that collects things that are supposed to happen in a particular sequential order during each timestep "*/
 
-  /**Programa que contiene nicamente al grupo de acciones periodActions. Es el
-   * programa que determina el curso normal de la simulacin. Se repite cada
-   * vez que avanza el reloj de la simulacin. */
+  /**Programa que contiene únicamente al grupo de acciones periodActions. Es el
+   * programa que determina el curso normal de la simulación. Se repite cada
+   * vez que avanza el reloj de la simulación. */
   public Schedule periodSchedule; /*" Schedule on which we add period (repeating) actions, most importantly, the action group periodActions"*/
 
-  /**Este programa se ejecuta una sola vez antes de nada en la simulacin
+  /**Este programa se ejecuta una sola vez antes de nada en la simulación
   * (en t=0). Se compone de 502 acciones iguales (doWarmupStep) y el grupo de
   * acciones periodActions.*/
   public Schedule startupSchedule;
@@ -189,20 +207,90 @@ public class ASMModelSwarm extends SwarmImpl
    */
   public Dividend dividendProcess; /*"Dividend process that generates dividends  "*/
 
-  /** El mundo. Contiene la situacin actual y pasada del mercado.
+  /** El mundo. Contiene la situación actual y pasada del mercado.
    */
   public World world;          /*"A World object, a price historian, really   "*/
 
+  /** Libro de cuentas con el efectivo, la posición, el beneficio, la riqueza
+   *  y la demanda de todos los agentes.
+   */
+  public AgentLedger ledger;   /*"Agents' financial state, indexed by agent id "*/
+
+  /** Número de activos con riesgo. El activo 0 es el que usan dividendProcess,
+   *  world, specialist y agentList; el resto sólo está en los arrays
+   *  siguientes.
+   */
+  public int numAssets;        /*"Number of risky assets "*/
+
+  /** Especialistas en la sombra, o null si no se usan */
+  public ShadowMarket shadowMarket; /*"Shadow specialists clearing the same demand curves "*/
+
+  /** Proceso de dividendos de cada activo */
+  public Dividend dividendProcesses[];
+
+  /** Mundo de cada activo */
+  public World worlds[];
+
+  /** Especialista de cada activo */
+  public Specialist specialists[];
+
+  /** Agentes que negocian cada activo. Cada inversor está representado por
+   *  un agente en cada lista, todos con el mismo identificador.
+   */
+  public LinkedList agentLists[];
+
+  /** Tareas que vacían el mercado de cada activo en paralelo */
+  AssetClearing clearings[];
+
+  /** Hilos en los que se ejecutan las tareas de clearings */
+  ExecutorService clearingPool;
+
+  /** Precio y dividendo de cada activo, para el abono de intereses */
+  double assetPrices[];
+  double assetDividends[];
+
+  /** Generador de números aleatorios escrito en Java que comparten todos los
+   *  objetos del modelo, o null para usar los de Swarm (rngType 0) */
+  RandomSource randomSource;
+  /** Flujos de números aleatorios de cada componente (rngType 2), o null,
+   *  y periodo en que están: cuenta también los pasos de calentamiento,
+   *  durante los que el tiempo de Swarm no avanza */
+  RandomStreams randomStreams;
+  long randomPeriod;
+
+  /** Agentes de cada activo en arrays, para recorrerlos en stepPeriod */
+  Agent agentArrays[][];
+
+  /** Agentes que deciden cada periodo en cada activo, según sus intervalos
+   *  de decisión (decisionIntervals), o null si deciden todos siempre */
+  AgentCalendar calendars[];
+
+  /** Procesos AgentShard con los agentes (agentShards), o null si los
+   *  agentes están en este modelo */
+  ShardedDemand shards;
+  /** Reloj del que se toma el tiempo, o null para tomarlo de Swarm */
+  SimulationClock clock;
+
+  /** Caché del estado después del calentamiento, o null si no se usa */
+  WarmupCache warmupCache;
+  /** true cuando ya se ha hecho el calentamiento o se ha leído de la
+   *  caché o de un punto de control */
+  boolean warmedUp;
+  /** Puntos de control de la simulación, o null si no se usan */
+  Checkpoint checkpoint;
+  /** Estado serializado del que parte una rama de MarketFork, o null */
+  byte initialState[];
+
   /** Objeto creado en ASMObserverSwarm que gestiona la escritura en ficheros
-   *  de los parmetros y de los resultados de la simulacin.*/
+   *  de los parámetros y de los resultados de la simulación.*/
   public Output output;         /*"An Output object   "*/
 
-  /** Objeto instancia de BFParams que contiene los parmetros de los
+  /** Objeto instancia de BFParams que contiene los parámetros de los
    *  bfAgents.
    */
   public BFParams bfParams;          /*" A (BFParams) parameter object holding BFagent parameters"*/
 
-  /** Objeto instancia de ASMModelParams que contiene los parmetros del
+  /** Objeto instancia de ASMModelParams que contiene los parámetros del
    *  modelo.
    */
   public ASMModelParams asmModelParams;  /*" A (ASMModelParms) parameter object holding parameters of Models"*/
@@ -211,7 +299,7 @@ public class ASMModelSwarm extends SwarmImpl
    */
   public FActionForEach actionForEach;
 
-  /**Constructor de la clase. Ponemos a 0 el reloj de la simulacin.
+  /**Constructor de la clase. Ponemos a 0 el reloj de la simulación.
    *
     * @param aZone Zona de memoria Swarm en la que se aloja el objeto Swarm
     */
@@ -225,13 +313,13 @@ public class ASMModelSwarm extends SwarmImpl
    * created. This passes handles of objects that have the required
    * data."*/
 
-  /**Cuando creamos el asmModelSwarm, necesitamos comunicarle dnde encontrar
-   * los parmetros para que cree los agentes y dems objetos conforme a los
-   * parmetros introducidos por el usuario.
+  /**Cuando creamos el asmModelSwarm, necesitamos comunicarle dónde encontrar
+   * los parámetros para que cree los agentes y demás objetos conforme a los
+   * parámetros introducidos por el usuario.
    *
    * @param modelParams Objeto instancia de ASMModelParams que contiene
-   * los parmetros del modelo.
-   * @param bfp Objeto instancia de BFParams que contiene los parmetros de los
+   * los parámetros del modelo.
+   * @param bfp Objeto instancia de BFParams que contiene los parámetros de los
    *  bfAgents.
    * @return this
    */
@@ -243,11 +331,11 @@ public class ASMModelSwarm extends SwarmImpl
   }
 
 
-  /**Le indicamos dnde encontrar el objeto que gestiona la escritura en
-   * ficheros de los parmetros y de los resultados de la simulacin.
+  /**Le indicamos dónde encontrar el objeto que gestiona la escritura en
+   * ficheros de los parámetros y de los resultados de la simulación.
    *
    * @param obj Objeto instancia de Output que gestiona la escritura en
-   * ficheros de los parmetros y de los resultados de la simulacin.
+   * ficheros de los parámetros y de los resultados de la simulación.
    *
    * @return this*/
   public Object setOutputObject(Output obj)
@@ -256,17 +344,17 @@ public class ASMModelSwarm extends SwarmImpl
     return this;
   }
 
-  /**Devuelve el nmero de bfagents, variable instancia de asmModelParams
+  /**Devuelve el número de bfagents, variable instancia de asmModelParams
    *
-   * @return asmModelParams.numBFagents nmero de agentes bfAgents*/
+   * @return asmModelParams.numBFagents número de agentes bfAgents*/
   public int getNumBFagents ()
   {
     return asmModelParams.numBFagents;
   }
 
-  /**Devuelve la posesin inicial de efectivo de los bfagents, variable
+  /**Devuelve la posesión inicial de efectivo de los bfagents, variable
    * instancia de asmModelParams
-   * @return asmModelParams.initialcash posesin inicial de efectivo de
+   * @return asmModelParams.initialcash posesión inicial de efectivo de
    *  los bfagents
    * */
   public double getInitialCash ()
@@ -287,9 +375,9 @@ public class ASMModelSwarm extends SwarmImpl
     where the BFagents can retrieve information in bit string form."*/
 
   /**Devuelve una referencia al mundo (objeto world), donde se registra la
-   * situacin actual y pasada del mercado.
+   * situación actual y pasada del mercado.
    *
-   * @return world El mundo. Contiene la situacin actual y pasada del mercado.
+   * @return world El mundo. Contiene la situación actual y pasada del mercado.
    */
   public World getWorld ()
   {
@@ -315,7 +403,7 @@ public class ASMModelSwarm extends SwarmImpl
   /**Devuelve una referencia al objeto output.
    *
    * @return output Objeto instancia de Output que gestiona la escritura en
-   * ficheros de los parmetros y de los resultados de la simulacin.
+   * ficheros de los parámetros y de los resultados de la simulación.
    * */
   public Output getOutput ()
   {
@@ -326,9 +414,9 @@ public class ASMModelSwarm extends SwarmImpl
     Returns the integer time-step of the current simulation.
     "*/
 
-  /**Devuelve el entero que representa el tiempo actual en la simulacin.
+  /**Devuelve el entero que representa el tiempo actual en la simulación.
    *
-   * @return modelTime Entero que representa el tiempo actual en la simulacin.
+   * @return modelTime Entero que representa el tiempo actual en la simulación.
    * */
 
   public int getModelTime ()
@@ -336,13 +424,50 @@ public class ASMModelSwarm extends SwarmImpl
     return modelTime;
   }
 
+  /**Hace que buildObjects construya el modelo en un estado serializado
+   * con Checkpoint.serialize() en lugar de calentarlo. Lo usa MarketFork.
+   *
+   * @param state Estado de un modelo con los mismos parámetros
+   * @return this
+   * */
+  public Object setInitialState (byte state[])
+  {
+    initialState = state;
+    return this;
+  }
+
+  /**Cambia la semilla de los generadores escritos en Java, que siguen
+   * desde el punto en que están con números distintos. Lo usa MarketFork
+   * para que cada rama saque sus propios números.
+   *
+   * @param seed Semilla nueva
+   * @return this
+   * */
+  public Object reseed (long seed)
+  {
+    if (randomSource instanceof XoshiroRandomSource)
+      ((XoshiroRandomSource) randomSource).setSeed (seed);
+    if (randomStreams != null)
+      randomStreams.reseed (seed);
+    return this;
+  }
+
+  /**Devuelve los puntos de control de la simulación
+   *
+   * @return checkpoint, o null si no se usan
+   * */
+  public Checkpoint getCheckpoint ()
+  {
+    return checkpoint;
+  }
+
     /*"The value of the randomSeed that starts the simulation will remain
     fixed, unless you change it by using this method"*/
 
-  /**El valor de la semilla (randomSeed) para generar nmeros aleatorios
-   * permanece constante a no ser que se modifique a travs de este mtodo.
+  /**El valor de la semilla (randomSeed) para generar números aleatorios
+   * permanece constante a no ser que se modifique a través de este método.
     *
-    * @param newSeed Semilla para la generacin de nmeros aleatorios.
+    * @param newSeed Semilla para la generación de números aleatorios.
     * @return this
     */
   public Object setBatchRandomSeed (int newSeed)
@@ -351,8 +476,49 @@ public class ASMModelSwarm extends SwarmImpl
     return this;
   }
 
+  /*"Turn a list of moving average lengths such as "5 20 100 500" into
+    an array"*/
+  /**Convierte una lista de longitudes de medias móviles como
+   * "5 20 100 500" en un array.
+   *
+   * @param lengths Longitudes separadas por espacios o comas
+   * @return array de longitudes
+   */
+  static int[] parseLengths (String lengths)
+  {
+    StringTokenizer st = new StringTokenizer (lengths, " ,\t");
+    int result[] = new int[st.countTokens ()];
+
+    for (int j = 0; j < result.length; j++)
+      result[j] = Integer.parseInt (st.nextToken ());
+    return result;
+  }
+
+  /*"Create a specialist of the given type with the model's parameters"*/
+  /**Crea un especialista del tipo indicado con los parámetros del modelo.
+   *
+   * @param aType Tipo de especialista
+   * @return el especialista
+   */
+  public Specialist createSpecialist (int aType)
+  {
+    Specialist aSpecialist = new Specialist (this.getZone());
+    aSpecialist.setMaxPrice (asmModelParams.maxprice);
+    aSpecialist.setMinPrice (asmModelParams.minprice);
+    aSpecialist.setTaup (asmModelParams.taup);
+    aSpecialist.setSPtype (aType);
+    aSpecialist.setMaxIterations (asmModelParams.maxiterations);
+    aSpecialist.setMinExcess (asmModelParams.minexcess);
+    aSpecialist.setETA (asmModelParams.eta);
+    aSpecialist.setETAmin$max (asmModelParams.etamin, asmModelParams.etamax);
+    aSpecialist.setGridWidth (asmModelParams.gridwidth);
+    aSpecialist.setREA (asmModelParams.rea);
+    aSpecialist.setREB (asmModelParams.reb);
+    return aSpecialist;
+  }
+
  /*"Build and initialize objects"*/
- /**Construye e inicializa los objetos principales de la simulacin:
+ /**Construye e inicializa los objetos principales de la simulación:
   * el dividendo, el mundo, el especialista y los agentes.
   *
   * @return this
@@ -360,65 +526,278 @@ public class ASMModelSwarm extends SwarmImpl
   */
   public Object buildObjects ()
   {
-    int i;
+    int i, k;
+    boolean cached, resuming;
 
-  if(asmModelParams.randomSeed != 0)
+  // The Java generators leave the shared Swarm one alone, so that
+  // several models can be built side by side
+  if(asmModelParams.randomSeed != 0 && asmModelParams.rngType == 0)
     Globals.env.randomGenerator.setStateFromSeed(asmModelParams.randomSeed);
     //pj: note I'm making this like other swarm apps. Same each time, new seeds only if precautions taken.
 
+  // With rngType 1 every draw of the model comes from one pure-Java
+  // generator, in the same order as the Swarm draws
+  if (asmModelParams.rngType == 1)
+    randomSource = new XoshiroRandomSource (asmModelParams.randomSeed);
+  // With rngType 2 every component draws from its own counter-based
+  // stream, so its numbers do not depend on the order components run in
+  else if (asmModelParams.rngType == 2)
+    randomStreams = new RandomStreams (asmModelParams.randomSeed);
+
+  // The warm-up can only be cached if the random state can be saved,
+  // which the Swarm generator does not allow
+  if (asmModelParams.warmupCache.length () > 0)
+    {
+      if (asmModelParams.rngType == 0)
+        System.err.println ("warmupCache needs rngType 1 or 2; not used");
+      else
+        warmupCache = new WarmupCache (asmModelParams.warmupCache,
+                                       asmModelParams, bfParams);
+    }
+  // A branch of a MarketFork starts from its parent's state and writes
+  // no checkpoints of its own
+  if (initialState != null)
+    checkpoint = new Checkpoint ("", 0, asmModelParams, bfParams);
+  else if (asmModelParams.checkpointFile.length () > 0
+           || asmModelParams.resumeFrom.length () > 0)
+    {
+      if (asmModelParams.rngType == 0)
+        System.err.println ("checkpointFile and resumeFrom need rngType 1 or 2; not used");
+      else
+        checkpoint = new Checkpoint (asmModelParams.checkpointFile,
+                                     asmModelParams.checkpointInterval,
+                                     asmModelParams, bfParams);
+    }
+  resuming = (initialState != null || (checkpoint != null
+                                        && asmModelParams.resumeFrom.length () > 0));
+  cached = (!resuming && warmupCache != null && warmupCache.exists ());
 
-  /* Initialize the dividend, specialist, and world (order is crucial) */
-  dividendProcess = new Dividend (this.getZone());
-  dividendProcess.initNormal ();
-  dividendProcess.setBaseline (asmModelParams.baseline);
-  dividendProcess.setmindividend (asmModelParams.mindividend);
-  dividendProcess.setmaxdividend (asmModelParams.maxdividend);
-  dividendProcess.setAmplitude (asmModelParams.amplitude);
-  dividendProcess.setPeriod (asmModelParams.period);
-  dividendProcess.setDerivedParams ();
-
-  world = new World (this.getZone());
-  world.createBitnameList();
-  world.setintrate (asmModelParams.intrate);
-  if(asmModelParams.exponentialMAs == 1) world.setExponentialMAs (true);
-    else  world.setExponentialMAs (false);
-  world.initWithBaseline (asmModelParams.baseline);
-  world.setRea$Reb(asmModelParams.rea, asmModelParams.reb);
-
-  specialist = new Specialist (this.getZone());
-  specialist.setMaxPrice (asmModelParams.maxprice);
-  specialist.setMinPrice (asmModelParams.minprice);
-  specialist.setTaup (asmModelParams.taup);
-  specialist.setSPtype (asmModelParams.sptype);
-  specialist.setMaxIterations (asmModelParams.maxiterations);
-  specialist.setMinExcess (asmModelParams.minexcess);
-  specialist.setETA (asmModelParams.eta);
-  specialist.setREA (asmModelParams.rea);
-  specialist.setREB (asmModelParams.reb);
+  // The agents' state stays on the shards, so nothing that saves or
+  // inspects it can be used with them
+  if (asmModelParams.agentShards.length () > 0)
+    {
+      if (asmModelParams.rngType != 2)
+        throw new IllegalArgumentException ("agentShards needs rngType 2");
+      if (asmModelParams.numAssets > 1 || asmModelParams.shadowSpecialists != 0
+          || asmModelParams.decisionIntervals.length () > 0)
+        throw new IllegalArgumentException
+          ("agentShards cannot be used with numAssets, shadowSpecialists or decisionIntervals");
+      if (warmupCache != null || checkpoint != null)
+        throw new IllegalArgumentException
+          ("agentShards cannot be used with warmupCache, checkpoints or forks");
+      shards = new ShardedDemand (asmModelParams.agentShards);
+    }
+
+
+  numAssets = (asmModelParams.numAssets > 1 ? asmModelParams.numAssets : 1);
+  dividendProcesses = new Dividend[numAssets];
+  worlds = new World[numAssets];
+  specialists = new Specialist[numAssets];
+  agentLists = new LinkedList[numAssets];
+  assetPrices = new double[numAssets];
+  assetDividends = new double[numAssets];
+
+  if (shards != null)
+    ledger = new ShardLedger (shards);
+  else
+    ledger = new AgentLedger (asmModelParams.numBFagents, numAssets);
+
+  /* Initialize the dividend, specialist, and world of each asset (order is crucial) */
+  for (k = 0; k < numAssets; k++)
+    {
+      dividendProcess = new Dividend (this.getZone());
+      dividendProcess.initNormal ();
+      if (randomSource != null)
+        dividendProcess.setRandomSource (randomSource);
+      else if (randomStreams != null)
+        dividendProcess.setRandomSource
+          (randomStreams.streamFor (RandomStreams.DIVIDEND, k));
+      dividendProcess.setBaseline (asmModelParams.baseline);
+      dividendProcess.setmindividend (asmModelParams.mindividend);
+      dividendProcess.setmaxdividend (asmModelParams.maxdividend);
+      dividendProcess.setAmplitude (asmModelParams.amplitude);
+      dividendProcess.setPeriod (asmModelParams.period);
+      dividendProcess.setDerivedParams ();
+      if (asmModelParams.dividendFile.length () > 0)
+        try {
+          dividendProcess.setTape
+            (DividendTape.open (numAssets == 1 ? asmModelParams.dividendFile
+                                : asmModelParams.dividendFile + "." + k));
+        } catch (IOException e) {
+          System.err.println ("Exception dividendFile: " + e.getMessage ());
+        }
+      else if (asmModelParams.dividendBlock > 0)
+        dividendProcess.setTape
+          (new DividendTape (dividendProcess, asmModelParams.dividendBlock));
+      dividendProcesses[k] = dividendProcess;
+
+      world = new World (this.getZone());
+      if (randomSource != null)
+        world.setRandomSource (randomSource);
+      else if (randomStreams != null)
+        world.setRandomSource (randomStreams.streamFor (RandomStreams.WORLD, k));
+      world.setMALengths (parseLengths (asmModelParams.malengths));
+      world.setStatWindows (parseLengths (asmModelParams.statWindows));
+      world.createBitnameList();
+      world.setintrate (asmModelParams.intrate);
+      if(asmModelParams.exponentialMAs == 1) world.setExponentialMAs (true);
+        else  world.setExponentialMAs (false);
+      world.initWithBaseline (asmModelParams.baseline);
+      world.setRea$Reb(asmModelParams.rea, asmModelParams.reb);
+      // The history file belongs to the parent of a branch
+      if (asmModelParams.historyFile.length () > 0 && initialState == null)
+        try {
+          String historyName = (numAssets == 1 ? asmModelParams.historyFile
+                                : asmModelParams.historyFile + "." + k);
+          // A resumed run goes on writing the history it had
+          world.setHistoryStore (resuming ? HistoryStore.reopen (historyName)
+                                 : new HistoryStore (historyName));
+        } catch (IOException e) {
+          System.err.println ("Exception historyFile: " + e.getMessage ());
+        }
+      worlds[k] = world;
+
+      specialist = createSpecialist (asmModelParams.sptype);
+      specialist.setLedger (ledger);
+      specialist.setAsset (k);
+      specialists[k] = specialist;
+    }
+
+  // Asset 0 is the one shown by the observer and written by Output
+  dividendProcess = dividendProcesses[0];
+  world = worlds[0];
+  specialist = specialists[0];
+  agentLists[0] = agentList;
+  for (k = 1; k < numAssets; k++)
+    agentLists[k] = new LinkedList();
 
   output.setWorld (world);
   output.setSpecialist (specialist);
 
   /* Initialize the agent modules and create the agents */
 
-  /* Set class variables */
+  // The agents' condition bits are named; number them as this World does
+  bfParams.resolveBits (world.getIndicators ());
   BFagent.init ();
-  BFagent.setBFParameterObject (bfParams);
-  BFagent.setWorld (world);
 
-  //nowObject create the agents themselves
-  for (i = 0; i < asmModelParams.numBFagents; i++)
+  //nowObject create the agents themselves, one per trader and asset
+  // (or let the shards create them)
+  for (k = 0; k < numAssets && shards == null; k++)
+    for (i = 0; i < asmModelParams.numBFagents; i++)
+      {
+        BFagent agent;
+        agent = new BFagent (this.getZone());
+        agent.setLedger (ledger);
+        agent.setBFParameterObject (bfParams);
+        if (randomSource != null)
+          agent.setRandomSource (randomSource);
+        else if (randomStreams != null)
+          agent.setRandomSource
+            (randomStreams.streamFor (RandomStreams.AGENT,
+                                      k*asmModelParams.numBFagents + i));
+        agent.setAsset$World (k, worlds[k]);
+        agent.setID (i);
+        agent.setintrate (asmModelParams.intrate);
+        agent.setminHolding$minCash(asmModelParams.minholding,asmModelParams.mincash);
+        agent.setInitialCash (asmModelParams.initialcash);
+        agent.setInitialHoldings();
+        agent.setPosition (asmModelParams.initholding);
+        // A cached warm-up or a checkpoint brings the rulebooks along
+        if (!cached && !resuming)
+          agent.initForecasts ();
+        agentLists[k].add(agent);
+      }
+
+  // Agents with longer decision intervals skip periods
+  if (asmModelParams.decisionIntervals.length () > 0)
     {
-      BFagent agent;
-      agent = new BFagent (this.getZone());
-      agent.setID (i);
-      agent.setintrate (asmModelParams.intrate);
-      agent.setminHolding$minCash(asmModelParams.minholding,asmModelParams.mincash);
-      agent.setInitialCash (asmModelParams.initialcash);
-      agent.setInitialHoldings();
-      agent.setPosition (asmModelParams.initholding);
-      agent.initForecasts ();
-      agentList.add(agent);
+      int cycle[] = parseLengths (asmModelParams.decisionIntervals);
+      int intervals[] = new int[asmModelParams.numBFagents];
+
+      for (i = 0; i < intervals.length; i++)
+        intervals[i] = cycle[i%cycle.length];
+      // An agent is scored against the price of the period after its
+      // previous decision, which the histories must still hold
+      for (i = 0; i < cycle.length; i++)
+        if (cycle[i] >= world.getHistoryCapacity ())
+          throw new IllegalArgumentException
+            ("decision interval " + cycle[i]
+             + " is not smaller than the history capacity "
+             + world.getHistoryCapacity ());
+      calendars = new AgentCalendar[numAssets];
+      for (k = 0; k < numAssets; k++)
+        calendars[k] = new AgentCalendar (intervals);
+    }
+
+  // Each world computes only the bits some of its agents look at
+  for (k = 0; k < numAssets; k++)
+    {
+      worlds[k].clearMonitoredBits ();
+      for (i = 0; i < agentLists[k].size (); i++)
+        worlds[k].monitorBits (((Agent)agentLists[k].get (i)).getMonitoredBits ());
+    }
+
+  if (shards != null)
+    try {
+      shards.connect (asmModelParams, bfParams, world);
+      shards.monitorBits (world);
+    } catch (IOException e) {
+      shards.close ();
+      throw new RuntimeException ("Exception connecting to agent shards "
+                                  + asmModelParams.agentShards + ": "
+                                  + e.getMessage ());
+    }
+
+  // Shadow specialists that clear asset 0's demand curves side by side
+  if (asmModelParams.shadowSpecialists != 0)
+    {
+      shadowMarket = new ShadowMarket (asmModelParams.numBFagents,
+                                       Specialist.NSPTYPES);
+      for (k = 0; k < Specialist.NSPTYPES; k++)
+        if ((asmModelParams.shadowSpecialists & (1 << k)) != 0)
+          shadowMarket.addSpecialist (createSpecialist (k));
+      output.setShadowMarket (shadowMarket);
+    }
+
+  if (numAssets > 1)
+    {
+      clearings = new AssetClearing[numAssets];
+      for (k = 0; k < numAssets; k++)
+        clearings[k] = new AssetClearing (specialists[k], agentLists[k],
+                                          worlds[k]);
+      clearingPool = Executors.newFixedThreadPool
+        (Math.min (numAssets, Runtime.getRuntime ().availableProcessors ()),
+         new ThreadFactory () {
+            public Thread newThread (Runnable r) {
+              Thread t = new Thread (r, "asset-clearing");
+              t.setDaemon (true);
+              return t;
+            }
+          });
+    }
+
+  // The agents have no rulebooks yet, so a bad entry cannot be skipped
+  if (cached)
+    try {
+      warmupCache.load (this);
+      warmedUp = true;
+    } catch (IOException e) {
+      throw new RuntimeException ("Exception loading warm-up cache "
+                                  + warmupCache.getFile () + ": "
+                                  + e.getMessage ());
+    }
+  else if (resuming)
+    try {
+      if (initialState != null)
+        checkpoint.load (initialState, this);
+      else
+        checkpoint.load (asmModelParams.resumeFrom, this);
+      warmedUp = true;
+    } catch (IOException e) {
+      throw new RuntimeException ("Exception loading checkpoint "
+                                  + (initialState != null ? "state"
+                                     : asmModelParams.resumeFrom)
+                                  + ": " + e.getMessage ());
     }
 
   return this;
@@ -426,8 +805,8 @@ public class ASMModelSwarm extends SwarmImpl
 
   /*"This triggers a writing of the model parameters, for record keeping."*/
 
-  /**Este mtodo ordena al objeto Output crear un fichero con los
-   * parmetros de la simulacin.
+  /**Este método ordena al objeto Output crear un fichero con los
+   * parámetros de la simulación.
    *
    * @return this
    */
@@ -443,18 +822,18 @@ public class ASMModelSwarm extends SwarmImpl
  * not calculated by a t counter but internally within Swarm.  Time is
  * recovered by the getTime message"*/
 
- /**<p>Crea las acciones. Como ya hemos indicado en la introduccin a esta clase,
+ /**<p>Crea las acciones. Como ya hemos indicado en la introducción a esta clase,
   * el modelo consta de dos programas de acciones: el startupSchedule y el
   * periodSchedule.</p>
   * <p>startupSchedule se compone de 502 acciones iguales (doWarmupStep)
-  * y un grupo de acciones (periodActions). Se ejecuta un nica vez en t=0.</p>
+  * y un grupo de acciones (periodActions). Se ejecuta un única vez en t=0.</p>
   * <p>periodSchedule es el programa que determina el curso normal
- * de la simulacin. Se repite cada vez que avanza el reloj de la simulacin
+ * de la simulación. Se repite cada vez que avanza el reloj de la simulación
  * (al contrario que el primer programa: startupSchedule) y
- * comprende un nico grupo de acciones, el ya conocido periodActions.</p>
- * <p>Cabe destacar que el tiempo de generacin no se calcula a travs de un
+ * comprende un único grupo de acciones, el ya conocido periodActions.</p>
+ * <p>Cabe destacar que el tiempo de generación no se calcula a través de un
  * contador, sino que es Swarm quien lo calcula internamente. Podremos cosultar
- * el tiempo de simulacin en cualquier momento mediante el mtodo getTime.</p>
+ * el tiempo de simulación en cualquier momento mediante el método getTime.</p>
  * @return this
   */
   public Object buildActions () {
@@ -471,36 +850,40 @@ public class ASMModelSwarm extends SwarmImpl
       System.err.println ("Exception periodStepDividend: " + e.getMessage ());
     }
 
-  // Tell agents to credit their earnings and pay taxes
+  // Credit all agents' earnings and charge taxes in one ledger pass
     try {
-      Agent proto = (Agent) agentList.get (0);
-      Selector sel =
-        new Selector (proto.getClass (), "creditEarningsAndPayTaxes", false);
-      actionForEach =
-        periodActions.createFActionForEachHomogeneous$call
-        (agentList,
-         new FCallImpl (this, proto, sel,
-                        new FArgumentsImpl (this, sel)));
+      periodActions.createActionTo$message
+        (this, new Selector (getClass (), "periodStepCredit", false));
     } catch (Exception e) {
-      e.printStackTrace (System.err);
+      System.err.println ("Exception periodStepCredit: " + e.getMessage ());
     }
 
   // Update world -- moving averages, bits, etc
+  for (int k = 0; k < numAssets; k++)
     try {
       periodActions.createActionTo$message
-        (world, new Selector (world.getClass (), "updateWorld", false));
+        (worlds[k], new Selector (worlds[k].getClass (), "updateWorld", false));
     } catch (Exception e) {
       System.err.println ("Exception updateWorld: " + e.getMessage ());
     }
 
   // Tell BFagents to get ready for trading (they may run GAs here)
+  if (calendars != null || shards != null)
+    try {
+      periodActions.createActionTo$message
+        (this, new Selector (getClass (), "periodStepPrepare", false));
+    } catch (Exception e) {
+      System.err.println ("Exception periodStepPrepare: " + e.getMessage ());
+    }
+  else
+  for (int k = 0; k < numAssets; k++)
   try {
-      Agent proto = (Agent) agentList.get (0);
+      Agent proto = (Agent) agentLists[k].get (0);
       Selector sel =
         new Selector (proto.getClass (), "prepareForTrading", false);
       actionForEach =
         periodActions.createFActionForEachHomogeneous$call
-        (agentList,
+        (agentLists[k],
          new FCallImpl (this, proto, sel,
                         new FArgumentsImpl (this, sel)));
     } catch (Exception e) {
@@ -516,23 +899,34 @@ public class ASMModelSwarm extends SwarmImpl
       System.err.println ("Exception periodStepPrice: " + e.getMessage ());
     }
 
-  // Complete the trades -- change agents' position, cash, and profit
+  // Complete the trades -- change agents' position, cash, and profit.
+  // Assets share the agents' cash, so they are settled one after another.
 
+  for (int k = 0; k < numAssets; k++)
     try {
       periodActions.createActionTo$message
-        (specialist, new Selector (Class.forName ("Specialist"), "completeTrades$Market", false),agentList,world);
+        (specialists[k], new Selector (Class.forName ("Specialist"), "completeTrades$Market", false),agentLists[k],worlds[k]);
     } catch (Exception e) {
       System.err.println ("Exception periodStepPrice: " + e.getMessage ());
     }
 
   // Tell the agents to update their performance
+  if (calendars != null || shards != null)
     try {
-      Agent proto = (Agent) agentList.get (0);
+      periodActions.createActionTo$message
+        (this, new Selector (getClass (), "periodStepUpdate", false));
+    } catch (Exception e) {
+      System.err.println ("Exception periodStepUpdate: " + e.getMessage ());
+    }
+  else
+  for (int k = 0; k < numAssets; k++)
+    try {
+      Agent proto = (Agent) agentLists[k].get (0);
       Selector sel =
         new Selector (proto.getClass (), "updatePerformance", false);
       actionForEach =
         periodActions.createFActionForEachHomogeneous$call
-        (agentList,
+        (agentLists[k],
          new FCallImpl (this, proto, sel,
                         new FArgumentsImpl (this, sel)));
     } catch (Exception e) {
@@ -548,21 +942,34 @@ public class ASMModelSwarm extends SwarmImpl
     //handled by telling classes to do the required steps, nothing fancy
     //is required.
 
-    for (int i = 0; i < 502; i++){
+    //With a warm-up cache, one action does the same steps or reads
+    //their result from the cache.
+
+    if (warmupCache != null)
       try {
         startupSchedule.at$createActionTo$message (0, this,
-            new Selector (this.getClass (), "doWarmupStep",false));
+            new Selector (this.getClass (), "warmUp",false));
       } catch (Exception e) {
-        System.err.println ("Exception doWarmStep: " + e.getMessage ());
+        System.err.println ("Exception warmUp: " + e.getMessage ());
+      }
+    else
+      {
+        for (int i = 0; i < WARMUPSTEPS; i++){
+          try {
+            startupSchedule.at$createActionTo$message (0, this,
+                new Selector (this.getClass (), "doWarmupStep",false));
+          } catch (Exception e) {
+            System.err.println ("Exception doWarmStep: " + e.getMessage ());
+          }
+        }
+
+
+        //pj: 2001-10-30. This was in the original model, I don't know why, but
+        //taking it out changes the numerical results, so I'm leaving it in,
+        //even though it is not logically necessary.
+
+        startupSchedule.at$createAction (0, periodActions);
       }
-    }
-
-
-    //pj: 2001-10-30. This was in the original model, I don't know why, but
-    //taking it out changes the numerical results, so I'm leaving it in,
-    //even though it is not logically necessary.
-
-    startupSchedule.at$createAction (0, periodActions);
 
     periodSchedule = new ScheduleImpl (getZone (),1);
 
@@ -573,8 +980,8 @@ public class ASMModelSwarm extends SwarmImpl
 
     /*"Ask the dividend object for a draw from the dividend distribution, then tell the world about it. Tell the world to do an update of to respond to the dividend. Then calculate the price the divident implies and insert it into the world"*/
 
-  /**Este mtodo se ejecuta 502 veces en tiempo de simulacin t=0 con el
-   * objetivo de crear una historia burstil ficticia inicial. Bsicamente, lo
+  /**Este método se ejecuta 502 veces en tiempo de simulación t=0 con el
+   * objetivo de crear una historia bursátil ficticia inicial. Básicamente, lo
    * que hace es generar un dividendo, actualizar el mundo y fijar el precio de
    * mercado como el precio fundamental.
    *
@@ -583,10 +990,15 @@ public class ASMModelSwarm extends SwarmImpl
    */
   public Object doWarmupStep ()
   {
-    double div = dividendProcess.dividend ();
-    world.setDividend (div);
-    world.updateWorld ();
-    world.setPrice ((div/(double)asmModelParams.intrate));
+    if (randomStreams != null)
+      randomStreams.startPeriod (++randomPeriod);
+    for (int k = 0; k < numAssets; k++)
+      {
+        double div = dividendProcesses[k].dividend ();
+        worlds[k].setDividend (div);
+        worlds[k].updateWorld ();
+        worlds[k].setPrice ((div/(double)asmModelParams.intrate));
+      }
     return this;
   }
 
@@ -595,7 +1007,7 @@ public class ASMModelSwarm extends SwarmImpl
     modelTime variable"*/
 
    /**Dice al objeto dividendProcess que genere un nuevo dividendo, se lo
-    * enva al mundo e incrementa el tiempo de simulacin en 1.
+    * envía al mundo e incrementa el tiempo de simulación en 1.
    *
    * @return this
    *
@@ -603,30 +1015,351 @@ public class ASMModelSwarm extends SwarmImpl
   public Object periodStepDividend ()
   {
     modelTime++;
-    world.setDividend (dividendProcess.dividend ());
+    if (randomStreams != null)
+      randomStreams.startPeriod (++randomPeriod);
+    for (int k = 0; k < numAssets; k++)
+      worlds[k].setDividend (dividendProcesses[k].dividend ());
+    return this;
+  }
+
+  /*" Credit every agent's earnings and charge taxes at last period's
+    price and the dividend just declared.  Same update as
+    -creditEarningsAndPayTaxes in Agent, done in one pass over the ledger."*/
+
+   /**Abona a todos los agentes los dividendos y el interés, y cobra los
+    * impuestos, en un único recorrido sobre el libro de cuentas.
+   *
+   * @return this
+   *
+   */
+  public Object periodStepCredit ()
+  {
+    for (int k = 0; k < numAssets; k++)
+      {
+        assetPrices[k] = worlds[k].getPrice ();
+        assetDividends[k] = worlds[k].getDividend ();
+      }
+    ledger.creditEarningsAndPayTaxes (assetPrices, assetDividends);
     return this;
   }
 
     /*"Have the Specialist perform the trading process. Then tell the world about the price that resulted from the Specialist's action."*/
    /**En primer lugar le dice al market-maker que fije el precio de mercado.
-    * Despus se lo notifica al mundo.
+    * Después se lo notifica al mundo.
    *
    * @return this
    *
    */
   public Object periodStepPrice ()
   {
-    world.setPrice (specialist.performTrading$Market (agentList,world));
+    if (numAssets == 1)
+      {
+        double price;
+
+        if (shadowMarket != null)
+          shadowMarket.capture (agentList);
+        if (shards != null)
+          price = specialist.clearDemand$Market (shards, world);
+        else
+          price = specialist.performTrading$Market (agentList,world);
+        // The shadow specialists start from last period's price too
+        if (shadowMarket != null)
+          shadowMarket.clear (world);
+        world.setPrice (price);
+        world.closePeriod (specialist.getVolume ());
+        return this;
+      }
+
+    // Clear every asset's market in parallel.  The agents only write their
+    // own demand slots and read the cash reserved for each asset, which
+    // does not change until the trades are completed, so the results do
+    // not depend on the threads and the assets settled one after another
+    // cannot take an agent's cash below mincash.
+    ledger.reserveCash ();
+    // The shadow specialists clear asset 0, with the cash reserved for it
+    if (shadowMarket != null)
+      shadowMarket.capture (agentList);
+    try {
+      List tasks = Arrays.asList (clearings);
+      List futures = clearingPool.invokeAll (tasks);
+      for (int k = 0; k < numAssets; k++)
+        ((Future) futures.get (k)).get ();
+    } catch (Exception e) {
+      e.printStackTrace (System.err);
+    }
+    if (shadowMarket != null)
+      shadowMarket.clear (world);
+
+    for (int k = 0; k < numAssets; k++)
+      {
+        worlds[k].setPrice (clearings[k].getPrice ());
+        worlds[k].closePeriod (specialists[k].getVolume ());
+      }
     return this;
   }
 
 
+  /*" Run one period's actions as direct method calls, in the same order
+    as the periodActions group: dividend, credit, updateWorld,
+    prepareForTrading, trading, completeTrades, updatePerformance.
+    Used by ASMEngine to run the model without the Swarm scheduler."*/
+
+   /**Ejecuta las acciones de un periodo llamando directamente a los métodos,
+    * en el mismo orden que el grupo periodActions: nuevo dividendo, abono de
+    * intereses y dividendos, actualización del mundo, preparación de los
+    * agentes, negociación, liquidación de las operaciones y actualización de
+    * los resultados de los agentes. Da los mismos números que el programa de
+    * Swarm sin pasar por su mecanismo de acciones.
+   *
+   * @return this
+   *
+   */
+  public Object stepPeriod ()
+  {
+    int k;
+
+    periodStepDividend ();
+    periodStepCredit ();
+    for (k = 0; k < numAssets; k++)
+      worlds[k].updateWorld ();
+    periodStepPrepare ();
+    periodStepPrice ();
+    for (k = 0; k < numAssets; k++)
+      specialists[k].completeTrades$Market (agentLists[k], worlds[k]);
+    periodStepUpdate ();
+    return this;
+  }
+
+  /**Devuelve los agentes de cada activo en arrays, creándolos la primera
+   * vez; las listas de agentes no cambian una vez creados los objetos.
+   *
+   * @return agentArrays
+   */
+  Agent[][] getAgentArrays ()
+  {
+    if (agentArrays == null)
+      {
+        agentArrays = new Agent[numAssets][];
+        for (int k = 0; k < numAssets; k++)
+          agentArrays[k] = (Agent[]) agentLists[k].toArray (new Agent[0]);
+      }
+    return agentArrays;
+  }
+
+  /*" Tell the agents that decide this period to get ready for trading.
+    With decision intervals, only the agents due in each asset's
+    calendar do; the rest keep the demand function of their last
+    decision."*/
+
+   /**Prepara para negociar a los agentes que deciden en este periodo:
+    * todos, o con intervalos de decisión sólo los que tocan según el
+    * calendario de su activo. Los demás mantienen la función de demanda de
+    * su última decisión. Despacha el periodo del calendario.
+   *
+   * @return this
+   *
+   */
+  public Object periodStepPrepare ()
+  {
+    Agent agents[][] = getAgentArrays ();
+    int due[];
+    int k, i, n;
+
+    // The shards get the world just updated along with this message
+    if (shards != null)
+      {
+        shards.prepare (getAgentTime (), randomPeriod, world);
+        return this;
+      }
+    for (k = 0; k < numAssets; k++)
+      if (calendars == null)
+        for (i = 0; i < agents[k].length; i++)
+          agents[k][i].prepareForTrading ();
+      else
+        {
+          n = calendars[k].dispatch ();
+          due = calendars[k].getDue ();
+          for (i = 0; i < n; i++)
+            agents[k][due[i]].prepareForTrading ();
+        }
+    return this;
+  }
+
+   /**Actualiza los resultados de los agentes que han decidido en este
+    * periodo, los mismos que periodStepPrepare.
+   *
+   * @return this
+   *
+   */
+  public Object periodStepUpdate ()
+  {
+    Agent agents[][] = getAgentArrays ();
+    int due[];
+    int k, i, n;
+
+    if (shards != null)
+      {
+        shards.update (getAgentTime (), world.getPrice ());
+        return this;
+      }
+    for (k = 0; k < numAssets; k++)
+      if (calendars == null)
+        for (i = 0; i < agents[k].length; i++)
+          agents[k][i].updatePerformance ();
+      else
+        {
+          n = calendars[k].getNumDue ();
+          due = calendars[k].getDue ();
+          for (i = 0; i < n; i++)
+            {
+              agents[k][due[i]].setDecisionGap (calendars[k].getGap (due[i]));
+              agents[k][due[i]].updatePerformance ();
+            }
+        }
+    return this;
+  }
+
+   /**Hace el calentamiento: los WARMUPSTEPS pasos de doWarmupStep y el
+    * periodo de arranque, todo en el tiempo 0. Si el estado se ha leído de
+    * la caché no hace nada; si hay caché pero no tenía esta configuración,
+    * guarda en ella el estado resultante.
+   *
+   * @return this
+   *
+   */
+  public Object warmUp ()
+  {
+    if (warmedUp)
+      return this;
+    for (int i = 0; i < WARMUPSTEPS; i++)
+      doWarmupStep ();
+    stepPeriod ();
+    warmedUp = true;
+    if (warmupCache != null)
+      warmupCache.save (this);
+    return this;
+  }
+
+   /**Escribe el estado completo del modelo: tiempo, generadores de números
+    * aleatorios, proceso de dividendos, mundo y especialista de cada activo,
+    * mercado en la sombra, libro de cuentas y cada agente.
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   *
+   */
+  public void writeState (DataOutputStream out) throws IOException
+  {
+    int k, i;
+
+    out.writeInt (numAssets);
+    out.writeInt (asmModelParams.numBFagents);
+    out.writeInt (modelTime);
+    out.writeLong (randomPeriod);
+    if (randomSource instanceof XoshiroRandomSource)
+      ((XoshiroRandomSource) randomSource).writeState (out);
+    if (randomStreams != null)
+      randomStreams.writeState (out);
+
+    for (k = 0; k < numAssets; k++)
+      {
+        dividendProcesses[k].writeState (out);
+        worlds[k].writeState (out);
+        specialists[k].writeState (out);
+      }
+    if (shadowMarket != null)
+      shadowMarket.writeState (out);
+    ledger.writeState (out);
+    for (k = 0; k < numAssets; k++)
+      for (i = 0; i < agentLists[k].size (); i++)
+        ((Agent) agentLists[k].get (i)).writeState (out);
+    // The calendars follow from the period they are at
+    if (calendars != null)
+      out.writeLong (calendars[0].getPeriod ());
+  }
+
+   /**Lee el estado escrito por writeState en un modelo construido con los
+    * mismos parámetros.
+   *
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer o no coincide con el modelo
+   *
+   */
+  public void readState (DataInputStream in) throws IOException
+  {
+    int k, i;
+
+    StateIO.checkLength (in.readInt (), numAssets);
+    StateIO.checkLength (in.readInt (), asmModelParams.numBFagents);
+    modelTime = in.readInt ();
+    randomPeriod = in.readLong ();
+    if (randomSource instanceof XoshiroRandomSource)
+      ((XoshiroRandomSource) randomSource).readState (in);
+    if (randomStreams != null)
+      randomStreams.readState (in);
+
+    for (k = 0; k < numAssets; k++)
+      {
+        dividendProcesses[k].readState (in);
+        worlds[k].readState (in);
+        specialists[k].readState (in);
+      }
+    if (shadowMarket != null)
+      shadowMarket.readState (in);
+    ledger.readState (in);
+    for (k = 0; k < numAssets; k++)
+      for (i = 0; i < agentLists[k].size (); i++)
+        ((Agent) agentLists[k].get (i)).readState (in);
+    if (calendars != null)
+      {
+        long period = in.readLong ();
+        for (k = 0; k < numAssets; k++)
+          calendars[k].setPeriod (period);
+      }
+  }
+
+   /**Hace que los agentes, los fragmentos y el objeto output tomen el
+    * tiempo de un reloj en lugar de Swarm. Lo usa ASMEngine.
+   *
+   * @param aClock Reloj de la simulación
+   * @return this
+   *
+   */
+  public Object setClock (SimulationClock aClock)
+  {
+    LinkedList agents;
+    int k, i, n;
+
+    clock = aClock;
+    for (k = 0; k < numAssets; k++)
+      {
+        agents = agentLists[k];
+        n = agents.size ();
+        for (i = 0; i < n; i++)
+          ((Agent) agents.get (i)).setClock (aClock);
+      }
+    if (output != null)
+      output.setClock (aClock);
+    return this;
+  }
+
+   /**Devuelve el tiempo que ven los agentes: el del reloj, o el de Swarm
+    * si no hay reloj. Es el que se manda a los fragmentos.
+   *
+   * @return tiempo de la simulación
+   */
+  public int getAgentTime ()
+  {
+    return (clock != null ? clock.getCurrentTime ()
+            : Globals.env.getCurrentTime ());
+  }
+
     /*"The activities of the ASMModelSwarm are brought into time-sync with
     higher level Swarm activities. Basically, each time the higher level
     takes a step, this one will too, and the higher one won't step again
     until this one is finished with its turn."*/
 
-   /**En este mtodo se activan los programas del asmModelSwarm.
+   /**En este método se activan los programas del asmModelSwarm.
    *
    * @param swarmContext El entorno de nuestro Swarm.
    * @return getActivity() La actividad de nuestro Swarm.
@@ -647,14 +1380,21 @@ public class ASMModelSwarm extends SwarmImpl
   }
 
    /**Este mensaje nos permite avisar a los distintos objetos de que la
-    * simulacin ha terminado. Liberamos memoria y cerramos ficheros.
+    * simulación ha terminado. Liberamos memoria y cerramos ficheros.
    *
    */
   public void drop () {
 
-    dividendProcess.drop ();
-    world.drop ();
-    specialist.drop ();
+    if (clearingPool != null)
+      clearingPool.shutdown ();
+    if (shards != null)
+      shards.close ();
+    for (int k = 0; k < numAssets; k++)
+      {
+        dividendProcesses[k].drop ();
+        worlds[k].drop ();
+        specialists[k].drop ();
+      }
     output.drop ();
     super.drop ();
   }
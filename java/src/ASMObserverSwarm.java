@@ -53,67 +53,71 @@ import java.util.LinkedList;
 
  /**
  * <p>Title: ASMObserverSwarm</p>
- * <p>Description: El ASMObserverSwarm es un Swarm con una interfaz grfica
- * para el usuario (GUI).  Existe una nica instancia de esta clase.
- * Se sigue el mismo patrn de todas las simulaciones en Swarm, en el
+ * <p>Description: El ASMObserverSwarm es un Swarm con una interfaz gráfica
+ * para el usuario (GUI).  Existe una única instancia de esta clase.
+ * Se sigue el mismo patrón de todas las simulaciones en Swarm, en el
  * sentido de que el objeto observador es una entidad que describe e informa
- * sobre el estado de la simulacin, pero no interacciona con ella.</p>
- * <p> El Observador crea y contiene en su interior al Modelo. Adems, realiza
+ * sobre el estado de la simulación, pero no interacciona con ella.</p>
+ * <p> El Observador crea y contiene en su interior al Modelo. Además, realiza
  * diversas tareas para comprobar la integridad de diversas variables de la
- * simulacin y monitoriza muchas de ellas.</p>
+ * simulación y monitoriza muchas de ellas.</p>
  * <p>Como es habitual en todas las simulaciones Swarm, el Observador responde a
  * los mensajes buildObjects() (Crea Objetos), buildActions() (Crea Acciones) y
- * activateIn() (Actvate en determinada zona). Adems, el Observador se encarga
- * de comunicar los mismos mensajes al siguiente nivel en la jerarqua de la
- * simulacin: el Modelo (ModelSwarm).</p>
- * <p>Actualmente, slo es posible correr la simulacin en modo grfico</p>
+ * activateIn() (Actívate en determinada zona). Además, el Observador se encarga
+ * de comunicar los mismos mensajes al siguiente nivel en la jerarquía de la
+ * simulación: el Modelo (ModelSwarm).</p>
+ * <p>Actualmente, sólo es posible correr la simulación en modo gráfico</p>
  *
  * <p>Copyright: Copyright (c) 2002</p>
- * <p>Depto. de Organizacin y Gestin de Empresas. Universidad de Valladolid</p>
- * @author Jos Manuel Galn & Luis R. Izquierdo
+ * <p>Depto. de Organización y Gestión de Empresas. Universidad de Valladolid</p>
+ * @author José Manuel Galán & Luis R. Izquierdo
  * @version 1.0
  *
  */
 public class ASMObserverSwarm extends GUISwarmImpl {
 
-  /** Frecuencia de actualizacin de los grficos y de escritura a los ficheros.
-   *  Puede modificarse fcilmente desde la sonda del Observador*/
+  /** Frecuencia de actualización de los gráficos y de escritura a los ficheros.
+   *  Puede modificarse fácilmente desde la sonda del Observador*/
   public int displayFrequency;
 
   /** El grupo de acciones (ActionGroup) que contiene la secuencia de eventos
-   *  de la interfaz grfica (GUI). */
+   *  de la interfaz gráfica (GUI). */
   public ActionGroup displayActions;
 
   /** El programa de acciones que debe llevar a cabo el observador.
-   *  Se lleva a cabo cada "displayFrequency" periodos de simulacin.*/
+   *  Se lleva a cabo cada "displayFrequency" periodos de simulación.*/
   public Schedule displaySchedule;
 
-  /** Objeto que gestiona la escritura en ficheros de los parmetros y de los
-   *  resultados de la simulacin.*/
+  /** Objeto que gestiona la escritura en ficheros de los parámetros y de los
+   *  resultados de la simulación.*/
   public Output output; /*"An output object"*/
 
   /** El Modelo. Contiene a los agentes, al mundo, al market-maker o
-   *  especialista y al proceso de generacin de dividendos, entre otros.
+   *  especialista y al proceso de generación de dividendos, entre otros.
    */
   public ASMModelSwarm asmModelSwarm;
 
-  /**Indica al objeto Output si debe escribir los parmetros a fichero o no*/
+  /**Indica al objeto Output si debe escribir los parámetros a fichero o no*/
   public boolean writeParams;
 
   /**Indica al objeto Output si debe escribir los resultados de la
-   * simulacin a fichero o no*/
+   * simulación a fichero o no*/
   public boolean writeData;
 
-  /**Grfico en el que se representa el precio fundamental y el de mercado*/
+  /**Gráfico en el que se representa el precio fundamental y el de mercado*/
   public EZGraph priceGraph; /*"Time plot of risk neutral and observed market price"*/
 
-  /**Grfico en el que se representa el volumen de negociacin*/
+  /**Gráfico en el que se representa el volumen de negociación*/
   public EZGraph volumeGraph; /*"Time plot of market trading volume"*/
 
-  /**Objeto que contiene los grficos de barras de la riqueza relativa y la
-   * posicin de los agentes*/
+  /**Objeto que contiene los gráficos de barras de la riqueza relativa y la
+   * posición de los agentes*/
   public BarChart charts;
 
+  /**Hilos que escriben los resultados y actualizan los diagramas de barras
+   * fuera del hilo del modelo, o null si pipelineDepth es 0*/
+  public PeriodPipeline writer, chartUpdater;
+
   //This is for comparing different agents.  But since there is
   //currently only one agent this is not implemented.
 
@@ -124,17 +128,17 @@ public class ASMObserverSwarm extends GUISwarmImpl {
   //public GraphElement deviationData; /*"ditto"*/
   //public ActiveGraph deviationGrapher; /*"ditto"*/
 
-  /**Recoge el objeto que contiene los parmetros de la simulacin, creado en
-   * la funcin main()*/
+  /**Recoge el objeto que contiene los parámetros de la simulación, creado en
+   * la función main()*/
   public Parameters arguments;
 
 
   /**Constructor: Construye la sonda (probe) que nos permite modificar
-   * la frecuencia de actualizacin de los grficos y de escritura a los
-   * ficheros (debe modificarse antes de comenzar la simulacin).
-   * Tambin nos permite escribir a fichero los resultados de la
-   * simulacin (puede hacerse en cualquier momento) y los
-   * parmetros (puede hacerse en cualquier momento).
+   * la frecuencia de actualización de los gráficos y de escritura a los
+   * ficheros (debe modificarse antes de comenzar la simulación).
+   * También nos permite escribir a fichero los resultados de la
+   * simulación (puede hacerse en cualquier momento) y los
+   * parámetros (puede hacerse en cualquier momento).
     *
     * @param aZone Zona de memoria Swarm en la que se aloja el objeto Swarm
     */
@@ -184,7 +188,7 @@ public class ASMObserverSwarm extends GUISwarmImpl {
       (new ASMObserverProbeMap (aZone, getClass ()), getClass ());
   }
 
-  /**Libera la memoria ocupada por el grfico priceGraph
+  /**Libera la memoria ocupada por el gráfico priceGraph
    *
    * @return this
    */
@@ -194,7 +198,7 @@ public class ASMObserverSwarm extends GUISwarmImpl {
     return this;
   }
 
-  /**Libera la memoria ocupada por el grfico volumeGraph
+  /**Libera la memoria ocupada por el gráfico volumeGraph
    *
    * @return this
    */
@@ -212,18 +216,18 @@ public class ASMObserverSwarm extends GUISwarmImpl {
   are available in very few other Swarm programs and if you want to
   know how it can be done, feel free to take a look!"*/
 
-  /**<p>Este mtodo crea el objeto Modelo (asmModelSwarm, instancia de
-   * ASMModelSwarm), los grficos que representan los precios y el volumen
-   * de negociacin y los diagramas de barras que representan la riqueza
-   * relativa y la posicin de los agentes. Los diagramas de barras requieren
+  /**<p>Este método crea el objeto Modelo (asmModelSwarm, instancia de
+   * ASMModelSwarm), los gráficos que representan los precios y el volumen
+   * de negociación y los diagramas de barras que representan la riqueza
+   * relativa y la posición de los agentes. Los diagramas de barras requieren
    * bibliotecas adicionales (import com.jrefinery.chart.JFreeChart)</p>
    *
-   * <p>Es en este mtodo en el que el programa espera a que el usuario pulse
-   * el botn "Start" del panel de control. Una vez pulsado, recoge los
-   * parmetros (que el usuario puede haber modificado) y le ordena al objeto
+   * <p>Es en este método en el que el programa espera a que el usuario pulse
+   * el botón "Start" del panel de control. Una vez pulsado, recoge los
+   * parámetros (que el usuario puede haber modificado) y le ordena al objeto
    * asmModelSwarm que proceda a construir todos los objetos restantes en la
-   * simulacin (los agentes, el mundo, el market-maker o
-   *  especialista y el proceso de generacin de dividendos, entre otros).</p>
+   * simulación (los agentes, el mundo, el market-maker o
+   *  especialista y el proceso de generación de dividendos, entre otros).</p>
    *
    * @return this
    */
@@ -265,6 +269,12 @@ public class ASMObserverSwarm extends GUISwarmImpl {
     // OK - the user has specified all the parameters for the
     // simulation.  Now we're ready to start.
     arguments.init ();
+    // Checkpoints need the direct calls of ASMEngine; the Swarm
+    // schedules' time cannot be moved forward
+    if (asmModelParams.checkpointFile.length () > 0
+        || asmModelParams.resumeFrom.length () > 0)
+      throw new IllegalArgumentException
+        ("checkpointFile and resumeFrom need batch mode (asm -b)");
     asmModelSwarm.setParamsModel$BF (asmModelParams, bfParams);
 
 
@@ -381,6 +391,17 @@ public class ASMObserverSwarm extends GUISwarmImpl {
 
     charts = new BarChart(asmModelSwarm.getAgentList(),(arguments.getModelParams()).initialcash,this.getZone());
 
+    // The graphs, probes and Tk events stay in this thread, which is the
+    // one Swarm and Tk expect
+    if (asmModelParams.pipelineDepth > 0)
+      {
+        writer = new PeriodPipeline (output, asmModelParams.pipelineDepth,
+                                     true, "output-writer");
+        chartUpdater = new PeriodPipeline (charts,
+                                           asmModelParams.pipelineDepth,
+                                           asmModelParams.pipelineBlock != 0,
+                                           "chart-updater");
+      }
 
     return this;
   }
@@ -391,8 +412,8 @@ public class ASMObserverSwarm extends GUISwarmImpl {
     display that shows at the outset of the model run, or any time
     thereafter."*/
 
-  /**Este mtodo ordena al objeto Output crear un fichero con los
-   * parmetros de la simulacin. Puede pulsarse antes o durante la simulacin.
+  /**Este método ordena al objeto Output crear un fichero con los
+   * parámetros de la simulación. Puede pulsarse antes o durante la simulación.
    *
    * @return this
    */
@@ -408,10 +429,10 @@ public class ASMObserverSwarm extends GUISwarmImpl {
     the system to save a snapshot of the parameters after the system's
     run ends."*/
 
-  /**Si la variable writeParams vale "true", este mtodo ordena al objeto
+  /**Si la variable writeParams vale "true", este método ordena al objeto
    * Output crear un fichero con los
-   * parmetros de la simulacin despus de que sta haya concluido.
-   * Este mtodo slo se llama en el modo batch, luego en esta primera versin
+   * parámetros de la simulación después de que ésta haya concluido.
+   * Este método sólo se llama en el modo batch, luego en esta primera versión
    * nunca se ejecuta.
    *
    * @return this
@@ -428,9 +449,9 @@ public class ASMObserverSwarm extends GUISwarmImpl {
   that parameters should be written to files"*/
 
   /**Devuelve la variable writeParams, que indica si deben escribirse
-   * los parmetros a fichero o no.
+   * los parámetros a fichero o no.
    *
-   * @return writeParams indica si deben escribirse los parmetros a fichero
+   * @return writeParams indica si deben escribirse los parámetros a fichero
    * o no.
    */
   public boolean ifParamWrite ()
@@ -442,11 +463,11 @@ public class ASMObserverSwarm extends GUISwarmImpl {
   a button in a probe display that is shown on the screen when the simulation begins"*/
 
   /**Pone en marcha el proceso de escritura de los resultados de la
-   * simulacin a fichero. Se puede acceder a este mtodo a travs de la sonda
-   * antes o durante la simulacin.
+   * simulación a fichero. Se puede acceder a este método a través de la sonda
+   * antes o durante la simulación.
    *
    * @return writeData Indica al objeto Output si debe escribir los resultados de la
-   * simulacin a fichero o no.
+   * simulación a fichero o no.
    */
   public boolean toggleDataWrite (){
     if(!writeData)
@@ -461,9 +482,9 @@ public class ASMObserverSwarm extends GUISwarmImpl {
   /*"If data logging is turned on, this cause data to be written whenever it is called"*/
 
   /**En el caso de que se haya solicitado escribir los resultados de la
-   * simulacin a fichero, ste es el mtodo que se encarga de llevar a cabo
+   * simulación a fichero, éste es el método que se encarga de llevar a cabo
    * esa tarea. Forma parte del grupo de acciones (ActionGroup) displayActions.
-   * Por tanto, se ejecuta cada "displayFrequency" periodos de simulacin.
+   * Por tanto, se ejecuta cada "displayFrequency" periodos de simulación.
    *
    * @return this
    */
@@ -474,14 +495,31 @@ public class ASMObserverSwarm extends GUISwarmImpl {
     return this;
   }
 
+  /**Con pipelineDepth mayor que 0, sustituye a _writeRawData_ y a
+   * _updateCharts_: recoge los datos del periodo en un PeriodRecord y se lo
+   * pasa a los hilos que escriben el fichero de resultados y actualizan los
+   * diagramas de barras, sin esperar a que terminen.
+   *
+   * @return this
+   */
+  public Object _publishPeriod_ ()
+  {
+    PeriodRecord record = output.capture (asmModelSwarm.getAgentList ());
+
+    if (writeData)
+      writer.publish (record);
+    chartUpdater.publish (record);
+    return this;
+  }
+
   /*" Create actions and schedules onto which the actions are put.
   Since this is an observer, the actions are intended to make sure
   data is collected, displayed to the screen, and written to files
   where appropriate"*/
 
    /**Crea las acciones y los programas (schedules) que contienen las acciones.
-    * Puesto que es un mtodo del observador, las acciones que aqu se crean
-    * son bsicamente las de actualizacin de grficos y escritura a ficheros.
+    * Puesto que es un método del observador, las acciones que aquí se crean
+    * son básicamente las de actualización de gráficos y escritura a ficheros.
    *
    * @return this
    */
@@ -495,10 +533,16 @@ public class ASMObserverSwarm extends GUISwarmImpl {
     displayActions = new ActionGroupImpl (getZone());
 
     try {
-        displayActions.createActionTo$message
-          (this, new Selector (getClass (), "_writeRawData_", false));
-        displayActions.createActionTo$message
-          (charts, new Selector (charts.getClass (), "_updateCharts_", false));
+        if (writer != null)
+          displayActions.createActionTo$message
+            (this, new Selector (getClass (), "_publishPeriod_", false));
+        else
+          {
+            displayActions.createActionTo$message
+              (this, new Selector (getClass (), "_writeRawData_", false));
+            displayActions.createActionTo$message
+              (charts, new Selector (charts.getClass (), "_updateCharts_", false));
+          }
         displayActions.createActionTo$message
           (priceGraph, new Selector (priceGraph.getClass (), "step", false));
         displayActions.createActionTo$message
@@ -530,11 +574,11 @@ public class ASMObserverSwarm extends GUISwarmImpl {
     placed into the overall time sequence before the observer scheduled
     actions that update graphs which describe the results"*/
 
-   /**Este mtodo, vital en toda simulacin Swarm, activa la simulacin en el
-    * contexto del Observador, despus activa el modelo en el mismo contexto y
+   /**Este método, vital en toda simulación Swarm, activa la simulación en el
+    * contexto del Observador, después activa el modelo en el mismo contexto y
     *  finalmente activa los programas de acciones (schedules) del propio
     *  observador. De esta forma, las acciones del modelo se colocan en el
-    *  programa general de la simulacin antes de las acciones del observador
+    *  programa general de la simulación antes de las acciones del observador
     *  encaminadas a monitorizar las acciones del modelo, como es natural.
    *
    * @param swarmContext El entorno de nuestro Observador. (en esta primera
@@ -563,13 +607,18 @@ public class ASMObserverSwarm extends GUISwarmImpl {
     method is called at the end of the main.m file and it propogates
     down to all objects created in asmModelSwarm"*/
 
-   /**Este mensaje es llamado desde la funcin main() y se propaga a lo largo
-    * de todos los niveles inferiores de la jerarqua de la simulacin. Esto
-    * nos permite avisar a los ficheros de que la simulacin ha terminado y
-    * as poder cerrarlos sin problemas.
+   /**Este mensaje es llamado desde la función main() y se propaga a lo largo
+    * de todos los niveles inferiores de la jerarquía de la simulación. Esto
+    * nos permite avisar a los ficheros de que la simulación ha terminado y
+    * así poder cerrarlos sin problemas.
    *
    */
   public void drop () {
+    if (writer != null)
+      {
+        writer.close ();
+        chartUpdater.close ();
+      }
     this.expostParamWrite ();
     charts.drop();
     asmModelSwarm.drop ();
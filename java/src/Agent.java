@@ -2,14 +2,18 @@ import swarm.objectbase.SwarmObject;
 import swarm.objectbase.SwarmObjectImpl;
 import swarm.defobj.Zone;
 import swarm.Globals;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 public class Agent extends SwarmObjectImpl {
 
-public double demand;	/*" bid or -offer"*/
-public double profit;	/*" exp-weighted moving average "*/
-public double wealth;	/*" total agent wealth "*/
-public double position;	/*" total shares of stock "*/
-public double cash;	        /*" total agent cash position "*/
+public AgentLedger ledger;	/*" shared ledger holding demand, profit, wealth, position and cash "*/
+public int slot;	/*" index of this agent's position, demand and profit in the ledger "*/
+public int asset;	/*" index of the risky asset this agent trades "*/
+public World assetWorld;	/*" world of that asset "*/
+public RandomSource random = new SwarmRandomSource();	/*" source of the agent's random numbers "*/
+public SimulationClock clock;	/*" where the time comes from; Swarm if null "*/
 public double initialcash;
 public double minholding;
 public double mincash;
@@ -18,12 +22,7 @@ public double intratep1;
 public double price;         // price is maintained by World
 public double dividend;      // dividend is maintained by World
 public int myID;
-
-// CLASS METHODS
-// +setWorld: (World *)aWorld
-
-
-public static World worldForAgent;
+public int decisionGap = 1;	/*" periods since the agent's previous decision "*/
 
 /*" This is the abstract superclass of all agent classes; all agent classes
 // must be direct or indirect descendants of this one.
@@ -33,27 +32,86 @@ Agent(Zone aZone){
   super(aZone);
 }
 
-/*" Sets a world for an agent.  It is a class method as it is used in
-both class and instance methods in BFagent."*/
-public static void setWorld(World aWorld)
+/*" Tells the agent which ledger holds its financial state.  Must be
+ * sent before -setID:, which picks the agent's slot in the ledger."*/
+public Object setLedger(AgentLedger aLedger)
 {
-  worldForAgent = aWorld;
-  return;
+  ledger = aLedger;
+  return this;
+}
+
+/*" In a market with several risky assets, a trader is represented by
+ * one agent per asset, all sharing the trader's id and cash.  This
+ * tells the agent which asset it trades and the World of that asset.
+ * Must be sent before -setID:."*/
+public Object setAsset$World(int anAsset, World aWorld)
+{
+  asset = anAsset;
+  assetWorld = aWorld;
+  return this;
 }
 
 /*" Gives an integer name to an agent during creation. Sometimes it
- * helps with debugging to have a unique id for each agent "*/
+ * helps with debugging to have a unique id for each agent. The id
+ * indexes the agent's cash in the ledger, and together with the asset
+ * picks its slot for position, demand and profit."*/
 public Object setID(int iD)
 {
   myID = iD;
+  slot = ledger.slotOf(asset, iD);
+  return this;
+}
+
+/*" Sets how many periods have passed since the agent's previous
+ * decision, before it is scored.  With more than 1, its forecasts are
+ * scored against the price and dividend of the period after that
+ * decision "*/
+public Object setDecisionGap(int aGap)
+{
+  decisionGap = aGap;
+  return this;
+}
+
+/*" Returns the World of the asset this agent trades "*/
+public World getWorld()
+{
+  return assetWorld;
+}
+
+/*" Sets the source of the agent's random numbers.  Must be called
+ * before the agent draws any, e.g. before -initForecasts "*/
+public Object setRandomSource(RandomSource aSource)
+{
+  random = aSource;
+  return this;
+}
+
+/*" Sets the clock the agent reads the time from, when the model is
+ * not run by the Swarm scheduler "*/
+public Object setClock(SimulationClock aClock)
+{
+  clock = aClock;
   return this;
 }
 
+/*" Returns the current time, from the clock if there is one and from
+ * Swarm otherwise "*/
+public int getCurrentTime()
+{
+  return (clock != null ? clock.getCurrentTime() : Globals.env.getCurrentTime());
+}
+
+/*" Returns the ledger that holds the agent's financial state "*/
+public AgentLedger getLedger()
+{
+  return ledger;
+}
+
 
 /*" Sets the agent's position (holding) to "aDouble"."*/
 public Object setPosition(double aDouble)
 {
-  position = aDouble;
+  ledger.position[slot] = aDouble;
   return this;
 }
 
@@ -63,6 +121,7 @@ public Object setintrate(double rate)
 {
   intrate = rate;
   intratep1 = intrate + 1.0;
+  ledger.intrate[myID] = rate;
   return this;
 }
 
@@ -73,6 +132,7 @@ public Object setminHolding$minCash(double holding,double minimumcash)
 {
   minholding = holding;
   mincash = minimumcash;
+  ledger.mincash[myID] = minimumcash;
   return this;
 }
 
@@ -92,10 +152,10 @@ public Object setInitialCash(double initcash)
  * the variable cash equal to initialcash "*/
 public Object setInitialHoldings()
 {
-  profit = 0.0;
-  wealth = 0.0;
-  cash = initialcash;
-  position = 0.0;
+  ledger.profit[slot] = 0.0;
+  ledger.wealth[myID] = 0.0;
+  ledger.cash[myID] = initialcash;
+  ledger.position[slot] = 0.0;
 
   return this;
 }
@@ -105,14 +165,14 @@ public Object setInitialHoldings()
   assumes world is already set. "*/
 public Object getPriceFromWorld()
 {
-  price = worldForAgent.getPrice();
+  price = getWorld().getPrice();
   return this;
 }
 
 /*"Sets an instance variable of agent, dividend, to the current dividend. That information is retrieved from the object known as "world"."*/
 public Object getDividendFromWorld()
 {
-  dividend = worldForAgent.getDividend();
+  dividend = getWorld().getDividend();
   return this;
 }
 
@@ -136,18 +196,29 @@ public Object creditEarningsAndPayTaxes()
  *	cash -= wealth*intrate;				// taxes
  * but we cut directly to the cash:
  *	cash -= (price*intrate - dividend)*position
+ *
+ * ASMModelSwarm no longer sends this to each agent; it asks the
+ * AgentLedger to do the same update for all agents in one pass.  This
+ * method is kept for agents that live outside a shared ledger pass; in
+ * a market with several assets it only accounts for this agent's asset.
 " */
 {
+  double cash, position;
+
   getPriceFromWorld();
   getDividendFromWorld();
 
+  cash = ledger.cash[myID];
+  position = ledger.position[slot];
+
 // Update cash
   cash -= (price*intrate - dividend)*position;
   if (cash < mincash)
     cash = mincash;
+  ledger.cash[myID] = cash;
 
 // Update wealth
-  wealth = cash + price*position;
+  ledger.wealth[myID] = cash + price*position;
 
   return this;
 }
@@ -164,56 +235,68 @@ public double constrainDemand(double slope,double trialprice)
 
  * the Slope Specialist."*/
 
+{
+  double demand;
+
+  demand = constrain(ledger.demand[slot], trialprice,
+                     ledger.freeCash(slot, myID), ledger.position[slot],
+                     minholding);
+  ledger.demand[slot] = demand;
+  return demand;
+}
+
+/*" The mincash and minholding constraints on a bid (>0) or offer (<0)
+ * "demand" at price "p", given the cash "free" above the minimum (with
+ * several assets, the part reserved for this asset, see AgentLedger
+ * -reserveCash) and the current position.  -constrainDemand, the
+ * BFagent demand curve and DemandCurves all clip demand through here.
+ * Written with selects only, so loops over prices or agents that call
+ * it can still be compiled to vector code."*/
+static double constrain(double demand, double p, double free,
+                        double position, double minholding)
 {
 // If buying, we check to see if we're within borrowing limits,
 // remembering to handle the problem of negative dividends  -
 // cash might already be less than the min.  In that case we
 // freeze the trader.
-  if (demand > 0.0) {
-    if (demand*trialprice > (cash - mincash))
-      {
-	if (cash - mincash > 0.0) {
-	  demand = (cash - mincash)/trialprice;
-	  slope = -demand/trialprice;
-	}
-	else
-	  {
-	    demand = 0.0;
-	    slope = 0.0;
-	  }
-      }
-  }
-
+  demand = (demand > 0.0 && demand*p > free
+            ? (free > 0.0 ? free/p : 0.0) : demand);
 
 // If selling, we check to make sure we have enough stock to sell
-  else if (demand < 0.0 && demand + position < minholding)
-    {
-
-      demand = minholding - position;
-      slope = 0.0;
-    }
-
-
+  demand = (demand < 0.0 && demand + position < minholding
+            ? minholding - position : demand);
   return demand;
 }
 
 /*" Return the agent's current position "*/
 public double getAgentPosition()
 {
-  return position;
+  return ledger.position[slot];
 }
 
 /*" Return the agent's current wealth "*/
 public double getWealth()
 {
-  return wealth;
+  return ledger.wealth[myID];
 }
 
 
 /*" Return the agent's current cash level "*/
 public double getCash()
 {
-  return cash;
+  return ledger.cash[myID];
+}
+
+/*" Return the agent's current bid (>0) or offer (<0) "*/
+public double getDemand()
+{
+  return ledger.demand[slot];
+}
+
+/*" Return the agent's exponentially weighted moving average profit "*/
+public double getProfit()
+{
+  return ledger.profit[slot];
 }
 
 /*"Sent to each enabled agent at the start of each trading period,
@@ -249,6 +332,43 @@ public double getDemandAndSlope$forPrice(double slope,double p)
   return 0.0;		// not reached
 }
 
+/*" Fills demands[j] with the bid (>0) or offer (<0) the agent would
+ * make at prices[j], for j < n, without changing its state.  Used by
+ * the grid specialist, which asks each agent once per period for its
+ * whole demand curve instead of once per trial price.  The default asks
+ * -getDemandAndSlope:forPrice: at each price and then restores the
+ * demand kept in the ledger; agents with a closed-form demand should
+ * override it with a single loop over the prices."*/
+public Object getDemandCurve$forPrices$count(double prices[], double demands[], int n)
+{
+  double saved = ledger.demand[slot];
+  int j;
+
+  for (j = 0; j < n; j++)
+    demands[j] = getDemandAndSlope$forPrice(0.0, prices[j]);
+  ledger.demand[slot] = saved;
+  return this;
+}
+
+/*" Returns the list of world bits this agent looks at, or null if it
+ * may look at any of them.  The World computes each period only the
+ * bits some agent monitors.  The default is null."*/
+public int[] getMonitoredBits()
+{
+  return null;
+}
+
+/*" Records the agent's demand function for this period as entry i of
+ * curves, so that its demand can be evaluated later at any price
+ * without asking the agent again.  The default keeps a reference to the
+ * agent, which is then asked each time; agents with a closed-form demand
+ * should store their coefficients with -setCurve instead."*/
+public Object captureDemand$into$at(DemandCurves curves, int i)
+{
+  curves.setAgent(i, this);
+  return this;
+}
+
 /*"Sent to each enabled agent at the end of each period to tell it to
   // update its performance meaures, forecasts, etc.  The default code
   does nothing, this method must be specified by each agent type.
@@ -258,12 +378,20 @@ public Object updatePerformance()
   return this;
 }
 
+/*" Writes the part of the agent's state that is not kept in the
+ * ledger: the price and dividend it last read from the World.
+ * Subclasses add their own state."*/
+void writeState(DataOutputStream out) throws IOException
+{
+  out.writeDouble(price);
+  out.writeDouble(dividend);
+}
 
-
-
-
-
-
-
-
-}
\ No newline at end of file
+/*" Reads the state written by -writeState into an agent set up with
+ * the same parameters "*/
+void readState(DataInputStream in) throws IOException
+{
+  price = in.readDouble();
+  dividend = in.readDouble();
+}
+}
@@ -0,0 +1,186 @@
+//package asmjava;
+
+/**
+ * <p>Title: AgentCalendar</p>
+ * <p>Description: Cola de calendario con los agentes de un activo que
+ * deciden cada periodo. Cada agente tiene su intervalo de decisión: con 1
+ * decide todos los periodos, con 5 uno de cada cinco... En el periodo de
+ * arranque (el 0) deciden todos; después, el agente i con intervalo n
+ * decide en los periodos p con (p + i) múltiplo de n, de modo que los
+ * agentes de un mismo intervalo se reparten entre los periodos en lugar
+ * de decidir todos a la vez.</p>
+ * <p>El calendario tiene un cubo por periodo, en un anillo de más cubos
+ * que el mayor intervalo. Al despachar un periodo se vacía su cubo y cada
+ * agente pasa al cubo del periodo en que vuelve a decidir, así que el
+ * coste por periodo es proporcional a los agentes que deciden en él, no al
+ * total. Los agentes de un periodo se despachan en el orden de la lista,
+ * como sin calendario.</p>
+ * <p>El estado del calendario sólo depende del periodo, así que no hace
+ * falta guardarlo: setPeriod() lo reconstruye.</p>
+ */
+public class AgentCalendar {
+
+  /**Intervalo de decisión de cada agente*/
+  int interval[];
+  /**Cubos del anillo y número de agentes de cada uno*/
+  int buckets[][];
+  int counts[];
+  /**Siguiente periodo que se despacha*/
+  long period;
+  /**Agentes del último periodo despachado, en orden, y cuántos son*/
+  int due[];
+  int ndue;
+
+  /**Constructor de la clase
+   *
+   * @param intervals Intervalo de decisión de cada agente, 1 o más
+   */
+  public AgentCalendar (int intervals[])
+  {
+    int max = 1;
+
+    interval = intervals.clone ();
+    for (int i = 0; i < interval.length; i++)
+      {
+        if (interval[i] < 1)
+          throw new IllegalArgumentException ("decision interval "
+                                              + interval[i]);
+        max = Math.max (max, interval[i]);
+      }
+    buckets = new int[max + 1][];
+    counts = new int[max + 1];
+    due = new int[interval.length];
+    setPeriod (0);
+  }
+
+  /**Coloca a cada agente en el cubo del primer periodo en que decide a
+   * partir de uno dado
+   *
+   * @param aPeriod Siguiente periodo que se despacha
+   */
+  public void setPeriod (long aPeriod)
+  {
+    int i;
+
+    period = aPeriod;
+    ndue = 0;
+    for (i = 0; i < counts.length; i++)
+      counts[i] = 0;
+    for (i = 0; i < interval.length; i++)
+      insert (i, (period == 0 ? 0 : next (i, period)));
+  }
+
+  /**Devuelve el siguiente periodo que se despacha
+   *
+   * @return period
+   */
+  public long getPeriod ()
+  {
+    return period;
+  }
+
+  /**Primer periodo, no anterior a p y distinto del de arranque, en que
+   * decide un agente
+   *
+   * @param i Agente
+   * @param p Periodo
+   * @return periodo
+   */
+  long next (int i, long p)
+  {
+    long n = interval[i];
+    long q = Math.max (p, 1);
+
+    return q + ((n - (q + i)%n)%n);
+  }
+
+  /**Añade un agente al cubo de un periodo
+   *
+   * @param i Agente
+   * @param p Periodo, menos de buckets.length periodos por delante
+   */
+  void insert (int i, long p)
+  {
+    int b = (int) (p%buckets.length);
+    int grown[];
+
+    if (buckets[b] == null)
+      buckets[b] = new int[4];
+    else if (counts[b] == buckets[b].length)
+      {
+        grown = new int[2*counts[b]];
+        System.arraycopy (buckets[b], 0, grown, 0, counts[b]);
+        buckets[b] = grown;
+      }
+    buckets[b][counts[b]++] = i;
+  }
+
+  /**Despacha el siguiente periodo: deja en getDue() los agentes que
+   * deciden en él, en orden, y los pasa al cubo de su próxima decisión
+   *
+   * @return número de agentes que deciden
+   */
+  public int dispatch ()
+  {
+    int b = (int) (period%buckets.length);
+    int i, j, a;
+
+    ndue = counts[b];
+    if (ndue > 0)
+      System.arraycopy (buckets[b], 0, due, 0, ndue);
+    counts[b] = 0;
+    // Agents arrive from different buckets; keep the list order
+    for (i = 1; i < ndue; i++)
+      {
+        a = due[i];
+        for (j = i - 1; j >= 0 && due[j] > a; j--)
+          due[j + 1] = due[j];
+        due[j + 1] = a;
+      }
+    for (i = 0; i < ndue; i++)
+      insert (due[i], next (due[i], period + 1));
+    period++;
+    return ndue;
+  }
+
+  /**Devuelve los agentes del último periodo despachado; sólo son válidos
+   * los getNumDue() primeros
+   *
+   * @return índices en la lista de agentes
+   */
+  public int[] getDue ()
+  {
+    return due;
+  }
+
+  /**Devuelve los periodos que han pasado desde la decisión anterior de un
+   * agente que decide en el último periodo despachado. Como los agentes
+   * se reparten entre los periodos, tras el arranque el primer hueco puede
+   * ser más corto que el intervalo.
+   *
+   * @param i Agente
+   * @return periodos, 1 en el periodo de arranque
+   */
+  public int getGap (int i)
+  {
+    long p = period - 1;
+    long n = interval[i];
+    long q;
+
+    if (p <= 0)
+      return 1;
+    // The last period before p with (q + i) a multiple of n, or the
+    // start-up period
+    q = (p - 1) - ((p - 1 + i)%n);
+    return (int) (p - Math.max (q, 0));
+  }
+
+  /**Devuelve el número de agentes del último periodo despachado
+   *
+   * @return ndue
+   */
+  public int getNumDue ()
+  {
+    return ndue;
+  }
+}
@@ -0,0 +1,90 @@
+//package asmjava;
+
+import java.util.LinkedList;
+
+/**
+ * <p>Title: AgentDemand</p>
+ * <p>Description: Origen de demanda que pregunta directamente a los agentes
+ * de una lista. Es el que usa el especialista para vaciar el mercado real:
+ * cada llamada a totalsAt() deja en el libro de cuentas la demanda de cada
+ * agente al precio de prueba, que es la que luego se liquida.</p>
+ */
+public class AgentDemand implements DemandSource {
+
+  /**Agentes a los que se pregunta*/
+  LinkedList agentList;
+  /**Demanda de un agente en cada precio de la rejilla*/
+  double curve[];
+
+  /**Constructor de la clase
+   *
+   * @param aList Agentes a los que se pregunta
+   */
+  AgentDemand (LinkedList aList)
+  {
+    agentList = aList;
+  }
+
+  /**Devuelve la lista de agentes
+   *
+   * @return agentList
+   */
+  public LinkedList getAgentList ()
+  {
+    return agentList;
+  }
+
+  /**Pide a cada agente su demanda al precio de prueba
+   * (getDemandAndSlope$forPrice) y suma pujas, ofertas y pendientes
+   *
+   * @param trialprice Precio de prueba
+   * @param totals Pujas, ofertas y pendientes
+   */
+  public void totalsAt (double trialprice, double totals[])
+  {
+    Agent agent;
+    double demand, slope;
+    double bidtotal = 0.0, offertotal = 0.0, slopetotal = 0.0;
+
+    for (int i = 0; i < agentList.size(); i++)
+      {
+        agent = (Agent)agentList.get(i);
+        slope = 0.0;
+        demand = agent.getDemandAndSlope$forPrice(slope, trialprice);
+        slopetotal += slope;
+        if (demand > 0.0)
+          bidtotal += demand;
+        else if (demand < 0.0)
+          offertotal -= demand;
+      }
+    totals[0] = bidtotal;
+    totals[1] = offertotal;
+    totals[2] = slopetotal;
+  }
+
+  /**Pide a cada agente su demanda en toda la rejilla de una vez
+   * (getDemandCurve$forPrices$count) y la suma
+   *
+   * @param prices Precios de la rejilla
+   * @param excess Exceso de demanda en cada precio
+   * @param n Número de precios
+   */
+  public void excessCurve (double prices[], double excess[], int n)
+  {
+    Agent agent;
+    int i, j;
+
+    if (curve == null || curve.length < n)
+      curve = new double[n];
+    for (j = 0; j < n; j++)
+      excess[j] = 0.0;
+
+    for (i = 0; i < agentList.size(); i++)
+      {
+        agent = (Agent)agentList.get(i);
+        agent.getDemandCurve$forPrices$count(prices, curve, n);
+        for (j = 0; j < n; j++)
+          excess[j] += curve[j];
+      }
+  }
+}
@@ -0,0 +1,285 @@
+//package asmjava;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Title: AgentLedger</p>
+ * <p>Description: Libro de cuentas compartido por todos los agentes. En lugar
+ * de guardar el efectivo, la posición, el beneficio, la riqueza y la demanda
+ * como variables de cada objeto Agent, se guardan aquí en arrays de tipos
+ * primitivos indexados por el identificador del agente (myID). Así la
+ * liquidación de las operaciones y el cobro de intereses y dividendos se
+ * convierten en un único recorrido secuencial sobre memoria contigua.</p>
+ * <p>Con varios activos, la posición, la demanda y el beneficio se guardan
+ * por activo en un único array plano: el hueco del agente i en el activo k
+ * es k*size + i. El efectivo y la riqueza son comunes a todos los activos y
+ * se indexan sólo por i.</p>
+ * <p>Como los mercados de los distintos activos se vacían a la vez, antes de
+ * buscar los precios reserveCash() reparte a partes iguales entre los
+ * activos el efectivo que cada agente tiene por encima del mínimo. Cada
+ * activo limita las compras a su parte (freeCash), así que al liquidar los
+ * activos uno detrás de otro el efectivo no baja de mincash, igual que en el
+ * modelo de un solo activo.</p>
+ * <p>Los métodos getX() de Agent leen de este libro.</p>
+ */
+public class AgentLedger {
+
+  /**Número de agentes registrados en el libro*/
+  int size;
+  /**Número de activos*/
+  int numAssets;
+
+  /**Demanda (positiva) u oferta (negativa) de cada agente en cada activo*/
+  public double demand[];	/*" bid or -offer"*/
+  /**Media móvil exponencial del beneficio de cada agente en cada activo*/
+  public double profit[];	/*" exp-weighted moving average "*/
+  /**Riqueza de cada agente*/
+  public double wealth[];	/*" total agent wealth "*/
+  /**Número de acciones de cada agente en cada activo*/
+  public double position[];	/*" total shares of stock "*/
+  /**Efectivo de cada agente*/
+  public double cash[];	/*" total agent cash position "*/
+  /**Tasa de interés que aplica cada agente*/
+  public double intrate[];
+  /**Efectivo mínimo de cada agente*/
+  public double mincash[];
+  /**Efectivo reservado para las compras de cada agente en cada activo
+   * (sólo con varios activos)*/
+  public double budget[];
+
+  /**Constructor de la clase para un único activo
+   *
+   * @param numAgents Número de agentes que contendrá el libro
+   */
+  AgentLedger (int numAgents)
+  {
+    this (numAgents, 1);
+  }
+
+  /**Constructor de la clase
+   *
+   * @param numAgents Número de agentes que contendrá el libro
+   * @param assets Número de activos con riesgo
+   */
+  AgentLedger (int numAgents, int assets)
+  {
+    size = numAgents;
+    numAssets = assets;
+    demand = new double[numAgents*assets];
+    profit = new double[numAgents*assets];
+    wealth = new double[numAgents];
+    position = new double[numAgents*assets];
+    cash = new double[numAgents];
+    intrate = new double[numAgents];
+    mincash = new double[numAgents];
+    if (assets > 1)
+      budget = new double[numAgents*assets];
+  }
+
+  /**Devuelve el número de agentes del libro
+   *
+   * @return size
+   */
+  public int getSize ()
+  {
+    return size;
+  }
+
+  /**Devuelve el número de activos del libro
+   *
+   * @return numAssets
+   */
+  public int getNumAssets ()
+  {
+    return numAssets;
+  }
+
+  /**Devuelve el hueco del agente en los arrays por activo
+   *
+   * @param asset Activo
+   * @param id Identificador del agente
+   * @return asset*size + id
+   */
+  public int slotOf (int asset, int id)
+  {
+    return asset*size + id;
+  }
+
+  /**Reparte entre los activos el efectivo que cada agente tiene por encima
+   * del mínimo, antes de vaciar sus mercados a la vez. Con un solo activo
+   * no hace nada.
+   */
+  public void reserveCash ()
+  {
+    int i, k, base;
+    double share;
+
+    if (numAssets == 1)
+      return;
+    for (i = 0; i < size; i++)
+      {
+        share = (cash[i] - mincash[i])/numAssets;
+        for (k = 0, base = i; k < numAssets; k++, base += size)
+          budget[base] = share;
+      }
+  }
+
+  /**Devuelve el efectivo que un agente puede gastar en las compras de un
+   * activo: su efectivo por encima del mínimo o, con varios activos, la
+   * parte reservada para el activo
+   *
+   * @param slot Hueco del agente en el activo
+   * @param id Identificador del agente
+   * @return efectivo libre (puede ser negativo)
+   */
+  public double freeCash (int slot, int id)
+  {
+    return (numAssets == 1 ? cash[id] - mincash[id] : budget[slot]);
+  }
+
+  /**Abona a cada agente el dividendo de sus acciones y el interés de su
+   * efectivo, y cobra los impuestos sobre la riqueza anterior. Es el
+   * equivalente de Agent.creditEarningsAndPayTaxes() para todos los agentes
+   * a la vez:
+   * <p>cash -= (price*intrate - dividend)*position</p>
+   *
+   * @param price Precio de mercado (el del periodo anterior)
+   * @param dividend Dividendo recién declarado
+   */
+  public void creditEarningsAndPayTaxes (double price, double dividend)
+  {
+    int i;
+
+    for (i = 0; i < size; i++)
+      {
+        cash[i] -= (price*intrate[i] - dividend)*position[i];
+        if (cash[i] < mincash[i])
+          cash[i] = mincash[i];
+        wealth[i] = cash[i] + price*position[i];
+      }
+  }
+
+  /**Igual que creditEarningsAndPayTaxes(double, double) pero con un precio y
+   * un dividendo por activo. Recorre el libro activo por activo para leer
+   * las posiciones en orden; con un solo activo da exactamente el mismo
+   * resultado que la versión escalar.
+   *
+   * @param prices Precio de mercado de cada activo
+   * @param dividends Dividendo recién declarado de cada activo
+   */
+  public void creditEarningsAndPayTaxes (double prices[], double dividends[])
+  {
+    int i, k, base;
+    double price, dividend;
+
+    if (numAssets == 1)
+      {
+        creditEarningsAndPayTaxes (prices[0], dividends[0]);
+        return;
+      }
+
+    for (k = 0, base = 0; k < numAssets; k++, base += size)
+      {
+        price = prices[k];
+        dividend = dividends[k];
+        for (i = 0; i < size; i++)
+          cash[i] -= (price*intrate[i] - dividend)*position[base+i];
+      }
+
+    for (i = 0; i < size; i++)
+      {
+        if (cash[i] < mincash[i])
+          cash[i] = mincash[i];
+        wealth[i] = cash[i];
+      }
+
+    for (k = 0, base = 0; k < numAssets; k++, base += size)
+      {
+        price = prices[k];
+        for (i = 0; i < size; i++)
+          wealth[i] += price*position[base+i];
+      }
+  }
+
+  /**Liquida las operaciones al precio de mercado, prorrateando con bidfrac y
+   * offerfrac, y actualiza la media móvil del beneficio con la posición
+   * anterior. Lo llama Specialist.completeTrades$Market().
+   *
+   * @param price Precio de mercado
+   * @param bidfrac Proporción de demanda satisfecha
+   * @param offerfrac Proporción de oferta satisfecha
+   * @param taupdecay Peso de la media móvil anterior del beneficio
+   * @param tp taupnew*profitperunit
+   */
+  public void completeTrades (double price, double bidfrac, double offerfrac,
+                              double taupdecay, double tp)
+  {
+    completeTrades (0, price, bidfrac, offerfrac, taupdecay, tp);
+  }
+
+  /**Liquida las operaciones de un activo. El efectivo es común a todos los
+   * activos, así que las liquidaciones de distintos activos no deben
+   * ejecutarse a la vez.
+   *
+   * @param asset Activo que se liquida
+   * @param price Precio de mercado
+   * @param bidfrac Proporción de demanda satisfecha
+   * @param offerfrac Proporción de oferta satisfecha
+   * @param taupdecay Peso de la media móvil anterior del beneficio
+   * @param tp taupnew*profitperunit
+   */
+  public void completeTrades (int asset, double price, double bidfrac,
+                              double offerfrac, double taupdecay, double tp)
+  {
+    int i, j;
+    double d, f, fp;
+    double bfp = bidfrac*price;
+    double ofp = offerfrac*price;
+
+    // Branch-free form of the original if/else on the sign of demand, so
+    // the loop body is the same for every agent.
+    for (i = 0, j = asset*size; i < size; i++, j++)
+      {
+        profit[j] = taupdecay*profit[j] + tp*position[j];
+        d = demand[j];
+        f = (d > 0.0 ? bidfrac : offerfrac);
+        fp = (d > 0.0 ? bfp : ofp);
+        position[j] += d*f;
+        cash[i]     -= d*fp;
+      }
+  }
+
+  /**Escribe el estado financiero de todos los agentes
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  void writeState (DataOutputStream out) throws IOException
+  {
+    StateIO.writeDoubles (out, demand);
+    StateIO.writeDoubles (out, profit);
+    StateIO.writeDoubles (out, wealth);
+    StateIO.writeDoubles (out, position);
+    StateIO.writeDoubles (out, cash);
+    StateIO.writeDoubles (out, intrate);
+    StateIO.writeDoubles (out, mincash);
+  }
+
+  /**Lee el estado escrito por writeState en un libro del mismo tamaño
+   *
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer o no coincide
+   */
+  void readState (DataInputStream in) throws IOException
+  {
+    StateIO.readDoubles (in, demand);
+    StateIO.readDoubles (in, profit);
+    StateIO.readDoubles (in, wealth);
+    StateIO.readDoubles (in, position);
+    StateIO.readDoubles (in, cash);
+    StateIO.readDoubles (in, intrate);
+    StateIO.readDoubles (in, mincash);
+  }
+}
@@ -0,0 +1,367 @@
+//package asmjava;
+
+import swarm.Globals;
+import swarm.defobj.Zone;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * <p>Title: AgentShard</p>
+ * <p>Description: Proceso que tiene un tramo de los agentes de un modelo
+ * cuyo coordinador (ASMModelSwarm con agentShards) está en otro proceso.
+ * El coordinador se conecta, envía los parámetros y el tramo de agentes
+ * (primer número global y cuántos), y el fragmento crea esos agentes igual
+ * que los crearía el modelo: mismo orden de inicialización y el flujo de
+ * números aleatorios de su número global.</p>
+ * <p>Después, en cada periodo, el fragmento recibe el abono de intereses,
+ * el estado del mundo (en un WorldMirror), las peticiones de demanda del
+ * especialista, que contesta con sumas parciales, la liquidación y la
+ * actualización de resultados, en el mismo orden que ASMModelSwarm.
+ * stepPeriod(). Sólo contesta a las peticiones de demanda.</p>
+ * <p>Lleva su propio reloj (SimulationClock) con el tiempo que le manda el
+ * coordinador.</p>
+ */
+public class AgentShard implements SimulationClock {
+
+  /**Marca del protocolo, al principio de la conexión en los dos sentidos*/
+  public static final int MAGIC = 0x41534d53;
+
+  /**Mensajes del coordinador*/
+  public static final int CLOSE = 0;
+  public static final int CREDIT = 1;
+  public static final int PREPARE = 2;
+  public static final int TOTALS = 3;
+  public static final int CURVE = 4;
+  public static final int TRADES = 5;
+  public static final int UPDATE = 6;
+
+  /**Zona de memoria Swarm de los agentes*/
+  Zone zone;
+  /**Parámetros recibidos del coordinador*/
+  Parameters params;
+  /**Libro de cuentas de los agentes del fragmento*/
+  AgentLedger ledger;
+  /**Copia del mundo*/
+  WorldMirror world;
+  /**Flujos de números aleatorios*/
+  RandomStreams randomStreams;
+  /**Agentes del fragmento*/
+  Agent agents[];
+  /**Número global del primer agente*/
+  int first;
+  /**Tiempo de la simulación*/
+  int time;
+  /**Rejilla de precios, exceso de demanda y curva de un agente*/
+  double prices[], excess[], curve[];
+
+  /**Constructor de la clase
+   *
+   * @param aZone Zona de memoria Swarm de los agentes
+   */
+  AgentShard (Zone aZone)
+  {
+    zone = aZone;
+  }
+
+  public int getCurrentTime ()
+  {
+    return time;
+  }
+
+  /**Lee los parámetros y el tramo de agentes y crea los agentes
+   *
+   * @param in Flujo de entrada
+   * @return "" si todo va bien, o el motivo del rechazo
+   * @throws IOException si no se puede leer
+   */
+  String build (DataInputStream in) throws IOException
+  {
+    int total, count, numWorldBits, n, i;
+    double price, dividend;
+    String names[], values[];
+    ASMModelParams mp;
+    IndicatorRegistry registry;
+
+    if (in.readInt () != MAGIC)
+      throw new IOException ("not a shard coordinator");
+    total = in.readInt ();
+    first = in.readInt ();
+    count = in.readInt ();
+    numWorldBits = in.readInt ();
+    price = in.readDouble ();
+    dividend = in.readDouble ();
+    params = new Parameters (zone);
+    for (int p = 0; p < 2; p++)
+      {
+        n = in.readInt ();
+        names = new String[n];
+        values = new String[n];
+        for (i = 0; i < n; i++)
+          {
+            names[i] = in.readUTF ();
+            values[i] = in.readUTF ();
+          }
+        try
+          {
+            for (i = 0; i < n; i++)
+              SweepCoordinator.set (params, names[i], values[i]);
+          }
+        catch (IllegalArgumentException e)
+          {
+            return e.getMessage ();
+          }
+      }
+    params.init ();
+    mp = params.getModelParams ();
+    if (mp.rngType != 2)
+      return "agent shards need rngType 2";
+    if (mp.numAssets > 1)
+      return "agent shards need a single asset";
+    // The coordinator's World declares the standard bits first, for the
+    // same moving averages
+    registry = new IndicatorRegistry ();
+    registry.declareStandardBits (ASMModelSwarm.parseLengths (mp.malengths));
+    params.getBFParams ().resolveBits (registry);
+
+    randomStreams = new RandomStreams (mp.randomSeed);
+    world = new WorldMirror (zone, numWorldBits);
+    world.mirrorPrice (price);
+    world.mirrorDividend (dividend);
+    ledger = new AgentLedger (count);
+    agents = new Agent[count];
+
+    BFagent.init ();
+    // Same set-up as ASMModelSwarm.buildObjects, with the global number
+    // picking the random stream and the local one the ledger slot
+    for (i = 0; i < count; i++)
+      {
+        BFagent agent;
+        agent = new BFagent (zone);
+        agent.setLedger (ledger);
+        agent.setBFParameterObject (params.getBFParams ());
+        agent.setRandomSource
+          (randomStreams.streamFor (RandomStreams.AGENT, first + i));
+        agent.setAsset$World (0, world);
+        agent.setID (i);
+        agent.setintrate (mp.intrate);
+        agent.setminHolding$minCash (mp.minholding, mp.mincash);
+        agent.setInitialCash (mp.initialcash);
+        agent.setInitialHoldings ();
+        agent.setPosition (mp.initholding);
+        agent.initForecasts ();
+        agent.setClock (this);
+        agents[i] = agent;
+      }
+    return "";
+  }
+
+  /**Escribe los bits que miran los agentes del fragmento: -1 si alguno
+   * puede mirar cualquiera, o cuántos y cuáles
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  void writeMonitoredBits (DataOutputStream out) throws IOException
+  {
+    boolean want[] = new boolean[world.getNumWorldBits ()];
+    int bits[];
+    int i, j, n = 0;
+
+    for (i = 0; i < agents.length; i++)
+      {
+        bits = agents[i].getMonitoredBits ();
+        if (bits == null)
+          {
+            out.writeInt (-1);
+            return;
+          }
+        for (j = 0; j < bits.length; j++)
+          if (bits[j] >= 0 && bits[j] < want.length)
+            want[bits[j]] = true;
+      }
+    for (j = 0; j < want.length; j++)
+      if (want[j])
+        n++;
+    out.writeInt (n);
+    for (j = 0; j < want.length; j++)
+      if (want[j])
+        out.writeInt (j);
+  }
+
+  /**Atiende a un coordinador hasta que se despide o cierra la conexión
+   *
+   * @param socket Conexión con el coordinador
+   * @throws IOException si falla la conexión
+   */
+  public void serve (Socket socket) throws IOException
+  {
+    DataInputStream in = new DataInputStream
+      (new BufferedInputStream (socket.getInputStream ()));
+    DataOutputStream out = new DataOutputStream
+      (new BufferedOutputStream (socket.getOutputStream ()));
+    String status;
+    int op, i, j, n;
+    long period;
+    double price, demand, slope;
+    double bidtotal, offertotal, slopetotal;
+    int bits[];
+
+    socket.setTcpNoDelay (true);
+    status = build (in);
+    out.writeInt (MAGIC);
+    out.writeUTF (status);
+    if (status.length () > 0)
+      {
+        out.flush ();
+        throw new IOException (status);
+      }
+    writeMonitoredBits (out);
+    out.flush ();
+
+    try
+      {
+        while ((op = in.readByte ()) != CLOSE)
+          if (op == CREDIT)
+            {
+              price = in.readDouble ();
+              ledger.creditEarningsAndPayTaxes (price, in.readDouble ());
+            }
+          else if (op == PREPARE)
+            {
+              time = in.readInt ();
+              period = in.readLong ();
+              // The streams restart only when the period changes
+              if (period != randomStreams.getPeriod ())
+                randomStreams.startPeriod (period);
+              world.mirrorPrice (in.readDouble ());
+              world.mirrorDividend (in.readDouble ());
+              bits = world.getMirrorBits ();
+              for (j = 0; j < bits.length; j++)
+                bits[j] = in.readByte ();
+              for (i = 0; i < agents.length; i++)
+                agents[i].prepareForTrading ();
+            }
+          else if (op == TOTALS)
+            {
+              // The same sums as AgentDemand.totalsAt
+              price = in.readDouble ();
+              bidtotal = offertotal = slopetotal = 0.0;
+              for (i = 0; i < agents.length; i++)
+                {
+                  slope = 0.0;
+                  demand = agents[i].getDemandAndSlope$forPrice (slope, price);
+                  slopetotal += slope;
+                  if (demand > 0.0)
+                    bidtotal += demand;
+                  else if (demand < 0.0)
+                    offertotal -= demand;
+                }
+              out.writeDouble (bidtotal);
+              out.writeDouble (offertotal);
+              out.writeDouble (slopetotal);
+              out.flush ();
+            }
+          else if (op == CURVE)
+            {
+              n = in.readInt ();
+              if (prices == null || prices.length < n)
+                {
+                  prices = new double[n];
+                  excess = new double[n];
+                  curve = new double[n];
+                }
+              for (j = 0; j < n; j++)
+                {
+                  prices[j] = in.readDouble ();
+                  excess[j] = 0.0;
+                }
+              for (i = 0; i < agents.length; i++)
+                {
+                  agents[i].getDemandCurve$forPrices$count (prices, curve, n);
+                  for (j = 0; j < n; j++)
+                    excess[j] += curve[j];
+                }
+              for (j = 0; j < n; j++)
+                out.writeDouble (excess[j]);
+              out.flush ();
+            }
+          else if (op == TRADES)
+            ledger.completeTrades (in.readDouble (), in.readDouble (),
+                                   in.readDouble (), in.readDouble (),
+                                   in.readDouble ());
+          else if (op == UPDATE)
+            {
+              time = in.readInt ();
+              world.mirrorPrice (in.readDouble ());
+              for (i = 0; i < agents.length; i++)
+                agents[i].updatePerformance ();
+            }
+          else
+            throw new IOException ("unknown shard message " + op);
+      }
+    catch (EOFException e)
+      {
+        // The coordinator went away without saying goodbye
+      }
+  }
+
+  /**Uso: AgentShard puerto [-once]. Espera coordinadores en el puerto (0
+   * para uno libre, que se escribe en la salida) y atiende uno detrás de
+   * otro, cada uno con agentes nuevos; con -once termina después del
+   * primero.
+   *
+   * @param args Argumentos
+   */
+  public static void main (String args[])
+  {
+    ServerSocket server;
+    Socket socket;
+    boolean once = (args.length > 1 && args[1].equals ("-once"));
+
+    if (args.length == 0)
+      {
+        System.err.println ("Usage: AgentShard port [-once]");
+        System.exit (2);
+      }
+    Globals.env.initSwarm ("asm", "2.2", "bug-swarm@swarm.org",
+                           new String[] {"-b"});
+    try
+      {
+        server = new ServerSocket (Integer.parseInt (args[0]));
+        System.out.println ("agent shard listening on port "
+                            + server.getLocalPort ());
+        System.out.flush ();
+        do
+          {
+            socket = server.accept ();
+            try
+              {
+                new AgentShard (Globals.env.globalZone).serve (socket);
+              }
+            catch (IOException e)
+              {
+                System.err.println ("Exception in agent shard: "
+                                    + e.getMessage ());
+              }
+            finally
+              {
+                socket.close ();
+              }
+          }
+        while (!once);
+      }
+    catch (IOException e)
+      {
+        System.err.println ("Exception in agent shard: " + e.getMessage ());
+        System.exit (1);
+      }
+    System.exit (0);
+  }
+}
@@ -0,0 +1,62 @@
+//package asmjava;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+
+/**
+ * <p>Title: AssetClearing</p>
+ * <p>Description: Tarea que vacía el mercado de un activo en un periodo: pide
+ * al especialista del activo que calcule el precio con los agentes que
+ * negocian ese activo. ASMModelSwarm lanza una tarea por activo en un
+ * conjunto de hilos, de modo que los mercados de los distintos activos se
+ * vacían en paralelo.</p>
+ * <p>Durante la búsqueda del precio los agentes sólo escriben su propia
+ * demanda en el libro de cuentas y leen la parte de su efectivo reservada
+ * para el activo (AgentLedger.reserveCash), que no cambia hasta la
+ * liquidación. Por eso las tareas pueden ejecutarse a la vez; la liquidación
+ * (completeTrades) y la actualización del mundo se hacen después, en orden,
+ * desde el hilo del modelo.</p>
+ */
+public class AssetClearing implements Callable {
+
+  /**Especialista del activo*/
+  Specialist specialist;
+  /**Agentes que negocian el activo*/
+  LinkedList agentList;
+  /**Mundo del activo*/
+  World world;
+  /**Precio calculado en la última ejecución*/
+  double price;
+
+  /**Constructor de la clase
+   *
+   * @param aSpecialist Especialista del activo
+   * @param aList Agentes que negocian el activo
+   * @param aWorld Mundo del activo
+   */
+  AssetClearing (Specialist aSpecialist, LinkedList aList, World aWorld)
+  {
+    specialist = aSpecialist;
+    agentList = aList;
+    world = aWorld;
+  }
+
+  /**Vacía el mercado del activo y guarda el precio resultante
+   *
+   * @return this
+   */
+  public Object call ()
+  {
+    price = specialist.performTrading$Market (agentList, world);
+    return this;
+  }
+
+  /**Devuelve el precio calculado en la última ejecución
+   *
+   * @return price
+   */
+  public double getPrice ()
+  {
+    return price;
+  }
+}
@@ -1,6 +1,9 @@
 import swarm.objectbase.SwarmObject;
 import swarm.objectbase.SwarmObjectImpl;
 import swarm.defobj.Zone;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 
 public class BFCast extends SwarmObjectImpl
@@ -377,17 +380,39 @@ public class BFCast extends SwarmObjectImpl
     return this;
   }
 
-
-
-
+  /*"Writes the forecast's state: its coefficients, accuracy, usage
+    counts and condition words"*/
+  void writeState (DataOutputStream out) throws IOException
+  {
+    out.writeDouble (forecast);
+    out.writeDouble (lforecast);
+    out.writeDouble (variance);
+    out.writeDouble (strength);
+    out.writeDouble (a);
+    out.writeDouble (b);
+    out.writeDouble (c);
+    out.writeDouble (specfactor);
+    out.writeInt (lastactive);
+    out.writeInt (specificity);
+    out.writeInt (count);
+    StateIO.writeInts (out, conditions.getConditions ());
+  }
+
+  /*"Reads the state written by -writeState into a forecast created
+    with the same condwords and condbits"*/
+  void readState (DataInputStream in) throws IOException
+  {
+    forecast = in.readDouble ();
+    lforecast = in.readDouble ();
+    variance = in.readDouble ();
+    strength = in.readDouble ();
+    a = in.readDouble ();
+    b = in.readDouble ();
+    c = in.readDouble ();
+    specfactor = in.readDouble ();
+    lastactive = in.readInt ();
+    specificity = in.readInt ();
+    count = in.readInt ();
+    StateIO.readInts (in, conditions.getConditions ());
+  }
 }
-
-
-
-
-
-
-
-
-
-
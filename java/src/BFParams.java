@@ -53,6 +53,7 @@ public class BFParams extends SwarmObjectImpl
     public int nnulls = 0;            /*" unnused bits"*/
     public int[] bitlist = new int[condbits];		/*" dynamic array, length condbits"*/
     public double[] problist = new double[condbits];	/*" dynamic array, length condbits"*/
+    public String[] bitnames;	/*" name of each bit in bitlist, for -resolveBits:; null if numbered directly"*/
 
     public int npoolmax = -1;		/* size of reject array */
     public int nnewmax = -1;		/* size of newfcast array */
@@ -71,6 +72,12 @@ public class BFParams extends SwarmObjectImpl
   public static final int NULLBIT = -1;
   public static KeyTable specialbits[] = new KeyTable[9];
 
+  // The 16 condition bits of the ASM-2.0 "all agents have 16 bits" rule
+  static final String STANDARDBITS[] = {
+    "pr/d>1/4", "pr/d>1/2", "pr/d>3/4", "pr/d>7/8", "pr/d>1", "pr/d>9/8",
+    "pr/d>5/4", "pr/d>3/2", "pr/d>2", "pr/d>4",
+    "p>p5", "p>p20", "p>p100", "p>p500", "on", "off"};
+
 
   //Macros for bittables
   public int WORD( int bit){
@@ -164,26 +171,17 @@ public class BFParams extends SwarmObjectImpl
 
     if (USEALLBITS!=true)
       {
-        bits[0] = ReadBitname("pr/d>1/4", specialbits);
-        bits[1] = ReadBitname("pr/d>1/2", specialbits);
-        bits[2] = ReadBitname("pr/d>3/4", specialbits);
-        bits[3] = ReadBitname("pr/d>7/8", specialbits);
-        bits[4] = ReadBitname("pr/d>1", specialbits);
-        bits[5] = ReadBitname("pr/d>9/8", specialbits);
-        bits[6] = ReadBitname("pr/d>5/4", specialbits);
-        bits[7] = ReadBitname("pr/d>3/2", specialbits);
-        bits[8] = ReadBitname("pr/d>2", specialbits);
-        bits[9] = ReadBitname("pr/d>4", specialbits);
-        bits[10] = ReadBitname("p>p5", specialbits);
-        bits[11] = ReadBitname("p>p20", specialbits);
-        bits[12] = ReadBitname("p>p100", specialbits);
-        bits[13] = ReadBitname("p>p500", specialbits);
-        bits[14] = ReadBitname("on", specialbits);
-        bits[15] = ReadBitname("off", specialbits);
+        bitnames = new String[STANDARDBITS.length];
+        for (i=0; i < STANDARDBITS.length; i++)
+          {
+            bitnames[i] = STANDARDBITS[i];
+            bits[i] = ReadBitname(bitnames[i], specialbits);
+          }
       }
     else
       {
         condbits = 60;
+        bitnames = null;
 
         for(i=0; i < condbits; i++) bits[i]=i;
       }
@@ -267,7 +265,11 @@ public class BFParams extends SwarmObjectImpl
     KeyTable[] ptr;
     int n;
 
-    n = World.bitNumberOf(variable);
+    // init runs before any World exists, so the names are looked up
+    // among the standard bits with the default moving averages, which
+    // every World declares first.  -resolveBits: renumbers them for a
+    // World with other moving averages.
+    n = IndicatorRegistry.getDefaults().bitNumberOf(variable);
 /*
     if (n < 0 && table)
       {
@@ -283,6 +285,23 @@ public class BFParams extends SwarmObjectImpl
   }
 
 
+  /*" Looks the bit names up again in the indicators of the World the
+    agents will watch, whose bit numbers differ from the default ones
+    when it has other moving-average lengths.  Names the World does not
+    have become NULLBIT.  Must be sent before the agents are created,
+    since each keeps a copy of the bitlist."*/
+  public Object resolveBits(IndicatorRegistry registry)
+  {
+    int i;
+
+    if (bitnames == null)
+      return this;
+    for (i=0; i < bitnames.length && i < condbits; i++)
+      bitlist[i] = registry.bitNumberOf(bitnames[i]);
+    return this;
+  }
+
+
   /*"Create a copy of this BFParams instance. Note this copies EVERY
     instance variable, one by one"*/
   public BFParams copy( Zone aZone)
@@ -341,6 +360,7 @@ public class BFParams extends SwarmObjectImpl
     bfParams.ncondmax = ncondmax;
 
     bfParams.copyBitList$Length( bitlist , condbits);
+    bfParams.bitnames = bitnames;
     bfParams.copyProbList$Length( problist , condbits);
     return bfParams;
   }
@@ -3,13 +3,15 @@
 import swarm.objectbase.SwarmObjectImpl;
 import swarm.collections.Collection;
 import swarm.random.NormalDistImpl;
-import swarm.Globals;
 
 import swarm.defobj.Zone;
 
 import swarm.objectbase.Swarm;
 import swarm.objectbase.SwarmImpl;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.LinkedList;
 
 public class BFagent extends Agent {
@@ -47,6 +49,8 @@ public class BFagent extends Agent {
 
   public World worldForAgent;
 
+  BitVector worldBits; /*" the world data packed for the forecasts, filled by -collectWorldData each period"*/
+
 // Code for a "bitstring forecaster" (BF) agent
 
 /*
@@ -247,15 +251,15 @@ BFagent(Zone aZone){
 
 
 public final double drand(){
-  return Globals.env.uniformDblRand.getDoubleWithMin$withMax(0,1);
+  return random.uniform(0,1);
   }
 
 public final double urand(){
-  return Globals.env.uniformDblRand.getDoubleWithMin$withMax(-1,1);
+  return random.uniform(-1,1);
   }
 
 public  int irand(int x){
-    return Globals.env.uniformIntRand.getIntegerWithMin$withMax(0,x-1);
+    return random.uniformInt(0,x-1);
   }
 
 // Type of forecasting.  WEIGHTED forecasting is untested in its
@@ -264,18 +268,21 @@ public  int irand(int x){
 // in ASM-2.0, and that's why it is commented out by setting WEIGHTED to 0.
 public final double WEIGHTED=0;
 
-//pj: this is a static global declaration of the params object, shared by all instances.
 //pj: note there is also a local copy which is, in current code, intitially the same thing,
 //pj: and it never changes.  The original code had 3 of these, so I'm slimmer by 1/3.
-static BFParams params;
+// The default params object is set on each agent rather than on the
+// class, so that several models can live in one JVM.
+BFParams params;
 
 //pj: other global variables were moved either to the performGA method where they are
 //pj: needed or into the BFParams class, where they are used to create BFParams objects
 
 //pj:  ReadBitname moved to BFParams
 
-//pj: This is the only global variable I still need, and I'm looking for a way go get rid of it!
-static double minstrength;
+// Strength of the weakest rule found by the last -performGA, given to
+// the rules it copies that were never used.  It used to be a class
+// variable, but only -performGA sets it and reads it.
+double minstrength;
 
 
 // PRIVATE METHODS
@@ -334,12 +341,13 @@ to know if a forecast has YES or NO for a bit x, [aForecast
 getConditionsbit: x].  "*/
 
 
-/*"This tells BFagents where they should look to get the default
+/*"This tells a BFagent where it should look to get the default
   parameters. it should give the agent an object from the BFParams
-  class."*/
-public static void setBFParameterObject(BFParams x)
+  class.  Must be sent before -initForecasts."*/
+public Object setBFParameterObject(BFParams x)
 {
     params=x;
+    return this;
 }
 
 /*"This is vital to set values in the forecast class, BFCast, which in
@@ -383,6 +391,8 @@ public Object initForecasts()
 
   //If you want to customize privateParams, this is the spot!
 
+  this.makeWorldBits();
+
   numfcasts = privateParams.numfcasts;
 
   avspecificity = 0.0;
@@ -519,10 +529,7 @@ public Object prepareForTrading()
   int nactive;
 
   //pj: for getting values from world
-  BitVector myworld = new BitVector(this.getZone());
-  myworld.setCondwords( params.condwords);
-  myworld.setCondbits( params.condbits);
-  myworld.createEnd();
+  BitVector myworld;
 
   //for using indexes of forecast objects
   BFCast aForecast;
@@ -533,10 +540,15 @@ public Object prepareForTrading()
   BFCast bestForecast;//else
   double maxstrength;//else
 
+  // Price and dividend used to be refreshed by creditEarningsAndPayTaxes,
+  // which the ledger now does for all agents at once.
+  getPriceFromWorld();
+  getDividendFromWorld();
+
 
 
   // First the genetic algorithm is run if due
-  currentTime = Globals.env.getCurrentTime();
+  currentTime = getCurrentTime();
 
   if (currentTime >= privateParams.firstgatime && drand() < privateParams.gaprob)
     {
@@ -544,13 +556,13 @@ public Object prepareForTrading()
       //activeList removeAll;
     }
 
-  //this saves a copy of the agent's last as lforecast.
-  lforecast = forecast;
+  // lforecast, the forecast of the last decision, is saved at the end of
+  // updatePerformance, before later periods' trial prices change forecast
 
   myworld = this.collectWorldData(this.getZone());
 
   this.updateActiveList(myworld);
- // myworld.drop(); //was created inside collectWorldData
+ // myworld is the agent's own worldBits, refilled every period
 
 
   if(WEIGHTED == 1){
@@ -704,7 +716,7 @@ else{
 	    {
 	      offset = global_mean;
 	    }
-	  forecastvar = variance; // Y le pones la varianza de los mejores?
+	  forecastvar = variance; // ¿Y le pones la varianza de los mejores?
 	}
     }
 
@@ -718,28 +730,24 @@ else{
 tight in a BitVector. We need the world data about the status of those
 conditions packed the same way, in order to make quick checks to find
 out if the world conditions are matched by the BitVector's
-conditions. This method creates a BitVector to match the conditions
+conditions. This method fills a BitVector to match the conditions
 that are being monitored by the agent's forecasts.  This requires the
 use of the design assumption that all of an agent's forecasts have the
-same bitlist."*/
+same bitlist.  The BitVector is the agent's own, made once by
+-makeWorldBits, so no Swarm object is created while trading."*/
 public BitVector collectWorldData(Zone aZone)
 {
   int i,n,nworldbits;
   BitVector world;
-  nworldbits = (Agent.worldForAgent).getNumWorldBits();
+  nworldbits = getWorld().getNumWorldBits();
   int bitlist[] = new int[privateParams.condbits];
   int myRealWorld[]= new int[nworldbits];
 
-  world= new BitVector(this.getZone());
-
-
-  world.setCondwords( params.condwords);
-  world.setCondbits( params.condbits);
-  world.createEnd();
+  world = worldBits;
 
   bitlist = params.getBitListPtr();
 
-  (Agent.worldForAgent).getRealWorld( myRealWorld);
+  getWorld().getRealWorld( myRealWorld);
 
   for (i=0; i < params.condbits; i++)
     {
@@ -753,6 +761,27 @@ public BitVector collectWorldData(Zone aZone)
    return world;
 }
 
+/*" Creates the BitVector that -collectWorldData fills.  It is sent
+  while the model is built, so the Swarm object is made then and not in
+  the periods.  The bits that are not in the bitlist are never set, so
+  they stay 0 as in a new BitVector."*/
+void makeWorldBits()
+{
+  if (worldBits != null)
+    return;
+  worldBits = new BitVector(this.getZone());
+  worldBits.setCondwords( params.condwords);
+  worldBits.setCondbits( params.condbits);
+  worldBits.createEnd();
+}
+
+/*" The world bits this agent's forecasts can look at: the bitlist that
+  -collectWorldData uses."*/
+public int[] getMonitoredBits()
+{
+  return params.getBitListPtr();
+}
+
 public boolean changeIntToBoolean(int a){
     if (a!=0)
       return true;
@@ -982,6 +1011,9 @@ traders' demand at time t, based on the change in the forecast
 according to the currently active linear rule. "*/
 
 {
+  double demand;
+  double position = ledger.position[slot];
+
   forecast = (trialprice + dividend)*pdcoeff + offset;
 
 
@@ -1011,11 +1043,49 @@ according to the currently active linear rule. "*/
       slope = 0.0;
     }
 
-  super.constrainDemand(slope,trialprice);
-  return demand;
+  ledger.demand[slot] = demand;
+  return super.constrainDemand(slope,trialprice);
 }
 
 
+/*" Demand at each of n prices, computed as in -getDemandAndSlope:forPrice:
+ * (forecast, risk aversion, maxbid clip, then the mincash and minholding
+ * constraints) but without touching the agent's state.  The loop body has
+ * no calls and only selects, so it can be compiled to vector code across
+ * the price grid."*/
+public Object getDemandCurve$forPrices$count(double prices[], double demands[], int n)
+{
+  int j;
+  double p, f, d, maxbid, position, free;
+
+  maxbid = privateParams.maxbid;
+  position = ledger.position[slot];
+  free = ledger.freeCash(slot, myID);
+
+  for (j = 0; j < n; j++)
+    {
+      p = prices[j];
+      f = (p + dividend)*pdcoeff + offset;
+      f = (f >= 0.0 ? f : 0.0);
+      d = -((p*intratep1 - f)/divisor + position);
+      d = (d > maxbid ? maxbid : (d < -maxbid ? -maxbid : d));
+      demands[j] = constrain(d, p, free, position, minholding);
+    }
+  return this;
+}
+
+/*" Stores this period's demand function in curves: the forecast
+ * coefficients chosen by -prepareForTrading plus the agent's position,
+ * free cash and limits, which is everything -getDemandAndSlope:forPrice:
+ * uses."*/
+public Object captureDemand$into$at(DemandCurves curves, int i)
+{
+  curves.setCurve(i, pdcoeff, offset, dividend, divisor, intratep1,
+                  ledger.position[slot], ledger.freeCash(slot, myID),
+                  minholding, privateParams.maxbid);
+  return this;
+}
+
 /*"Return agent's forecast"*/
 public double getRealForecast()
 {
@@ -1065,7 +1135,10 @@ public Object updatePerformance()
 
 // Update global mean (p+d) and our variance
   this.getPriceFromWorld();
-  ftarget = price + dividend;
+  // The forecasts of the previous decision were for the period after it,
+  // decisionGap - 1 periods ago
+  ftarget = getWorld().getLaggedPrice(decisionGap - 1)
+    + getWorld().getLaggedDividend(decisionGap - 1);
 
 // Update global mean (p+d) and our variance
 
@@ -1073,7 +1146,7 @@ public Object updatePerformance()
   if (java.lang.Math.abs(deviation) > maxdev) deviation = maxdev;
   global_mean = b*global_mean + a*ftarget;
   // Use default for initial variances - for stability at startup
-  currentTime = Globals.env.getCurrentTime( );
+  currentTime = getCurrentTime();
   if (currentTime < 1)
     variance = privateParams.initvar;
   else
@@ -1157,6 +1230,9 @@ public Object updatePerformance()
 
     }
 
+  // The forecast of this decision, scored at the next one
+  lforecast = forecast;
+
   return this;
 }
 
@@ -1432,7 +1508,7 @@ public Object performGA()
   double avstrength;//static inside a method has a different effect than static in a class
 
   ++gacount;
-  currentTime = Globals.env.getCurrentTime();
+  currentTime = getCurrentTime();
 
   //??Why is lastgatime in the params at all???
   //  privateParams->lastgatime= params->lastgatime =  lastgatime = currentTime;
@@ -1592,7 +1668,8 @@ public Object performGA()
   variance, specFactor, specificity, and so forth.  The only deviation
   is that if the return from the original forecast's getCnt method
   (its count value) is equal to 0, then the strength of the copy is
-  equal to the value of a static variable named minstrength."*/
+  equal to minstrength, the strength of the weakest rule found by
+  -performGA."*/
 
 public  BFCast CopyRule$From( BFCast to , BFCast from)
 {
@@ -2062,7 +2139,7 @@ public void Generalize$AvgStrength( LinkedList list , double avgstrength)
   int bitlist[] = new int[privateParams.condbits];
   bitlist = privateParams.getBitListPtr();
 
-  currentTime = Globals.env.getCurrentTime();
+  currentTime = getCurrentTime();
 
   for (f = 0; f < privateParams.numfcasts; f++)
     {
@@ -2145,6 +2222,99 @@ public Object copyList$To(LinkedList list,LinkedList outputList)
   return this;
 }
 
+/*" Writes the agent's state: its forecasting variables and every
+  forecast in fcastList, with the active lists as positions in
+  fcastList.  The GA copies new rules into existing forecasts, so
+  the active forecasts are always members of fcastList."*/
+void writeState(DataOutputStream out) throws IOException
+{
+  super.writeState(out);
+  out.writeInt(currentTime);
+  out.writeInt(lastgatime);
+  out.writeDouble(avspecificity);
+  out.writeDouble(forecast);
+  out.writeDouble(lforecast);
+  out.writeDouble(global_mean);
+  out.writeDouble(realDeviation);
+  out.writeDouble(variance);
+  out.writeDouble(pdcoeff);
+  out.writeDouble(offset);
+  out.writeDouble(divisor);
+  out.writeInt(gacount);
+  out.writeDouble(minstrength);
+
+  out.writeInt(fcastList.size());
+  for (int i = 0; i < fcastList.size(); i++)
+    ((BFCast)fcastList.get(i)).writeState(out);
+  this.writePositions$Of(out, activeList);
+  this.writePositions$Of(out, oldActiveList);
+}
+
+/*" Reads the state written by -writeState.  The forecasts are
+  created here if -initForecasts was not sent, as when the state
+  comes from a warm-up cache."*/
+void readState(DataInputStream in) throws IOException
+{
+  BFCast aForecast;
+  int i, n;
+
+  super.readState(in);
+  currentTime = in.readInt();
+  lastgatime = in.readInt();
+  avspecificity = in.readDouble();
+  forecast = in.readDouble();
+  lforecast = in.readDouble();
+  global_mean = in.readDouble();
+  realDeviation = in.readDouble();
+  variance = in.readDouble();
+  pdcoeff = in.readDouble();
+  offset = in.readDouble();
+  divisor = in.readDouble();
+  gacount = in.readInt();
+  minstrength = in.readDouble();
+
+  if (privateParams == null)
+    privateParams = params.copy(getZone());
+  this.makeWorldBits();
+  n = in.readInt();
+  if (fcastList.size() > n)
+    throw new IOException("agent has " + fcastList.size()
+                          + " forecasts, state has " + n);
+  while (fcastList.size() < n)
+    {
+      aForecast = new BFCast(this.getZone());
+      aForecast.setCondwords(privateParams.condwords);
+      aForecast.setCondbits(privateParams.condbits);
+      aForecast.setNNulls(privateParams.nnulls);
+      aForecast.setBitcost(privateParams.bitcost);
+      aForecast.createEnd();
+      fcastList.add(aForecast);
+    }
+  for (i = 0; i < n; i++)
+    ((BFCast)fcastList.get(i)).readState(in);
+  this.readPositions$Into(in, activeList);
+  this.readPositions$Into(in, oldActiveList);
+}
+
+/*" Writes the positions in fcastList of the forecasts of a list "*/
+void writePositions$Of(DataOutputStream out, LinkedList list) throws IOException
+{
+  out.writeInt(list.size());
+  for (int i = 0; i < list.size(); i++)
+    out.writeInt(fcastList.indexOf(list.get(i)));
+}
+
+/*" Fills a list with the forecasts of fcastList at the positions
+  written by -writePositions$Of "*/
+void readPositions$Into(DataInputStream in, LinkedList list) throws IOException
+{
+  int n = in.readInt();
+
+  list.clear();
+  for (int i = 0; i < n; i++)
+    list.add(fcastList.get(in.readInt()));
+}
+
 }
 /*[outputList removeAll];
   index = [ list begin: [self getZone] ];
@@ -8,44 +8,45 @@ import com.jrefinery.chart.ChartFactory;
 import com.jrefinery.data.DefaultCategoryDataset;
 
 import java.util.LinkedList;
+import javax.swing.SwingUtilities;
 
 
 /**
  * <p>Title: BarChart</p>
  * <p>Description: Esta es la clase encargada de crear los diagramas de barras.
- * Lo cierto es que est en un estado bastante precario, aunque funciona
+ * Lo cierto es que está en un estado bastante precario, aunque funciona
  * correctamente. Los diagramas de barras no se han podido implementar como
- * en versiones anteriores porque el mtodo drawHistogramWithDouble() no est
+ * en versiones anteriores porque el método drawHistogramWithDouble() no está
  * disponible para Java. En esas versiones se llama histogramas a los diagramas
- * de barras, lo que puede traer ms de una confusin.</p>
- * <p>Decimos que est en un estado bastante precario por dos razones. La
- * primera es que es necesario hacer uso de algunas libreras externas
- * adicionales. La segunda es porque una nica instancia de esta clase genera
- * los dos diagramas, reduciendo as las ventajas derivadas de la programacin
- * orientada a objetos. Arreglar esto llevara poqusimo tiempo, pero ahora no
+ * de barras, lo que puede traer más de una confusión.</p>
+ * <p>Decimos que está en un estado bastante precario por dos razones. La
+ * primera es que es necesario hacer uso de algunas librerías externas
+ * adicionales. La segunda es porque una única instancia de esta clase genera
+ * los dos diagramas, reduciendo así las ventajas derivadas de la programación
+ * orientada a objetos. Arreglar esto llevaría poquísimo tiempo, pero ahora no
  * lo tenemos.</p>
  * <p>Copyright: Copyright (c) 2002</p>
- * <p>Depto. de Organizacin y Gestin de Empresas. Universidad de Valladolid</p>
- * @author Jos Manuel Galn & Luis R. Izquierdo
+ * <p>Depto. de Organización y Gestión de Empresas. Universidad de Valladolid</p>
+ * @author José Manuel Galán & Luis R. Izquierdo
  * @version 1.0
  *
  */
-public class BarChart extends SwarmObjectImpl {
+public class BarChart extends SwarmObjectImpl implements PeriodObserver {
 
   /**
-   * Diagrama de barras en el que se representa la posicin de los agentes
+   * Diagrama de barras en el que se representa la posición de los agentes
    */
   public JFreeChart positionChart;/*"Chart showing amount of stock held by each individual agent"*/
 
   /**
    * Objeto que contiene los datos a representar en el diagrama de barras
-   *  en el que se representa la posicin de los agentes
+   *  en el que se representa la posición de los agentes
    */
   public DefaultCategoryDataset positionData;
 
   /**
    * Marco para el diagrama de barras en el que se representa
-   * la posicin de los agentes
+   * la posición de los agentes
    */
   public JFreeChartFrame positionFrame;
 
@@ -75,18 +76,18 @@ public class BarChart extends SwarmObjectImpl {
   public LinkedList agentList = new LinkedList();
 
   /**
-   * Nmero de agentes
+   * Número de agentes
    */
   public int numagents;
 
-  /**Nmero de unidades de efectivo que tiene cada agente al comenzar la simulacin */
+  /**Número de unidades de efectivo que tiene cada agente al comenzar la simulación */
   public double initialCash;
 
 
   /**Constructor: Construye los dos diagramas de barras.
     *
     * @param list Lista enlazada de agentes
-    * @param initCash Nmero de unidades de efectivo que tiene cada agente al comenzar la simulacin
+    * @param initCash Número de unidades de efectivo que tiene cada agente al comenzar la simulación
     * @param aZone Zona de memoria Swarm en la que se aloja el objeto Swarm
     */
   BarChart(LinkedList list,double initCash, Zone aZone){
@@ -125,9 +126,9 @@ public class BarChart extends SwarmObjectImpl {
     relativeWealthFrame.setVisible(true);
 
     divisorData = new DefaultCategoryDataset(asm,numbers,divisorFirst);
-    divisorChart = ChartFactory.createVerticalBarChart3D("MEDIA MVIL DEL ERROR DE LA REGLA USADA","Agentes","Error",divisorData,true);
+    divisorChart = ChartFactory.createVerticalBarChart3D("MEDIA MÓVIL DEL ERROR DE LA REGLA USADA","Agentes","Error",divisorData,true);
 
-    divisorFrame = new JFreeChartFrame("Media mvil del error de la regla usada", divisorChart);
+    divisorFrame = new JFreeChartFrame("Media móvil del error de la regla usada", divisorChart);
     divisorFrame.pack();
     divisorFrame.setVisible(true);
   }
@@ -164,9 +165,50 @@ public class BarChart extends SwarmObjectImpl {
     return this;
   }
 
+    /**
+     * Actualiza los diagramas con los datos de los agentes de un registro
+     * capturado en el hilo del modelo. Se puede llamar desde el hilo de un
+     * PeriodPipeline: los datos se cambian en el hilo de eventos de Swing,
+     * que es el que dibuja los diagramas.
+     *
+     * @param r Registro de un periodo, con los agentes
+     */
+  public void observe (final PeriodRecord r)
+  {
+    SwingUtilities.invokeLater (new Runnable () {
+        public void run () {
+          show (r);
+        }
+      });
+  }
+
+    /**
+     * Pasa a los diagramas los datos de los agentes de un registro. Sólo
+     * desde el hilo de eventos de Swing.
+     *
+     * @param r Registro de un periodo, con los agentes
+     */
+  void show (PeriodRecord r)
+  {
+    int i;
+
+    for(i=0; i < r.getNumAgents (); i++)
+      {
+        String name = Integer.toString(i+1);
+
+        positionData.setValue(0,name,Double.valueOf(r.getAgentPosition (i)));
+        relativeWealthData.setValue(0,name,Double.valueOf(r.getWealth(i)/initialCash));
+        divisorData.setValue(0,name,Double.valueOf(r.getError(i)));
+      }
+
+    positionChart.setDataset(positionData);
+    relativeWealthChart.setDataset(relativeWealthData);
+    divisorChart.setDataset(divisorData);
+  }
+
 
   /**
-   * Cierra las ventanas cuando la simulacin ha terminado.
+   * Cierra las ventanas cuando la simulación ha terminado.
    */
     public void drop () {
 
@@ -7,9 +7,15 @@ public class BitVector extends SwarmObjectImpl {
   int condbits;  /*"The number of conditions bits we expect to actually use"*/
   int conditions[]; /*points to a dynamically allocated array of "condwords" elements"*/
   public static final int MAXCONDBITS = 80;
-  public static int SHIFT[]=new int[MAXCONDBITS];
-  public static int MASK[]= new int[MAXCONDBITS];
-  public static int NMASK[]= new int[MAXCONDBITS];
+  public static final int SHIFT[]=new int[MAXCONDBITS];
+  public static final int MASK[]= new int[MAXCONDBITS];
+  public static final int NMASK[]= new int[MAXCONDBITS];
+
+  // The tables are built once, when the class is loaded, and never
+  // change after that, so models in different threads can share them
+  static {
+    makebittables();
+  }
 
 
 
@@ -123,10 +129,9 @@ public class BitVector extends SwarmObjectImpl {
     return this;
   }
 
-  /*"init runs the makebittables function, which creates some statically allocated vectors that are used in bit math."*/
+  /*"init used to run the makebittables function, which creates some statically allocated vectors that are used in bit math.  They are now built when the class is loaded, so there is nothing left to do."*/
   public static void init()
   {
-    makebittables();
     return ;//this;
   }
 
@@ -239,7 +244,7 @@ public class BitVector extends SwarmObjectImpl {
 */
 
 
-  public static void makebittables()
+  static void makebittables()
   /*
    * Construct tables for fast bit packing and condition checking for
    * classifier systems.  Assumes 32 bit words, and storage of 16 ternary
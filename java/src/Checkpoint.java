@@ -0,0 +1,312 @@
+//package asmjava;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Title: Checkpoint</p>
+ * <p>Description: Puntos de control de una simulación larga. Cada
+ * "interval" periodos se guarda en un fichero el estado completo del modelo
+ * (el mismo que guarda WarmupCache: mundos con sus historias y medias
+ * móviles, procesos de dividendos, especialistas, libro de cuentas, reglas
+ * de cada agente y generadores de números aleatorios) junto con el tiempo
+ * del motor, y una simulación nueva con los mismos parámetros puede
+ * continuar desde él exactamente igual que si no se hubiera parado.</p>
+ * <p>Para no detener la simulación mientras se escribe, el estado se
+ * serializa en memoria en el hilo del modelo (es rápido y no necesita
+ * copiar los objetos) y un hilo aparte lo escribe en un fichero temporal
+ * que luego se renombra, de modo que siempre queda en disco un punto de
+ * control completo. Sólo hay una escritura en curso a la vez: si al llegar
+ * el siguiente punto la anterior no ha terminado, se espera a que
+ * termine.</p>
+ * <p>La continuación sólo es exacta con ASMEngine (modo batch), porque el
+ * tiempo de Swarm no se puede adelantar, y con los generadores escritos en
+ * Java (rngType 1 ó 2), porque el estado del de Swarm no se puede
+ * guardar. En modo gráfico no se admiten. Si hay fichero de historia
+ * (historyFile), se lleva al disco antes de cada punto de control; al
+ * continuar se reabre y se recorta al periodo del punto de control, y si
+ * tiene menos periodos no se puede continuar.</p>
+ * <p>MarketFork usa el mismo estado serializado, sin pasar por el disco,
+ * para crear ramas de una simulación.</p>
+ */
+public class Checkpoint {
+
+  /**Marca de los ficheros de puntos de control*/
+  public static final long MAGIC = 0x41534d434b505431L;   // "ASMCKPT1"
+
+  /**Clave de la configuración, la misma que la de WarmupCache*/
+  String key;
+  /**Fichero en el que se escribe, o null si sólo se lee*/
+  File file;
+  /**Periodos entre puntos de control; 0 para no escribirlos*/
+  long interval;
+  /**Tiempo y periodos del motor leídos del punto de control*/
+  int time;
+  long periods;
+  /**true si el modelo se ha leído de un punto de control*/
+  boolean restored;
+  /**Hilo que escribe el último punto de control, o null*/
+  Thread writer;
+  /**Tamaño del último punto de control, para reservar el buffer*/
+  int lastSize = 65536;
+
+  /**Constructor de la clase
+   *
+   * @param fileName Fichero en el que se escriben los puntos de control,
+   * vacío para no escribirlos
+   * @param anInterval Periodos entre puntos de control
+   * @param modelParams Parámetros del modelo
+   * @param bfParams Parámetros de los agentes
+   */
+  Checkpoint (String fileName, long anInterval, ASMModelParams modelParams,
+              BFParams bfParams)
+  {
+    key = WarmupCache.keyOf (modelParams, bfParams);
+    if (fileName.length () > 0)
+      file = new File (fileName);
+    interval = anInterval;
+  }
+
+  /**Indica si toca escribir un punto de control
+   *
+   * @param aPeriods Periodos ejecutados
+   * @return true si hay fichero y aPeriods es múltiplo del intervalo
+   */
+  public boolean isDue (long aPeriods)
+  {
+    return (file != null && interval > 0 && aPeriods%interval == 0);
+  }
+
+  /**Indica si el modelo se ha leído de un punto de control
+   *
+   * @return restored
+   */
+  public boolean isRestored ()
+  {
+    return restored;
+  }
+
+  /**Devuelve el tiempo del motor leído del punto de control
+   *
+   * @return time
+   */
+  public int getTime ()
+  {
+    return time;
+  }
+
+  /**Devuelve los periodos ejecutados leídos del punto de control
+   *
+   * @return periods
+   */
+  public long getPeriods ()
+  {
+    return periods;
+  }
+
+  /**Devuelve el fichero en el que se escribe
+   *
+   * @return file, o null
+   */
+  public File getFile ()
+  {
+    return file;
+  }
+
+  /**Serializa en memoria el estado del modelo de un motor y su tiempo
+   *
+   * @param engine Motor, entre dos periodos
+   * @return punto de control
+   * @throws IOException si algún componente no se puede serializar
+   */
+  public byte[] serialize (ASMEngine engine) throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream (lastSize);
+    DataOutputStream out = new DataOutputStream (bytes);
+    HistoryStore store;
+    int k;
+
+    out.writeLong (MAGIC);
+    out.writeUTF (key);
+    out.writeInt (engine.time);
+    out.writeLong (engine.periods);
+    engine.model.writeState (out);
+    for (k = 0; k < engine.model.worlds.length; k++)
+      {
+        store = engine.model.worlds[k].getHistoryStore ();
+        out.writeLong (store == null ? -1 : store.size ());
+      }
+    out.close ();
+    lastSize = bytes.size ();
+    return bytes.toByteArray ();
+  }
+
+  /**Guarda el estado del modelo de un motor. Antes lleva al disco los
+   * ficheros de historia, para que tengan todos los periodos que el punto
+   * de control da por escritos. El estado se serializa aquí; el fichero se
+   * escribe en otro hilo.
+   *
+   * @param engine Motor, entre dos periodos
+   */
+  public void save (ASMEngine engine)
+  {
+    final byte data[];
+    HistoryStore store;
+    int k;
+
+    try
+      {
+        for (k = 0; k < engine.model.worlds.length; k++)
+          {
+            store = engine.model.worlds[k].getHistoryStore ();
+            if (store != null)
+              store.force ();
+          }
+        data = serialize (engine);
+      }
+    catch (IOException e)
+      {
+        System.err.println ("Exception saving checkpoint: " + e.getMessage ());
+        return;
+      }
+
+    waitForWrite ();
+    writer = new Thread (new Runnable () {
+        public void run () {
+          write (data);
+        }
+      }, "checkpoint-writer");
+    writer.start ();
+  }
+
+  /**Escribe un punto de control serializado en un fichero temporal, lo
+   * lleva al disco y lo renombra. Los errores se avisan pero no detienen la
+   * simulación.
+   *
+   * @param data Punto de control
+   */
+  void write (byte data[])
+  {
+    File dir = file.getAbsoluteFile ().getParentFile ();
+    File temp = null;
+    FileOutputStream out;
+
+    try
+      {
+        temp = File.createTempFile ("checkpoint-", ".tmp", dir);
+        out = new FileOutputStream (temp);
+        try
+          {
+            out.write (data);
+            out.getFD ().sync ();
+          }
+        finally
+          {
+            out.close ();
+          }
+        // Some systems do not rename over an existing file
+        if (!temp.renameTo (file) && !(file.delete () && temp.renameTo (file)))
+          throw new IOException ("cannot rename " + temp + " to " + file);
+      }
+    catch (IOException e)
+      {
+        System.err.println ("Exception writing checkpoint: " + e.getMessage ());
+        if (temp != null)
+          temp.delete ();
+      }
+  }
+
+  /**Espera a que termine la escritura en curso, si la hay. Hay que
+   * llamarlo al terminar la simulación.
+   */
+  public void waitForWrite ()
+  {
+    if (writer == null)
+      return;
+    try
+      {
+        writer.join ();
+      }
+    catch (InterruptedException e)
+      {
+        Thread.currentThread ().interrupt ();
+      }
+    writer = null;
+  }
+
+  /**Lee un punto de control en un modelo ya construido con los mismos
+   * parámetros. El tiempo del motor queda en getTime() y getPeriods().
+   *
+   * @param fileName Fichero del punto de control
+   * @param model Modelo
+   * @throws IOException si no se puede leer o no es de esta configuración
+   */
+  public void load (String fileName, ASMModelSwarm model) throws IOException
+  {
+    DataInputStream in = new DataInputStream
+      (new BufferedInputStream (new FileInputStream (fileName), 65536));
+
+    try
+      {
+        read (in, fileName, model);
+      }
+    finally
+      {
+        in.close ();
+      }
+  }
+
+  /**Lee un punto de control serializado en memoria con serialize()
+   *
+   * @param data Punto de control
+   * @param model Modelo construido con los mismos parámetros
+   * @throws IOException si no se puede leer o no es de esta configuración
+   */
+  public void load (byte data[], ASMModelSwarm model) throws IOException
+  {
+    read (new DataInputStream (new ByteArrayInputStream (data)),
+          "state", model);
+  }
+
+  /**Lee un punto de control de un flujo
+   *
+   * @param in Flujo de entrada
+   * @param name Nombre del origen, para los mensajes
+   * @param model Modelo
+   * @throws IOException si no se puede leer o no es de esta configuración
+   */
+  void read (DataInputStream in, String name, ASMModelSwarm model)
+    throws IOException
+  {
+    HistoryStore store;
+    long size;
+    int k;
+
+    if (in.readLong () != MAGIC || !in.readUTF ().equals (key))
+      throw new IOException (name + " is not a checkpoint for this configuration");
+    time = in.readInt ();
+    periods = in.readLong ();
+    model.readState (in);
+    for (k = 0; k < model.worlds.length; k++)
+      {
+        size = in.readLong ();
+        store = model.worlds[k].getHistoryStore ();
+        if (store == null || size < 0)
+          continue;
+        // The rest of the run would leave a gap in the history
+        if (store.size () < size)
+          throw new IOException ("history file has " + store.size ()
+                                 + " of the " + size
+                                 + " periods of the checkpoint " + name);
+        store.truncate (size);
+      }
+    restored = true;
+  }
+}
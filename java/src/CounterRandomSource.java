@@ -0,0 +1,133 @@
+//package asmjava;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Title: CounterRandomSource</p>
+ * <p>Description: Generador basado en un contador: el número k del periodo t
+ * es una función fija de la clave del flujo, de t y de k (la mezcla de
+ * SplitMix64 aplicada a la clave del periodo más k veces la constante áurea),
+ * sin ningún estado que dependa de lo que se haya extraído antes en otros
+ * periodos. Así cualquier extracción de cualquier componente en cualquier
+ * periodo se puede volver a calcular por separado con draw(), y el
+ * resultado no depende del orden en que los componentes se ejecuten.</p>
+ * <p>RandomStreams crea uno por componente y llama a startPeriod() al
+ * empezar cada periodo.</p>
+ */
+public class CounterRandomSource extends LongRandomSource {
+
+  /**Incremento de SplitMix64 (parte fraccionaria de la razón áurea)*/
+  static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+  /**Clave del flujo*/
+  long key;
+  /**Periodo actual y clave derivada para ese periodo*/
+  long period, periodKey;
+  /**Número de extracciones hechas en el periodo actual*/
+  long counter;
+
+  /**Constructor de la clase. El flujo empieza en el periodo 0.
+   *
+   * @param aKey Clave del flujo
+   */
+  CounterRandomSource (long aKey)
+  {
+    key = aKey;
+    startPeriod (0);
+  }
+
+  /**Clave de un periodo de un flujo*/
+  static long periodKey (long aKey, long t)
+  {
+    return mix (aKey + t*GOLDEN);
+  }
+
+  /**Devuelve la extracción k (empezando por 1) del periodo t de un flujo,
+   * sin tocar el estado de ningún generador
+   *
+   * @param aKey Clave del flujo
+   * @param t Periodo
+   * @param k Número de la extracción
+   * @return 64 bits
+   */
+  public static long draw (long aKey, long t, long k)
+  {
+    return mix (periodKey (aKey, t) + k*GOLDEN);
+  }
+
+  /**Empieza un periodo: las extracciones siguientes son las del periodo t
+   *
+   * @param t Periodo
+   */
+  public void startPeriod (long t)
+  {
+    period = t;
+    periodKey = periodKey (key, t);
+    counter = 0;
+  }
+
+  public long nextLong ()
+  {
+    counter++;
+    return mix (periodKey + counter*GOLDEN);
+  }
+
+  public long getKey ()
+  {
+    return key;
+  }
+
+  /**Cambia la clave del flujo, sin cambiar el periodo ni el número de
+   * extracciones hechas en él. Lo usa MarketFork para que cada rama saque
+   * sus propios números.
+   *
+   * @param aKey Clave nueva
+   */
+  public void setKey (long aKey)
+  {
+    key = aKey;
+    periodKey = periodKey (key, period);
+  }
+
+  public long getPeriod ()
+  {
+    return period;
+  }
+
+  /**Devuelve el número de extracciones hechas en el periodo actual
+   *
+   * @return counter
+   */
+  public long getCounter ()
+  {
+    return counter;
+  }
+
+  /**Escribe el estado del flujo: la clave (para comprobarla al leer), el
+   * periodo y el contador
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  public void writeState (DataOutputStream out) throws IOException
+  {
+    out.writeLong (key);
+    out.writeLong (period);
+    out.writeLong (counter);
+  }
+
+  /**Lee el estado escrito por writeState en el flujo del mismo componente
+   *
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer o la clave no coincide
+   */
+  public void readState (DataInputStream in) throws IOException
+  {
+    if (in.readLong () != key)
+      throw new IOException ("random stream key does not match the state");
+    startPeriod (in.readLong ());
+    counter = in.readLong ();
+  }
+}
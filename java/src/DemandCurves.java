@@ -0,0 +1,169 @@
+//package asmjava;
+
+/**
+ * <p>Title: DemandCurves</p>
+ * <p>Description: Curvas de demanda de todos los agentes capturadas en un
+ * periodo. Cada agente guarda aquí (captureDemand$into$at) los coeficientes
+ * de su función de demanda tras prepararse para negociar: el pronóstico
+ * lineal, el divisor de aversión al riesgo, su posición, su efectivo libre y
+ * sus límites. A partir de ellos se calcula su demanda a cualquier precio sin
+ * volver a preguntarle ni cambiar su estado.</p>
+ * <p>Los agentes sin demanda de forma cerrada se guardan tal cual y se les
+ * pregunta, restaurando después la demanda que tenían en el libro.</p>
+ * <p>Lo usa ShadowMarket para vaciar las mismas curvas con varios tipos de
+ * especialista.</p>
+ */
+public class DemandCurves implements DemandSource {
+
+  /**Número de agentes capturados*/
+  int size;
+
+  /**Pendiente del pronóstico lineal de cada agente*/
+  double pdcoeff[];
+  /**Término independiente del pronóstico lineal de cada agente*/
+  double offset[];
+  /**Dividendo que conoce cada agente*/
+  double dividend[];
+  /**Divisor de aversión al riesgo de cada agente*/
+  double divisor[];
+  /**1 + tasa de interés de cada agente*/
+  double intratep1[];
+  /**Posición de cada agente*/
+  double position[];
+  /**Efectivo por encima del mínimo de cada agente*/
+  double free[];
+  /**Posición mínima de cada agente*/
+  double minholding[];
+  /**Puja u oferta máxima de cada agente*/
+  double maxbid[];
+  /**Agentes sin demanda de forma cerrada (null para los demás)*/
+  Agent fallback[];
+
+  /**Constructor de la clase
+   *
+   * @param numAgents Número de agentes
+   */
+  DemandCurves (int numAgents)
+  {
+    size = numAgents;
+    pdcoeff = new double[numAgents];
+    offset = new double[numAgents];
+    dividend = new double[numAgents];
+    divisor = new double[numAgents];
+    intratep1 = new double[numAgents];
+    position = new double[numAgents];
+    free = new double[numAgents];
+    minholding = new double[numAgents];
+    maxbid = new double[numAgents];
+    fallback = new Agent[numAgents];
+  }
+
+  /**Guarda la función de demanda de un agente BFagent
+   *
+   * @param i Índice del agente
+   * @param aPdcoeff Pendiente del pronóstico
+   * @param anOffset Término independiente del pronóstico
+   * @param aDividend Dividendo
+   * @param aDivisor Divisor de aversión al riesgo
+   * @param anIntratep1 1 + tasa de interés
+   * @param aPosition Posición
+   * @param aFree Efectivo por encima del mínimo
+   * @param aMinholding Posición mínima
+   * @param aMaxbid Puja u oferta máxima
+   */
+  public void setCurve (int i, double aPdcoeff, double anOffset,
+                        double aDividend, double aDivisor,
+                        double anIntratep1, double aPosition, double aFree,
+                        double aMinholding, double aMaxbid)
+  {
+    pdcoeff[i] = aPdcoeff;
+    offset[i] = anOffset;
+    dividend[i] = aDividend;
+    divisor[i] = aDivisor;
+    intratep1[i] = anIntratep1;
+    position[i] = aPosition;
+    free[i] = aFree;
+    minholding[i] = aMinholding;
+    maxbid[i] = aMaxbid;
+    fallback[i] = null;
+  }
+
+  /**Guarda un agente cuya demanda no tiene forma cerrada
+   *
+   * @param i Índice del agente
+   * @param anAgent El agente
+   */
+  public void setAgent (int i, Agent anAgent)
+  {
+    fallback[i] = anAgent;
+  }
+
+  /**Demanda del agente i al precio p. Hace las mismas operaciones que
+   * BFagent.getDemandAndSlope$forPrice, de modo que el resultado es idéntico.
+   *
+   * @param i Índice del agente
+   * @param p Precio
+   * @return demanda (>0) u oferta (<0)
+   */
+  double demandOf (int i, double p)
+  {
+    Agent agent = fallback[i];
+    double f, d, saved;
+
+    if (agent != null)
+      {
+        saved = agent.ledger.demand[agent.slot];
+        d = agent.getDemandAndSlope$forPrice(0.0, p);
+        agent.ledger.demand[agent.slot] = saved;
+        return d;
+      }
+
+    f = (p + dividend[i])*pdcoeff[i] + offset[i];
+    f = (f >= 0.0 ? f : 0.0);
+    d = -((p*intratep1[i] - f)/divisor[i] + position[i]);
+    d = (d > maxbid[i] ? maxbid[i] : (d < -maxbid[i] ? -maxbid[i] : d));
+    return Agent.constrain (d, p, free[i], position[i], minholding[i]);
+  }
+
+  /**Suma las pujas y ofertas de las curvas capturadas a un precio de prueba.
+   * Como en AgentDemand, la pendiente no se devuelve y su suma es 0.
+   *
+   * @param trialprice Precio de prueba
+   * @param totals Pujas, ofertas y pendientes
+   */
+  public void totalsAt (double trialprice, double totals[])
+  {
+    double demand;
+    double bidtotal = 0.0, offertotal = 0.0;
+
+    for (int i = 0; i < size; i++)
+      {
+        demand = demandOf (i, trialprice);
+        if (demand > 0.0)
+          bidtotal += demand;
+        else if (demand < 0.0)
+          offertotal -= demand;
+      }
+    totals[0] = bidtotal;
+    totals[1] = offertotal;
+    totals[2] = 0.0;
+  }
+
+  /**Exceso de demanda agregado de las curvas capturadas en cada precio de
+   * una rejilla
+   *
+   * @param prices Precios de la rejilla
+   * @param excess Exceso de demanda en cada precio
+   * @param n Número de precios
+   */
+  public void excessCurve (double prices[], double excess[], int n)
+  {
+    int i, j;
+
+    for (j = 0; j < n; j++)
+      excess[j] = 0.0;
+    for (i = 0; i < size; i++)
+      for (j = 0; j < n; j++)
+        excess[j] += demandOf (i, prices[j]);
+  }
+}
@@ -0,0 +1,29 @@
+//package asmjava;
+
+/**
+ * <p>Title: DemandSource</p>
+ * <p>Description: Origen de las pujas y ofertas que el especialista suma en
+ * cada precio de prueba. Lo implementan AgentDemand, que pregunta a los
+ * agentes, y DemandCurves, que evalúa las curvas de demanda capturadas en un
+ * periodo sin tocar a los agentes. Así el mismo especialista puede vaciar el
+ * mercado real o, en la sombra, las curvas de otro periodo.</p>
+ */
+public interface DemandSource {
+
+  /**Suma las pujas y ofertas a un precio de prueba
+   *
+   * @param trialprice Precio de prueba
+   * @param totals Al volver, totals[0] es el total de pujas, totals[1] el de
+   * ofertas (en positivo) y totals[2] la suma de pendientes
+   */
+  public void totalsAt (double trialprice, double totals[]);
+
+  /**Calcula el exceso de demanda agregado (pujas menos ofertas) en cada
+   * precio de una rejilla
+   *
+   * @param prices Precios de la rejilla
+   * @param excess Al volver, exceso de demanda en cada precio
+   * @param n Número de precios
+   */
+  public void excessCurve (double prices[], double excess[], int n);
+}
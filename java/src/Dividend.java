@@ -5,24 +5,27 @@ import swarm.objectbase.SwarmObjectImpl;
 import swarm.random.NormalDistImpl;
 import swarm.Globals;
 import swarm.defobj.Zone;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 /**
  * <p>Title: Dividend</p>
- * <p>Existe una nica instancia de esta clase. Esa instancia
- *  se encarga de generar una secuencia estocstica de dividendos.
- * El proceso de generacin de dividendos es exgeno, independiente del mercado
- * y de los agentes. nicamente depende de los parmetros del proceso AR(1) y
+ * <p>Existe una única instancia de esta clase. Esa instancia
+ *  se encarga de generar una secuencia estocástica de dividendos.
+ * El proceso de generación de dividendos es exógeno, independiente del mercado
+ * y de los agentes. Únicamente depende de los parámetros del proceso AR(1) y
  * de la semilla utilizada.
  * </p>
  * <p>Copyright: Copyright (c) 2002</p>
- * <p>Depto. de Organizacin y Gestin de Empresas. Universidad de Valladolid</p>
- * @author Jos Manuel Galn & Luis R. Izquierdo
+ * <p>Depto. de Organización y Gestión de Empresas. Universidad de Valladolid</p>
+ * @author José Manuel Galán & Luis R. Izquierdo
  * @version 1.0
  *
  */
 public class Dividend extends SwarmObjectImpl {
 
- /**Lnea media de dividendos   */
+ /**Línea media de dividendos   */
   double baseline; /*"The centerline around which deviations are computed.
   //			This is equal to the mean for a symmetric process
   //			(i.e., if asymmetry = 0).  "baseline" is set only
@@ -30,36 +33,36 @@ public class Dividend extends SwarmObjectImpl {
   //			be changed from the default value (10.0)."*/
   //
 /**La amplitud de las desviaciones del error del proceso AR(1) generador del
- * dividendo medida en unidades de "baseline". La desviacin tpica del error
+ * dividendo medida en unidades de "baseline". La desviación típica del error
  * del proceso es igual al producto de la amplitud por la "baseline"
    *  */
   double amplitude; /*"The amplitude of the deviations from the baseline.
   //			Measured in units of "baseline".  The standard
   //			deviation of the process is proportional to this."*/
 
-  /**El periodo medio o tiempo de autocorrelacin del proceso AR(1) generador
-   * de los dividendos. El coeficiente de autocorrelacin de primer orden
-   * (que coincide con el parmetro del proceso) es
+  /**El periodo medio o tiempo de autocorrelación del proceso AR(1) generador
+   * de los dividendos. El coeficiente de autocorrelación de primer orden
+   * (que coincide con el parámetro del proceso) es
    * igual a rho = exp(-1/period).
    */
   double period;  /*"The period or auto-correlation time of the process."*/
 
-   /**Dividendo mnimo  */
+   /**Dividendo mínimo  */
   double mindividend;  /*"floor under dividend values"*/
-   /**Dividendo mximo   */
+   /**Dividendo máximo   */
   double maxdividend; /*"ceiling for dividend values"*/
   /**
-   * Desviacin tpica del error del proceso AR(1) generador de los dividendos.
+   * Desviación típica del error del proceso AR(1) generador de los dividendos.
    */
   double deviation;
 
-    /**Coeficiente de autocorrelacin de primer orden del proceso AR(1).
+    /**Coeficiente de autocorrelación de primer orden del proceso AR(1).
      * Se calcula a partir de period: rho = exp(-1/period).
    */
   double rho;
 
   /**
-   * <p>Desviacin tpica del proceso AR(1) generador de los dividendos.</p>
+   * <p>Desviación típica del proceso AR(1) generador de los dividendos.</p>
    * <p>gauss = deviation*Math.sqrt(1.0-rho*rho);</p>
    */
   double gauss;
@@ -70,9 +73,26 @@ public class Dividend extends SwarmObjectImpl {
   //NormalDistImpl normal = new NormalDistImpl(); /*"A Swarm Normal Generator object"*/
 
   /**
-   * Objeto de Swarm generador de una distribucin normal.
+   * Objeto de Swarm generador de una distribución normal.
    */
   NormalDistImpl normal;
+
+  /**
+   * Origen de los números normales. Por defecto, la distribución normal de
+   * Swarm de arriba.
+   */
+  RandomSource random;
+
+  /**
+   * Cinta de la que se leen los dividendos, o null para calcularlos periodo
+   * a periodo.
+   */
+  DividendTape tape;
+
+  /**
+   * true cuando se ha avisado de que la cinta se ha acabado.
+   */
+  boolean tapeEnded;
   /*"
   // This object produces a stochastic sequence of dividends.  The process
   // is independent of the market and agents, depending only the parameters
@@ -90,12 +110,13 @@ public class Dividend extends SwarmObjectImpl {
   }
   /*"Creates a Swarm Normal Distribution object"*/
   /**
-   * Crea el objeto de Swarm generador de una distribucin normal estndar.
+   * Crea el objeto de Swarm generador de una distribución normal estándar.
    * @return this
    */
   public Object initNormal ()
   {
     normal= new NormalDistImpl(this.getZone(), Globals.env.randomGenerator, 0, 1 );
+    random = new SwarmRandomSource(normal);
     return this;
   }
 
@@ -112,7 +133,7 @@ public class Dividend extends SwarmObjectImpl {
   }
 
   /**
-   * Fija el dividendo mnimo.
+   * Fija el dividendo mínimo.
    *
    * @param minimumDividend
    * @return this
@@ -124,7 +145,7 @@ public class Dividend extends SwarmObjectImpl {
   }
 
   /**
-   * Fija el dividendo mximo.
+   * Fija el dividendo máximo.
    *
    * @param maximumDividend
    * @return this
@@ -164,9 +185,9 @@ public class Dividend extends SwarmObjectImpl {
   // argument. See "setDivType:". "*/
 
  /**
-   * <p>Fija el periodo medio o tiempo de autocorrelacin del proceso AR(1) generador
-   * de los dividendos. Se utiliza para calcular el parmetro del proceso
-   * (que coincide con el coeficiente de autocorrelacin de primer orden).</p>
+   * <p>Fija el periodo medio o tiempo de autocorrelación del proceso AR(1) generador
+   * de los dividendos. Se utiliza para calcular el parámetro del proceso
+   * (que coincide con el coeficiente de autocorrelación de primer orden).</p>
    * <p>rho = exp(-1/period).</p>
    * <p> Si period es menor que 2, lo pone a 2.
    *
@@ -190,7 +211,7 @@ public class Dividend extends SwarmObjectImpl {
    */
 
    /**
-    * Calcula algunos parmetros que se derivan de otros ya conocidos
+    * Calcula algunos parámetros que se derivan de otros ya conocidos
     *
     * @return this
     */
@@ -202,7 +223,7 @@ public class Dividend extends SwarmObjectImpl {
     gauss = deviation*Math.sqrt(1.0-rho*rho);
     //pj:
     //dvdnd = baseline + gauss*normal();
-    dvdnd = baseline + gauss*(normal.getDoubleSample());
+    dvdnd = baseline + gauss*(random.normal());
     return this;
   }
 
@@ -214,18 +235,41 @@ public class Dividend extends SwarmObjectImpl {
     certain parameters are changed."*/
 
     /**
-     * Devuelve el valor del prximo dividendo. Este es el mtodo principal
-     * de la clase, para el cual todos los dems trabajan. Cabe destacar que
-     * no usamos el tiempo de la simulacin, sino que se presupone que entre
-     * llamada y llamada al mtodo ha transcurrido un periodo.
+     * Devuelve el valor del próximo dividendo. Este es el método principal
+     * de la clase, para el cual todos los demás trabajan. Cabe destacar que
+     * no usamos el tiempo de la simulación, sino que se presupone que entre
+     * llamada y llamada al método ha transcurrido un periodo.
      *
      * @return dvdnd El dividendo
      */
   public double dividend ()
+  {
+    if (tape != null)
+      {
+        if (tape.hasNext ())
+          {
+            dvdnd = tape.next ();
+            return dvdnd;
+          }
+        if (!tapeEnded)
+          System.out.println ("Dividend tape ended after " + tape.getDelivered ()
+                              + " periods; continuing the AR(1) process");
+        tapeEnded = true;
+      }
+    return this.step ();
+  }
+
+  /**
+   * Calcula el siguiente dividendo del proceso AR(1), acotado entre
+   * mindividend y maxdividend.
+   *
+   * @return dvdnd El dividendo
+   */
+  double step ()
   {
     //pj:
     // dvdnd = baseline + rho*(dvdnd - baseline) + gauss*normal();
-      dvdnd = baseline + rho*(dvdnd - baseline) + gauss*(normal.getDoubleSample());
+      dvdnd = baseline + rho*(dvdnd - baseline) + gauss*(random.normal());
     if (dvdnd < mindividend)
       dvdnd = mindividend;
     if (dvdnd > maxdividend)
@@ -236,6 +280,66 @@ public class Dividend extends SwarmObjectImpl {
     return dvdnd;
   }
 
+  /**
+   * Calcula los próximos n dividendos del proceso AR(1) de una vez y los
+   * guarda en un bloque. Es lo que usa una cinta generada para llenarse.
+   *
+   * @param block Array de salida
+   * @param n Número de dividendos
+   */
+  public void fillBlock (double block[], int n)
+  {
+    int i;
+
+    // All the normals first, in one bulk draw, then the recursion
+    random.fillNormal (block, n);
+    for (i = 0; i < n; i++)
+      {
+        dvdnd = baseline + rho*(dvdnd - baseline) + gauss*block[i];
+        if (dvdnd < mindividend)
+          dvdnd = mindividend;
+        if (dvdnd > maxdividend)
+          dvdnd = maxdividend;
+        block[i] = dvdnd;
+      }
+  }
+
+  /**
+   * Fija el origen de los números normales. Debe llamarse después de
+   * initNormal y antes de setDerivedParams.
+   *
+   * @param aSource Origen de los números aleatorios
+   * @return this
+   */
+  public Object setRandomSource (RandomSource aSource)
+  {
+    random = aSource;
+    return this;
+  }
+
+  /**
+   * Fija la cinta de la que se leen los dividendos.
+   *
+   * @param aTape Cinta, o null para calcularlos periodo a periodo
+   * @return this
+   */
+  public Object setTape (DividendTape aTape)
+  {
+    tape = aTape;
+    tapeEnded = false;
+    return this;
+  }
+
+  /**
+   * Devuelve la cinta de dividendos.
+   *
+   * @return tape, o null si no hay
+   */
+  public DividendTape getTape ()
+  {
+    return tape;
+  }
+
   /**
    * Liberador de memoria.
    */
@@ -243,4 +347,37 @@ public class Dividend extends SwarmObjectImpl {
   {
     super.drop();
   }
-}
\ No newline at end of file
+
+  /**
+   * Escribe el estado del proceso: el último dividendo y la posición de la
+   * cinta, si la hay
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  void writeState (DataOutputStream out) throws IOException
+  {
+    out.writeDouble (dvdnd);
+    out.writeBoolean (tapeEnded);
+    out.writeBoolean (tape != null);
+    if (tape != null)
+      tape.writeState (out);
+  }
+
+  /**
+   * Lee el estado escrito por writeState en un proceso con los mismos
+   * parámetros y el mismo tipo de cinta
+   *
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer o no coincide
+   */
+  void readState (DataInputStream in) throws IOException
+  {
+    dvdnd = in.readDouble ();
+    tapeEnded = in.readBoolean ();
+    if (in.readBoolean () != (tape != null))
+      throw new IOException ("dividend tape does not match the state");
+    if (tape != null)
+      tape.readState (in);
+  }
+}
@@ -0,0 +1,266 @@
+//package asmjava;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.StringTokenizer;
+
+/**
+ * <p>Title: DividendTape</p>
+ * <p>Description: Cinta de dividendos: la serie de dividendos que Dividend
+ * va entregando periodo a periodo, guardada en un buffer de tipos
+ * primitivos. Puede llenarse de dos maneras:</p>
+ * <ul>
+ * <li>Generada: Dividend calcula su proceso AR(1) por bloques de
+ * blockSize periodos cada vez que la cinta se vacía. La serie es la misma
+ * que periodo a periodo para la misma secuencia de números normales, pero
+ * como el generador de Swarm es compartido, sacar los números en bloque
+ * cambia su reparto con las demás extracciones del modelo (el bit aleatorio
+ * de World, los agentes), y por tanto la simulación.</li>
+ * <li>Reproducida: se lee una serie suministrada desde fuera, de un fichero
+ * binario de doubles (big-endian, sin cabecera) que se proyecta en memoria, o
+ * de un fichero de texto CSV con el dividendo en la primera columna de cada
+ * línea. Así varias simulaciones de un barrido pueden compartir una misma
+ * senda de dividendos escrita una sola vez con save().</li>
+ * </ul>
+ * <p>Cuando una cinta reproducida se acaba, Dividend sigue con su proceso
+ * AR(1) desde el último valor.</p>
+ */
+public class DividendTape {
+
+  /**Proceso que llena la cinta por bloques, o null si se reproduce*/
+  Dividend source;
+  /**Buffer de dividendos y tamaño de bloque*/
+  double buffer[];
+  /**Posición del siguiente dividendo en el buffer y número de dividendos
+   * válidos en él*/
+  int pos, len;
+  /**Fichero binario proyectado, o null*/
+  DoubleBuffer mapped;
+  /**Dividendos entregados*/
+  long delivered;
+
+  /**Crea una cinta generada por bloques
+   *
+   * @param aSource Proceso de dividendos
+   * @param blockSize Periodos por bloque
+   */
+  DividendTape (Dividend aSource, int blockSize)
+  {
+    source = aSource;
+    buffer = new double[blockSize];
+  }
+
+  /**Crea una cinta reproducida desde un array
+   *
+   * @param values Dividendos
+   * @param n Número de dividendos
+   */
+  DividendTape (double values[], int n)
+  {
+    buffer = values;
+    len = n;
+  }
+
+  /**Crea una cinta reproducida desde un fichero binario proyectado
+   *
+   * @param aBuffer Dividendos
+   */
+  DividendTape (DoubleBuffer aBuffer)
+  {
+    mapped = aBuffer;
+  }
+
+  /**Abre un fichero de dividendos para reproducirlo. Si el nombre termina
+   * en ".csv" o ".txt" se lee como texto; si no, como binario.
+   *
+   * @param fileName Nombre del fichero
+   * @return la cinta
+   * @throws IOException si no se puede leer
+   */
+  public static DividendTape open (String fileName) throws IOException
+  {
+    String lower = fileName.toLowerCase ();
+
+    if (lower.endsWith (".csv") || lower.endsWith (".txt"))
+      return readCSV (fileName);
+    return map (fileName);
+  }
+
+  /**Proyecta en memoria un fichero binario de doubles
+   *
+   * @param fileName Nombre del fichero
+   * @return la cinta
+   * @throws IOException si no se puede proyectar
+   */
+  static DividendTape map (String fileName) throws IOException
+  {
+    RandomAccessFile file = new RandomAccessFile (fileName, "r");
+    FileChannel channel = file.getChannel ();
+    DoubleBuffer values =
+      channel.map (FileChannel.MapMode.READ_ONLY, 0, channel.size ()).asDoubleBuffer ();
+
+    // The mapping stays valid after the file is closed
+    channel.close ();
+    file.close ();
+    return new DividendTape (values);
+  }
+
+  /**Lee un fichero de texto con un dividendo por línea, en la primera
+   * columna. Las líneas que no empiezan por un número (cabeceras,
+   * comentarios) se saltan.
+   *
+   * @param fileName Nombre del fichero
+   * @return la cinta
+   * @throws IOException si no se puede leer
+   */
+  static DividendTape readCSV (String fileName) throws IOException
+  {
+    BufferedReader in = new BufferedReader (new FileReader (fileName));
+    double values[] = new double[1024];
+    double grown[];
+    int n = 0;
+    String line;
+    StringTokenizer st;
+
+    while ((line = in.readLine ()) != null)
+      {
+        st = new StringTokenizer (line, " ,;\t");
+        if (!st.hasMoreTokens ())
+          continue;
+        if (n == values.length)
+          {
+            grown = new double[2*n];
+            System.arraycopy (values, 0, grown, 0, n);
+            values = grown;
+          }
+        try
+          {
+            values[n] = Double.parseDouble (st.nextToken ());
+            n++;
+          }
+        catch (NumberFormatException e)
+          {
+          }
+      }
+    in.close ();
+    return new DividendTape (values, n);
+  }
+
+  /**Genera los próximos n dividendos de un proceso y los escribe en un
+   * fichero binario, para que otras simulaciones los reproduzcan con open()
+   *
+   * @param fileName Nombre del fichero
+   * @param aSource Proceso de dividendos ya inicializado
+   * @param n Número de dividendos
+   * @throws IOException si no se puede escribir
+   */
+  public static void save (String fileName, Dividend aSource, long n)
+    throws IOException
+  {
+    DataOutputStream out = new DataOutputStream
+      (new BufferedOutputStream (new FileOutputStream (fileName)));
+    double block[] = new double[4096];
+    int m;
+
+    while (n > 0)
+      {
+        m = (int)Math.min (n, block.length);
+        aSource.fillBlock (block, m);
+        for (int i = 0; i < m; i++)
+          out.writeDouble (block[i]);
+        n -= m;
+      }
+    out.close ();
+  }
+
+  /**Indica si quedan dividendos en la cinta. Una cinta generada nunca se
+   * acaba.
+   *
+   * @return true si next() devuelve un dividendo
+   */
+  public boolean hasNext ()
+  {
+    if (source != null || pos < len)
+      return true;
+    return (mapped != null && mapped.hasRemaining ());
+  }
+
+  /**Devuelve el siguiente dividendo, generando un bloque nuevo si hace falta
+   *
+   * @return dividendo
+   */
+  public double next ()
+  {
+    delivered++;
+    if (mapped != null)
+      return mapped.get ();
+    if (pos == len && source != null)
+      {
+        source.fillBlock (buffer, buffer.length);
+        pos = 0;
+        len = buffer.length;
+      }
+    return buffer[pos++];
+  }
+
+  /**Devuelve el número de dividendos entregados
+   *
+   * @return delivered
+   */
+  public long getDelivered ()
+  {
+    return delivered;
+  }
+
+  /**Escribe la posición de la cinta y, si es generada, los dividendos del
+   * bloque actual que aún no se han entregado
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  void writeState (DataOutputStream out) throws IOException
+  {
+    out.writeLong (delivered);
+    if (mapped != null)
+      {
+        out.writeInt (mapped.position ());
+        return;
+      }
+    out.writeInt (pos);
+    out.writeInt (len);
+    if (source != null)
+      for (int i = pos; i < len; i++)
+        out.writeDouble (buffer[i]);
+  }
+
+  /**Lee el estado escrito por writeState en una cinta abierta igual
+   *
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer o no coincide
+   */
+  void readState (DataInputStream in) throws IOException
+  {
+    delivered = in.readLong ();
+    if (mapped != null)
+      {
+        mapped.position (in.readInt ());
+        return;
+      }
+    pos = in.readInt ();
+    len = in.readInt ();
+    if (len > buffer.length)
+      throw new IOException ("dividend tape block of " + len
+                             + " does not fit in " + buffer.length);
+    if (source != null)
+      for (int i = pos; i < len; i++)
+        buffer[i] = in.readDouble ();
+  }
+}
@@ -0,0 +1,148 @@
+//package asmjava;
+
+/**
+ * <p>Title: EnsembleResult</p>
+ * <p>Description: Resultado de una simulación de un conjunto
+ * (EnsembleRunner): sus parámetros, los periodos ejecutados, la última foto
+ * de cada mundo (WorldSnapshot) y los estadísticos de los hechos
+ * estilizados de cada ventana, y si las reglas de parada (StoppingRules)
+ * la terminaron antes de tiempo, por qué. No guarda el modelo, que se libera al
+ * terminar la simulación, así que un conjunto de cientos de simulaciones
+ * no ocupa más memoria que la de las que están en marcha.</p>
+ */
+public class EnsembleResult {
+
+  /**Número de la simulación, en el orden en que se encargó*/
+  int run;
+  /**Parámetros de la simulación*/
+  ASMModelParams params;
+  /**Periodos ejecutados*/
+  long periods;
+  /**Última foto de cada mundo*/
+  WorldSnapshot snapshots[];
+  /**Estadísticos de cada mundo y ventana*/
+  MarketStatistics statistics[][];
+  /**Motivo y explicación de la parada anticipada, "" si no la hubo*/
+  String stopReason = "";
+  String stopDetail = "";
+
+  /**Constructor de la clase. Lo llama EnsembleRunner al terminar una
+   * simulación.
+   *
+   * @param aRun Número de la simulación
+   * @param aParams Parámetros
+   * @param aPeriods Periodos ejecutados
+   * @param worlds Mundos del modelo, que ya no van a cambiar
+   */
+  EnsembleResult (int aRun, ASMModelParams aParams, long aPeriods,
+                  World worlds[])
+  {
+    int k, j;
+
+    run = aRun;
+    params = aParams;
+    periods = aPeriods;
+    snapshots = new WorldSnapshot[worlds.length];
+    statistics = new MarketStatistics[worlds.length][];
+    for (k = 0; k < worlds.length; k++)
+      {
+        snapshots[k] = worlds[k].getSnapshot ();
+        statistics[k] = new MarketStatistics[worlds[k].getNumStatWindows ()];
+        for (j = 0; j < statistics[k].length; j++)
+          statistics[k][j] = worlds[k].getStatistics (j);
+      }
+  }
+
+  public int getRun ()
+  {
+    return run;
+  }
+
+  public ASMModelParams getParams ()
+  {
+    return params;
+  }
+
+  /**Devuelve la semilla de la simulación
+   *
+   * @return randomSeed
+   */
+  public int getSeed ()
+  {
+    return params.randomSeed;
+  }
+
+  public long getPeriods ()
+  {
+    return periods;
+  }
+
+  /**Anota que las reglas de parada terminaron la simulación antes de
+   * tiempo
+   *
+   * @param aReason Motivo (StoppingRules.DIVERGED o CONVERGED)
+   * @param aDetail Explicación
+   * @return this
+   */
+  Object setStop (String aReason, String aDetail)
+  {
+    stopReason = aReason;
+    stopDetail = aDetail;
+    return this;
+  }
+
+  /**Devuelve el motivo de la parada anticipada
+   *
+   * @return StoppingRules.DIVERGED, StoppingRules.CONVERGED o "" si la
+   * simulación llegó al final
+   */
+  public String getStopReason ()
+  {
+    return stopReason;
+  }
+
+  public String getStopDetail ()
+  {
+    return stopDetail;
+  }
+
+  /**Devuelve el número de activos
+   *
+   * @return número de mundos
+   */
+  public int getNumAssets ()
+  {
+    return snapshots.length;
+  }
+
+  /**Devuelve la última foto del mundo de un activo
+   *
+   * @param asset Activo
+   * @return foto del último periodo
+   */
+  public WorldSnapshot getSnapshot (int asset)
+  {
+    return snapshots[asset];
+  }
+
+  /**Devuelve el número de ventanas de estadísticos de un activo
+   *
+   * @param asset Activo
+   * @return número de ventanas
+   */
+  public int getNumStatWindows (int asset)
+  {
+    return statistics[asset].length;
+  }
+
+  /**Devuelve los estadísticos de una ventana de un activo
+   *
+   * @param asset Activo
+   * @param window Ventana
+   * @return estadísticos
+   */
+  public MarketStatistics getStatistics (int asset, int window)
+  {
+    return statistics[asset][window];
+  }
+}
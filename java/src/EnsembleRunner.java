@@ -0,0 +1,195 @@
+//package asmjava;
+
+import swarm.defobj.Zone;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>Title: EnsembleRunner</p>
+ * <p>Description: Ejecuta un conjunto de simulaciones independientes
+ * (réplicas con distintas semillas, o puntos de un barrido de parámetros)
+ * a la vez en la misma máquina virtual, sobre un ForkJoinPool, cuyos hilos
+ * se roban el trabajo unos a otros cuando se quedan sin tareas. Cada
+ * simulación es un ASMModelSwarm con sus propios agentes, mundos y
+ * parámetros, que ejecuta un ASMEngine.</p>
+ * <p>Los resultados (EnsembleResult) se recogen con next() según van
+ * terminando las simulaciones, no en el orden en que se encargaron, para
+ * agregarlos mientras las demás siguen en marcha.</p>
+ * <p>Los modelos no comparten variables de clase, pero su construcción
+ * crea objetos de Swarm y se hace de uno en uno con
+ * ASMModelSwarm.BUILDLOCK. Los periodos corren en paralelo porque no
+ * crean objetos de Swarm: cada BFagent hace en la construcción el
+ * BitVector en el que recoge el estado del mundo y lo reutiliza. Las
+ * simulaciones necesitan rngType 1 ó 2, porque el generador de Swarm es
+ * uno para todos, y no deben compartir historyFile ni checkpointFile.</p>
+ */
+public class EnsembleRunner {
+
+  /**Zona de memoria Swarm de los modelos*/
+  Zone zone;
+  /**Hilos*/
+  ForkJoinPool pool;
+  /**Simulaciones terminadas, en el orden en que terminan*/
+  ExecutorCompletionService done;
+  /**Simulaciones encargadas y resultados recogidos*/
+  int submitted, collected;
+
+  /**Constructor de la clase
+   *
+   * @param aZone Zona de memoria Swarm de los modelos
+   * @param threads Número de hilos
+   */
+  public EnsembleRunner (Zone aZone, int threads)
+  {
+    zone = aZone;
+    pool = new ForkJoinPool (threads);
+    done = new ExecutorCompletionService (pool);
+  }
+
+  /**Constructor de la clase, con un hilo por procesador
+   *
+   * @param aZone Zona de memoria Swarm de los modelos
+   */
+  public EnsembleRunner (Zone aZone)
+  {
+    this (aZone, Runtime.getRuntime ().availableProcessors ());
+  }
+
+  /**Encarga una simulación
+   *
+   * @param modelParams Parámetros del modelo, que la simulación no cambia
+   * y no deben cambiarse hasta que termine
+   * @param bfParams Parámetros de los agentes, ya inicializados con
+   * init(); pueden ser los mismos para todas las simulaciones
+   * @param periods Periodos que se ejecutan después del calentamiento
+   * @return número de la simulación
+   */
+  public int submit (final ASMModelParams modelParams, final BFParams bfParams,
+                     final long periods)
+  {
+    final int run = submitted;
+
+    if (modelParams.rngType == 0)
+      throw new IllegalArgumentException ("ensemble runs need rngType 1 or 2");
+    done.submit (new Callable () {
+        public Object call () {
+          return run (zone, run, modelParams, bfParams, periods);
+        }
+      });
+    submitted++;
+    return run;
+  }
+
+  /**Encarga n réplicas que sólo se diferencian en la semilla
+   *
+   * @param modelParams Parámetros del modelo; cada réplica usa una copia
+   * @param bfParams Parámetros de los agentes, ya inicializados
+   * @param firstSeed Semilla de la primera réplica; las demás usan las
+   * siguientes
+   * @param n Número de réplicas
+   * @param periods Periodos de cada réplica
+   * @return número de la primera réplica
+   */
+  public int submitSeeds (ASMModelParams modelParams, BFParams bfParams,
+                          int firstSeed, int n, long periods)
+  {
+    int first = submitted;
+    ASMModelParams copy;
+
+    for (int i = 0; i < n; i++)
+      {
+        copy = modelParams.copy (zone);
+        copy.randomSeed = firstSeed + i;
+        submit (copy, bfParams, periods);
+      }
+    return first;
+  }
+
+  /**Construye y ejecuta una simulación; se puede llamar desde varios
+   * hilos a la vez. Lo usan también los SweepWorker.
+   *
+   * @param aZone Zona de memoria Swarm del modelo
+   * @param run Número de la simulación
+   * @param modelParams Parámetros del modelo
+   * @param bfParams Parámetros de los agentes, ya inicializados
+   * @param periods Periodos que se ejecutan después del calentamiento
+   * @return su resultado
+   */
+  static EnsembleResult run (Zone aZone, int run, ASMModelParams modelParams,
+                             BFParams bfParams, long periods)
+  {
+    ASMModelSwarm model;
+    Output output;
+    ASMEngine engine;
+    EnsembleResult result;
+
+    synchronized (ASMModelSwarm.BUILDLOCK)
+      {
+        output = new Output (aZone);
+        output.createEnd ();
+        model = new ASMModelSwarm (aZone);
+        model.setOutputObject (output);
+        model.setParamsModel$BF (modelParams, bfParams);
+        model.buildObjects ();
+      }
+
+    engine = new ASMEngine (model);
+    engine.warmUp ();
+    engine.run (periods);
+    engine.finish ();
+    result = new EnsembleResult (run, modelParams, engine.getPeriods (),
+                                 model.worlds);
+    result.setStop (engine.getStopReason (), engine.getStopDetail ());
+
+    synchronized (ASMModelSwarm.BUILDLOCK)
+      {
+        model.drop ();
+      }
+    return result;
+  }
+
+  /**Devuelve el resultado de la siguiente simulación que termine,
+   * esperando a que termine alguna si hace falta
+   *
+   * @return resultado, o null si ya se han recogido todas las encargadas
+   */
+  public EnsembleResult next ()
+  {
+    if (collected == submitted)
+      return null;
+    try
+      {
+        collected++;
+        return (EnsembleResult) done.take ().get ();
+      }
+    catch (InterruptedException e)
+      {
+        Thread.currentThread ().interrupt ();
+        throw new RuntimeException ("Interrupted waiting for an ensemble run");
+      }
+    catch (ExecutionException e)
+      {
+        throw new RuntimeException ("Exception in ensemble run: "
+                                    + e.getCause ());
+      }
+  }
+
+  /**Devuelve el número de simulaciones encargadas cuyo resultado no se ha
+   * recogido todavía
+   *
+   * @return simulaciones pendientes
+   */
+  public int getPending ()
+  {
+    return submitted - collected;
+  }
+
+  /**Termina los hilos, después de las simulaciones encargadas*/
+  public void shutdown ()
+  {
+    pool.shutdown ();
+  }
+}
@@ -0,0 +1,232 @@
+//package asmjava;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Title: History</p>
+ * <p>Description: Historia de una serie (el precio o el dividendo) que
+ * responde en tiempo constante a la media de cualquier ventana, actual o
+ * retrasada. Guarda los últimos valores en un buffer circular junto con sus
+ * sumas acumuladas (sumas prefijas), de modo que la suma de cualquier tramo
+ * es la diferencia de dos sumas acumuladas. Además mantiene, para cada una
+ * de las ventanas configuradas, la media móvil exponencial de la serie y la
+ * de la serie retrasada tantos periodos como la ventana.</p>
+ * <p>Sustituye a los 16 objetos MovingAverage y a los arrays pricehistory y
+ * divhistory que World usaba antes: cada periodo se hace una sola inserción.
+ * Las medias exponenciales se calculan con las mismas operaciones que la
+ * clase MovingAverage original (src/MovingAverage.m), por lo que dan
+ * exactamente los mismos valores.</p>
+ */
+public class History {
+
+  /**Número de valores que se conservan*/
+  int capacity;
+  /**Últimos valores de la serie; el valor n está en values[n % capacity]*/
+  double values[];
+  /**Suma acumulada hasta cada valor, menos una base que se ajusta de vez en
+   * cuando para que no crezca sin límite*/
+  double prefix[];
+  /**Número de valores insertados, contando el relleno inicial*/
+  long count;
+
+  /**Número de ventanas configuradas*/
+  int numWindows;
+  /**Anchura de cada ventana*/
+  int width[];
+  /**Media móvil exponencial de la serie para cada ventana*/
+  double ewma[];
+  /**Media móvil exponencial de la serie retrasada width[i] periodos*/
+  double oldewma[];
+  /**Pesos de las medias exponenciales, como en MovingAverage.m:
+   * bweight = 1 - exp(-1/w), aweight = 1 - bweight*/
+  double aweight[], bweight[];
+
+  /**Constructor de la clase. Se supone que la serie ha valido siempre
+   * "initial", igual que hacía World con sus medias móviles.
+   *
+   * @param aCapacity Número de valores que se conservan. Debe ser mayor que
+   * el doble de la ventana más larga para poder calcular la media retrasada.
+   * @param widths Anchura de cada ventana
+   * @param initial Valor inicial de la serie
+   */
+  History (int aCapacity, int widths[], double initial)
+  {
+    int i;
+
+    capacity = aCapacity;
+    values = new double[capacity];
+    prefix = new double[capacity];
+    for (i = 0; i < capacity; i++)
+      {
+        values[i] = initial;
+        prefix[i] = (i + 1)*initial;
+      }
+    count = capacity;
+
+    numWindows = widths.length;
+    width = new int[numWindows];
+    ewma = new double[numWindows];
+    oldewma = new double[numWindows];
+    aweight = new double[numWindows];
+    bweight = new double[numWindows];
+    for (i = 0; i < numWindows; i++)
+      {
+        width[i] = widths[i];
+        ewma[i] = initial;
+        oldewma[i] = initial;
+        bweight[i] = 1-Math.exp(-1.0/widths[i]);
+        aweight[i] = 1.0 - bweight[i];
+      }
+  }
+
+  /**Añade el valor de este periodo
+   *
+   * @param x Valor
+   */
+  public void append (double x)
+  {
+    int i, k;
+    double last = prefix[(int)((count - 1) % capacity)];
+
+    for (i = 0; i < numWindows; i++)
+      {
+        // The lagged average sees the value width[i] periods before x
+        oldewma[i] = aweight[i]*oldewma[i] + bweight[i]*valueAt(width[i] - 1);
+        ewma[i] = aweight[i]*ewma[i] + bweight[i]*x;
+      }
+
+    k = (int)(count % capacity);
+    values[k] = x;
+    prefix[k] = last + x;
+    count++;
+
+    // Once per turn of the buffer, subtract the oldest prefix sum from all
+    // of them so they stay of the order of capacity*x
+    if (count % capacity == 0)
+      rebase ();
+  }
+
+  /**Resta a todas las sumas acumuladas la más antigua que se conserva*/
+  void rebase ()
+  {
+    double base = prefix[(int)(count % capacity)];
+
+    for (int k = 0; k < capacity; k++)
+      prefix[k] -= base;
+  }
+
+  /**Devuelve el valor de hace "lag" periodos (0 es el último)
+   *
+   * @param lag Retraso, menor que capacity
+   * @return valor
+   */
+  public double valueAt (int lag)
+  {
+    return values[(int)((count - 1 - lag) % capacity)];
+  }
+
+  /**Devuelve la suma de "w" valores que terminan hace "lag" periodos
+   *
+   * @param w Anchura; w + lag debe ser menor que capacity
+   * @param lag Retraso
+   * @return suma
+   */
+  public double sum (int w, int lag)
+  {
+    long hi = count - 1 - lag;
+
+    return prefix[(int)(hi % capacity)] - prefix[(int)((hi - w) % capacity)];
+  }
+
+  /**Devuelve la media de "w" valores que terminan hace "lag" periodos
+   *
+   * @param w Anchura; w + lag debe ser menor que capacity
+   * @param lag Retraso
+   * @return media
+   */
+  public double mean (int w, int lag)
+  {
+    return sum (w, lag)/w;
+  }
+
+  /**Devuelve la media simple de la ventana i
+   *
+   * @param i Ventana
+   * @return media de los últimos width[i] valores
+   */
+  public double getMA (int i)
+  {
+    return mean (width[i], 0);
+  }
+
+  /**Devuelve la media simple de la ventana i, retrasada width[i] periodos
+   *
+   * @param i Ventana
+   * @return media de los width[i] valores anteriores a los últimos width[i]
+   */
+  public double getOldMA (int i)
+  {
+    return mean (width[i], width[i]);
+  }
+
+  /**Devuelve la media exponencial de la ventana i
+   *
+   * @param i Ventana
+   * @return ewma[i]
+   */
+  public double getEWMA (int i)
+  {
+    return ewma[i];
+  }
+
+  /**Devuelve la media exponencial de la serie retrasada width[i] periodos
+   *
+   * @param i Ventana
+   * @return oldewma[i]
+   */
+  public double getOldEWMA (int i)
+  {
+    return oldewma[i];
+  }
+
+  /**Devuelve el número de valores que se conservan
+   *
+   * @return capacity
+   */
+  public int getCapacity ()
+  {
+    return capacity;
+  }
+
+  /**Escribe el estado de la historia: valores, sumas acumuladas y medias
+   * exponenciales
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  void writeState (DataOutputStream out) throws IOException
+  {
+    out.writeLong (count);
+    StateIO.writeDoubles (out, values);
+    StateIO.writeDoubles (out, prefix);
+    StateIO.writeDoubles (out, ewma);
+    StateIO.writeDoubles (out, oldewma);
+  }
+
+  /**Lee el estado escrito por writeState en una historia de la misma
+   * capacidad y las mismas ventanas
+   *
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer o no coincide
+   */
+  void readState (DataInputStream in) throws IOException
+  {
+    count = in.readLong ();
+    StateIO.readDoubles (in, values);
+    StateIO.readDoubles (in, prefix);
+    StateIO.readDoubles (in, ewma);
+    StateIO.readDoubles (in, oldewma);
+  }
+}
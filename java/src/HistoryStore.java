@@ -0,0 +1,362 @@
+//package asmjava;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Title: HistoryStore</p>
+ * <p>Description: Almacén de la historia completa del mercado en un fichero
+ * proyectado en memoria. Cada periodo se añade un registro con el precio, el
+ * dividendo, el volumen y el precio neutral al riesgo, sin límite de
+ * periodos, y cualquier registro se puede leer después por su número de
+ * periodo.</p>
+ * <p>El fichero se divide en bloques de chunkRecords registros que se
+ * proyectan en memoria cuando hacen falta. Sólo se mantienen proyectados los
+ * maxChunks bloques usados más recientemente, así que la memoria ocupada no
+ * depende de la duración de la simulación: los datos viven en el fichero y en
+ * la caché de páginas del sistema operativo. Los bloques que se dejan de
+ * proyectar se escriben antes en disco, y force() escribe los demás, de
+ * modo que después de force() (p. ej. al guardar un Checkpoint) toda la
+ * historia está en el fichero aunque el proceso muera.</p>
+ * <p>Formato: una cabecera de HEADER bytes (MAGIC y número de registros)
+ * seguida de los registros, cada uno de FIELDS doubles.</p>
+ */
+public class HistoryStore {
+
+  /**Campos de cada registro*/
+  public static final int PRICE = 0;
+  public static final int DIVIDEND = 1;
+  public static final int VOLUME = 2;
+  public static final int RISKNEUTRAL = 3;
+  /**Número de campos de cada registro*/
+  public static final int FIELDS = 4;
+  /**Bytes de cada registro*/
+  public static final int RECORD = 8*FIELDS;
+  /**Bytes de la cabecera*/
+  public static final int HEADER = 64;
+  /**Marca de los ficheros de historia*/
+  public static final long MAGIC = 0x41534d4849535431L;   // "ASMHIST1"
+
+  /**Registros por bloque por defecto (2 MB por bloque)*/
+  public static final int CHUNKRECORDS = 65536;
+  /**Bloques proyectados a la vez por defecto*/
+  public static final int MAXCHUNKS = 8;
+
+  /**Fichero y canal*/
+  RandomAccessFile file;
+  FileChannel channel;
+  /**true si sólo se lee*/
+  boolean readOnly;
+  /**Cabecera proyectada*/
+  MappedByteBuffer header;
+  /**Registros por bloque*/
+  int chunkRecords;
+  /**Bloques proyectados, del usado hace más tiempo al más reciente*/
+  LinkedHashMap chunks;
+  /**Último bloque usado, para no consultar la tabla en cada acceso*/
+  long lastChunk = -1;
+  MappedByteBuffer lastBuffer;
+  /**Número de registros*/
+  long count;
+
+  /**Crea un almacén nuevo, vaciando el fichero si ya existía
+   *
+   * @param fileName Nombre del fichero
+   * @throws IOException si no se puede crear el fichero
+   */
+  public HistoryStore (String fileName) throws IOException
+  {
+    this (fileName, false, CHUNKRECORDS, MAXCHUNKS);
+  }
+
+  /**Constructor de la clase
+   *
+   * @param fileName Nombre del fichero
+   * @param read true para abrir un almacén existente sólo para leerlo;
+   * false para crear uno nuevo
+   * @param aChunkRecords Registros por bloque
+   * @param maxChunks Bloques proyectados a la vez como máximo
+   * @throws IOException si no se puede abrir el fichero o no es un
+   * fichero de historia
+   */
+  public HistoryStore (String fileName, boolean read, int aChunkRecords,
+                       int maxChunks) throws IOException
+  {
+    this (fileName, read, false, aChunkRecords, maxChunks);
+  }
+
+  /**Constructor de la clase
+   *
+   * @param fileName Nombre del fichero
+   * @param read true para abrir un almacén existente sólo para leerlo
+   * @param keep Si no se abre sólo para leer: true para seguir añadiendo
+   * registros a un almacén existente (o crear uno nuevo si no existe) y
+   * false para vaciarlo
+   * @param aChunkRecords Registros por bloque
+   * @param maxChunks Bloques proyectados a la vez como máximo
+   * @throws IOException si no se puede abrir el fichero o no es un
+   * fichero de historia
+   */
+  public HistoryStore (String fileName, boolean read, boolean keep,
+                       int aChunkRecords, final int maxChunks)
+    throws IOException
+  {
+    readOnly = read;
+    chunkRecords = aChunkRecords;
+    chunks = new LinkedHashMap (2*maxChunks, 0.75f, true) {
+        protected boolean removeEldestEntry (Map.Entry eldest) {
+          if (size () <= maxChunks)
+            return false;
+          // An unmapped chunk is no longer written by force() or close()
+          if (!readOnly)
+            ((MappedByteBuffer)eldest.getValue ()).force ();
+          return true;
+        }
+      };
+
+    if (readOnly)
+      {
+        file = new RandomAccessFile (fileName, "r");
+        channel = file.getChannel ();
+        header = channel.map (FileChannel.MapMode.READ_ONLY, 0, HEADER);
+        if (header.getLong (0) != MAGIC)
+          throw new IOException (fileName + " is not a history file");
+        count = header.getLong (8);
+      }
+    else
+      {
+        file = new RandomAccessFile (fileName, "rw");
+        if (!keep || file.length () < HEADER)
+          file.setLength (0);
+        channel = file.getChannel ();
+        header = channel.map (FileChannel.MapMode.READ_WRITE, 0, HEADER);
+        if (keep && header.getLong (0) == MAGIC)
+          // A run that died before close() leaves the file longer than
+          // its records, but the count in the header is always right
+          count = Math.min (header.getLong (8),
+                            (channel.size () - HEADER)/RECORD);
+        else if (keep && channel.size () > HEADER)
+          throw new IOException (fileName + " is not a history file");
+        else
+          {
+            header.putLong (0, MAGIC);
+            count = 0;
+          }
+        header.putLong (8, count);
+      }
+  }
+
+  /**Abre un almacén existente para leerlo, p. ej. desde el código de análisis
+   *
+   * @param fileName Nombre del fichero
+   * @return el almacén
+   * @throws IOException si no se puede abrir
+   */
+  public static HistoryStore open (String fileName) throws IOException
+  {
+    return new HistoryStore (fileName, true, CHUNKRECORDS, MAXCHUNKS);
+  }
+
+  /**Abre un almacén existente para seguir añadiéndole registros, p. ej. al
+   * continuar una simulación desde un Checkpoint. Si no existe, lo crea.
+   *
+   * @param fileName Nombre del fichero
+   * @return el almacén
+   * @throws IOException si no se puede abrir
+   */
+  public static HistoryStore reopen (String fileName) throws IOException
+  {
+    return new HistoryStore (fileName, false, true, CHUNKRECORDS, MAXCHUNKS);
+  }
+
+  /**Devuelve el bloque proyectado que contiene un registro, proyectándolo
+   * (y olvidando el usado hace más tiempo) si hace falta
+   *
+   * @param chunk Número de bloque
+   * @return bloque
+   */
+  MappedByteBuffer chunk (long chunk) throws IOException
+  {
+    Long key;
+    MappedByteBuffer buffer;
+    long start, length;
+
+    if (chunk == lastChunk)
+      return lastBuffer;
+
+    key = Long.valueOf (chunk);
+    buffer = (MappedByteBuffer)chunks.get (key);
+    if (buffer == null)
+      {
+        start = HEADER + chunk*chunkRecords*RECORD;
+        length = (long)chunkRecords*RECORD;
+        if (readOnly)
+          {
+            // The last chunk of a finished run is usually shorter
+            length = Math.min (length, channel.size () - start);
+            buffer = channel.map (FileChannel.MapMode.READ_ONLY, start, length);
+          }
+        else
+          buffer = channel.map (FileChannel.MapMode.READ_WRITE, start, length);
+        chunks.put (key, buffer);
+      }
+    lastChunk = chunk;
+    lastBuffer = buffer;
+    return buffer;
+  }
+
+  /**Añade el registro del siguiente periodo
+   *
+   * @param price Precio
+   * @param dividend Dividendo
+   * @param volume Volumen negociado
+   * @param riskNeutral Precio neutral al riesgo
+   * @throws IOException si no se puede ampliar el fichero
+   */
+  public void append (double price, double dividend, double volume,
+                      double riskNeutral) throws IOException
+  {
+    MappedByteBuffer buffer = chunk (count/chunkRecords);
+    int offset = (int)(count%chunkRecords)*RECORD;
+
+    buffer.putDouble (offset, price);
+    buffer.putDouble (offset + 8, dividend);
+    buffer.putDouble (offset + 16, volume);
+    buffer.putDouble (offset + 24, riskNeutral);
+    count++;
+    header.putLong (8, count);
+  }
+
+  /**Olvida los registros a partir de uno dado, p. ej. los que se
+   * escribieron después del checkpoint desde el que se continúa
+   *
+   * @param n Número de registros que se conservan
+   */
+  public void truncate (long n)
+  {
+    if (readOnly)
+      throw new IllegalStateException ("history store is read-only");
+    if (n < count)
+      {
+        count = n;
+        header.putLong (8, count);
+      }
+  }
+
+  /**Devuelve un campo de un registro
+   *
+   * @param n Número de registro (periodo), de 0 a size()-1
+   * @param field PRICE, DIVIDEND, VOLUME o RISKNEUTRAL
+   * @return valor
+   */
+  public double get (long n, int field)
+  {
+    if (n < 0 || n >= count)
+      throw new IndexOutOfBoundsException ("period " + n + " of " + count);
+    try
+      {
+        return chunk (n/chunkRecords).getDouble ((int)(n%chunkRecords)*RECORD + 8*field);
+      }
+    catch (IOException e)
+      {
+        throw new RuntimeException (e.getMessage ());
+      }
+  }
+
+  /**Copia un campo de varios registros consecutivos
+   *
+   * @param from Primer registro
+   * @param field Campo
+   * @param out Array de salida
+   * @param n Número de registros
+   */
+  public void copy (long from, int field, double out[], int n)
+  {
+    for (int i = 0; i < n; i++)
+      out[i] = get (from + i, field);
+  }
+
+  /**Devuelve el precio del periodo n*/
+  public double getPrice (long n)
+  {
+    return get (n, PRICE);
+  }
+
+  /**Devuelve el dividendo del periodo n*/
+  public double getDividend (long n)
+  {
+    return get (n, DIVIDEND);
+  }
+
+  /**Devuelve el volumen del periodo n*/
+  public double getVolume (long n)
+  {
+    return get (n, VOLUME);
+  }
+
+  /**Devuelve el precio neutral al riesgo del periodo n*/
+  public double getRiskNeutral (long n)
+  {
+    return get (n, RISKNEUTRAL);
+  }
+
+  /**Devuelve el número de registros
+   *
+   * @return count
+   */
+  public long size ()
+  {
+    return count;
+  }
+
+  /**Devuelve el número de bloques proyectados ahora mismo
+   *
+   * @return número de bloques
+   */
+  public int getMappedChunks ()
+  {
+    return chunks.size ();
+  }
+
+  /**Escribe en disco los bloques proyectados y la cabecera, de modo que
+   * todos los registros añadidos hasta ahora sobreviven a una caída del
+   * proceso
+   */
+  public void force ()
+  {
+    Iterator it;
+
+    if (readOnly)
+      return;
+    for (it = chunks.values ().iterator (); it.hasNext ();)
+      ((MappedByteBuffer)it.next ()).force ();
+    header.force ();
+  }
+
+  /**Escribe en disco lo pendiente y cierra el fichero. Al cerrar, el
+   * fichero se recorta al último registro.
+   */
+  public void close ()
+  {
+    try
+      {
+        force ();
+        chunks.clear ();
+        lastChunk = -1;
+        lastBuffer = null;
+        if (!readOnly)
+          file.setLength (HEADER + count*RECORD);
+        channel.close ();
+        file.close ();
+      }
+    catch (IOException e)
+      {
+        System.err.println ("Exception closing history store: " + e.getMessage ());
+      }
+  }
+}
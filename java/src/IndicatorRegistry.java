@@ -0,0 +1,411 @@
+//package asmjava;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Title: IndicatorRegistry</p>
+ * <p>Description: Registro de los indicadores (world bits) de un World. Cada
+ * bit se declara como una comparación "izquierda > derecha" entre dos series
+ * con nombre (el precio, el dividendo, una media móvil, un ratio, el bit
+ * aleatorio...) o entre una serie y un umbral numérico. El World publica el
+ * valor de cada serie una vez por periodo con setSeries().</p>
+ * <p>Las declaraciones se compilan una sola vez en un programa plano: dos
+ * arrays de enteros con los huecos de las series que compara cada bit, y un
+ * array de doubles con el valor de las series y de las constantes. Evaluar
+ * un bit es una comparación entre dos elementos de ese array, de modo que el
+ * coste por periodo no depende de cómo se declaró el bit.</p>
+ * <p>Los nombres de los bits se buscan en una tabla hash. seriesUsedBy dice
+ * qué series leen unos bits, de modo que el World sólo calcula en cada
+ * periodo las que hacen falta.</p>
+ */
+public class IndicatorRegistry {
+
+  /**Nombres de las series, en el orden de sus huecos*/
+  ArrayList seriesNames = new ArrayList();
+  /**Hueco de cada serie o constante, por nombre*/
+  HashMap seriesIndex = new HashMap();
+
+  /**Declaraciones pendientes de compilar: nombre, descripción, serie de la
+   * izquierda y serie (o umbral) de la derecha de cada bit*/
+  ArrayList names = new ArrayList();
+  ArrayList descriptions = new ArrayList();
+  ArrayList lefts = new ArrayList();
+  ArrayList rights = new ArrayList();
+
+  /**Número del bit, por nombre*/
+  HashMap bitIndex = new HashMap();
+
+  /**Programa compilado: el bit i vale 1 si value[lhs[i]] > value[rhs[i]]*/
+  int lhs[], rhs[];
+  /**Valor de cada serie en el periodo actual, seguido de las constantes*/
+  double value[];
+  /**Número de bits compilados*/
+  int nbits;
+
+  /**Longitudes por defecto de las medias móviles, como World.malength*/
+  static final int DEFAULT_MALENGTH[] = {5, 20, 100, World.MAXHISTORY};
+  /**Registro con los bits de siempre, para getDefaults()*/
+  static IndicatorRegistry defaults;
+
+  /**Registra una serie que el World publicará cada periodo
+   *
+   * @param name Nombre de la serie
+   * @return hueco de la serie, que se pasa a setSeries
+   */
+  public int addSeries (String name)
+  {
+    Integer slot = (Integer)seriesIndex.get (name);
+
+    if (slot != null)
+      return slot.intValue ();
+    seriesNames.add (name);
+    seriesIndex.put (name, Integer.valueOf (seriesNames.size () - 1));
+    value = null;
+    return seriesNames.size () - 1;
+  }
+
+  /**Declara un bit que vale 1 si la serie "left" es mayor que la serie
+   * "right". Cualquiera de las dos puede ser un número, que se toma como
+   * una constante.
+   *
+   * @param name Nombre del bit
+   * @param description Breve descripción
+   * @param left Serie o número de la izquierda
+   * @param right Serie o número de la derecha
+   * @return this
+   */
+  public Object declare (String name, String description, String left,
+                         String right)
+  {
+    if (bitIndex.get (name) != null || names.contains (name))
+      {
+        System.out.println ("Indicator " + name + " declared twice");
+        return this;
+      }
+    names.add (name);
+    descriptions.add (description);
+    lefts.add (left);
+    rights.add (right);
+    return this;
+  }
+
+  /**Declara un bit que vale 1 si la serie "left" supera un umbral
+   *
+   * @param name Nombre del bit
+   * @param description Breve descripción
+   * @param left Serie
+   * @param threshold Umbral
+   * @return this
+   */
+  public Object declare (String name, String description, String left,
+                         double threshold)
+  {
+    return declare (name, description, left, Double.toString (threshold));
+  }
+
+  /**Devuelve el hueco de una serie o de una constante numérica. Las
+   * constantes ocupan huecos a partir de las series, en el orden en que
+   * aparecen.
+   *
+   * @param operand Nombre de la serie o número
+   * @param constants Constantes encontradas hasta ahora
+   * @return hueco
+   */
+  int resolve (String operand, ArrayList constants)
+  {
+    Integer slot = (Integer)seriesIndex.get (operand);
+    double c;
+    int i;
+
+    if (slot != null)
+      return slot.intValue ();
+    try
+      {
+        c = Double.parseDouble (operand);
+      }
+    catch (NumberFormatException e)
+      {
+        System.out.println ("Unknown series " + operand + " in an indicator; using 0");
+        c = 0.0;
+      }
+    for (i = 0; i < constants.size (); i++)
+      if (((Double)constants.get (i)).doubleValue () == c)
+        return seriesNames.size () + i;
+    constants.add (Double.valueOf (c));
+    return seriesNames.size () + constants.size () - 1;
+  }
+
+  /**Compila todas las declaraciones en el programa plano. Puede llamarse
+   * otra vez si se declaran más bits; los números de los ya compilados no
+   * cambian.
+   *
+   * @return this
+   */
+  public Object compile ()
+  {
+    ArrayList constants = new ArrayList();
+    int nseries = seriesNames.size ();
+    double old[] = value;
+    int i;
+
+    nbits = names.size ();
+    lhs = new int[nbits];
+    rhs = new int[nbits];
+    bitIndex.clear ();
+    for (i = 0; i < nbits; i++)
+      {
+        lhs[i] = resolve ((String)lefts.get (i), constants);
+        rhs[i] = resolve ((String)rights.get (i), constants);
+        bitIndex.put (names.get (i), Integer.valueOf (i));
+      }
+
+    value = new double[nseries + constants.size ()];
+    if (old != null)
+      System.arraycopy (old, 0, value, 0, Math.min (old.length, nseries));
+    for (i = 0; i < constants.size (); i++)
+      value[nseries + i] = ((Double)constants.get (i)).doubleValue ();
+
+    return this;
+  }
+
+  /**Declara los bits de siempre del World, en el orden que espera el resto
+   * del programa, sobre las series que registra World.declareIndicators.
+   * Los nombres de los bits de medias móviles dependen de sus longitudes.
+   *
+   * @param malength Longitud de cada media móvil
+   * @return this
+   */
+  public Object declareStandardBits (int malength[])
+  {
+    int nmas = malength.length;
+    int j, k;
+    String d, p;
+
+    declare ("on", "dummy bit -- always on", "1", "0");   // 0
+    declare ("off", "dummy bit -- always off", "0", "0");
+    declare ("random", "random on or off", "random", "0");
+
+    declare ("dup", "dividend went up this period", "dup0", "0");  // 3
+    declare ("dup1", "dividend went up one period ago", "dup1", "0");
+    declare ("dup2", "dividend went up two periods ago", "dup2", "0");
+    declare ("dup3", "dividend went up three periods ago", "dup3", "0");
+    declare ("dup4", "dividend went up four periods ago", "dup4", "0");
+
+    // With the default malength these are d5up ... d500up (8),
+    // d>d5 ... d>d500 (12) and d5>d20 ... d100>d500 (16)
+    for (j = 0; j < nmas; j++)
+      {
+        d = "dMA" + malength[j];
+        declare ("d" + malength[j] + "up",
+                 malength[j] + "-period MA of dividend went up",
+                 d, d + "old");
+      }
+
+    for (j = 0; j < nmas; j++)
+      declare ("d>d" + malength[j],
+               "dividend > " + malength[j] + "-period MA",
+               "dividend", "dMA" + malength[j]);
+
+    for (j = 0; j < nmas-1; j++)
+      for (k = j+1; k < nmas; k++)
+        declare ("d" + malength[j] + ">d" + malength[k],
+                 "dividend: " + malength[j] + "-period MA > "
+                 + malength[k] + "-period MA",
+                 "dMA" + malength[j], "dMA" + malength[k]);
+
+    for (j = 0; j < World.NRATIOS; j++)  // 22
+      declare ("d/md>" + World.ratioNames[j],
+               "dividend/mean dividend > " + World.ratioNames[j],
+               "d/md", World.ratios[j]);
+
+    for (j = 0; j < World.NRATIOS; j++)  // 32
+      declare ("pr/d>" + World.ratioNames[j],
+               "price*interest/dividend > " + World.ratioNames[j],
+               "pr/d", World.ratios[j]);
+
+    declare ("pup", "price went up this period", "pup0", "0");  // 42
+    declare ("pup1", "price went up one period ago", "pup1", "0");
+    declare ("pup2", "price went up two periods ago", "pup2", "0");
+    declare ("pup3", "price went up three periods ago", "pup3", "0");
+    declare ("pup4", "price went up four periods ago", "pup4", "0");
+
+    // With the default malength these are p5up ... p500up (47),
+    // p>p5 ... p>p500 (51) and p5>p20 ... p100>p500 (55)
+    for (j = 0; j < nmas; j++)
+      {
+        p = "pMA" + malength[j];
+        declare ("p" + malength[j] + "up",
+                 malength[j] + "-period MA of price went up",
+                 p, p + "old");
+      }
+
+    for (j = 0; j < nmas; j++)
+      declare ("p>p" + malength[j],
+               "price > " + malength[j] + "-period MA",
+               "price", "pMA" + malength[j]);
+
+    for (j = 0; j < nmas-1; j++)
+      for (k = j+1; k < nmas; k++)
+        declare ("p" + malength[j] + ">p" + malength[k],
+                 "price: " + malength[j] + "-period MA > "
+                 + malength[k] + "-period MA",
+                 "pMA" + malength[j], "pMA" + malength[k]);
+    return this;
+  }
+
+  /**Devuelve un registro con sólo los bits de siempre y las medias móviles
+   * por defecto, sin compilar. Sirve para buscar números de bit antes de que
+   * exista ningún World, como hace BFParams al leer los nombres de sus bits;
+   * los números coinciden con los de cualquier World con esas medias, porque
+   * los bits de siempre se declaran los primeros.
+   *
+   * @return registro compartido, que no debe modificarse
+   */
+  public static synchronized IndicatorRegistry getDefaults ()
+  {
+    if (defaults == null)
+      {
+        defaults = new IndicatorRegistry();
+        defaults.declareStandardBits (DEFAULT_MALENGTH);
+      }
+    return defaults;
+  }
+
+  /**Dice qué series leen unos bits compilados, para que el World calcule
+   * sólo esas
+   *
+   * @param want Bits, o null para todos
+   * @return array con true en el hueco de cada serie que lee alguno de los
+   * bits (las constantes no cuentan)
+   */
+  public boolean[] seriesUsedBy (boolean want[])
+  {
+    boolean used[] = new boolean[seriesNames.size ()];
+    int i;
+
+    for (i = 0; i < nbits; i++)
+      if (want == null || want[i])
+        {
+          if (lhs[i] < used.length)
+            used[lhs[i]] = true;
+          if (rhs[i] < used.length)
+            used[rhs[i]] = true;
+        }
+    return used;
+  }
+
+  /**Publica el valor de una serie en este periodo
+   *
+   * @param slot Hueco devuelto por addSeries
+   * @param x Valor
+   */
+  public void setSeries (int slot, double x)
+  {
+    value[slot] = x;
+  }
+
+  /**Evalúa los bits pedidos y los escribe en "bits" con el código del
+   * World: 1 si se cumple y 2 si no.
+   *
+   * @param want Bits que hay que evaluar, o null para evaluarlos todos
+   * @param bits Array de salida, de al menos getNumBits() elementos
+   */
+  public void evaluate (boolean want[], int bits[])
+  {
+    int i;
+
+    if (want == null)
+      {
+        for (i = 0; i < nbits; i++)
+          bits[i] = (value[lhs[i]] > value[rhs[i]] ? 1 : 2);
+        return;
+      }
+    for (i = 0; i < nbits; i++)
+      if (want[i])
+        bits[i] = (value[lhs[i]] > value[rhs[i]] ? 1 : 2);
+  }
+
+  /**Indica si hay declaraciones sin compilar
+   *
+   * @return true si hay que llamar a compile()
+   */
+  public boolean needsCompile ()
+  {
+    return lhs == null || nbits != names.size ();
+  }
+
+  /**Devuelve el número de bits compilados
+   *
+   * @return nbits
+   */
+  public int getNumBits ()
+  {
+    return nbits;
+  }
+
+  /**Devuelve el número de un bit dado su nombre, o World.NULLBIT si no
+   * existe. Los bits declarados y aún sin compilar tienen ya su número, que
+   * es el orden de declaración.
+   *
+   * @param name Nombre del bit
+   * @return número del bit
+   */
+  public int bitNumberOf (String name)
+  {
+    Integer n = (Integer)bitIndex.get (name);
+    int i;
+
+    if (n != null)
+      return n.intValue ();
+    i = names.indexOf (name);
+    return (i < 0 ? World.NULLBIT : i);
+  }
+
+  /**Devuelve la lista de BitName de los bits compilados, en orden
+   *
+   * @return lista de BitName
+   */
+  public LinkedList getBitNames ()
+  {
+    LinkedList list = new LinkedList();
+
+    for (int i = 0; i < nbits; i++)
+      list.add (new BitName ((String)names.get (i), (String)descriptions.get (i)));
+    return list;
+  }
+
+  /**Devuelve la tabla hash de números de bit por nombre
+   *
+   * @return bitIndex
+   */
+  public HashMap getBitIndex ()
+  {
+    return bitIndex;
+  }
+
+  /**Escribe el valor publicado de cada serie y constante
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  void writeState (DataOutputStream out) throws IOException
+  {
+    StateIO.writeDoubles (out, value);
+  }
+
+  /**Lee los valores escritos por writeState en un registro ya compilado
+   * con las mismas declaraciones
+   *
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer o no coincide
+   */
+  void readState (DataInputStream in) throws IOException
+  {
+    StateIO.readDoubles (in, value);
+  }
+}
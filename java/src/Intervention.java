@@ -0,0 +1,19 @@
+//package asmjava;
+
+/**
+ * <p>Title: Intervention</p>
+ * <p>Description: Cambio que se aplica a una rama de MarketFork al crearla,
+ * antes de su primer periodo: un tipo de interés distinto, un salto del
+ * dividendo, otros agentes... Actúa sobre los objetos del modelo de la
+ * rama (mundos, procesos de dividendos, especialistas, agentes), no sobre
+ * los parámetros, que comparten todas las ramas.</p>
+ */
+public interface Intervention {
+
+  /**Aplica el cambio a una rama
+   *
+   * @param model Modelo de la rama, en el periodo de la bifurcación
+   * @param branch Número de la rama
+   */
+  public void apply (ASMModelSwarm model, int branch);
+}
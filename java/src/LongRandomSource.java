@@ -0,0 +1,140 @@
+//package asmjava;
+
+/**
+ * <p>Title: LongRandomSource</p>
+ * <p>Description: Parte común de los generadores escritos en Java: a partir
+ * de un generador de 64 bits aleatorios (nextLong) da uniformes con los 53
+ * bits altos, enteros con el método de multiplicación y rechazo de Lemire, y
+ * normales con el ziggurat de 128 capas de Marsaglia y Tsang en la versión
+ * ZIGNOR de Doornik, que en la gran mayoría de los casos sólo necesita un
+ * número, una multiplicación y una comparación.</p>
+ */
+public abstract class LongRandomSource implements RandomSource {
+
+  /**Número de capas del ziggurat*/
+  static final int ZIGC = 128;
+  /**Comienzo de la cola y volumen de cada capa*/
+  static final double ZIGR = 3.442619855899;
+  static final double ZIGV = 9.91256303526217e-3;
+  /**Bordes de las capas y cociente entre los bordes de capas vecinas*/
+  static final double zigX[] = new double[ZIGC + 1];
+  static final double zigRatio[] = new double[ZIGC];
+
+  static
+  {
+    int i;
+    double f = Math.exp (-0.5*ZIGR*ZIGR);
+
+    zigX[0] = ZIGV/f;
+    zigX[1] = ZIGR;
+    zigX[ZIGC] = 0.0;
+    for (i = 2; i < ZIGC; i++)
+      {
+        zigX[i] = Math.sqrt (-2.0*Math.log (ZIGV/zigX[i - 1] + f));
+        f = Math.exp (-0.5*zigX[i]*zigX[i]);
+      }
+    for (i = 0; i < ZIGC; i++)
+      zigRatio[i] = zigX[i + 1]/zigX[i];
+  }
+
+  /**Función de mezcla de SplitMix64*/
+  static long mix (long z)
+  {
+    z = (z ^ (z >>> 30))*0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27))*0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  /**Devuelve los siguientes 64 bits aleatorios
+   *
+   * @return 64 bits
+   */
+  public abstract long nextLong ();
+
+  /**Devuelve un número uniforme en [0, 1)*/
+  public double nextDouble ()
+  {
+    return (nextLong () >>> 11)*0x1.0p-53;
+  }
+
+  public double uniform (double min, double max)
+  {
+    return min + (max - min)*((nextLong () >>> 11)*0x1.0p-53);
+  }
+
+  public int uniformInt (int min, int max)
+  {
+    long range = (long)max - min + 1;
+    long m, low, threshold;
+
+    // Lemire: the high 32 bits of a 32x32 bit product, rejecting the few
+    // low parts that would bias the result
+    m = (nextLong () >>> 32)*range;
+    low = m & 0xffffffffL;
+    if (low < range)
+      {
+        threshold = (0x100000000L - range)%range;
+        while (low < threshold)
+          {
+            m = (nextLong () >>> 32)*range;
+            low = m & 0xffffffffL;
+          }
+      }
+    return (int)(min + (m >>> 32));
+  }
+
+  public double normal ()
+  {
+    long bits;
+    int i;
+    double u, x, f0, f1;
+
+    for (;;)
+      {
+        // One draw gives both the uniform and the layer
+        bits = nextLong ();
+        u = 2.0*((bits >>> 11)*0x1.0p-53) - 1.0;
+        i = (int)(bits & (ZIGC - 1));
+
+        if (Math.abs (u) < zigRatio[i])
+          return u*zigX[i];
+        if (i == 0)
+          return tail (u < 0.0);
+
+        x = u*zigX[i];
+        f0 = Math.exp (-0.5*(zigX[i]*zigX[i] - x*x));
+        f1 = Math.exp (-0.5*(zigX[i + 1]*zigX[i + 1] - x*x));
+        if (f1 + nextDouble ()*(f0 - f1) < 1.0)
+          return x;
+      }
+  }
+
+  /**Muestra de la cola de la normal más allá de ZIGR (Marsaglia)*/
+  double tail (boolean negative)
+  {
+    double x, y;
+
+    do
+      {
+        // 1 - nextDouble() is in (0, 1], so the logs are finite
+        x = Math.log (1.0 - nextDouble ())/ZIGR;
+        y = Math.log (1.0 - nextDouble ());
+      }
+    while (-2.0*y < x*x);
+    return (negative ? x - ZIGR : ZIGR - x);
+  }
+
+  public void fillUniform (double buffer[], int n, double min, double max)
+  {
+    double w = max - min;
+
+    for (int i = 0; i < n; i++)
+      buffer[i] = min + w*((nextLong () >>> 11)*0x1.0p-53);
+  }
+
+  public void fillNormal (double buffer[], int n)
+  {
+    for (int i = 0; i < n; i++)
+      buffer[i] = normal ();
+  }
+}
@@ -0,0 +1,125 @@
+//package asmjava;
+
+import java.io.IOException;
+
+/**
+ * <p>Title: MarketFork</p>
+ * <p>Description: Bifurca una simulación en marcha en varias ramas
+ * contrafactuales. Al crearla se serializa en memoria el estado del modelo
+ * en ese periodo (el mismo que guarda Checkpoint), una sola vez, y cada
+ * rama es un modelo nuevo construido directamente en ese estado: no repite
+ * el calentamiento ni los periodos anteriores, de modo que K ramas cuestan
+ * lo que sus periodos a partir de la bifurcación y no K simulaciones
+ * completas. La simulación original no se toca y puede seguir como rama de
+ * control.</p>
+ * <p>Cada rama recibe una Intervention y una semilla propia, derivada de la
+ * semilla de la simulación y de su número, con la que sus generadores
+ * siguen desde el punto en que estaban: así las ramas no comparten los
+ * números aleatorios a partir de la bifurcación.</p>
+ * <p>El estado serializado es lo único que comparten las ramas: cada una
+ * lo lee en sus propios objetos, que después cambian por su cuenta. Las
+ * ramas no escriben el fichero de historia (historyFile) ni puntos de
+ * control, que son de la simulación original. Necesita rngType 1 ó 2. Los
+ * modelos no comparten variables de clase, así que las ramas pueden
+ * ejecutarse a la vez en hilos distintos; se construyen de una en una con
+ * ASMModelSwarm.BUILDLOCK.</p>
+ */
+public class MarketFork {
+
+  /**Simulación original*/
+  ASMEngine parent;
+  /**Estado del modelo en la bifurcación*/
+  byte state[];
+  /**Periodos que había ejecutado la simulación original*/
+  long period;
+
+  /**Constructor de la clase: guarda el estado de la simulación
+   *
+   * @param aParent Motor de la simulación, entre dos periodos
+   * @throws IOException si el estado no se puede serializar
+   */
+  public MarketFork (ASMEngine aParent) throws IOException
+  {
+    ASMModelSwarm model = aParent.model;
+
+    if (model.randomSource == null && model.randomStreams == null)
+      throw new IllegalArgumentException ("forking needs rngType 1 or 2");
+    parent = aParent;
+    period = parent.getPeriods ();
+    state = new Checkpoint ("", 0, model.asmModelParams, model.bfParams)
+      .serialize (parent);
+  }
+
+  /**Devuelve los periodos que había ejecutado la simulación original al
+   * bifurcarse
+   *
+   * @return period
+   */
+  public long getPeriod ()
+  {
+    return period;
+  }
+
+  /**Devuelve el tamaño del estado guardado
+   *
+   * @return bytes
+   */
+  public int getStateSize ()
+  {
+    return state.length;
+  }
+
+  /**Semilla de una rama
+   *
+   * @param seed Semilla de la simulación
+   * @param branch Número de la rama
+   * @return semilla
+   */
+  public static long branchSeed (long seed, int branch)
+  {
+    return LongRandomSource.mix (seed + (branch + 1L)*CounterRandomSource.GOLDEN);
+  }
+
+  /**Crea una rama en el estado de la bifurcación
+   *
+   * @param branch Número de la rama
+   * @param intervention Cambio que se le aplica, o null
+   * @return motor de la rama, listo para step()
+   */
+  public ASMEngine branch (int branch, Intervention intervention)
+  {
+    ASMModelSwarm model;
+    Output output;
+
+    synchronized (ASMModelSwarm.BUILDLOCK)
+      {
+        model = new ASMModelSwarm (parent.model.getZone ());
+        output = new Output (parent.model.getZone ());
+        output.createEnd ();
+        model.setOutputObject (output);
+        model.setParamsModel$BF (parent.model.asmModelParams,
+                                 parent.model.bfParams);
+        model.setInitialState (state);
+        model.buildObjects ();
+      }
+    model.reseed (branchSeed (parent.model.asmModelParams.randomSeed, branch));
+    if (intervention != null)
+      intervention.apply (model, branch);
+    return new ASMEngine (model);
+  }
+
+  /**Crea varias ramas con la misma intervención
+   *
+   * @param k Número de ramas
+   * @param intervention Cambio que se aplica a cada una, o null
+   * @return motores de las ramas 0 a k-1
+   */
+  public ASMEngine[] fork (int k, Intervention intervention)
+  {
+    ASMEngine branches[] = new ASMEngine[k];
+
+    for (int b = 0; b < k; b++)
+      branches[b] = branch (b, intervention);
+    return branches;
+  }
+}
@@ -0,0 +1,326 @@
+//package asmjava;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Title: MarketStatistics</p>
+ * <p>Description: Estadísticos de los hechos estilizados del mercado sobre
+ * una ventana móvil de los últimos "window" periodos: volatilidad y curtosis
+ * de la rentabilidad, autocorrelación de primer orden de la rentabilidad y
+ * de su cuadrado, y correlación entre el volumen y el valor absoluto de la
+ * rentabilidad. La rentabilidad es log(p(t)/p(t-1)) del precio de
+ * mercado.</p>
+ * <p>Se actualizan en tiempo constante cada periodo con estimadores en línea
+ * del tipo de Welford: al entrar una observación se suma con las fórmulas de
+ * actualización de los momentos centrados, y al salir de la ventana se resta
+ * con las mismas fórmulas invertidas. No se acumulan sumas de potencias, que
+ * perderían precisión en series largas. Con window = 0 la ventana es toda la
+ * simulación y no se resta nada.</p>
+ */
+public class MarketStatistics {
+
+  /**Anchura de la ventana, 0 para toda la simulación*/
+  int window;
+  /**Últimas rentabilidades y volúmenes (buffer circular de window + 1)*/
+  double returns[], volumes[];
+  /**Número de rentabilidades recibidas*/
+  long count;
+
+  /**Momentos de la rentabilidad en la ventana: número, media y sumas de las
+   * potencias segunda, tercera y cuarta de las desviaciones a la media*/
+  long n;
+  double mean, m2, m3, m4;
+
+  /**Estadísticos de los pares (r(t-1), r(t)), (r(t-1)^2, r(t)^2) y
+   * (volumen, |r|) de la ventana. Cada array guarda, en este orden, la media
+   * de x, la media de y y las sumas de productos de desviaciones xx, yy y
+   * xy.*/
+  double lagged[] = new double[5];
+  double squared[] = new double[5];
+  double volvol[] = new double[5];
+  /**Número de pares de autocorrelación de la ventana (uno menos que de
+   * rentabilidades, salvo que la ventana ya haya avanzado)*/
+  long npairs;
+  /**Última rentabilidad, para la ventana de toda la simulación*/
+  double lastReturn;
+
+  /**Constructor de la clase
+   *
+   * @param aWindow Anchura de la ventana en periodos, 0 para toda la
+   * simulación
+   */
+  MarketStatistics (int aWindow)
+  {
+    window = aWindow;
+    if (window > 0)
+      {
+        returns = new double[window + 1];
+        volumes = new double[window + 1];
+      }
+  }
+
+  /**Añade la rentabilidad y el volumen de un periodo y saca de la ventana los
+   * del periodo más antiguo
+   *
+   * @param r Rentabilidad del periodo
+   * @param volume Volumen del periodo
+   */
+  public void add (double r, double volume)
+  {
+    double prev, old, oldprev;
+    int k;
+
+    if (window > 0 && count >= window)
+      {
+        // The oldest return leaves the window, and with it the pair it
+        // closes, whose first element is just before the window
+        k = (int)((count - window)%(window + 1));
+        old = returns[k];
+        removePair (volvol, n, volumes[k], Math.abs (old));
+        removeMoment (old);
+        if (count > window)
+          {
+            oldprev = returns[(int)((count - window - 1)%(window + 1))];
+            removePair (lagged, npairs, oldprev, old);
+            removePair (squared, npairs, oldprev*oldprev, old*old);
+            npairs--;
+          }
+      }
+
+    addMoment (r);
+    addPair (volvol, n, volume, Math.abs (r));
+    if (count > 0)
+      {
+        prev = (window > 0 ? returns[(int)((count - 1)%(window + 1))] : lastReturn);
+        npairs++;
+        addPair (lagged, npairs, prev, r);
+        addPair (squared, npairs, prev*prev, r*r);
+      }
+
+    if (window > 0)
+      {
+        returns[(int)(count%(window + 1))] = r;
+        volumes[(int)(count%(window + 1))] = volume;
+      }
+    lastReturn = r;
+    count++;
+  }
+
+  /**Suma una observación a los momentos (Welford, con los términos de
+   * tercer y cuarto orden de Terriberry)*/
+  void addMoment (double x)
+  {
+    double delta, dn, dn2, term1;
+
+    n++;
+    delta = x - mean;
+    dn = delta/n;
+    dn2 = dn*dn;
+    term1 = delta*dn*(n - 1);
+    mean += dn;
+    m4 += term1*dn2*(n*n - 3*n + 3) + 6*dn2*m2 - 4*dn*m3;
+    m3 += term1*dn*(n - 2) - 3*dn*m2;
+    m2 += term1;
+  }
+
+  /**Resta una observación de los momentos: las fórmulas de addMoment
+   * despejadas en sentido contrario*/
+  void removeMoment (double x)
+  {
+    double oldmean, delta, dn, dn2, term1;
+
+    if (n <= 1)
+      {
+        n = 0;
+        mean = m2 = m3 = m4 = 0.0;
+        return;
+      }
+    oldmean = (n*mean - x)/(n - 1);
+    delta = x - oldmean;
+    dn = delta/n;
+    dn2 = dn*dn;
+    term1 = delta*dn*(n - 1);
+    m2 -= term1;
+    m3 -= term1*dn*(n - 2) - 3*dn*m2;
+    m4 -= term1*dn2*(n*n - 3*n + 3) + 6*dn2*m2 - 4*dn*m3;
+    mean = oldmean;
+    n--;
+  }
+
+  /**Suma un par (x, y) a las medias y co-momentos de un grupo de pares
+   *
+   * @param c Grupo: medias de x e y y co-momentos xx, yy, xy
+   * @param m Número de pares después de sumar éste
+   */
+  static void addPair (double c[], long m, double x, double y)
+  {
+    double dx = x - c[0];
+    double dy = y - c[1];
+
+    c[0] += dx/m;
+    c[1] += dy/m;
+    c[2] += dx*(x - c[0]);
+    c[3] += dy*(y - c[1]);
+    c[4] += dx*(y - c[1]);
+  }
+
+  /**Resta un par: addPair en sentido contrario
+   *
+   * @param c Grupo
+   * @param m Número de pares antes de restar éste
+   */
+  static void removePair (double c[], long m, double x, double y)
+  {
+    double mx, my;
+
+    if (m <= 1)
+      {
+        c[0] = c[1] = c[2] = c[3] = c[4] = 0.0;
+        return;
+      }
+    mx = (m*c[0] - x)/(m - 1);
+    my = (m*c[1] - y)/(m - 1);
+    c[2] -= (x - mx)*(x - c[0]);
+    c[3] -= (y - my)*(y - c[1]);
+    c[4] -= (x - mx)*(y - c[1]);
+    c[0] = mx;
+    c[1] = my;
+  }
+
+  /**Correlación a partir de los co-momentos, 0 si alguna varianza es 0*/
+  static double correlation (double c[])
+  {
+    if (c[2] <= 0.0 || c[3] <= 0.0)
+      return 0.0;
+    return c[4]/Math.sqrt (c[2]*c[3]);
+  }
+
+  /**Devuelve la anchura de la ventana
+   *
+   * @return window, 0 para toda la simulación
+   */
+  public int getWindow ()
+  {
+    return window;
+  }
+
+  /**Devuelve el número de rentabilidades de la ventana
+   *
+   * @return n
+   */
+  public long getCount ()
+  {
+    return n;
+  }
+
+  /**Devuelve la rentabilidad media de la ventana
+   *
+   * @return mean
+   */
+  public double getMeanReturn ()
+  {
+    return mean;
+  }
+
+  /**Devuelve la volatilidad (desviación típica de la rentabilidad)
+   *
+   * @return volatilidad
+   */
+  public double getVolatility ()
+  {
+    return (n > 1 ? Math.sqrt (m2/(n - 1)) : 0.0);
+  }
+
+  /**Devuelve el exceso de curtosis de la rentabilidad (0 para la normal)
+   *
+   * @return n*m4/m2^2 - 3
+   */
+  public double getKurtosis ()
+  {
+    return (m2 > 0.0 ? n*m4/(m2*m2) - 3.0 : 0.0);
+  }
+
+  /**Devuelve la autocorrelación de primer orden de la rentabilidad
+   *
+   * @return autocorrelación
+   */
+  public double getReturnAutocorrelation ()
+  {
+    return correlation (lagged);
+  }
+
+  /**Devuelve la autocorrelación de primer orden del cuadrado de la
+   * rentabilidad (agrupamiento de la volatilidad)
+   *
+   * @return autocorrelación
+   */
+  public double getSquaredReturnAutocorrelation ()
+  {
+    return correlation (squared);
+  }
+
+  /**Devuelve la correlación entre el volumen y el valor absoluto de la
+   * rentabilidad
+   *
+   * @return correlación
+   */
+  public double getVolumeVolatilityCorrelation ()
+  {
+    return correlation (volvol);
+  }
+
+  /**Escribe el estado de los estadísticos
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  void writeState (DataOutputStream out) throws IOException
+  {
+    out.writeInt (window);
+    if (window > 0)
+      {
+        StateIO.writeDoubles (out, returns);
+        StateIO.writeDoubles (out, volumes);
+      }
+    out.writeLong (count);
+    out.writeLong (n);
+    out.writeDouble (mean);
+    out.writeDouble (m2);
+    out.writeDouble (m3);
+    out.writeDouble (m4);
+    StateIO.writeDoubles (out, lagged);
+    StateIO.writeDoubles (out, squared);
+    StateIO.writeDoubles (out, volvol);
+    out.writeLong (npairs);
+    out.writeDouble (lastReturn);
+  }
+
+  /**Lee el estado escrito por writeState en unos estadísticos de la misma
+   * ventana
+   *
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer o no coincide
+   */
+  void readState (DataInputStream in) throws IOException
+  {
+    StateIO.checkLength (in.readInt (), window);
+    if (window > 0)
+      {
+        StateIO.readDoubles (in, returns);
+        StateIO.readDoubles (in, volumes);
+      }
+    count = in.readLong ();
+    n = in.readLong ();
+    mean = in.readDouble ();
+    m2 = in.readDouble ();
+    m3 = in.readDouble ();
+    m4 = in.readDouble ();
+    StateIO.readDoubles (in, lagged);
+    StateIO.readDoubles (in, squared);
+    StateIO.readDoubles (in, volvol);
+    npairs = in.readLong ();
+    lastReturn = in.readDouble ();
+  }
+}
@@ -11,37 +11,38 @@ import swarm.defobj.HDF5Impl;
 import swarm.Selector;
 
 import java.util.Date;
+import java.util.LinkedList;
 import java.io.*;
 
 /**
  * <p>Title: Output</p>
- * <p>Description: Existe una nica instancia de esta clase.
- * Esa instancia es la encargada de escribir los parmetros y
- * los resultados de la simulacin a fichero. Lo cierto es que esta clase se
+ * <p>Description: Existe una única instancia de esta clase.
+ * Esa instancia es la encargada de escribir los parámetros y
+ * los resultados de la simulación a fichero. Lo cierto es que esta clase se
  * encuentra en un estado bastante precario, sobre todo si la comparamos con
- * la versin anterior
- * del mercado, escrita en ObjectiveC. Esta nueva versin no ofrece ms
- * que un nico formato de fichero, aunque funciona correctamente y sin problemas. </p>
- * <p>Si queremos obtener un fichero con todos los parmetros de la simulacin,
- * bastar con que pulsemos el botn "writeSimulationParams" de la interfaz grfica de
- * la sonda del ASMObserverSwarm en cualquier momento de la simulacin.</p>
+ * la versión anterior
+ * del mercado, escrita en ObjectiveC. Esta nueva versión no ofrece más
+ * que un único formato de fichero, aunque funciona correctamente y sin problemas. </p>
+ * <p>Si queremos obtener un fichero con todos los parámetros de la simulación,
+ * bastará con que pulsemos el botón "writeSimulationParams" de la interfaz gráfica de
+ * la sonda del ASMObserverSwarm en cualquier momento de la simulación.</p>
  * <p>Si queremos un fichero en el que figuren el precio, el dividendo y el
- * volumen de negociacin de cada periodo de la simulacin, deberemos pulsar
- * el botn "toggleDataWrite" de la interfaz grfica de
- * la sonda del ASMObserverSwarm. Podemos pulsar este botn durante la
- * ejecucin de la simulacin, obteniendo entonces los resultados a partir
+ * volumen de negociación de cada periodo de la simulación, deberemos pulsar
+ * el botón "toggleDataWrite" de la interfaz gráfica de
+ * la sonda del ASMObserverSwarm. Podemos pulsar este botón durante la
+ * ejecución de la simulación, obteniendo entonces los resultados a partir
  * de ese momento. La
  *  periodicidad de escritura a fichero viene dada por "displayFrequency", que
- *  tambin puede modificarse en el misma sonda pero siempre ANTES de que comience la
- *  simulacin.
+ *  también puede modificarse en el misma sonda pero siempre ANTES de que comience la
+ *  simulación.
  * </p>
  * <p>Copyright: Copyright (c) 2002</p>
- * <p>Depto. de Organizacin y Gestin de Empresas. Universidad de Valladolid</p>
- * @author Jos Manuel Galn & Luis R. Izquierdo
+ * <p>Depto. de Organización y Gestión de Empresas. Universidad de Valladolid</p>
+ * @author José Manuel Galán & Luis R. Izquierdo
  * @version 1.0
  *
  */
-public class Output extends SwarmObjectImpl
+public class Output extends SwarmObjectImpl implements PeriodObserver
 {
 
 /**
@@ -58,6 +59,16 @@ public class Output extends SwarmObjectImpl
    * Referencia el objeto world, desde el que se recogen datos.
    */
   Specialist outputSpecialist; /*" Reference to the Specialist object, where we can get data!"*/
+
+  /**
+   * Referencia los especialistas en la sombra, o null si no se usan.
+   */
+  ShadowMarket outputShadow; /*" Reference to the shadow specialists, if any "*/
+
+  /**
+   * Reloj de la simulación, o null para tomar el tiempo de Swarm.
+   */
+  SimulationClock clock; /*" Where the time comes from when Swarm does not run the model "*/
   /**
    * La hora actual en milisegundos. En realidad mide en
    * milisegundos la diferencia entre el momento actual y la medianoche del
@@ -75,7 +86,7 @@ public class Output extends SwarmObjectImpl
    */
   String timeString = new String(today.toString());
 
-/**Entero que representa el tiempo actual en la simulacin*/
+/**Entero que representa el tiempo actual en la simulación*/
   public int currentTime; /*"current time of simulation"*/
 
 
@@ -84,20 +95,20 @@ public class Output extends SwarmObjectImpl
   */
     String outputFile;
    /**
-  * Nombre del fichero de los parmetros.
+  * Nombre del fichero de los parámetros.
   */
     String paramFileName;
 
 /**
- * Se utiliza para escribir en el fichero de los parmetros.
+ * Se utiliza para escribir en el fichero de los parámetros.
  */
     FileWriter fw;
   /**
- * Se utiliza para escribir en el fichero de los parmetros.
+ * Se utiliza para escribir en el fichero de los parámetros.
  */
     BufferedWriter bw;
     /**
- * Fichero de los parmetros.
+ * Fichero de los parámetros.
  */
     PrintWriter salida;
 
@@ -114,6 +125,16 @@ public class Output extends SwarmObjectImpl
  */
     PrintWriter salida2;
 
+       /**
+ * Fichero de resultados de los especialistas en la sombra.
+ */
+    PrintWriter salida3;
+
+       /**
+ * Fichero de estadísticos de la rentabilidad y el volumen.
+ */
+    PrintWriter salida4;
+
   /**Constructor de la clase
     *
     * @param aZone Zona de memoria Swarm en la que se aloja el objeto Swarm
@@ -130,7 +151,7 @@ public class Output extends SwarmObjectImpl
 
 /**
  * Crea un String con la fecha y hora de hoy y sin caracteres que puedan ser
- * problemticos. Adems crea el nombre del fichero de los parmetros
+ * problemáticos. Además crea el nombre del fichero de los parámetros
  * (paramFileName).
  *
  * @return this
@@ -160,7 +181,7 @@ public class Output extends SwarmObjectImpl
   /*"The output object needs to have a reference to a Specialist object, from whom it can gather data on the volume of trade."*/
   /**
    * El objeto output necesita una referencia al especialista para poder recoger
-   * de l el volumen de negociacin.
+   * de él el volumen de negociación.
    * @return this
    */
   public Object setSpecialist (Specialist theSpec)
@@ -169,11 +190,22 @@ public class Output extends SwarmObjectImpl
     return this;
   }
 
+  /**
+   * Fija los especialistas en la sombra cuyos precios, volúmenes e
+   * iteraciones se escriben en el fichero "shadow.data".
+   * @return this
+   */
+  public Object setShadowMarket (ShadowMarket theShadow)
+  {
+    outputShadow = theShadow;
+    return this;
+  }
+
   /*"The output object must have a reference to a World object, from which it can get price, dividend, or any other information it wants"*/
 
   /**
    * El objeto output necesita una referencia al mundo para poder recoger
-   * de l el precio y el dividendo.
+   * de él el precio y el dividendo.
    * @return this
    */
   public Object setWorld (World theWorld)
@@ -182,15 +214,26 @@ public class Output extends SwarmObjectImpl
     return this;
   }
 
+  /**
+   * Fija el reloj del que se toma el tiempo de cada línea de resultados
+   * cuando el modelo no lo ejecuta el planificador de Swarm.
+   * @return this
+   */
+  public Object setClock (SimulationClock aClock)
+  {
+    clock = aClock;
+    return this;
+  }
+
   /*"This flushes a snapshot of the current parameter settings from
     both the ASMModelParams and BFAgentParams into a file"*/
 
   /**
-   * Este mtodo crea el fichero de los parmetros.
+   * Este método crea el fichero de los parámetros.
    *
-   * @param modelParam Parmetros del modelo.
-   * @param bfParms Parmetros de los bfagents.
-   * @param t Entero que representa el tiempo actual en la simulacin.
+   * @param modelParam Parámetros del modelo.
+   * @param bfParms Parámetros de los bfagents.
+   * @param t Entero que representa el tiempo actual en la simulación.
    *
    * @return this
    */
@@ -207,6 +250,7 @@ public class Output extends SwarmObjectImpl
 
       salida.println("\nModel Parameters\n");
       salida.println("\tnumBFagents = " + modelParam.numBFagents);  /*" number of BFagents "*/
+      salida.println("\tnumAssets = " + modelParam.numAssets);
       salida.println("\tinitholding = " + modelParam.initholding);
       salida.println("\tinitialcash = " + modelParam.initialcash);
       salida.println("\tminholding = " + modelParam.minholding);
@@ -219,7 +263,13 @@ public class Output extends SwarmObjectImpl
       salida.println("\tmaxdividend = " + modelParam.maxdividend);
       salida.println("\tamplitude = " + modelParam.amplitude);
       salida.println("\tperiod = " + modelParam.period);
+      salida.println("\tdividendFile = " + modelParam.dividendFile);
+      salida.println("\tdividendBlock = " + modelParam.dividendBlock);
       salida.println("\texponentialMAs = " + modelParam.exponentialMAs);   //Also used by World.//pj:was BOOL
+      salida.println("\tmalengths = " + modelParam.malengths);
+      salida.println("\thistoryFile = " + modelParam.historyFile);
+      salida.println("\tstatWindows = " + modelParam.statWindows);
+      salida.println("\tdecisionIntervals = " + modelParam.decisionIntervals);
       salida.println("\n\tSpecialist parameters\n");
       salida.println("\tmaxprice = " + modelParam.maxprice);
       salida.println("\tminprice = " + modelParam.minprice);
@@ -230,9 +280,26 @@ public class Output extends SwarmObjectImpl
       salida.println("\teta = " + modelParam.eta);
       salida.println("\tetamax = " + modelParam.etamax);
       salida.println("\tetamin = " + modelParam.etamin);
+      salida.println("\tgridwidth = " + modelParam.gridwidth);
+      salida.println("\tshadowSpecialists = " + modelParam.shadowSpecialists);
       salida.println("\trea = " + modelParam.rea);
       salida.println("\treb = " + modelParam.reb);
       salida.println("\trandomSeed= " + modelParam.randomSeed);
+      salida.println("\trngType = " + modelParam.rngType);
+      salida.println("\twarmupCache = " + modelParam.warmupCache);
+      salida.println("\tcheckpointFile = " + modelParam.checkpointFile);
+      salida.println("\tcheckpointInterval = " + modelParam.checkpointInterval);
+      salida.println("\tresumeFrom = " + modelParam.resumeFrom);
+      salida.println("\tpipelineDepth = " + modelParam.pipelineDepth);
+      salida.println("\tpipelineBlock = " + modelParam.pipelineBlock);
+      salida.println("\tagentShards = " + modelParam.agentShards);
+      salida.println("\tstopClipPeriods = " + modelParam.stopClipPeriods);
+      salida.println("\tstopMinPeriods = " + modelParam.stopMinPeriods);
+      salida.println("\tstopBlock = " + modelParam.stopBlock);
+      salida.println("\tstopBlocks = " + modelParam.stopBlocks);
+      salida.println("\tstopStatistics = " + modelParam.stopStatistics);
+      salida.println("\tstopStationarity = " + modelParam.stopStationarity);
+      salida.println("\tstopPrecision = " + modelParam.stopPrecision);
 
       salida.println("\n\tAgent parameters\n");
       //These might be used for other agents that a user implements.
@@ -301,8 +368,8 @@ public class Output extends SwarmObjectImpl
     it does not initialize everything twice."*/
 
 /**
- * Este mtodo prepara el fichero de los resultados. Se ejecuta cuando
- * pulsamos el botn "toggleDataWrite" de la interfaz grfica de
+ * Este método prepara el fichero de los resultados. Se ejecuta cuando
+ * pulsamos el botón "toggleDataWrite" de la interfaz gráfica de
  * la sonda del ASMObserverSwarm por primera vez.
  *
  * @return this
@@ -325,6 +392,36 @@ public class Output extends SwarmObjectImpl
         }catch(java.io.IOException e){
           System.err.println ("Exception writing data");}
 
+      if (outputShadow != null)
+        try{
+          salida3 = new PrintWriter(new BufferedWriter(new FileWriter
+                                   ("shadow.data".concat(timeString))));
+          salida3.print("currentTime\t price");
+          for (int k = 0; k < outputShadow.getNumShadows(); k++)
+            {
+              int type = outputShadow.getSPtype(k);
+              salida3.print("\t price" + type + "\t volume" + type
+                            + "\t iterations" + type);
+            }
+          salida3.print("\n\n");
+        }catch(java.io.IOException e){
+          System.err.println ("Exception writing shadow data");}
+
+      if (outputWorld.getNumStatWindows() > 0)
+        try{
+          salida4 = new PrintWriter(new BufferedWriter(new FileWriter
+                                   ("stats.data".concat(timeString))));
+          salida4.print("currentTime");
+          for (int k = 0; k < outputWorld.getNumStatWindows(); k++)
+            {
+              int w = outputWorld.getStatistics(k).getWindow();
+              salida4.print("\t vol" + w + "\t kurt" + w + "\t acf" + w
+                            + "\t acf2" + w + "\t vvcorr" + w);
+            }
+          salida4.print("\n\n");
+        }catch(java.io.IOException e){
+          System.err.println ("Exception writing statistics");}
+
 
       dataFileExists = true;
     }
@@ -337,31 +434,134 @@ public class Output extends SwarmObjectImpl
   /*"The write data method dumps out measures of the price, dividend, and volume indicators into several formats"*/
 
     /**
-   * Este mtodo escribe el precio, el dividendo y el volumen en el
+   * Este método escribe el precio, el dividendo y el volumen en el
    * fichero de los resultados. Se ejecuta con periodicidad "displayFrequency"
-   * siempre que se haya solicitado la creacin del fichero.
+   * siempre que se haya solicitado la creación del fichero.
    *
    *
    * @return this
    */
   public Object writeData()
   {
+    return write(capture(null));
+  }
 
-    long t = Globals.env.getCurrentTime();
-    String worldName = new String("world");
-    String specName= new String("specialist");
+  /**
+   * Recoge en un registro inmutable los datos del periodo que se escriben
+   * en los ficheros de resultados y, si se pasa la lista de agentes, su
+   * posición, riqueza y error para los diagramas de barras. Se llama en el
+   * hilo del modelo; el registro se puede escribir después desde otro
+   * (PeriodPipeline).
+   *
+   * @param agents Lista de agentes, o null
+   * @return registro del periodo
+   */
+  public PeriodRecord capture(LinkedList agents)
+  {
+    long t = (clock != null ? clock.getCurrentTime() : Globals.env.getCurrentTime());
+    // Everything but the agents comes from one snapshot of the last closed
+    // period, so it is consistent even if the model has moved on
+    WorldSnapshot snap = outputWorld.getSnapshot();
+    int nagents = (agents != null ? agents.size() : 0);
+    double position[] = null, wealth[] = null, error[] = null;
+    int k;
+
+    if (agents != null)
+      {
+        position = new double[nagents];
+        wealth = new double[nagents];
+        error = new double[nagents];
+        for (k = 0; k < nagents; k++)
+          {
+            BFagent agent = (BFagent)agents.get(k);
+            position[k] = agent.getAgentPosition();
+            wealth[k] = agent.getWealth();
+            error[k] = agent.getError();
+          }
+      }
+    if (snap != null)
+      return new PeriodRecord
+        (t, snap, snap.getPrice(), snap.getDividend(), snap.getVolume(),
+         snap.shadowPrice, snap.shadowVolume, snap.shadowIterations,
+         snap.statWindow, snap.stats, position, wealth, error);
+    return emptyRecord(t, position, wealth, error);
+  }
 
+  /**
+   * Registro de antes del primer periodo: el precio y el dividendo
+   * iniciales y ceros en los especialistas en la sombra y los estadísticos.
+   *
+   * @param t Tiempo
+   * @param position Posición de cada agente, o null
+   * @param wealth Riqueza de cada agente, o null
+   * @param error Error de cada agente, o null
+   * @return registro
+   */
+  PeriodRecord emptyRecord(long t, double position[], double wealth[],
+                           double error[])
+  {
+    int nshadows = (outputShadow != null ? outputShadow.getNumShadows() : 0);
+    int nwindows = outputWorld.getNumStatWindows();
+    int window[] = new int[nwindows];
+    double stats[][] = new double[nwindows][5];
+
+    for (int k = 0; k < nwindows; k++)
+      window[k] = outputWorld.getStatistics(k).getWindow();
+    return new PeriodRecord
+      (t, null, outputWorld.getPrice(), outputWorld.getDividend(),
+       outputSpecialist.getVolume(), new double[nshadows],
+       new double[nshadows], new int[nshadows], window, stats,
+       position, wealth, error);
+  }
 
+  /**
+   * Escribe un registro en los ficheros de resultados abiertos.
+   *
+   * @param r Registro de un periodo
+   * @return this
+   */
+  public Object write(PeriodRecord r)
+  {
     try {
-
-    salida2.print(t);
+    salida2.print(r.getTime());
     salida2.print("\t\t");
-    salida2.print((float)outputWorld.getPrice());
+    salida2.print((float)r.getPrice());
     salida2.print("\t");
-    salida2.print((float)outputWorld.getDividend());
+    salida2.print((float)r.getDividend());
     salida2.print("\t");
-    salida2.print((float)outputSpecialist.getVolume());
+    salida2.print((float)r.getVolume());
     salida2.print("\n");
+    if (salida3 != null)
+      {
+        salida3.print(r.getTime());
+        salida3.print("\t\t");
+        salida3.print((float)r.getPrice());
+        for (int k = 0; k < r.getNumShadows(); k++)
+          {
+            salida3.print("\t");
+            salida3.print((float)r.getShadowPrice(k));
+            salida3.print("\t");
+            salida3.print((float)r.getShadowVolume(k));
+            salida3.print("\t");
+            salida3.print(r.getShadowIterations(k));
+          }
+        salida3.print("\n");
+      }
+
+    if (salida4 != null)
+      {
+        salida4.print(r.getTime());
+        for (int k = 0; k < r.getNumStatWindows(); k++)
+          {
+            double stats[] = r.getStatistics(k);
+            for (int j = 0; j < stats.length; j++)
+              {
+                salida4.print("\t");
+                salida4.print((float)stats[j]);
+              }
+          }
+        salida4.print("\n");
+      }
      } catch (Exception e) {
       System.err.println ("Exception dataOutputFile.writeChars: " + e.getMessage ());
       }
@@ -369,6 +569,16 @@ public class Output extends SwarmObjectImpl
     return this;
   }
 
+  /**
+   * Escribe un registro recibido de un PeriodPipeline, en su hilo.
+   *
+   * @param r Registro de un periodo
+   */
+  public void observe(PeriodRecord r)
+  {
+    write(r);
+  }
+
   /*"It is necessary to drop the data writing objects in order to make
   sure they finish their work.
   "*/
@@ -380,6 +590,10 @@ public class Output extends SwarmObjectImpl
   {
     if (salida2 != null)
       salida2.close();
+    if (salida3 != null)
+      salida3.close();
+    if (salida4 != null)
+      salida4.close();
 
     super.drop();
   }
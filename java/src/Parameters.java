@@ -10,45 +10,55 @@ import swarm.defobj.Zone;
 
 /**
  * <p>Title: Parameters</p>
- * <p>Description: Esta es la clase de parmetros principal.
- * Existe una nica instancia de esta clase. Contiene en su
+ * <p>Description: Esta es la clase de parámetros principal.
+ * Existe una única instancia de esta clase. Contiene en su
  * interior, como "variables instancia", el objeto que guarda los
- * parmetros del modelo (asmModelParams, instancia de la clase ASMModelParams)
- * y el objeto que guarda los parmetros de los agentes (bfParams, instancia
+ * parámetros del modelo (asmModelParams, instancia de la clase ASMModelParams)
+ * y el objeto que guarda los parámetros de los agentes (bfParams, instancia
  * de BFParams).</p>
  * <p>En el programa original, escrito en ObjectiveC, la clase Parameters
- * descenda de la clase Arguments_c, de forma que caba la posibilidad de
- * procesar parmetros a travs de la lnea de comandos. Teniendo en cuenta que
- * esta primera versin slo incorpora el modo grfico y que, en este modo,
- * hemos creado "sondas" (probes) que nos permiten cambiar cmodamente cualquier
- * parmetro en tiempo de ejecucin, nosotros decidimos prescindir de las
- * facilidades del procesamiento de parmetros
- * a travs de la lnea de comandos en favor de una mayor simplicidad.</p>
+ * descendía de la clase Arguments_c, de forma que cabía la posibilidad de
+ * procesar parámetros a través de la línea de comandos. Teniendo en cuenta que
+ * esta primera versión sólo incorpora el modo gráfico y que, en este modo,
+ * hemos creado "sondas" (probes) que nos permiten cambiar cómodamente cualquier
+ * parámetro en tiempo de ejecución, nosotros decidimos prescindir de las
+ * facilidades del procesamiento de parámetros
+ * a través de la línea de comandos en favor de una mayor simplicidad.</p>
  * <p>Copyright: Copyright (c) 2002</p>
- * <p>Depto. de Organizacin y Gestin de Empresas. Universidad de Valladolid</p>
- * @author Jos Manuel Galn & Luis R. Izquierdo
+ * <p>Depto. de Organización y Gestión de Empresas. Universidad de Valladolid</p>
+ * @author José Manuel Galán & Luis R. Izquierdo
  * @version 1.0
  *
  */
 public class Parameters extends SwarmObjectImpl {
 
-  /**Instancia de la clase ASMModelParams, que contiene los parmetros del
+  /**Instancia de la clase ASMModelParams, que contiene los parámetros del
    * modelo. El objeto asmModelSwarm,
-   * instancia de ASMModelSwarm usar estos parmetros*/
+   * instancia de ASMModelSwarm usará estos parámetros*/
   public ASMModelParams asmModelParams; /*"parameter object used by ASMModelSwarm"*/
 
-   /**Objeto que contiene los parmetros que controlan el comportamiento de los
-    * BFagents. En esta versin cada agente posee una copia (idntica, por
-    * ahora) de estos parmetros, de forma que en un futuro se podr dar a cada
-    * agente unos parmetros diferentes, aumentando as la heterogeneidad de
+   /**Objeto que contiene los parámetros que controlan el comportamiento de los
+    * BFagents. En esta versión cada agente posee una copia (idéntica, por
+    * ahora) de estos parámetros, de forma que en un futuro se podrá dar a cada
+    * agente unos parámetros diferentes, aumentando así la heterogeneidad de
     * los mismos.*/
   public BFParams bfParams;/*"parameter object used by BFagent and its various objects, such as BFCast "*/
 
-   /**Entero que nos indica el nmero de la simulacin que estamos corriendo.
-    * Lo incluimos para pasarlo por la lnea de comandos en futuras versiones
+   /**Entero que nos indica el número de la simulación que estamos corriendo.
+    * Lo incluimos para pasarlo por la línea de comandos en futuras versiones
     * que implementen esta facilidad.*/
   int run; /*an integer indicating the run number of the current simulation. This is passed in as a command line parameter, as in --run=666 or such."*/
 
+  /**Cada cuántos periodos escribe resultados ASMBatchSwarm. Por defecto,
+   * el valor de asmBatchSwarm en asm.scm; se cambia en la línea de órdenes
+   * con -DloggingFrequency=n*/
+  int loggingFrequency; /*"how often the batch swarm writes data"*/
+
+  /**Duración en periodos de la simulación en modo batch. Por defecto, el
+   * valor de asmBatchSwarm en asm.scm; se cambia en la línea de órdenes con
+   * -DexperimentDuration=n*/
+  int experimentDuration; /*"how long a batch run lasts"*/
+
     /*"The Artificial Stock Market model has a very large set of
   parameters.  Until ASM-2.2, these paramters were set inside various
   implementation files, making them difficult to find/maintain. Now all
@@ -75,9 +85,9 @@ public class Parameters extends SwarmObjectImpl {
   }
 */
 
-  /**Constructor: Crea en su interior el objeto que guarda los parmetros
+  /**Constructor: Crea en su interior el objeto que guarda los parámetros
    * del modelo (asmModelParams, instancia de la clase ASMModelParams)
-    * y el objeto que guarda los parmetros de los agentes (bfParams, instancia
+    * y el objeto que guarda los parámetros de los agentes (bfParams, instancia
     * de BFParams).
     *
     *
@@ -88,6 +98,11 @@ public class Parameters extends SwarmObjectImpl {
 
   asmModelParams = new ASMModelParams(aZone);
   bfParams = new BFParams(aZone);
+
+  // The values of asmBatchSwarm in asm.scm, which the ObjC main() read
+  // with the lispAppArchiver
+  loggingFrequency = Integer.getInteger ("loggingFrequency", 3).intValue ();
+  experimentDuration = Integer.getInteger ("experimentDuration", 500).intValue ();
   }
   /*"In order to parse command line parameters, this method runs.
     Because Parameters is subclassed from the Swarm Arguments class,
@@ -116,11 +131,11 @@ public class Parameters extends SwarmObjectImpl {
     bfParams--that hold those values and make them avalable to the
     various objects in the model "*/
 
-  /**Inicializa el objeto (variable instancia) bfParams mndandole el mensaje
-   * bfParams.init(). En la versin anterior
-   * este mtodo tambin serva para recoger parmetros del fichero asm.scm.
-   * En esta versin, los parmetros se modifican exclusivamente a travs de
-   * sondas (o modificando sus valores por defecto en el cdigo).
+  /**Inicializa el objeto (variable instancia) bfParams mándandole el mensaje
+   * bfParams.init(). En la versión anterior
+   * este método también servía para recoger parámetros del fichero asm.scm.
+   * En esta versión, los parámetros se modifican exclusivamente a través de
+   * sondas (o modificando sus valores por defecto en el código).
     *
     * @return this
     */
@@ -144,7 +159,7 @@ public class Parameters extends SwarmObjectImpl {
   /*"Returns an instance of ASMModelParams, the object which holds the model-level input parameters"*/
 
   /**Devuelve la variable instancia asmModelParams, que contiene los
-   * parmetros del modelo
+   * parámetros del modelo
     *
     * @return asmModelParams instancia de ASMModelParams
     */
@@ -162,8 +177,8 @@ public class Parameters extends SwarmObjectImpl {
     used. PJ-2001-10-31) "*/
 
     /**Devuelve la variable instancia bfParams, que contiene los
-   * parmetros de los BFagents. En caso de que se desee disponer de agentes
-   * con distintos parmetros, cabe la posibilidad de que cada uno de los
+   * parámetros de los BFagents. En caso de que se desee disponer de agentes
+   * con distintos parámetros, cabe la posibilidad de que cada uno de los
    * BFagents cree una copia de la instancia bfParams y luego la modifique a
    * su antojo.
     *
@@ -177,22 +192,40 @@ public class Parameters extends SwarmObjectImpl {
 
   /*"Unless one wants to make all IVARS public and access them with ->, then one should create get methods, one for each argument. This gets the run number."*/
 
-  /**Este mtodo devuelve el nmero de la simulacin que estamos corriendo.
-   * Este parmetro se debe pasar a travs de la lnea de comandos, por lo que
-   * no se puede modificar en esta versin
+  /**Este método devuelve el número de la simulación que estamos corriendo.
+   * Este parámetro se debe pasar a través de la línea de comandos, por lo que
+   * no se puede modificar en esta versión
    *
  *
- * @return run Entero que nos indica el nmero de la simulacin que estamos corriendo.
+ * @return run Entero que nos indica el número de la simulación que estamos corriendo.
  */
   public int getRunArg()
   {
     return run;
   }
 
+  /**Devuelve cada cuántos periodos escribe resultados el modo batch
+   *
+   * @return loggingFrequency
+   */
+  public int getLoggingFrequency()
+  {
+    return loggingFrequency;
+  }
+
+  /**Devuelve la duración en periodos de la simulación en modo batch
+   *
+   * @return experimentDuration
+   */
+  public int getExperimentDuration()
+  {
+    return experimentDuration;
+  }
+
   /*"Sometimes we worry that the Parameter object did not get created properly, so this method tells it to speak to the command line with a warm greeting"*/
 
   /**A veces tenemos que asegurarnos de que el objeto que contiene todos los
-   * parmetros se ha creado correctamente. Este mtodo no suele llamarse en
+   * parámetros se ha creado correctamente. Este método no suele llamarse en
    * condiciones normales.
    *
  *
@@ -0,0 +1,16 @@
+//package asmjava;
+
+/**
+ * <p>Title: PeriodObserver</p>
+ * <p>Description: Consumidor de los registros de los periodos (escritura a
+ * fichero, gráficos...) que un PeriodPipeline ejecuta en su propio hilo,
+ * fuera del hilo del modelo.</p>
+ */
+public interface PeriodObserver {
+
+  /**Procesa el registro de un periodo
+   *
+   * @param record Registro, que no se debe modificar
+   */
+  public void observe (PeriodRecord record);
+}
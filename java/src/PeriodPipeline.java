@@ -0,0 +1,145 @@
+//package asmjava;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * <p>Title: PeriodPipeline</p>
+ * <p>Description: Entrega de los registros de los periodos (PeriodRecord)
+ * desde el hilo del modelo a un PeriodObserver que los procesa en su propio
+ * hilo, a través de una cola limitada a "capacity" registros. Así el modelo
+ * ejecuta el periodo siguiente mientras el anterior todavía se escribe o se
+ * dibuja.</p>
+ * <p>Cuando la cola está llena hay dos políticas: con block el modelo
+ * espera a que el observador saque un registro, de modo que no se pierde
+ * ninguno (la que deben usar los ficheros); sin block el registro se
+ * descarta y se cuenta, de modo que un gráfico lento se salta periodos pero
+ * nunca frena la simulación.</p>
+ * <p>Las excepciones del observador se avisan y no detienen ni el hilo ni
+ * el modelo. close() espera a que se procesen los registros pendientes.</p>
+ */
+public class PeriodPipeline {
+
+  /**Marca de fin de la cola*/
+  static final Object END = new Object ();
+
+  /**Observador*/
+  PeriodObserver observer;
+  /**Registros pendientes*/
+  ArrayBlockingQueue queue;
+  /**true si el modelo espera cuando la cola está llena*/
+  boolean block;
+  /**Hilo del observador*/
+  Thread consumer;
+  /**Registros descartados con la cola llena*/
+  volatile long dropped;
+
+  /**Constructor de la clase. Arranca el hilo del observador.
+   *
+   * @param anObserver Observador
+   * @param capacity Registros que caben en la cola
+   * @param aBlock true para esperar con la cola llena, false para descartar
+   * @param name Nombre del hilo
+   */
+  public PeriodPipeline (PeriodObserver anObserver, int capacity,
+                         boolean aBlock, String name)
+  {
+    observer = anObserver;
+    queue = new ArrayBlockingQueue (capacity);
+    block = aBlock;
+    consumer = new Thread (new Runnable () {
+        public void run () {
+          consume ();
+        }
+      }, name);
+    consumer.setDaemon (true);
+    consumer.start ();
+  }
+
+  /**Bucle del hilo del observador*/
+  void consume ()
+  {
+    Object next;
+
+    try
+      {
+        while ((next = queue.take ()) != END)
+          try
+            {
+              observer.observe ((PeriodRecord) next);
+            }
+          catch (RuntimeException e)
+            {
+              System.err.println ("Exception in " + consumer.getName ()
+                                  + ": " + e);
+            }
+      }
+    catch (InterruptedException e)
+      {
+        // Closed without waiting
+      }
+  }
+
+  /**Entrega un registro al observador
+   *
+   * @param record Registro
+   * @return false si se ha descartado porque la cola estaba llena
+   */
+  public boolean publish (PeriodRecord record)
+  {
+    if (!block)
+      {
+        if (queue.offer (record))
+          return true;
+        dropped++;
+        return false;
+      }
+    try
+      {
+        queue.put (record);
+        return true;
+      }
+    catch (InterruptedException e)
+      {
+        Thread.currentThread ().interrupt ();
+        return false;
+      }
+  }
+
+  /**Devuelve el número de registros descartados
+   *
+   * @return dropped
+   */
+  public long getDropped ()
+  {
+    return dropped;
+  }
+
+  /**Devuelve el número de registros pendientes
+   *
+   * @return registros en la cola
+   */
+  public int getPending ()
+  {
+    return queue.size ();
+  }
+
+  /**Espera a que el observador procese los registros pendientes y termina
+   * su hilo
+   *
+   * @return this
+   */
+  public Object close ()
+  {
+    try
+      {
+        queue.put (END);
+        consumer.join ();
+      }
+    catch (InterruptedException e)
+      {
+        Thread.currentThread ().interrupt ();
+        consumer.interrupt ();
+      }
+    return this;
+  }
+}
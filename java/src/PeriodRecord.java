@@ -0,0 +1,147 @@
+//package asmjava;
+
+/**
+ * <p>Title: PeriodRecord</p>
+ * <p>Description: Datos de un periodo que necesitan los observadores y los
+ * ficheros de resultados: el tiempo, la foto del mundo (WorldSnapshot), los
+ * precios, volúmenes e iteraciones de los especialistas en la sombra, los
+ * estadísticos de cada ventana, todos tomados de la foto, y, si se piden,
+ * la posición, la riqueza y el error de cada agente. Lo crea Output.capture() en el hilo del modelo y
+ * nadie lo modifica después, de modo que un PeriodPipeline puede pasarlo a
+ * otro hilo mientras el modelo ejecuta los periodos siguientes.</p>
+ */
+public final class PeriodRecord {
+
+  /**Tiempo de la simulación*/
+  final long time;
+  /**Foto del mundo, o null antes del primer periodo*/
+  final WorldSnapshot snapshot;
+  /**Precio, dividendo y volumen*/
+  final double price, dividend, volume;
+  /**Precio, volumen e iteraciones de cada especialista en la sombra*/
+  final double shadowPrice[], shadowVolume[];
+  final int shadowIterations[];
+  /**Ventana de cada grupo de estadísticos*/
+  final int window[];
+  /**Volatilidad, curtosis, autocorrelación de la rentabilidad y de su
+   * cuadrado y correlación volumen-volatilidad de cada ventana*/
+  final double stats[][];
+  /**Posición, riqueza y error de cada agente, o null*/
+  final double position[], wealth[], error[];
+
+  /**Constructor de la clase. Lo llama Output.capture(); los arrays pasan a
+   * ser propiedad del registro o, los del mundo, los comparte con la foto
+   * (WorldSnapshot), que tampoco los modifica.
+   */
+  PeriodRecord (long aTime, WorldSnapshot aSnapshot, double aPrice,
+                double aDividend, double aVolume, double aShadowPrice[],
+                double aShadowVolume[], int aShadowIterations[],
+                int aWindow[], double aStats[][], double aPosition[],
+                double aWealth[], double anError[])
+  {
+    time = aTime;
+    snapshot = aSnapshot;
+    price = aPrice;
+    dividend = aDividend;
+    volume = aVolume;
+    shadowPrice = aShadowPrice;
+    shadowVolume = aShadowVolume;
+    shadowIterations = aShadowIterations;
+    window = aWindow;
+    stats = aStats;
+    position = aPosition;
+    wealth = aWealth;
+    error = anError;
+  }
+
+  public long getTime ()
+  {
+    return time;
+  }
+
+  public WorldSnapshot getSnapshot ()
+  {
+    return snapshot;
+  }
+
+  public double getPrice ()
+  {
+    return price;
+  }
+
+  public double getDividend ()
+  {
+    return dividend;
+  }
+
+  public double getVolume ()
+  {
+    return volume;
+  }
+
+  public int getNumShadows ()
+  {
+    return shadowPrice.length;
+  }
+
+  public double getShadowPrice (int k)
+  {
+    return shadowPrice[k];
+  }
+
+  public double getShadowVolume (int k)
+  {
+    return shadowVolume[k];
+  }
+
+  public int getShadowIterations (int k)
+  {
+    return shadowIterations[k];
+  }
+
+  public int getNumStatWindows ()
+  {
+    return window.length;
+  }
+
+  public int getStatWindow (int k)
+  {
+    return window[k];
+  }
+
+  /**Devuelve los estadísticos de una ventana, en el orden de stats.data:
+   * volatilidad, curtosis, autocorrelación de la rentabilidad y de su
+   * cuadrado y correlación volumen-volatilidad
+   *
+   * @param k Ventana
+   * @return estadísticos
+   */
+  public double[] getStatistics (int k)
+  {
+    return stats[k].clone ();
+  }
+
+  /**Devuelve el número de agentes del registro
+   *
+   * @return 0 si no se han pedido los agentes
+   */
+  public int getNumAgents ()
+  {
+    return (position == null ? 0 : position.length);
+  }
+
+  public double getAgentPosition (int i)
+  {
+    return position[i];
+  }
+
+  public double getWealth (int i)
+  {
+    return wealth[i];
+  }
+
+  public double getError (int i)
+  {
+    return error[i];
+  }
+}
@@ -0,0 +1,52 @@
+//package asmjava;
+
+/**
+ * <p>Title: RandomSource</p>
+ * <p>Description: Origen de los números aleatorios del modelo: uniformes,
+ * enteros y normales, uno a uno o a bloques en arrays de tipos primitivos.
+ * Lo implementan SwarmRandomSource, que pasa cada extracción a los
+ * generadores de Swarm y reproduce por tanto las secuencias de siempre, y
+ * XoshiroRandomSource, un generador escrito en Java que no cruza a la
+ * biblioteca nativa de Swarm en cada número.</p>
+ */
+public interface RandomSource {
+
+  /**Devuelve un número uniforme en [min, max)
+   *
+   * @param min Mínimo
+   * @param max Máximo
+   * @return número aleatorio
+   */
+  public double uniform (double min, double max);
+
+  /**Devuelve un entero uniforme en [min, max], ambos incluidos, como
+   * getIntegerWithMin$withMax de Swarm
+   *
+   * @param min Mínimo
+   * @param max Máximo
+   * @return entero aleatorio
+   */
+  public int uniformInt (int min, int max);
+
+  /**Devuelve un número normal de media 0 y varianza 1
+   *
+   * @return número aleatorio
+   */
+  public double normal ();
+
+  /**Llena un array con números uniformes en [min, max)
+   *
+   * @param buffer Array de salida
+   * @param n Número de elementos
+   * @param min Mínimo
+   * @param max Máximo
+   */
+  public void fillUniform (double buffer[], int n, double min, double max);
+
+  /**Llena un array con números normales de media 0 y varianza 1
+   *
+   * @param buffer Array de salida
+   * @param n Número de elementos
+   */
+  public void fillNormal (double buffer[], int n);
+}
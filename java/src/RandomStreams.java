@@ -0,0 +1,142 @@
+//package asmjava;
+
+import java.util.ArrayList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Title: RandomStreams</p>
+ * <p>Description: Reparte flujos de números aleatorios independientes entre
+ * los componentes del modelo. Cada proceso de dividendos, cada mundo (por su
+ * bit aleatorio) y cada agente recibe su propio CounterRandomSource, cuya
+ * clave sale de la semilla y de la identidad del componente (tipo y número).
+ * Los números que ve un componente no dependen, por tanto, de cuántos
+ * componentes haya ni del orden o del hilo en que se ejecuten, y una
+ * simulación se repite bit a bit con cualquier número de procesadores.</p>
+ */
+public class RandomStreams {
+
+  /**Tipos de componente*/
+  public static final int DIVIDEND = 1;
+  public static final int WORLD = 2;
+  public static final int AGENT = 3;
+
+  /**Semilla de la simulación*/
+  long seed;
+  /**Flujos repartidos, y tipo y número del componente de cada uno*/
+  ArrayList streams = new ArrayList ();
+  ArrayList owners = new ArrayList ();
+  /**Periodo actual*/
+  long period;
+
+  /**Constructor de la clase
+   *
+   * @param aSeed Semilla
+   */
+  RandomStreams (long aSeed)
+  {
+    seed = aSeed;
+  }
+
+  /**Clave del flujo de un componente
+   *
+   * @param aSeed Semilla
+   * @param type DIVIDEND, WORLD o AGENT
+   * @param id Número del componente dentro de su tipo
+   * @return clave
+   */
+  public static long keyFor (long aSeed, int type, int id)
+  {
+    long z = LongRandomSource.mix (aSeed + type*CounterRandomSource.GOLDEN);
+
+    return LongRandomSource.mix (z ^ ((long)id*0xd1b54a32d192ed03L));
+  }
+
+  /**Crea el flujo de un componente, situado en el periodo actual
+   *
+   * @param type DIVIDEND, WORLD o AGENT
+   * @param id Número del componente dentro de su tipo
+   * @return flujo
+   */
+  public CounterRandomSource streamFor (int type, int id)
+  {
+    CounterRandomSource stream =
+      new CounterRandomSource (keyFor (seed, type, id));
+
+    stream.startPeriod (period);
+    streams.add (stream);
+    owners.add (new int[] {type, id});
+    return stream;
+  }
+
+  /**Cambia la semilla: cada flujo pasa a la clave que le corresponde con
+   * la semilla nueva, en el mismo periodo
+   *
+   * @param aSeed Semilla nueva
+   */
+  public void reseed (long aSeed)
+  {
+    int owner[];
+
+    seed = aSeed;
+    for (int i = 0; i < streams.size (); i++)
+      {
+        owner = (int[]) owners.get (i);
+        ((CounterRandomSource)streams.get (i)).setKey
+          (keyFor (seed, owner[0], owner[1]));
+      }
+  }
+
+  /**Empieza un periodo en todos los flujos
+   *
+   * @param t Periodo
+   */
+  public void startPeriod (long t)
+  {
+    period = t;
+    for (int i = 0; i < streams.size (); i++)
+      ((CounterRandomSource)streams.get (i)).startPeriod (t);
+  }
+
+  public long getPeriod ()
+  {
+    return period;
+  }
+
+  /**Devuelve el número de flujos repartidos
+   *
+   * @return número de flujos
+   */
+  public int getNumStreams ()
+  {
+    return streams.size ();
+  }
+
+  /**Escribe el periodo y el estado de cada flujo, en el orden en que se
+   * repartieron
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  public void writeState (DataOutputStream out) throws IOException
+  {
+    out.writeLong (period);
+    out.writeInt (streams.size ());
+    for (int i = 0; i < streams.size (); i++)
+      ((CounterRandomSource)streams.get (i)).writeState (out);
+  }
+
+  /**Lee el estado escrito por writeState en unos flujos repartidos igual
+   *
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer o no coincide
+   */
+  public void readState (DataInputStream in) throws IOException
+  {
+    period = in.readLong ();
+    StateIO.checkLength (in.readInt (), streams.size ());
+    for (int i = 0; i < streams.size (); i++)
+      ((CounterRandomSource)streams.get (i)).readState (in);
+  }
+}
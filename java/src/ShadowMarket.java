@@ -0,0 +1,175 @@
+//package asmjava;
+
+import java.util.LinkedList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Title: ShadowMarket</p>
+ * <p>Description: Mercados en la sombra para comparar mecanismos de
+ * negociación. En cada periodo se capturan una sola vez las curvas de
+ * demanda de los agentes (DemandCurves) y se vacían con varios
+ * especialistas de distinto tipo, uno junto a otro. Se guardan el precio, el
+ * volumen y el número de iteraciones de cada uno, pero sólo el especialista
+ * principal mueve el mercado: los de la sombra no liquidan operaciones ni
+ * cambian el mundo.</p>
+ * <p>Así, comparar N mecanismos cuesta una evaluación de los agentes por
+ * periodo en lugar de N simulaciones completas.</p>
+ */
+public class ShadowMarket {
+
+  /**Especialistas de la sombra*/
+  Specialist specialists[];
+  /**Número de especialistas de la sombra*/
+  int numShadows;
+  /**Curvas de demanda capturadas en el periodo*/
+  DemandCurves curves;
+  /**Precio obtenido por cada especialista de la sombra*/
+  double prices[];
+  /**Volumen obtenido por cada especialista de la sombra*/
+  double volumes[];
+  /**Iteraciones de cada especialista de la sombra*/
+  int iterations[];
+
+  /**Constructor de la clase
+   *
+   * @param numAgents Número de agentes del mercado
+   * @param maxShadows Número máximo de especialistas de la sombra
+   */
+  ShadowMarket (int numAgents, int maxShadows)
+  {
+    curves = new DemandCurves (numAgents);
+    specialists = new Specialist[maxShadows];
+    prices = new double[maxShadows];
+    volumes = new double[maxShadows];
+    iterations = new int[maxShadows];
+    numShadows = 0;
+  }
+
+  /**Añade un especialista a la sombra. Debe estar configurado igual que el
+   * principal salvo, normalmente, en el tipo.
+   *
+   * @param aSpecialist Especialista
+   * @return this
+   */
+  public Object addSpecialist (Specialist aSpecialist)
+  {
+    specialists[numShadows++] = aSpecialist;
+    return this;
+  }
+
+  /**Captura las curvas de demanda de los agentes. Debe llamarse después de
+   * prepareForTrading y antes de que se liquiden las operaciones.
+   *
+   * @param agentList Agentes del mercado
+   * @return this
+   */
+  public Object capture (LinkedList agentList)
+  {
+    for (int i = 0; i < agentList.size(); i++)
+      ((Agent)agentList.get(i)).captureDemand$into$at (curves, i);
+    return this;
+  }
+
+  /**Vacía las curvas capturadas con cada especialista de la sombra y pasa
+   * los resultados al mundo, que los guarda en la foto del periodo. Debe
+   * llamarse antes de que el mundo reciba el nuevo precio, porque los
+   * especialistas parten del precio anterior.
+   *
+   * @param world Mundo del mercado
+   * @return this
+   */
+  public Object clear (World world)
+  {
+    for (int k = 0; k < numShadows; k++)
+      {
+        prices[k] = specialists[k].clearDemand$Market (curves, world);
+        volumes[k] = specialists[k].getVolume ();
+        iterations[k] = specialists[k].getIterations ();
+      }
+    world.setShadowResults (prices, volumes, iterations, numShadows);
+    return this;
+  }
+
+  /**Devuelve el número de especialistas de la sombra
+   *
+   * @return numShadows
+   */
+  public int getNumShadows ()
+  {
+    return numShadows;
+  }
+
+  /**Devuelve el tipo del especialista k de la sombra
+   *
+   * @param k
+   * @return sptype
+   */
+  public int getSPtype (int k)
+  {
+    return specialists[k].getSPtype ();
+  }
+
+  /**Devuelve el precio obtenido por el especialista k de la sombra
+   *
+   * @param k
+   * @return precio
+   */
+  public double getPrice (int k)
+  {
+    return prices[k];
+  }
+
+  /**Devuelve el volumen obtenido por el especialista k de la sombra
+   *
+   * @param k
+   * @return volumen
+   */
+  public double getVolume (int k)
+  {
+    return volumes[k];
+  }
+
+  /**Devuelve las iteraciones del especialista k de la sombra
+   *
+   * @param k
+   * @return iteraciones
+   */
+  public int getIterations (int k)
+  {
+    return iterations[k];
+  }
+
+  /**Escribe el estado de los especialistas de la sombra y sus últimos
+   * resultados
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  void writeState (DataOutputStream out) throws IOException
+  {
+    out.writeInt (numShadows);
+    for (int i = 0; i < numShadows; i++)
+      specialists[i].writeState (out);
+    StateIO.writeDoubles (out, prices);
+    StateIO.writeDoubles (out, volumes);
+    StateIO.writeInts (out, iterations);
+  }
+
+  /**Lee el estado escrito por writeState en un mercado en la sombra con los
+   * mismos especialistas
+   *
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer o no coincide
+   */
+  void readState (DataInputStream in) throws IOException
+  {
+    StateIO.checkLength (in.readInt (), numShadows);
+    for (int i = 0; i < numShadows; i++)
+      specialists[i].readState (in);
+    StateIO.readDoubles (in, prices);
+    StateIO.readDoubles (in, volumes);
+    StateIO.readInts (in, iterations);
+  }
+}
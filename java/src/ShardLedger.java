@@ -0,0 +1,55 @@
+//package asmjava;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Title: ShardLedger</p>
+ * <p>Description: Libro de cuentas del coordinador cuando los agentes están
+ * en procesos AgentShard. No tiene agentes: el abono de intereses y la
+ * liquidación de las operaciones se encargan a los fragmentos, que llevan
+ * cada uno el libro de sus agentes. Así ASMModelSwarm y Specialist lo usan
+ * igual que un AgentLedger.</p>
+ */
+public class ShardLedger extends AgentLedger {
+
+  /**Fragmentos con los agentes*/
+  ShardedDemand shards;
+
+  /**Constructor de la clase, para un único activo
+   *
+   * @param aShards Fragmentos con los agentes
+   */
+  ShardLedger (ShardedDemand aShards)
+  {
+    super (0, 1);
+    shards = aShards;
+  }
+
+  public void creditEarningsAndPayTaxes (double price, double dividend)
+  {
+    shards.credit (price, dividend);
+  }
+
+  public void completeTrades (int asset, double price, double bidfrac,
+                              double offerfrac, double taupdecay, double tp)
+  {
+    shards.completeTrades (price, bidfrac, offerfrac, taupdecay, tp);
+  }
+
+  /**El estado de los agentes está en los fragmentos
+   *
+   * @param out Flujo de salida
+   * @throws IOException siempre
+   */
+  void writeState (DataOutputStream out) throws IOException
+  {
+    throw new IOException ("the agents' state is held by the agent shards");
+  }
+
+  void readState (DataInputStream in) throws IOException
+  {
+    throw new IOException ("the agents' state is held by the agent shards");
+  }
+}
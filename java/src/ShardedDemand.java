@@ -0,0 +1,414 @@
+//package asmjava;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.Socket;
+
+/**
+ * <p>Title: ShardedDemand</p>
+ * <p>Description: Origen de demanda con los agentes repartidos entre varios
+ * procesos AgentShard, en la misma máquina o en otras. El modelo hace de
+ * coordinador: se queda con el mundo, el dividendo y el especialista, y
+ * cada fragmento tiene un tramo consecutivo de agentes, su parte del libro
+ * de cuentas y un WorldMirror con el estado del mundo de cada periodo.</p>
+ * <p>Los mensajes que no esperan respuesta (abono de intereses, estado del
+ * mundo, liquidación y actualización de resultados) se quedan en el búfer
+ * de cada conexión y salen con la siguiente petición de demanda. Así cada
+ * iteración del especialista cuesta un único viaje de ida y vuelta, hecho a
+ * la vez con todos los fragmentos, y el resto del periodo no cuesta
+ * ninguno.</p>
+ * <p>Los fragmentos devuelven sumas parciales de pujas, ofertas y
+ * pendientes, que aquí se suman en el orden de los fragmentos. Con un solo
+ * fragmento los resultados son idénticos a los del modelo con los agentes
+ * en memoria; con varios pueden diferir en el redondeo de esas sumas.</p>
+ * <p>Los agentes sacan sus números aleatorios de RandomStreams con su
+ * número global, así que hace falta rngType 2.</p>
+ */
+public class ShardedDemand implements DemandSource {
+
+  /**Direcciones host:puerto de los fragmentos*/
+  String addresses[];
+  /**Conexión con cada fragmento*/
+  Socket sockets[];
+  DataInputStream in[];
+  DataOutputStream out[];
+  /**Bits que miran los agentes de cada fragmento, o null si cualquiera*/
+  int monitored[][];
+  /**Número de bits del mundo*/
+  int numWorldBits;
+  /**Bits del mundo que se envían en cada periodo*/
+  int realworld[];
+
+  /**Constructor de la clase. No se conecta hasta connect().
+   *
+   * @param list Direcciones host:puerto de los fragmentos, separadas por
+   * espacios
+   * @throws IllegalArgumentException si la lista no es válida
+   */
+  ShardedDemand (String list)
+  {
+    addresses = SweepCoordinator.split (list);
+    if (addresses.length == 0)
+      throw new IllegalArgumentException ("no agent shards in \"" + list
+                                          + "\"");
+    for (int s = 0; s < addresses.length; s++)
+      if (addresses[s].lastIndexOf (':') <= 0)
+        throw new IllegalArgumentException ("agent shard " + addresses[s]
+                                            + " is not host:port");
+  }
+
+  /**Devuelve el número de fragmentos
+   *
+   * @return número de fragmentos
+   */
+  public int getNumShards ()
+  {
+    return addresses.length;
+  }
+
+  /**Se conecta a los fragmentos y reparte los agentes en tramos
+   * consecutivos. Cada fragmento recibe los parámetros del modelo y de los
+   * agentes y el precio y el dividendo iniciales, crea sus agentes y
+   * contesta con los bits que miran.
+   *
+   * @param modelParams Parámetros del modelo
+   * @param bfParams Parámetros de los agentes
+   * @param world Mundo del mercado
+   * @return this
+   * @throws IOException si algún fragmento no responde o no acepta
+   */
+  public Object connect (ASMModelParams modelParams, BFParams bfParams,
+                         World world) throws IOException
+  {
+    int n = addresses.length, total = modelParams.numBFagents;
+    int s, i, m, first, last;
+    String host, status;
+
+    numWorldBits = world.getNumWorldBits ();
+    realworld = new int[numWorldBits];
+    sockets = new Socket[n];
+    in = new DataInputStream[n];
+    out = new DataOutputStream[n];
+    monitored = new int[n][];
+
+    for (s = 0; s < n; s++)
+      {
+        i = addresses[s].lastIndexOf (':');
+        host = addresses[s].substring (0, i);
+        sockets[s] = new Socket (host, Integer.parseInt
+                                 (addresses[s].substring (i + 1)));
+        // The messages are small and each reply is waited for
+        sockets[s].setTcpNoDelay (true);
+        in[s] = new DataInputStream (new BufferedInputStream
+                                     (sockets[s].getInputStream ()));
+        out[s] = new DataOutputStream (new BufferedOutputStream
+                                       (sockets[s].getOutputStream ()));
+
+        first = (int) ((long) s*total/n);
+        last = (int) ((long) (s + 1)*total/n);
+        out[s].writeInt (AgentShard.MAGIC);
+        out[s].writeInt (total);
+        out[s].writeInt (first);
+        out[s].writeInt (last - first);
+        out[s].writeInt (numWorldBits);
+        // The agents read the initial world as they set up their forecasts
+        out[s].writeDouble (world.getPrice ());
+        out[s].writeDouble (world.getDividend ());
+        writeParams (out[s], "model.", modelParams);
+        writeParams (out[s], "bf.", bfParams);
+        out[s].flush ();
+      }
+
+    // The shards build their agents at the same time
+    for (s = 0; s < n; s++)
+      {
+        if (in[s].readInt () != AgentShard.MAGIC)
+          throw new IOException ("agent shard " + addresses[s]
+                                 + " does not speak the shard protocol");
+        status = in[s].readUTF ();
+        if (status.length () > 0)
+          throw new IOException ("agent shard " + addresses[s] + ": "
+                                 + status);
+        m = in[s].readInt ();
+        if (m >= 0)
+          {
+            monitored[s] = new int[m];
+            for (i = 0; i < m; i++)
+              monitored[s][i] = in[s].readInt ();
+          }
+      }
+    return this;
+  }
+
+  /**Escribe los campos públicos de un objeto de parámetros que son números,
+   * booleanos o cadenas, como pares nombre-valor. Los derivados y las
+   * listas los recalcula init() en el fragmento.
+   *
+   * @param o Flujo de salida
+   * @param prefix "model." o "bf.", para SweepCoordinator.set
+   * @param params ASMModelParams o BFParams
+   * @throws IOException si no se puede escribir
+   */
+  static void writeParams (DataOutputStream o, String prefix, Object params)
+    throws IOException
+  {
+    Field fields[] = params.getClass ().getDeclaredFields ();
+    int i, n = 0;
+
+    for (i = 0; i < fields.length; i++)
+      if (isSent (fields[i]))
+        n++;
+    o.writeInt (n);
+    try
+      {
+        for (i = 0; i < fields.length; i++)
+          if (isSent (fields[i]))
+            {
+              o.writeUTF (prefix + fields[i].getName ());
+              o.writeUTF (String.valueOf (fields[i].get (params)));
+            }
+      }
+    catch (IllegalAccessException e)
+      {
+        throw new IOException (e.getMessage ());
+      }
+  }
+
+  /**Dice si un campo de parámetros se envía a los fragmentos
+   *
+   * @param f Campo
+   * @return true si es público, no estático y de tipo simple o String
+   */
+  static boolean isSent (Field f)
+  {
+    int mod = f.getModifiers ();
+
+    return (Modifier.isPublic (mod) && !Modifier.isStatic (mod)
+            && (f.getType ().isPrimitive () || f.getType () == String.class));
+  }
+
+  /**Hace que un mundo calcule los bits que miran los agentes de todos los
+   * fragmentos
+   *
+   * @param world Mundo del mercado, con clearMonitoredBits() ya hecho
+   * @return this
+   */
+  public Object monitorBits (World world)
+  {
+    for (int s = 0; s < monitored.length; s++)
+      world.monitorBits (monitored[s]);
+    return this;
+  }
+
+  /**Encarga a los fragmentos el abono de dividendos e intereses
+   * (AgentLedger.creditEarningsAndPayTaxes). No espera respuesta.
+   *
+   * @param price Precio del periodo anterior
+   * @param dividend Dividendo recién declarado
+   */
+  public void credit (double price, double dividend)
+  {
+    try
+      {
+        for (int s = 0; s < out.length; s++)
+          {
+            out[s].writeByte (AgentShard.CREDIT);
+            out[s].writeDouble (price);
+            out[s].writeDouble (dividend);
+          }
+      }
+    catch (IOException e)
+      {
+        throw failed (e);
+      }
+  }
+
+  /**Envía a los fragmentos el estado del mundo recién actualizado y les
+   * dice que preparen a sus agentes para negociar. No espera respuesta.
+   *
+   * @param time Tiempo de la simulación
+   * @param randomPeriod Periodo de los flujos de números aleatorios
+   * @param world Mundo del mercado
+   */
+  public void prepare (int time, long randomPeriod, World world)
+  {
+    int s, j;
+
+    world.getRealWorld (realworld);
+    try
+      {
+        for (s = 0; s < out.length; s++)
+          {
+            out[s].writeByte (AgentShard.PREPARE);
+            out[s].writeInt (time);
+            out[s].writeLong (randomPeriod);
+            out[s].writeDouble (world.getPrice ());
+            out[s].writeDouble (world.getDividend ());
+            for (j = 0; j < numWorldBits; j++)
+              out[s].writeByte (realworld[j]);
+          }
+      }
+    catch (IOException e)
+      {
+        throw failed (e);
+      }
+  }
+
+  /**Pide a la vez a todos los fragmentos sus sumas parciales a un precio
+   * de prueba y las suma
+   *
+   * @param trialprice Precio de prueba
+   * @param totals Pujas, ofertas y pendientes
+   */
+  public void totalsAt (double trialprice, double totals[])
+  {
+    int s;
+
+    totals[0] = totals[1] = totals[2] = 0.0;
+    try
+      {
+        for (s = 0; s < out.length; s++)
+          {
+            out[s].writeByte (AgentShard.TOTALS);
+            out[s].writeDouble (trialprice);
+            out[s].flush ();
+          }
+        for (s = 0; s < in.length; s++)
+          {
+            totals[0] += in[s].readDouble ();
+            totals[1] += in[s].readDouble ();
+            totals[2] += in[s].readDouble ();
+          }
+      }
+    catch (IOException e)
+      {
+        throw failed (e);
+      }
+  }
+
+  /**Pide a la vez a todos los fragmentos su exceso de demanda en toda la
+   * rejilla y lo suma
+   *
+   * @param prices Precios de la rejilla
+   * @param excess Exceso de demanda en cada precio
+   * @param n Número de precios
+   */
+  public void excessCurve (double prices[], double excess[], int n)
+  {
+    int s, j;
+
+    for (j = 0; j < n; j++)
+      excess[j] = 0.0;
+    try
+      {
+        for (s = 0; s < out.length; s++)
+          {
+            out[s].writeByte (AgentShard.CURVE);
+            out[s].writeInt (n);
+            for (j = 0; j < n; j++)
+              out[s].writeDouble (prices[j]);
+            out[s].flush ();
+          }
+        for (s = 0; s < in.length; s++)
+          for (j = 0; j < n; j++)
+            excess[j] += in[s].readDouble ();
+      }
+    catch (IOException e)
+      {
+        throw failed (e);
+      }
+  }
+
+  /**Encarga a los fragmentos la liquidación de las operaciones
+   * (AgentLedger.completeTrades). No espera respuesta.
+   *
+   * @param price Precio de mercado
+   * @param bidfrac Proporción de demanda satisfecha
+   * @param offerfrac Proporción de oferta satisfecha
+   * @param taupdecay Peso de la media móvil anterior del beneficio
+   * @param tp taupnew*profitperunit
+   */
+  public void completeTrades (double price, double bidfrac, double offerfrac,
+                              double taupdecay, double tp)
+  {
+    try
+      {
+        for (int s = 0; s < out.length; s++)
+          {
+            out[s].writeByte (AgentShard.TRADES);
+            out[s].writeDouble (price);
+            out[s].writeDouble (bidfrac);
+            out[s].writeDouble (offerfrac);
+            out[s].writeDouble (taupdecay);
+            out[s].writeDouble (tp);
+          }
+      }
+    catch (IOException e)
+      {
+        throw failed (e);
+      }
+  }
+
+  /**Dice a los fragmentos que sus agentes actualicen sus resultados con el
+   * precio del periodo. No espera respuesta.
+   *
+   * @param time Tiempo de la simulación
+   * @param price Precio de mercado
+   */
+  public void update (int time, double price)
+  {
+    try
+      {
+        for (int s = 0; s < out.length; s++)
+          {
+            out[s].writeByte (AgentShard.UPDATE);
+            out[s].writeInt (time);
+            out[s].writeDouble (price);
+          }
+      }
+    catch (IOException e)
+      {
+        throw failed (e);
+      }
+  }
+
+  /**Envía lo que quede en los búferes, se despide de los fragmentos y
+   * cierra las conexiones
+   */
+  public void close ()
+  {
+    if (sockets == null)
+      return;
+    for (int s = 0; s < sockets.length; s++)
+      try
+        {
+          if (sockets[s] == null)
+            continue;
+          out[s].writeByte (AgentShard.CLOSE);
+          out[s].flush ();
+          sockets[s].close ();
+        }
+      catch (IOException e)
+        {
+          System.err.println ("Exception closing agent shard "
+                              + addresses[s] + ": " + e.getMessage ());
+        }
+    sockets = null;
+  }
+
+  /**Convierte un fallo de comunicación en una excepción del modelo
+   *
+   * @param e Excepción de la conexión
+   * @return excepción que se lanza
+   */
+  RuntimeException failed (IOException e)
+  {
+    return new RuntimeException ("Exception talking to agent shards: "
+                                 + e.getMessage ());
+  }
+}
@@ -0,0 +1,18 @@
+//package asmjava;
+
+/**
+ * <p>Title: SimulationClock</p>
+ * <p>Description: Reloj de la simulación. Los agentes y el objeto Output
+ * consultan el tiempo a través de él cuando el modelo no lo mueve el
+ * planificador de Swarm sino ASMEngine; si no tienen reloj, preguntan a
+ * Swarm como siempre.</p>
+ */
+public interface SimulationClock {
+
+  /**Devuelve el tiempo actual, con el mismo significado que
+   * Globals.env.getCurrentTime()
+   *
+   * @return tiempo
+   */
+  public int getCurrentTime ();
+}
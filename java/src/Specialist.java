@@ -3,25 +3,28 @@
 import swarm.objectbase.SwarmObjectImpl;
 import swarm.defobj.Zone;
 import java.util.LinkedList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 /**
  * <p>Title: Specialist</p>
- * <p>Description: Existe una nica instancia de esta clase.
+ * <p>Description: Existe una única instancia de esta clase.
  * Esa instancia es la encargada de recoger las demandas
  * (positivas o negativas) de los agentes y calcular, mejor o peor, el precio
- * que vaca el mercado (o al menos lo intenta).</p>
+ * que vacía el mercado (o al menos lo intenta).</p>
  * <p>Existen tres tipos de especialistas diferentes, aunque todos siguen el
  * mismo procedimiento para calcular el precio de mercado:</p>
  * <ul><li>1. Lanzan un precio de prueba
- * <li>2. Mandan a cada agente un mensaje solicitndole su demanda y su
+ * <li>2. Mandan a cada agente un mensaje solicitándole su demanda y su
  * sensibilidad al precio.
  * <li>3. En algunos casos, vuelven al primer paso y lanzan un nuevo precio de
  * prueba calculado a partir de la oferta y demanda acumuladas de los agentes.
- * <li>4. Devuelven el ltimo precio calculado.
+ * <li>4. Devuelven el último precio calculado.
  * </ul>
  * <p>Una vez que han calculado el precio de mercado, dicen a los agentes que
- * actualicen su posicin, sus ganancias y sus posesiones de efectivo.</p>
- * <p>Los tres tipos de especialistas implementados en esta versin son:
+ * actualicen su posición, sus ganancias y sus posesiones de efectivo.</p>
+ * <p>Los tres tipos de especialistas implementados en esta versión son:
  * <ul><li>0. Especialista "Expectativas racionales". (ER)
  * <li>1. Especialista de pendiente (P)
  * <li>2. Especialista de ETA fija. (ETA)
@@ -29,45 +32,45 @@ import java.util.LinkedList;
  *
  * </p>
  * <p>El especialista "Expectativas racionales" (ER) calcula el precio sin
- * iterar como una funcin lineal del dividendo (precio = rea*dividendo + reb).
- * Partiendo de la hiptesis de
- * que los agentes participantes son homogneos con expectativas racionales y
- * teniendo en cuenta que forman sus expectativas para el prximo precio como
- * una funcin lineal del dividendo,
- * se calculan los coeficientes de esta ecuacin (rea y reb). El precio
- * calculado usando esta ecuacin y esos coeficientes es el que impone este
+ * iterar como una función lineal del dividendo (precio = rea*dividendo + reb).
+ * Partiendo de la hipótesis de
+ * que los agentes participantes son homogéneos con expectativas racionales y
+ * teniendo en cuenta que forman sus expectativas para el próximo precio como
+ * una función lineal del dividendo,
+ * se calculan los coeficientes de esta ecuación (rea y reb). El precio
+ * calculado usando esta ecuación y esos coeficientes es el que impone este
  * especialista. La utilidad de este especialista es comprobar si el modelo
- * soporta las predicciones del modelo neoclsico estndar. Si as fuera, se
- * debera observar un mercado esttico (como efectivamente ocurre).
- * El clculo de los coeficientes rea y reb no es inmediato aunque tampoco es
- * complicado. Para ms detalles, consltese el proyecto de fin de carrera de
+ * soporta las predicciones del modelo neoclásico estándar. Si así fuera, se
+ * debería observar un mercado estático (como efectivamente ocurre).
+ * El cálculo de los coeficientes rea y reb no es inmediato aunque tampoco es
+ * complicado. Para más detalles, consúltese el proyecto de fin de carrera de
  * Luis R. Izquierdo. </p>
  *
  * <p>El especialista de pendiente (P) calcula el exceso de oferta o de
  * demanda para un precio de prueba y, teniendo en cuenta la pendiente de las
  * curvas de oferta y demanda, lanza un nuevo precio de prueba. El proceso de
- * bsqueda termina cuando el desajuste entre oferta es suficientemente pequeo
- * (<minexcess) o despus de maxiterations iteraciones. Si las curvas de
- * oferta y demanda fueran rectas, el especialista de pendiente llegara al
+ * búsqueda termina cuando el desajuste entre oferta es suficientemente pequeño
+ * (<minexcess) o después de maxiterations iteraciones. Si las curvas de
+ * oferta y demanda fueran rectas, el especialista de pendiente llegaría al
  * precio de mercado en dos pasos. Lo que ocurre es que la demanda
  * (positiva o negativa) de cada agente no es una recta infinita, puesto que
- * pueden existir algunas restricciones de nmero de acciones o de unidades de
- * efectivo mnimo (venta en corto y prstamos restringidos). Adems puede haber
- *  precios mximo y mnimo. </p>
+ * pueden existir algunas restricciones de número de acciones o de unidades de
+ * efectivo mínimo (venta en corto y préstamos restringidos). Además puede haber
+ *  precios máximo y mínimo. </p>
  *
  * <p>Finalmente, el Especialista de ETA fija (ETA) lanza como primer precio de prueba el
- * precio del ltimo periodo. Recoge las demandas de activos de los agentes
+ * precio del último periodo. Recoge las demandas de activos de los agentes
  * para ese precio y calcula el exceso de demanda o el exceso de oferta que
  * se produzca para dicho precio. Multiplica este exceso de oferta o demanda por
  * un coeficiente constante (ETA) y entonces fija el precio de mercado de acuerdo
- * con la siguiente ecuacin:</p>
+ * con la siguiente ecuación:</p>
  * <p>precio = precio-de-prueba*(1 + ETA*(desajuste)) </p>
- * <p>El proceso de bsqueda del precio de mercado finaliza en dos pasos.
+ * <p>El proceso de búsqueda del precio de mercado finaliza en dos pasos.
  *
  *
  * <p>Copyright: Copyright (c) 2002</p>
- * <p>Depto. de Organizacin y Gestin de Empresas. Universidad de Valladolid</p>
- * @author Jos Manuel Galn & Luis R. Izquierdo
+ * <p>Depto. de Organización y Gestión de Empresas. Universidad de Valladolid</p>
+ * @author José Manuel Galán & Luis R. Izquierdo
  * @version 1.0
  *
  */
@@ -93,15 +96,31 @@ public class Specialist extends SwarmObjectImpl {
    * Especialista de ETA fija
    */
   final int SP_ETA = 2;
-  /**Precio mximo   */
+  /**
+   * Especialista de ETA adaptativa, entre etamin y etamax
+   */
+  final int SP_ADAPTIVE = 3;
+  /**
+   * Especialista de rejilla de precios
+   */
+  final int SP_GRID = 4;
+  /**
+   * Número de precios de la rejilla del especialista de rejilla
+   */
+  final int GRIDPOINTS = 16;
+  /**
+   * Número de tipos de especialista
+   */
+  public static final int NSPTYPES = 5;
+  /**Precio máximo   */
   double maxprice; /*"Ceiling on stock price"*/
-  /**Precio mnimo   */
+  /**Precio mínimo   */
   double minprice; /*"Floor under stock price"*/
   /**Se usa para ajustar el precio ante un desequilibrio oferta-demanda */
   double eta;  /*"Used in adjusting price to balance supply/demand"*/
   // double etainitial; /not used in ASM-2.0
   /**El desajuste |demanda - oferta| debe ser inferior a minexcess para que
-   * el especialista deje de iterar por esta razn. */
+   * el especialista deje de iterar por esta razón. */
   double minexcess; /*"excess demand must be smaller than this if the price adjustment process is to stop"*/
   /**Usado por el especialista ER para calcular el precio de mercado:
    * precio = rea*dividendo + reb   */
@@ -109,38 +128,73 @@ public class Specialist extends SwarmObjectImpl {
   /**Usado por el especialista ER para calcular el precio de mercado:
    * precio = rea*dividendo + reb   */
   double reb; /*" trialprice = rea*dividend + reb "*/
-  /**Proporcin de demanda satisfecha: volume/bidtotal
+  /**Proporción de demanda satisfecha: volume/bidtotal
    */
   double bidfrac; /*"used in completing trades: volume/bidtotal"*/
-  /**Proporcin de oferta satisfecha: volume/offertotal
+  /**Proporción de oferta satisfecha: volume/offertotal
    */
   double offerfrac; /*"used in completing trades: volume/offertotal"*/
   /**
-   * Nmero mximo de iteraciones para calcular el precio de mercado
+   * Número máximo de iteraciones para calcular el precio de mercado
    */
   int maxiterations; /*" maximum passes while adjusting trade conditions"*/
   //  id agentList; /*" set of traders whose demands must be reconciled"*/
-  /**Volumen de negociacin
+  /**Volumen de negociación
    */
   double volume; /*" volume of trades conducted"*/
-  /**Coeficiente para calcular la media mvil del beneficio de los agentes.
-   * Este coeficiente es el peso de la media mvil anterior.*/
+  /**Coeficiente para calcular la media móvil del beneficio de los agentes.
+   * Este coeficiente es el peso de la media móvil anterior.*/
   double taupdecay; /*"The agent's profit is calculated as an exponentially weighted moving average.  This coefficient weights old inputs in the EWMA"*/
-   /**Coeficiente para calcular la media mvil del beneficio de los agentes.
+   /**Coeficiente para calcular la media móvil del beneficio de los agentes.
    * Este coeficiente es el peso de la nueva entrada.*/
   double taupnew; /*"Used in calculating exponentially weighted moving average;  taupnew = -expm1(-1.0/aTaup); taupdecay =  1.0 - taupnew; "*/
     //   World * worldForSpec; /*" reference to World object that keeps data"*/
-    /**Tipo de especialista que se est usando.
-     * <p>Los tres tipos de especialistas implementados en esta versin son:
+    /**Tipo de especialista que se está usando.
+     * <p>Los tres tipos de especialistas implementados en esta versión son:
      * <ul><li>0. Especialista "Expectativas racionales". (ER)
      * <li>1. Especialista de pendiente (P)
      * <li>2. Especialista de ETA fija. (ETA)
+     * <li>3. Especialista de ETA adaptativa. (ETA-A)
+     * <li>4. Especialista de rejilla de precios. (R)
      * </ul>
      *
      * </p>
      *
      */
-  int sptype; /*" an enumerated type indicating the sort of Specialist is being used, valued 0, 1, or 2"*/
+  int sptype; /*" an enumerated type indicating the sort of Specialist is being used, valued 0 to 4"*/
+  /**Semiancho relativo de la rejilla del especialista de rejilla: los
+   * precios van de p*(1-gridwidth) a p*(1+gridwidth) */
+  double gridwidth; /*" relative half-width of the price grid "*/
+  /**Precios de la rejilla */
+  double gridprice[] = new double[GRIDPOINTS];
+  /**Exceso de demanda agregado en cada precio de la rejilla */
+  double gridexcess[] = new double[GRIDPOINTS];
+  /**Pujas, ofertas y pendientes totales a un precio de prueba */
+  double totals[] = new double[3];
+  /**Origen de demanda que pregunta a los agentes del mercado */
+  AgentDemand agentDemand;
+  /**Cota inferior de eta para el especialista de ETA adaptativa */
+  double etamin; /*" lower bound on the adaptive eta "*/
+  /**Cota superior de eta para el especialista de ETA adaptativa */
+  double etamax; /*" upper bound on the adaptive eta "*/
+  /**Eta que usa el especialista de ETA adaptativa. Se estima con la
+   * respuesta del desequilibrio a los últimos cambios de precio y se
+   * conserva de un periodo al siguiente. */
+  double adaptiveEta; /*" current eta estimate of the adaptive specialist "*/
+  /**Número de precios de prueba evaluados en el último periodo */
+  int iterations; /*" trial prices evaluated in the last call to performTrading "*/
+  /**Desequilibrio (demanda - oferta) que quedó al precio de mercado del
+   * último periodo */
+  double imbalance; /*" bids minus offers left at the last market price "*/
+  /**Número de periodos negociados */
+  long periods; /*" number of calls to performTrading "*/
+  /**Total de precios de prueba evaluados en todos los periodos */
+  long totalIterations; /*" trial prices evaluated over all periods "*/
+  /**Libro de cuentas de los agentes, sobre el que se liquidan las
+   * operaciones */
+  AgentLedger ledger; /*" ledger holding the agents' cash, position and profit "*/
+  /**Activo cuyo mercado vacía este especialista */
+  int asset; /*" index of the risky asset this specialist trades "*/
 
   // The Santa Fe Stockmarket -- Implementation of Specialist class
 
@@ -157,7 +211,7 @@ public class Specialist extends SwarmObjectImpl {
   }
 
   /**
-   * Fija el precio mximo
+   * Fija el precio máximo
    *
    * @param maximumPrice
    * @return this
@@ -169,7 +223,7 @@ public class Specialist extends SwarmObjectImpl {
   }
 
   /**
-   * Fija el precio mnimo
+   * Fija el precio mínimo
    *
    * @param minimumPrice
    * @return this
@@ -181,9 +235,9 @@ public class Specialist extends SwarmObjectImpl {
   }
 
   /**
-   * Calcula los pesos de la media mvil del beneficio de los agentes.
+   * Calcula los pesos de la media móvil del beneficio de los agentes.
    *
-   * @param aTaup Coeficiente para calcular la media mvil del beneficio de los agentes
+   * @param aTaup Coeficiente para calcular la media móvil del beneficio de los agentes
    * @return this
    */
   public Object setTaup (double aTaup)
@@ -206,9 +260,9 @@ public class Specialist extends SwarmObjectImpl {
    * @return this*/
   public Object setSPtype (int i)
   {
-    if(i != 0 && i != 1 && i != 2)
+    if(i < 0 || i > 4)
       {
-        System.out.println("The specialist type chosen is invalid.  Only 0, 1, or 2 are acceptable.  The Specialist will be set to Slope (i.e., 1).");
+        System.out.println("The specialist type chosen is invalid.  Only 0, 1, 2, 3, or 4 are acceptable.  The Specialist will be set to Slope (i.e., 1).");
         i = 1;
       }
     sptype = i;
@@ -216,9 +270,18 @@ public class Specialist extends SwarmObjectImpl {
     return this;
   }
 
+  /**Devuelve el tipo de especialista
+   *
+   * @return sptype
+   */
+  public int getSPtype ()
+  {
+    return sptype;
+  }
+
   /*" Set the maximum number of interations to be done while looking for a market clearing price"*/
     /**
-   * Fija el nmero mximo de iteraciones para calcular el precio de mercado
+   * Fija el número máximo de iteraciones para calcular el precio de mercado
    *
    * @param someIterations
    * @return this
@@ -231,8 +294,8 @@ public class Specialist extends SwarmObjectImpl {
 
 
     /**
-   * Fija el mnimo desajuste |demanda - oferta| para que
-   * el especialista deje de iterar por esta razn.
+   * Fija el mínimo desajuste |demanda - oferta| para que
+   * el especialista deje de iterar por esta razón.
    *
    * @param minimumExcess
    * @return this
@@ -252,9 +315,55 @@ public class Specialist extends SwarmObjectImpl {
   public Object setETA (double ETA)
   {
     eta = ETA;
+    adaptiveEta = clipEta (eta);
+    return this;
+  }
+
+    /**
+   * Fija las cotas de eta para el especialista de ETA adaptativa
+   *
+   * @param minimumEta
+   * @param maximumEta
+   * @return this
+   */
+  public Object setETAmin$max (double minimumEta, double maximumEta)
+  {
+    etamin = minimumEta;
+    etamax = maximumEta;
+    adaptiveEta = clipEta (eta);
+    return this;
+  }
+
+    /**
+   * Fija el semiancho relativo de la rejilla de precios
+   *
+   * @param aWidth
+   * @return this
+   */
+  public Object setGridWidth (double aWidth)
+  {
+    gridwidth = aWidth;
     return this;
   }
 
+  /**
+   * Recorta una estimación de eta al intervalo [etamin, etamax]. Si las
+   * cotas no se han fijado devuelve la estimación sin tocar.
+   *
+   * @param anEta
+   * @return eta recortada
+   */
+  double clipEta (double anEta)
+  {
+    if (etamax <= 0.0)
+      return anEta;
+    if (anEta < etamin)
+      return etamin;
+    if (anEta > etamax)
+      return etamax;
+    return anEta;
+  }
+
      /**
    * Fija rea
    *
@@ -279,20 +388,44 @@ public class Specialist extends SwarmObjectImpl {
     return this;
   }
 
+  /**
+   * Fija el activo cuyo mercado vacía este especialista
+   *
+   * @param anAsset
+   * @return this
+   */
+  public Object setAsset (int anAsset)
+  {
+    asset = anAsset;
+    return this;
+  }
+
+  /**
+   * Fija el libro de cuentas de los agentes
+   *
+   * @param aLedger
+   * @return this
+   */
+  public Object setLedger (AgentLedger aLedger)
+  {
+    ledger = aLedger;
+    return this;
+  }
+
 /**
- * Este es el mtodo principal de la clase. En este mtodo se calcula
+ * Este es el método principal de la clase. En este método se calcula
  * el precio de mercado de acuerdo con el especialista elegido.
  * <p>Existen tres tipos de especialistas diferentes, aunque todos siguen el
  * mismo procedimiento para calcular el precio de mercado:</p>
  * <ul><li>1. Lanzan un precio de prueba
- * <li>2. Mandan a cada agente un mensaje solicitndole su demanda y su
+ * <li>2. Mandan a cada agente un mensaje solicitándole su demanda y su
  * sensibilidad al precio.
  * <li>3. En algunos casos, vuelven al primer paso y lanzan un nuevo precio de
  * prueba calculado a partir de la oferta y demanda acumuladas de los agentes.
- * <li>4. Devuelven el ltimo precio calculado.
+ * <li>4. Devuelven el último precio calculado.
  * </ul>
  * <p>Una vez que han calculado el precio de mercado, dicen a los agentes que
- * actualicen su posicin, sus ganancias y sus posesiones de efectivo.</p>
+ * actualicen su posición, sus ganancias y sus posesiones de efectivo.</p>
  *
  * @param agentList La lista enlazada de Java que contiene a todos los agentes.
  * @param worldForSpec Referencia al mundo.
@@ -314,17 +447,37 @@ public class Specialist extends SwarmObjectImpl {
       3. [In some cases] go to  1.
 
       4. Return the last trial price.  "*/
+  {
+    if (agentDemand == null || agentDemand.getAgentList() != agentList)
+      agentDemand = new AgentDemand (agentList);
+
+    return clearDemand$Market (agentDemand, worldForSpec);
+  }
+
+  /**
+   * Calcula el precio de mercado con las pujas y ofertas de un origen de
+   * demanda cualquiera. performTrading$Market lo usa con los agentes;
+   * ShadowMarket lo usa con curvas de demanda capturadas.
+   *
+   * @param source Origen de las pujas y ofertas
+   * @param worldForSpec Referencia al mundo.
+   *
+   * @return trialprice Precio de mercado
+   */
+  public double clearDemand$Market (DemandSource source, World worldForSpec)
   {
     int mcount;
     boolean done;
-    double demand, slope, imbalance, dividend;
+    double imbalance, dividend;
+    double lastprice = 0.0, lastimbalance = 0.0, response;
+    int evaluations = 0;
     double slopetotal = 0.0;
     double trialprice = 0.0;
     double offertotal = 0.0;
     double bidtotal = 0.0;
 
-    Agent agent;
-    LinkedList index = new LinkedList();
+    if (sptype == SP_GRID)
+      return performGridTrading$Market (source, worldForSpec);
 
     volume = 0.0;
 
@@ -383,6 +536,34 @@ public class Specialist extends SwarmObjectImpl {
                 done = true;	// Two passes
               }
             break;
+
+          case SP_ADAPTIVE:
+            // Like SP_ETA, but iterates, and eta is re-estimated from how
+            // the imbalance actually responded to the last price change:
+            // the secant step p - imbalance/response is written as an eta
+            // and clipped to [etamin, etamax].  The estimate carries over
+            // to the next period.
+            if (mcount == 0)
+              trialprice = worldForSpec.getPrice();
+            else
+              {
+                imbalance = bidtotal - offertotal;
+                if (imbalance <= minexcess && imbalance >= -minexcess)
+                  {
+                    done = true;
+                    continue;
+                  }
+                if (mcount > 1 && trialprice != lastprice)
+                  {
+                    response = (imbalance - lastimbalance)/(trialprice - lastprice);
+                    if (response < 0.0)
+                      adaptiveEta = clipEta (-1.0/(response*trialprice));
+                  }
+                lastprice = trialprice;
+                lastimbalance = imbalance;
+                trialprice *= 1.0 + adaptiveEta*imbalance;
+              }
+            break;
           }
 
         // Clip trial price
@@ -392,40 +573,183 @@ public class Specialist extends SwarmObjectImpl {
           trialprice = maxprice;
 
         // Get each agent's requests and sum up bids, offers, and slopes
-        bidtotal = 0.0;
-        offertotal = 0.0;
-        slopetotal = 0.0;
-        index = agentList;
-        for(int i=0; i < index.size(); i++)
-          {
-            agent = (Agent)index.get(i);
-            slope = 0.0;
-            demand = agent.getDemandAndSlope$forPrice( slope,trialprice);
-            slopetotal += slope;
-            if (demand > 0.0)
-              bidtotal += demand;
-            else if (demand < 0.0)
-              offertotal -= demand;
-            //System.out.println("bidtotal is " + bidtotal + "and offertotal is " + offertotal);
-          }
+        source.totalsAt (trialprice, totals);
+        bidtotal = totals[0];
+        offertotal = totals[1];
+        slopetotal = totals[2];
 
         // Match up the bids and offers
         volume = (bidtotal > offertotal ? offertotal : bidtotal);
         bidfrac = (bidtotal > 0.0 ? volume / bidtotal : 0.0);
         offerfrac = (offertotal > 0.0 ? volume / offertotal : 0.0);
+        evaluations++;
       }
 
+    recordTelemetry (evaluations, bidtotal - offertotal);
+
+    return trialprice;
+  }
+
+  /**
+   * Calcula el precio de mercado con una rejilla de GRIDPOINTS precios
+   * alrededor del precio anterior. Cada agente devuelve de una vez su
+   * demanda en toda la rejilla (DemandSource.excessCurve), se busca
+   * dónde cambia de signo el exceso de demanda agregado y se interpola
+   * linealmente entre los dos precios que lo encierran. Si no hay cambio de
+   * signo, la rejilla se desplaza hacia el extremo correspondiente y se
+   * ensancha, hasta maxiterations veces. Al final cada agente fija su
+   * demanda al precio obtenido, que es la que se liquida.
+   *
+   * @param source Origen de las pujas y ofertas
+   * @param worldForSpec Referencia al mundo.
+   *
+   * @return trialprice Precio de mercado
+   */
+  public double performGridTrading$Market (DemandSource source, World worldForSpec)
+  {
+    int j, best, sweeps, evaluations = 0;
+    int mid = GRIDPOINTS/2;
+    boolean bracketed = false;
+    double center, width, e0, e1;
+    double trialprice, bidtotal, offertotal;
+
+    center = worldForSpec.getPrice();
+    width = gridwidth;
+    trialprice = center;
+
+    for (sweeps = 0; sweeps < maxiterations && !bracketed; sweeps++)
+      {
+        for (j = 0; j < GRIDPOINTS; j++)
+          {
+            gridprice[j] = center*(1.0 + width*(2.0*j/(GRIDPOINTS - 1) - 1.0));
+            if (gridprice[j] < minprice)
+              gridprice[j] = minprice;
+            if (gridprice[j] > maxprice)
+              gridprice[j] = maxprice;
+          }
+
+        // One visit per agent for the whole grid
+        source.excessCurve (gridprice, gridexcess, GRIDPOINTS);
+        evaluations++;
+
+        // Excess demand falls with price.  Take the sign change nearest
+        // the centre of the grid, in case constraints make it wiggle.
+        best = -1;
+        for (j = 0; j < GRIDPOINTS - 1; j++)
+          if (gridexcess[j] >= 0.0 && gridexcess[j+1] <= 0.0
+              && (best < 0 || Math.abs(j - mid) < Math.abs(best - mid)))
+            best = j;
+
+        if (best >= 0)
+          {
+            e0 = gridexcess[best];
+            e1 = gridexcess[best+1];
+            trialprice = (e0 > e1 ?
+                          gridprice[best] + e0*(gridprice[best+1] - gridprice[best])/(e0 - e1)
+                          : 0.5*(gridprice[best] + gridprice[best+1]));
+            bracketed = true;
+          }
+        else if (gridexcess[0] < 0.0)
+          {
+            // Excess supply all over the grid: move down
+            trialprice = gridprice[0];
+            if (trialprice <= minprice)
+              break;
+            center = trialprice;
+            width = Math.min(2.0*width, 0.9);
+          }
+        else
+          {
+            // Excess demand all over the grid: move up
+            trialprice = gridprice[GRIDPOINTS - 1];
+            if (trialprice >= maxprice)
+              break;
+            center = trialprice;
+            width = Math.min(2.0*width, 0.9);
+          }
+      }
+
+    // Clip trial price
+    if (trialprice < minprice)
+      trialprice = minprice;
+    if (trialprice > maxprice)
+      trialprice = maxprice;
+
+    // Final demands at the market price; these are the ones settled
+    source.totalsAt (trialprice, totals);
+    bidtotal = totals[0];
+    offertotal = totals[1];
+    evaluations++;
+
+    // Match up the bids and offers
+    volume = (bidtotal > offertotal ? offertotal : bidtotal);
+    bidfrac = (bidtotal > 0.0 ? volume / bidtotal : 0.0);
+    offerfrac = (offertotal > 0.0 ? volume / offertotal : 0.0);
+
+    recordTelemetry (evaluations, bidtotal - offertotal);
+
     return trialprice;
   }
 
+  /**
+   * Guarda la telemetría del periodo
+   *
+   * @param evaluations Precios de prueba (o rejillas) evaluados
+   * @param residual Demanda menos oferta al precio de mercado
+   */
+  void recordTelemetry (int evaluations, double residual)
+  {
+    iterations = evaluations;
+    imbalance = residual;
+    periods++;
+    totalIterations += evaluations;
+  }
+
   /*"Returns the volume of trade to anybody that wants, such as the observer or output objects"*/
   public double getVolume ()
   {
     return volume;
   }
 
+  /**Devuelve el número de precios de prueba evaluados en el último periodo
+   *
+   * @return iterations
+   */
+  public int getIterations ()
+  {
+    return iterations;
+  }
+
+  /**Devuelve el desequilibrio (demanda - oferta) que quedó al precio de
+   * mercado del último periodo
+   *
+   * @return imbalance
+   */
+  public double getImbalance ()
+  {
+    return imbalance;
+  }
+
+  /**Devuelve la media de precios de prueba evaluados por periodo
+   *
+   * @return totalIterations/periods
+   */
+  public double getMeanIterations ()
+  {
+    return (periods > 0 ? (double)totalIterations/periods : 0.0);
+  }
+
+  /**Devuelve la eta que usa actualmente el especialista de ETA adaptativa
+   *
+   * @return adaptiveEta
+   */
+  public double getAdaptiveEta ()
+  {
+    return adaptiveEta;
+  }
+
 /**
- * Actualiza la posicin y el efectivo de cada agente despus de que
+ * Actualiza la posición y el efectivo de cada agente después de que
  * se lleven a cabo los intercambios acordados. En ocasiones (casi siempre)
  * es necesario prorratear.
  *
@@ -449,40 +773,18 @@ public class Specialist extends SwarmObjectImpl {
    * the specialist do it for efficiency.
    "*/
   {
-    Agent agent;
-    LinkedList index = new LinkedList();
-    double bfp, ofp, tp, profitperunit;
+    double tp, profitperunit;
     double price = 0.0; //pj: was IVAR
 
     price = worldForSpec.getPrice();
     profitperunit = worldForSpec.getProfitPerUnit();
 
   // Intermediates, for speed
-    bfp = bidfrac*price;
-    ofp = offerfrac*price;
     tp = taupnew*profitperunit;
 
-  // Loop over enabled agents
-    index = agentList;
-
-    for(int i=0; i < index.size(); i++)
-      {
-        agent = (Agent)index.get(i);
-        // Update profit (moving average) using previous position
-        agent.profit = taupdecay*agent.profit + tp*agent.position;
-
-        // Make the actual trades
-        if (agent.demand > 0.0)
-          {
-            agent.position += agent.demand*bidfrac;
-            agent.cash     -= agent.demand*bfp;
-          }
-        else if (agent.demand < 0.0)
-          {
-            agent.position += agent.demand*offerfrac;
-            agent.cash     -= agent.demand*ofp;
-          }
-      }
+  // One pass over the agents' ledger: update profit (moving average)
+  // using previous position, then make the actual trades
+    ledger.completeTrades(asset, price, bidfrac, offerfrac, taupdecay, tp);
 
     return this;
   }
@@ -493,5 +795,44 @@ public class Specialist extends SwarmObjectImpl {
   {
     super.drop();
   }
-}
 
+  /**
+   * Escribe el estado del especialista: lo que cambia de un periodo a otro
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  void writeState (DataOutputStream out) throws IOException
+  {
+    out.writeInt (sptype);
+    out.writeDouble (eta);
+    out.writeDouble (adaptiveEta);
+    out.writeDouble (volume);
+    out.writeDouble (bidfrac);
+    out.writeDouble (offerfrac);
+    out.writeDouble (imbalance);
+    out.writeInt (iterations);
+    out.writeLong (periods);
+    out.writeLong (totalIterations);
+  }
+
+  /**
+   * Lee el estado escrito por writeState en un especialista del mismo tipo
+   *
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer o no coincide
+   */
+  void readState (DataInputStream in) throws IOException
+  {
+    StateIO.checkLength (in.readInt (), sptype);
+    eta = in.readDouble ();
+    adaptiveEta = in.readDouble ();
+    volume = in.readDouble ();
+    bidfrac = in.readDouble ();
+    offerfrac = in.readDouble ();
+    imbalance = in.readDouble ();
+    iterations = in.readInt ();
+    periods = in.readLong ();
+    totalIterations = in.readLong ();
+  }
+}
@@ -9,37 +9,36 @@ import swarm.Globals;
 
 /**
  * <p>Title: StartASM</p>
- * <p>Description: Esta es la clase principal, que contiene la funcin main().</p>
+ * <p>Description: Esta es la clase principal, que contiene la función main().</p>
  * <p>Copyright: Copyright (c) 2002</p>
- * <p>Depto. de Organizacin y Gestin de Empresas. Universidad de Valladolid</p>
- * @author Jos Manuel Galn & Luis R. Izquierdo
+ * <p>Depto. de Organización y Gestión de Empresas. Universidad de Valladolid</p>
+ * @author José Manuel Galán & Luis R. Izquierdo
  * @version 1.0
  *
  */
 public class StartASM  {
- /** <p>La funcin main() ocupa el lugar ms alto en la jerarqua de cualquier
-     *  simulacin en Swarm. Es en main() donde todo nace. Aqu es donde
+ /** <p>La función main() ocupa el lugar más alto en la jerarquía de cualquier
+     *  simulación en Swarm. Es en main() donde todo nace. Aquí es donde
      *  creamos el "Swarm" de mayor nivel o "theTopLevelSwarm", que es una
      *  instancia de la clase ASM<b>ObserverSwarm</b>, como es habitual en
-     *  todas las simulaciones de Swarm en modo grfico. Un "Swarm" es un objeto
-     *  que controla la gestin de memoria y el programa de eventos que debern
-     *  llevarse a cabo en la simulacin. La simulacin en Swarm necesita de dos
+     *  todas las simulaciones de Swarm en modo gráfico. Un "Swarm" es un objeto
+     *  que controla la gestión de memoria y el programa de eventos que deberán
+     *  llevarse a cabo en la simulación. La simulación en Swarm necesita de dos
      *  objetos fundamentales: Un Observador (ObserverSwarm) y un Modelo
      *  (ModelSwarm), normalmente contenido en el primero.
      *  Una vez creado el "Swarm" principal (instancia de
      *  ASM<b>ObserverSwarm</b>), le indicamos que cree los objetos (entre los
      *  cuales se encuentra el ASM<b>ModelSwarm</b>), las acciones y que se
      *  active. Finalmente lo ponemos en marcha.</p>
-     *  <p>Es importante aclarar dos aspectos de la funcin main().</p>
-     *  <p>En primer lugar, creamos aqu la instancia de Parameters, que
-     *  contiene todos los parmetros de la simulacin, aunque no sera
-     *  necesario hacerlo en main. La razn es que as permitimos que en un
-     *  futuro se puedan crear facilidades para introducir parmetros desde
-     *  la lnea de comandos. </p>
-     *  <p>En segundo lugar, cabe resaltar que esta primera versin del
-     *  mercado artificial slo admite simulaciones en modo grfico, aunque
-     *  incluye la posibilidad de escribir a fichero los principales resultados
-     *  de la simulacin. El modo "batch" puede aadirse fcilmete al programa.
+     *  <p>Es importante aclarar dos aspectos de la función main().</p>
+     *  <p>En primer lugar, creamos aquí la instancia de Parameters, que
+     *  contiene todos los parámetros de la simulación, aunque no sería
+     *  necesario hacerlo en main. La razón es que así permitimos que en un
+     *  futuro se puedan crear facilidades para introducir parámetros desde
+     *  la línea de comandos. </p>
+     *  <p>En segundo lugar, con la opción -b (--batchmode) se crea en su
+     *  lugar un ASMBatchSwarm, que ejecuta el modelo sin interfaz gráfica y
+     *  escribe los resultados a fichero.</p>
      */
     public static void main (String[] args) {
         // Swarm initialization: all Swarm apps must call this first.
@@ -54,20 +53,26 @@ public class StartASM  {
 
  ////////////////////////////////////////////////////////////////////////
 
-//      if (Globals.env.guiFlag) {
-            // We've got graphics, so make a full ObserverSwarm to get
-            // GUI objects
-            ASMObserverSwarm theTopLevelSwarm =
-                new ASMObserverSwarm (Globals.env.globalZone, arguments);
-//     }
-        ////////////////////////////////////////////////////////////////////////
+        if (!Globals.env.guiFlag) {
+            // No graphics: the batch swarm runs the model directly,
+            // without the Swarm schedules
+            ASMBatchSwarm batchSwarm =
+                new ASMBatchSwarm (Globals.env.globalZone, arguments);
+
+            batchSwarm.buildObjects ();
+            batchSwarm.go ();
+            batchSwarm.expostParamWrite ();
+            batchSwarm.drop ();
 
-/*        else {
-            ASMBatchSwarm theTopLevelSwarm =
-                (ASMBatchSwarm) Globals.env.lispAppArchiver.getWithZone$key
-                (Globals.env.globalZone, "asmBatchSwarm");
+            System.exit(0);
         }
-*/
+
+        // We've got graphics, so make a full ObserverSwarm to get
+        // GUI objects
+        ASMObserverSwarm theTopLevelSwarm =
+            new ASMObserverSwarm (Globals.env.globalZone, arguments);
+        ////////////////////////////////////////////////////////////////////////
+
         theTopLevelSwarm.buildObjects ();
 
         theTopLevelSwarm.buildActions ();
@@ -0,0 +1,73 @@
+//package asmjava;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Title: StateIO</p>
+ * <p>Description: Funciones auxiliares para escribir y leer el estado del
+ * modelo en binario (writeState/readState de cada clase). Los arrays se
+ * escriben con su longitud delante, y al leerlos se comprueba que coincida
+ * con la del array del modelo ya construido, para detectar estados de otra
+ * configuración.</p>
+ */
+public class StateIO {
+
+  /**Escribe un array de doubles con su longitud*/
+  public static void writeDoubles (DataOutputStream out, double a[])
+    throws IOException
+  {
+    out.writeInt (a.length);
+    for (int i = 0; i < a.length; i++)
+      out.writeDouble (a[i]);
+  }
+
+  /**Lee un array de doubles escrito con writeDoubles sobre un array de la
+   * misma longitud
+   *
+   * @throws IOException si la longitud no coincide
+   */
+  public static void readDoubles (DataInputStream in, double a[])
+    throws IOException
+  {
+    checkLength (in.readInt (), a.length);
+    for (int i = 0; i < a.length; i++)
+      a[i] = in.readDouble ();
+  }
+
+  /**Escribe un array de enteros con su longitud*/
+  public static void writeInts (DataOutputStream out, int a[])
+    throws IOException
+  {
+    out.writeInt (a.length);
+    for (int i = 0; i < a.length; i++)
+      out.writeInt (a[i]);
+  }
+
+  /**Lee un array de enteros escrito con writeInts sobre un array de la
+   * misma longitud
+   *
+   * @throws IOException si la longitud no coincide
+   */
+  public static void readInts (DataInputStream in, int a[])
+    throws IOException
+  {
+    checkLength (in.readInt (), a.length);
+    for (int i = 0; i < a.length; i++)
+      a[i] = in.readInt ();
+  }
+
+  /**Comprueba que un número leído coincide con el del modelo
+   *
+   * @param found Valor leído
+   * @param expected Valor del modelo
+   * @throws IOException si no coinciden
+   */
+  public static void checkLength (int found, int expected) throws IOException
+  {
+    if (found != expected)
+      throw new IOException ("state does not match the model: " + found
+                             + " instead of " + expected);
+  }
+}
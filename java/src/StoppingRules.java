@@ -0,0 +1,343 @@
+//package asmjava;
+
+/**
+ * <p>Title: StoppingRules</p>
+ * <p>Description: Reglas para terminar antes de tiempo la simulación de un
+ * activo, sobre estadísticos del precio y del volumen que se actualizan en
+ * línea cada periodo. Las usa ASMEngine, sobre todo en los barridos, para
+ * no gastar periodos en simulaciones que ya no van a cambiar.</p>
+ * <ul>
+ * <li>Divergencia: el precio lleva stopClipPeriods periodos seguidos en el
+ * tope de maxprice o de minprice, o no es un número.
+ * <li>Estacionariedad: los periodos se agrupan en bloques de stopBlock y se
+ * guardan las medias de bloque de cada estadístico de stopStatistics
+ * ("price", "volume" y "volatility", la desviación típica de la
+ * rentabilidad en el bloque). De los últimos stopBlocks bloques se compara
+ * la mitad más antigua con la más reciente (diagnóstico de Geweke con
+ * medias de bloques): el estadístico es estacionario si |z| no pasa de
+ * stopStationarity.
+ * <li>Precisión: la semiamplitud del intervalo de confianza al 95% de la
+ * media de los últimos stopBlocks bloques, relativa a esa media, no pasa
+ * de stopPrecision.
+ * </ul>
+ * <p>La simulación converge cuando todos los estadísticos cumplen todas
+ * las pruebas activas (las que tienen un valor mayor que 0). Los bloques
+ * sólo empiezan a contar tras un periodo de calentamiento, el mayor de
+ * stopMinPeriods y firstgatime (antes de él los agentes todavía no
+ * aprenden y el precio puede parecer estacionario sin serlo), y las pruebas
+ * se hacen al cerrar cada bloque, cuando ya hay stopBlocks bloques. Las
+ * reglas no forman parte del estado del modelo: después de leer un punto
+ * de control empiezan de nuevo, aunque el calentamiento se cuenta desde el
+ * principio de la simulación.</p>
+ */
+public class StoppingRules {
+
+  /**Motivos de parada*/
+  public static final String DIVERGED = "diverged";
+  public static final String CONVERGED = "converged";
+
+  /**Estadísticos de los bloques*/
+  public static final int PRICE = 0;
+  public static final int VOLUME = 1;
+  public static final int VOLATILITY = 2;
+  public static final String NAMES[] = {"price", "volume", "volatility"};
+
+  /**Valor de la normal para el intervalo de confianza al 95%*/
+  static final double CONFIDENCE_Z = 1.96;
+
+  /**Topes del precio*/
+  double maxprice, minprice;
+  /**Periodos seguidos en un tope para darla por divergente, o 0*/
+  int clipPeriods;
+  /**Periodos de cada bloque, o 0 para no probar la convergencia*/
+  int block;
+  /**Bloques que se prueban*/
+  int blocks;
+  /**Estadísticos que se prueban*/
+  int stats[];
+  /**Valor crítico de |z| y semiamplitud relativa, o 0 si no se prueban*/
+  double stationarity, precision;
+
+  /**Periodo de la simulación hasta el que no se cuentan bloques*/
+  long burnIn;
+  /**Periodos de la simulación anteriores al primero observado*/
+  long start;
+  /**Periodos observados y periodos seguidos en un tope*/
+  long periods;
+  int atClip;
+  /**Último precio, para la rentabilidad*/
+  double lastPrice;
+  /**Bloque en curso: periodos, sumas del precio y del volumen, y
+   * momentos de la rentabilidad (Welford)*/
+  int inBlock;
+  double sumPrice, sumVolume;
+  long nreturns;
+  double meanReturn, m2Return;
+  /**Valores de los últimos bloques de cada estadístico (buffer circular)*/
+  double values[][];
+  /**Bloques cerrados*/
+  long numBlocks;
+  /**Mayor |z| y mayor semiamplitud relativa de la última prueba*/
+  double maxZ, maxHalfWidth;
+
+  /**Motivo de la parada ("" mientras no se para) y explicación*/
+  String reason = "";
+  String detail = "";
+
+  /**Dice si unos parámetros piden alguna regla de parada
+   *
+   * @param p Parámetros del modelo
+   * @return true si hay alguna activa
+   */
+  public static boolean isEnabled (ASMModelParams p)
+  {
+    return (p.stopClipPeriods > 0
+            || (p.stopBlock > 0 && (p.stopStationarity > 0.0
+                                    || p.stopPrecision > 0.0)));
+  }
+
+  /**Constructor de la clase
+   *
+   * @param p Parámetros del modelo
+   * @param firstgatime Primer periodo en que los agentes usan el algoritmo
+   * genético
+   * @param startPeriods Periodos ya ejecutados, al continuar desde un
+   * punto de control
+   * @throws IllegalArgumentException si los parámetros no son válidos
+   */
+  StoppingRules (ASMModelParams p, int firstgatime, long startPeriods)
+  {
+    String names[] = SweepCoordinator.split (p.stopStatistics);
+    int i, j;
+
+    maxprice = p.maxprice;
+    minprice = p.minprice;
+    clipPeriods = p.stopClipPeriods;
+    stationarity = p.stopStationarity;
+    precision = p.stopPrecision;
+    if (p.stopBlock > 0 && (stationarity > 0.0 || precision > 0.0))
+      block = p.stopBlock;
+    blocks = p.stopBlocks;
+    burnIn = Math.max (p.stopMinPeriods, firstgatime);
+    start = startPeriods;
+    if (block > 0 && blocks < 4)
+      throw new IllegalArgumentException ("stopBlocks must be at least 4");
+    if (block > 0 && names.length == 0)
+      throw new IllegalArgumentException ("stopStatistics is empty");
+
+    stats = new int[names.length];
+    for (i = 0; i < names.length; i++)
+      {
+        for (j = 0; j < NAMES.length && !NAMES[j].equals (names[i]); j++)
+          ;
+        if (j == NAMES.length)
+          throw new IllegalArgumentException ("unknown stopping statistic "
+                                              + names[i]);
+        stats[i] = j;
+      }
+    if (block > 0)
+      values = new double[NAMES.length][blocks];
+  }
+
+  /**Añade el precio y el volumen de un periodo y aplica las reglas
+   *
+   * @param price Precio del periodo
+   * @param volume Volumen del periodo
+   * @return true si la simulación debe pararse
+   */
+  public boolean observe (double price, double volume)
+  {
+    double r, d;
+    int k;
+
+    if (isStopped ())
+      return true;
+    periods++;
+
+    if (Double.isNaN (price) || Double.isInfinite (price))
+      return stop (DIVERGED, "price is " + price);
+    if (clipPeriods > 0)
+      {
+        if (price >= maxprice || price <= minprice)
+          atClip++;
+        else
+          atClip = 0;
+        if (atClip >= clipPeriods)
+          return stop (DIVERGED, "price at "
+                       + (price >= maxprice ? "maxprice " + maxprice
+                          : "minprice " + minprice)
+                       + " for " + atClip + " periods");
+      }
+    if (block == 0)
+      return false;
+    if (start + periods <= burnIn)
+      {
+        lastPrice = price;
+        return false;
+      }
+
+    if (lastPrice > 0.0 && price > 0.0)
+      {
+        r = Math.log (price/lastPrice);
+        nreturns++;
+        d = r - meanReturn;
+        meanReturn += d/nreturns;
+        m2Return += d*(r - meanReturn);
+      }
+    lastPrice = price;
+    sumPrice += price;
+    sumVolume += volume;
+    if (++inBlock < block)
+      return false;
+
+    k = (int) (numBlocks%blocks);
+    values[PRICE][k] = sumPrice/inBlock;
+    values[VOLUME][k] = sumVolume/inBlock;
+    values[VOLATILITY][k] = (nreturns > 1
+                             ? Math.sqrt (m2Return/(nreturns - 1)) : 0.0);
+    numBlocks++;
+    inBlock = 0;
+    sumPrice = sumVolume = 0.0;
+    nreturns = 0;
+    meanReturn = m2Return = 0.0;
+
+    if (numBlocks < blocks)
+      return false;
+    return testConvergence ();
+  }
+
+  /**Prueba la estacionariedad y la precisión de los estadísticos sobre los
+   * últimos bloques
+   *
+   * @return true si todos las cumplen
+   */
+  boolean testConvergence ()
+  {
+    double z, h;
+    String what = "";
+    int i;
+
+    maxZ = maxHalfWidth = 0.0;
+    for (i = 0; i < stats.length; i++)
+      {
+        z = gewekeZ (values[stats[i]]);
+        h = relativeHalfWidth (values[stats[i]]);
+        // Written so that a NaN fails the test
+        if (stationarity > 0.0 && !(z <= stationarity))
+          return false;
+        if (precision > 0.0 && !(h <= precision))
+          return false;
+        maxZ = Math.max (maxZ, z);
+        maxHalfWidth = Math.max (maxHalfWidth, h);
+      }
+
+    for (i = 0; i < stats.length; i++)
+      what += NAMES[stats[i]] + " ";
+    if (stationarity > 0.0)
+      what += "stationary with |z| up to " + maxZ;
+    if (stationarity > 0.0 && precision > 0.0)
+      what += " and ";
+    if (precision > 0.0)
+      what += "relative half-width up to " + maxHalfWidth;
+    return stop (CONVERGED, what + " over " + blocks + " blocks of "
+                 + block + " periods");
+  }
+
+  /**Compara la media de la mitad más antigua de los bloques con la de la
+   * más reciente
+   *
+   * @param v Valores de los bloques (buffer circular lleno)
+   * @return |z|
+   */
+  double gewekeZ (double v[])
+  {
+    int na = blocks/2, nb = blocks - na;
+    int oldest = (int) (numBlocks%blocks);
+    double sa = 0.0, sb = 0.0, qa = 0.0, qb = 0.0, ma, mb, x, se;
+    int i;
+
+    for (i = 0; i < blocks; i++)
+      if (i < na)
+        sa += v[(oldest + i)%blocks];
+      else
+        sb += v[(oldest + i)%blocks];
+    ma = sa/na;
+    mb = sb/nb;
+    for (i = 0; i < blocks; i++)
+      {
+        x = v[(oldest + i)%blocks];
+        if (i < na)
+          qa += (x - ma)*(x - ma);
+        else
+          qb += (x - mb)*(x - mb);
+      }
+    se = Math.sqrt (qa/(na - 1)/na + qb/(nb - 1)/nb);
+    if (se == 0.0)
+      return (ma == mb ? 0.0 : Double.POSITIVE_INFINITY);
+    return Math.abs (ma - mb)/se;
+  }
+
+  /**Semiamplitud del intervalo de confianza de la media de los bloques,
+   * relativa a la media
+   *
+   * @param v Valores de los bloques (buffer circular lleno)
+   * @return semiamplitud/|media|
+   */
+  double relativeHalfWidth (double v[])
+  {
+    double s = 0.0, q = 0.0, m, h;
+    int i;
+
+    for (i = 0; i < blocks; i++)
+      s += v[i];
+    m = s/blocks;
+    for (i = 0; i < blocks; i++)
+      q += (v[i] - m)*(v[i] - m);
+    h = CONFIDENCE_Z*Math.sqrt (q/(blocks - 1)/blocks);
+    if (m == 0.0)
+      return (h == 0.0 ? 0.0 : Double.POSITIVE_INFINITY);
+    return h/Math.abs (m);
+  }
+
+  /**Anota la parada
+   *
+   * @param aReason DIVERGED o CONVERGED
+   * @param aDetail Explicación
+   * @return true
+   */
+  boolean stop (String aReason, String aDetail)
+  {
+    reason = aReason;
+    detail = aDetail + " at period " + periods;
+    return true;
+  }
+
+  public boolean isStopped ()
+  {
+    return reason.length () > 0;
+  }
+
+  /**Devuelve el motivo de la parada
+   *
+   * @return DIVERGED, CONVERGED o "" si no se ha parado
+   */
+  public String getReason ()
+  {
+    return reason;
+  }
+
+  /**Devuelve la explicación de la parada, sin comas para que quepa en el
+   * índice de un barrido
+   *
+   * @return explicación, o "" si no se ha parado
+   */
+  public String getDetail ()
+  {
+    return detail;
+  }
+
+  public long getPeriods ()
+  {
+    return periods;
+  }
+}
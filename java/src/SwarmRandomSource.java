@@ -0,0 +1,63 @@
+//package asmjava;
+
+import swarm.Globals;
+import swarm.random.NormalDistImpl;
+
+/**
+ * <p>Title: SwarmRandomSource</p>
+ * <p>Description: Números aleatorios de Swarm: cada extracción va a
+ * Globals.env.uniformDblRand, Globals.env.uniformIntRand o a una
+ * distribución normal de Swarm, exactamente como antes de que existiera
+ * RandomSource. Es el modo de compatibilidad: con él las simulaciones dan
+ * los mismos resultados que siempre para la misma semilla, lo que sirve para
+ * validar XoshiroRandomSource.</p>
+ * <p>Cada proceso de dividendos tenía su propia NormalDistImpl (que guarda
+ * un número de reserva entre llamadas), así que cada uno sigue teniendo su
+ * propio SwarmRandomSource.</p>
+ */
+public class SwarmRandomSource implements RandomSource {
+
+  /**Distribución normal de Swarm, o null si este origen no da normales*/
+  NormalDistImpl normalDist;
+
+  /**Crea un origen de uniformes y enteros sin distribución normal*/
+  SwarmRandomSource ()
+  {
+  }
+
+  /**Constructor de la clase
+   *
+   * @param aNormal Distribución normal de Swarm que se usa en normal()
+   */
+  SwarmRandomSource (NormalDistImpl aNormal)
+  {
+    normalDist = aNormal;
+  }
+
+  public double uniform (double min, double max)
+  {
+    return Globals.env.uniformDblRand.getDoubleWithMin$withMax (min, max);
+  }
+
+  public int uniformInt (int min, int max)
+  {
+    return Globals.env.uniformIntRand.getIntegerWithMin$withMax (min, max);
+  }
+
+  public double normal ()
+  {
+    return normalDist.getDoubleSample ();
+  }
+
+  public void fillUniform (double buffer[], int n, double min, double max)
+  {
+    for (int i = 0; i < n; i++)
+      buffer[i] = Globals.env.uniformDblRand.getDoubleWithMin$withMax (min, max);
+  }
+
+  public void fillNormal (double buffer[], int n)
+  {
+    for (int i = 0; i < n; i++)
+      buffer[i] = normalDist.getDoubleSample ();
+  }
+}
@@ -0,0 +1,533 @@
+//package asmjava;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Properties;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+
+/**
+ * <p>Title: SweepCoordinator</p>
+ * <p>Description: Coordina un barrido de parámetros demasiado grande para
+ * una sola máquina virtual. Lee la especificación del barrido, la expande
+ * en unidades de trabajo (una por combinación de valores) en una
+ * SweepQueue, lanza procesos SweepWorker locales que las consumen, y al
+ * final reúne los resultados en un índice (index.csv).</p>
+ * <p>La especificación es un fichero de texto con una línea por parámetro
+ * barrido: su nombre seguido de los valores que toma, separados por
+ * espacios. Las líneas vacías y lo que sigue a '#' se ignoran. El nombre
+ * es el de un campo público de ASMModelParams o de BFParams; si está en
+ * los dos se puede precisar con "model." o "bf." delante. Dos líneas
+ * especiales no son parámetros: "periods" (periodos de cada simulación
+ * después del calentamiento) y "maxAttempts" (intentos antes de dar una
+ * unidad por fallida). Por ejemplo:</p>
+ * <pre>
+ * periods 10000
+ * rngType 2
+ * randomSeed 1 2 3 4
+ * numBFagents 25 50
+ * bf.gafrequency 250 1000
+ * </pre>
+ * <p>Las simulaciones necesitan rngType 1 ó 2 si los procesos usan más de
+ * un hilo, y no deben escribir historyFile ni checkpointFile.</p>
+ * <p>Todo el estado está en el directorio del barrido, así que volver a
+ * ejecutar el coordinador con la misma especificación (los mismos
+ * parámetros, valores y periodos) continúa un barrido interrumpido sin
+ * repetir las unidades terminadas. Se pueden lanzar más
+ * SweepWorker a mano en otras máquinas que vean el mismo directorio.</p>
+ */
+public class SweepCoordinator {
+
+  /**Nombre del índice de resultados*/
+  public static final String INDEX = "index.csv";
+
+  /**Cola del barrido*/
+  SweepQueue queue;
+  /**Directorio del barrido*/
+  File dir;
+
+  /**Constructor de la clase
+   *
+   * @param aDir Directorio del barrido
+   * @throws IOException si no se puede crear o leer
+   */
+  public SweepCoordinator (File aDir) throws IOException
+  {
+    dir = aDir;
+    queue = new SweepQueue (dir);
+  }
+
+  /**Devuelve la cola del barrido
+   *
+   * @return queue
+   */
+  public SweepQueue getQueue ()
+  {
+    return queue;
+  }
+
+  /**Busca el campo de ASMModelParams o BFParams de un parámetro
+   *
+   * @param name Nombre, con "model." o "bf." delante o sin nada
+   * @return campo público no estático
+   * @throws IllegalArgumentException si no existe
+   */
+  static Field fieldOf (String name)
+  {
+    Class classes[] = {ASMModelParams.class, BFParams.class};
+    String field = name;
+    Field f;
+
+    if (name.startsWith ("model."))
+      {
+        classes = new Class[] {ASMModelParams.class};
+        field = name.substring (6);
+      }
+    else if (name.startsWith ("bf."))
+      {
+        classes = new Class[] {BFParams.class};
+        field = name.substring (3);
+      }
+    for (int i = 0; i < classes.length; i++)
+      try
+        {
+          f = classes[i].getDeclaredField (field);
+          if (Modifier.isPublic (f.getModifiers ())
+              && !Modifier.isStatic (f.getModifiers ()))
+            return f;
+        }
+      catch (NoSuchFieldException e)
+        {
+        }
+    throw new IllegalArgumentException ("unknown parameter " + name);
+  }
+
+  /**Convierte un valor al tipo de un campo
+   *
+   * @param f Campo
+   * @param value Valor como texto
+   * @return valor del tipo del campo
+   * @throws IllegalArgumentException si no se puede convertir
+   */
+  static Object valueOf (Field f, String value)
+  {
+    Class type = f.getType ();
+
+    if (type == Integer.TYPE)
+      return Integer.valueOf (value);
+    if (type == Long.TYPE)
+      return Long.valueOf (value);
+    if (type == Float.TYPE)
+      return Float.valueOf (value);
+    if (type == Double.TYPE)
+      return Double.valueOf (value);
+    if (type == Boolean.TYPE)
+      return Boolean.valueOf (value);
+    if (type == String.class)
+      return value;
+    throw new IllegalArgumentException ("parameter " + f.getName ()
+                                        + " of type " + type.getName ()
+                                        + " cannot be swept");
+  }
+
+  /**Da valor a un parámetro
+   *
+   * @param params Parámetros de la simulación, antes de init()
+   * @param name Nombre del parámetro
+   * @param value Valor como texto
+   */
+  static void set (Parameters params, String name, String value)
+  {
+    Field f = fieldOf (name);
+    Object target = (f.getDeclaringClass () == BFParams.class
+                     ? (Object) params.getBFParams ()
+                     : (Object) params.getModelParams ());
+
+    try
+      {
+        f.set (target, valueOf (f, value));
+      }
+    catch (IllegalAccessException e)
+      {
+        throw new IllegalArgumentException (e.getMessage ());
+      }
+  }
+
+  /**Lee una especificación y añade a la cola las unidades que no estén ya.
+   * Si el directorio tiene un barrido distinto (otros parámetros, valores o
+   * periodos), no se toca.
+   *
+   * @param specFile Fichero de la especificación
+   * @return número de unidades añadidas
+   * @throws IOException si no se puede leer o no coincide con el barrido
+   * del directorio
+   */
+  public int expand (String specFile) throws IOException
+  {
+    BufferedReader in = new BufferedReader (new FileReader (specFile));
+    LinkedList names = new LinkedList ();
+    LinkedList values = new LinkedList ();
+    Properties settings = queue.getSettings ();
+    String periods = "10000", maxAttempts = "" + SweepQueue.MAXATTEMPTS;
+    String line, name, list = "", swept = "";
+    String v[];
+    StringTokenizer st;
+    Field f;
+    int i;
+
+    try
+      {
+        while ((line = in.readLine ()) != null)
+          {
+            if (line.indexOf ('#') >= 0)
+              line = line.substring (0, line.indexOf ('#'));
+            st = new StringTokenizer (line);
+            if (!st.hasMoreTokens ())
+              continue;
+            name = st.nextToken ();
+            v = new String[st.countTokens ()];
+            if (v.length == 0)
+              throw new IOException (specFile + ": no values for " + name);
+            for (i = 0; i < v.length; i++)
+              v[i] = st.nextToken ();
+            if (name.equals ("periods"))
+              periods = "" + Long.parseLong (v[0]);
+            else if (name.equals ("maxAttempts"))
+              maxAttempts = "" + Integer.parseInt (v[0]);
+            else
+              {
+                // Fail here rather than in every worker
+                f = fieldOf (name);
+                for (i = 0; i < v.length; i++)
+                  valueOf (f, v[i]);
+                names.add (name);
+                values.add (v);
+                list += (list.length () > 0 ? " " : "") + name;
+                swept += "; " + name;
+                for (i = 0; i < v.length; i++)
+                  swept += " " + v[i];
+              }
+          }
+      }
+    catch (IllegalArgumentException e)
+      {
+        throw new IOException (specFile + ": " + e.getMessage ());
+      }
+    finally
+      {
+        in.close ();
+      }
+
+    // The whole sweep, values included, so that the unit numbers mean the
+    // same in every run
+    swept = "periods " + periods + swept;
+    if (settings.getProperty ("params") == null)
+      {
+        settings.setProperty ("params", list);
+        settings.setProperty ("periods", periods);
+        settings.setProperty ("maxAttempts", maxAttempts);
+        settings.setProperty ("spec", swept);
+        queue.saveSettings ();
+      }
+    else if (!swept.equals (settings.getProperty ("spec")))
+      throw new IOException (dir + " holds a different sweep");
+
+    return addUnits ((String[]) names.toArray (new String[0]),
+                     (String[][]) values.toArray (new String[0][]),
+                     periods);
+  }
+
+  /**Añade a la cola el producto cartesiano de los valores, numerando las
+   * unidades en orden, con el último parámetro variando más deprisa
+   *
+   * @param names Parámetros
+   * @param values Valores de cada parámetro
+   * @param periods Periodos de cada simulación
+   * @return número de unidades añadidas
+   * @throws IOException si no se puede escribir
+   */
+  int addUnits (String names[], String values[][], String periods)
+    throws IOException
+  {
+    int index[] = new int[names.length];
+    int total = 1, added = 0;
+    Properties unit;
+    int n, i;
+
+    for (i = 0; i < names.length; i++)
+      total *= values[i].length;
+    for (n = 0; n < total; n++)
+      {
+        unit = new Properties ();
+        unit.setProperty ("periods", periods);
+        for (i = 0; i < names.length; i++)
+          unit.setProperty ("param." + names[i], values[i][index[i]]);
+        if (queue.add (n, unit))
+          added++;
+        for (i = names.length - 1; i >= 0; i--)
+          {
+            if (++index[i] < values[i].length)
+              break;
+            index[i] = 0;
+          }
+      }
+    return added;
+  }
+
+  /**Lanza procesos SweepWorker en esta máquina y espera a que terminen.
+   * Mientras queden unidades pendientes (devueltas por fallos o por
+   * procesos perdidos) se lanza otra tanda, y mientras queden unidades en
+   * marcha (en otras máquinas, o de procesos muertos que recover() aún no
+   * da por perdidos) se espera a que terminen o se recuperen. Si varias
+   * tandas seguidas (tantas como intentos tiene una unidad) terminan sin
+   * llevarse ninguna unidad, como cuando los procesos fallan al arrancar,
+   * se deja de lanzar.
+   *
+   * @param workers Número de procesos
+   * @param threads Hilos de cada proceso
+   * @throws IOException si no se pueden lanzar o no avanzan
+   */
+  public void launchWorkers (int workers, int threads) throws IOException
+  {
+    String java = System.getProperty ("java.home") + File.separator + "bin"
+      + File.separator + "java";
+    Process processes[] = new Process[workers];
+    ProcessBuilder builder;
+    long progress;
+    int i, idle = 0;
+
+    if (workers <= 0)
+      return;
+    while (queue.count (SweepQueue.PENDING) > 0
+           || queue.count (SweepQueue.RUNNING) > 0)
+      {
+        if (queue.count (SweepQueue.PENDING) == 0)
+          {
+            try
+              {
+                Thread.sleep (SweepQueue.HEARTBEAT);
+              }
+            catch (InterruptedException e)
+              {
+                Thread.currentThread ().interrupt ();
+                throw new IOException ("interrupted waiting for the running units");
+              }
+            queue.recover (SweepQueue.STALE);
+            continue;
+          }
+        progress = queue.progress ();
+        for (i = 0; i < workers; i++)
+          {
+            builder = new ProcessBuilder
+              (new String[] {java,
+                             "-cp", System.getProperty ("java.class.path"),
+                             "-Djava.library.path="
+                             + System.getProperty ("java.library.path"),
+                             "SweepWorker", dir.getPath (), "" + threads});
+            builder.redirectErrorStream (true);
+            builder.redirectOutput (ProcessBuilder.Redirect.appendTo
+                                    (new File (dir, "worker-" + i + ".log")));
+            processes[i] = builder.start ();
+          }
+        for (i = 0; i < workers; i++)
+          try
+            {
+              if (processes[i].waitFor () != 0)
+                System.err.println ("Worker " + i + " exited with status "
+                                    + processes[i].exitValue ());
+            }
+          catch (InterruptedException e)
+            {
+              Thread.currentThread ().interrupt ();
+              throw new IOException ("interrupted waiting for the workers");
+            }
+        queue.recover (SweepQueue.STALE);
+        if (queue.progress () > progress)
+          idle = 0;
+        else if (++idle >= queue.getMaxAttempts ())
+          throw new IOException (idle + " batches of workers claimed no units;"
+                                 + " see the worker logs in " + dir);
+      }
+  }
+
+  /**Escribe el índice de resultados: una línea por unidad terminada, con
+   * su número, los valores de los parámetros barridos y los resultados
+   *
+   * @return número de unidades del índice
+   * @throws IOException si no se puede leer o escribir
+   */
+  public int merge () throws IOException
+  {
+    String params[] = split (queue.getSettings ().getProperty ("params", ""));
+    String units[] = queue.list (SweepQueue.DONE);
+    Properties results[] = new Properties[units.length];
+    Properties unit;
+    TreeSet keys = new TreeSet ();
+    Iterator it;
+    File temp = File.createTempFile ("index-", ".tmp", dir);
+    File file = new File (dir, INDEX);
+    PrintWriter out = new PrintWriter (new FileWriter (temp));
+    int n = 0, i;
+
+    for (i = 0; i < units.length; i++)
+      {
+        results[i] = queue.result (units[i]);
+        if (results[i] != null)
+          keys.addAll (results[i].keySet ());
+      }
+
+    out.print ("unit");
+    for (i = 0; i < params.length; i++)
+      out.print ("," + csv (params[i]));
+    for (it = keys.iterator (); it.hasNext (); )
+      out.print ("," + csv ((String) it.next ()));
+    out.println ();
+    for (i = 0; i < units.length; i++)
+      {
+        if (results[i] == null)
+          continue;
+        unit = SweepQueue.read (queue.file (SweepQueue.DONE, units[i]));
+        out.print (csv (unit.getProperty ("unit")));
+        for (int j = 0; j < params.length; j++)
+          out.print ("," + csv (unit.getProperty ("param." + params[j], "")));
+        for (it = keys.iterator (); it.hasNext (); )
+          out.print ("," + csv (results[i].getProperty ((String) it.next (), "")));
+        out.println ();
+        n++;
+      }
+    out.close ();
+    if (out.checkError ())
+      throw new IOException ("cannot write " + temp);
+    if (!temp.renameTo (file) && !(file.delete () && temp.renameTo (file)))
+      throw new IOException ("cannot rename " + temp + " to " + file);
+    return n;
+  }
+
+  /**Escribe un campo de CSV: entre comillas, con las comillas dobladas,
+   * si tiene comas, comillas o saltos de línea
+   *
+   * @param field Campo
+   * @return campo listo para el índice
+   */
+  static String csv (String field)
+  {
+    if (field.indexOf (',') < 0 && field.indexOf ('"') < 0
+        && field.indexOf ('\n') < 0 && field.indexOf ('\r') < 0)
+      return field;
+    StringBuffer quoted = new StringBuffer ("\"");
+    for (int i = 0; i < field.length (); i++)
+      {
+        if (field.charAt (i) == '"')
+          quoted.append ('"');
+        quoted.append (field.charAt (i));
+      }
+    return quoted.append ('"').toString ();
+  }
+
+  /**Separa una lista de nombres por espacios
+   *
+   * @param list Lista
+   * @return nombres
+   */
+  static String[] split (String list)
+  {
+    StringTokenizer st = new StringTokenizer (list);
+    String names[] = new String[st.countTokens ()];
+
+    for (int i = 0; i < names.length; i++)
+      names[i] = st.nextToken ();
+    return names;
+  }
+
+  /**Escribe el número de unidades de cada estado y los errores de las
+   * fallidas
+   *
+   * @return this
+   */
+  public Object printStatus ()
+  {
+    String failed[] = queue.list (SweepQueue.FAILED);
+
+    System.out.println ("pending " + queue.count (SweepQueue.PENDING)
+                        + ", running " + queue.count (SweepQueue.RUNNING)
+                        + ", done " + queue.count (SweepQueue.DONE)
+                        + ", failed " + failed.length);
+    for (int i = 0; i < failed.length; i++)
+      try
+        {
+          System.out.println
+            (failed[i] + ": " + SweepQueue.read
+             (queue.file (SweepQueue.FAILED, failed[i])).getProperty ("error"));
+        }
+      catch (IOException e)
+        {
+        }
+    return this;
+  }
+
+  /**Uso: SweepCoordinator dir [-spec fichero] [-workers n] [-threads t]
+   * [-retry]. Con -spec se añaden las unidades de la especificación; con
+   * -retry se vuelven a intentar las fallidas. Después se lanzan n procesos
+   * (1 por defecto; 0 para no lanzar ninguno y sólo reunir los resultados)
+   * de t hilos cada uno (1 por defecto) y se escribe el índice.
+   *
+   * @param args Argumentos
+   */
+  public static void main (String args[])
+  {
+    String spec = null;
+    int workers = 1, threads = 1;
+    boolean retry = false;
+    SweepCoordinator coordinator;
+    int i;
+
+    try
+      {
+        if (args.length == 0)
+          throw new IllegalArgumentException ("no sweep directory");
+        for (i = 1; i < args.length; i++)
+          if (args[i].equals ("-spec") && i + 1 < args.length)
+            spec = args[++i];
+          else if (args[i].equals ("-workers") && i + 1 < args.length)
+            workers = Integer.parseInt (args[++i]);
+          else if (args[i].equals ("-threads") && i + 1 < args.length)
+            threads = Integer.parseInt (args[++i]);
+          else if (args[i].equals ("-retry"))
+            retry = true;
+          else
+            throw new IllegalArgumentException ("unknown option " + args[i]);
+
+        coordinator = new SweepCoordinator (new File (args[0]));
+        if (spec != null)
+          System.out.println (coordinator.expand (spec) + " units added");
+        if (retry)
+          System.out.println (coordinator.getQueue ().retryFailed ()
+                              + " failed units retried");
+        coordinator.getQueue ().recover (SweepQueue.STALE);
+        coordinator.launchWorkers (workers, threads);
+        coordinator.printStatus ();
+        System.out.println (coordinator.merge () + " units in "
+                            + new File (args[0], INDEX));
+      }
+    catch (IllegalArgumentException e)
+      {
+        System.err.println (e.getMessage ());
+        System.err.println ("Usage: SweepCoordinator dir [-spec file]"
+                            + " [-workers n] [-threads t] [-retry]");
+        System.exit (2);
+      }
+    catch (IOException e)
+      {
+        System.err.println ("Exception in sweep: " + e.getMessage ());
+        System.exit (1);
+      }
+  }
+}
@@ -0,0 +1,450 @@
+//package asmjava;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * <p>Title: SweepQueue</p>
+ * <p>Description: Cola de unidades de trabajo de un barrido de parámetros,
+ * guardada en un directorio que pueden compartir varios procesos, en la
+ * misma máquina o en varias con un sistema de ficheros común. Cada unidad
+ * es un fichero de propiedades (una simulación: sus parámetros, los
+ * periodos y los intentos hechos) que pasa por los subdirectorios:</p>
+ * <ul>
+ * <li>pending: esperando. Un SweepWorker la reclama renombrándola a
+ * running; el renombrado es atómico, así que sólo un proceso la
+ * consigue.</li>
+ * <li>running: en marcha. El proceso que la ejecuta actualiza su fecha de
+ * modificación cada HEARTBEAT milisegundos; si deja de hacerlo (el proceso
+ * ha muerto), recover() la devuelve a pending. Para sacarla de running
+ * sin chocar con complete(), fail() y recover() también la renombran
+ * primero a un nombre propio.</li>
+ * <li>done: terminada, con su resultado en results.</li>
+ * <li>failed: ha fallado maxAttempts veces; retryFailed() la devuelve a
+ * pending.</li>
+ * </ul>
+ * <p>Todos los ficheros se escriben en un temporal que luego se renombra,
+ * de modo que un proceso interrumpido nunca deja uno a medias y el barrido
+ * se puede continuar simplemente volviendo a lanzar los procesos. Como la
+ * detección de procesos muertos compara fechas de ficheros, los relojes de
+ * las máquinas deben estar razonablemente sincronizados.</p>
+ */
+public class SweepQueue {
+
+  /**Subdirectorios*/
+  public static final String PENDING = "pending";
+  public static final String RUNNING = "running";
+  public static final String DONE = "done";
+  public static final String FAILED = "failed";
+  public static final String RESULTS = "results";
+  /**Fichero con los ajustes del barrido*/
+  public static final String SETTINGS = "sweep.properties";
+  /**Milisegundos entre dos señales de vida de una unidad en marcha*/
+  public static final long HEARTBEAT = 30000;
+  /**Milisegundos sin señal de vida tras los que una unidad en marcha se da
+   * por perdida*/
+  public static final long STALE = 4*HEARTBEAT;
+  /**Intentos por defecto antes de dar una unidad por fallida*/
+  public static final int MAXATTEMPTS = 3;
+  /**Causa del fallo de las unidades recuperadas por recover()*/
+  public static final String LOST = "worker lost";
+  /**Identificador de este proceso (pid@máquina) en los nombres propios*/
+  static final String PROCESS =
+    ManagementFactory.getRuntimeMXBean ().getName ().replace (File.separatorChar, '_');
+  /**Unidades que este proceso se ha llevado con un nombre propio*/
+  static long claims;
+
+  /**Directorio del barrido*/
+  File dir;
+  /**Ajustes del barrido: parámetros barridos, intentos...*/
+  Properties settings;
+
+  /**Constructor de la clase. Crea los subdirectorios si no existen.
+   *
+   * @param aDir Directorio del barrido
+   * @throws IOException si no se puede crear o leer
+   */
+  public SweepQueue (File aDir) throws IOException
+  {
+    String states[] = {PENDING, RUNNING, DONE, FAILED, RESULTS};
+
+    dir = aDir;
+    for (int i = 0; i < states.length; i++)
+      {
+        File sub = new File (dir, states[i]);
+        if (!sub.isDirectory () && !sub.mkdirs ())
+          throw new IOException ("cannot create " + sub);
+      }
+    File file = new File (dir, SETTINGS);
+    settings = (file.isFile () ? read (file) : new Properties ());
+  }
+
+  /**Lee un fichero de propiedades
+   *
+   * @param file Fichero
+   * @return propiedades
+   * @throws IOException si no se puede leer
+   */
+  public static Properties read (File file) throws IOException
+  {
+    Properties p = new Properties ();
+    InputStream in = new FileInputStream (file);
+
+    try
+      {
+        p.load (in);
+      }
+    finally
+      {
+        in.close ();
+      }
+    return p;
+  }
+
+  /**Escribe un fichero de propiedades en un temporal del mismo directorio
+   * y lo renombra
+   *
+   * @param file Fichero
+   * @param p Propiedades
+   * @throws IOException si no se puede escribir
+   */
+  public static void write (File file, Properties p) throws IOException
+  {
+    File temp = File.createTempFile ("sweep-", ".tmp",
+                                     file.getAbsoluteFile ().getParentFile ());
+    OutputStream out = new FileOutputStream (temp);
+
+    try
+      {
+        p.store (out, null);
+      }
+    finally
+      {
+        out.close ();
+      }
+    // Some systems do not rename over an existing file
+    if (!temp.renameTo (file) && !(file.delete () && temp.renameTo (file)))
+      {
+        temp.delete ();
+        throw new IOException ("cannot rename " + temp + " to " + file);
+      }
+  }
+
+  /**Nombre del fichero de una unidad
+   *
+   * @param n Número de la unidad
+   * @return nombre
+   */
+  public static String unitName (int n)
+  {
+    String digits = Integer.toString (n);
+
+    while (digits.length () < 6)
+      digits = "0" + digits;
+    return "unit-" + digits + ".unit";
+  }
+
+  /**Devuelve los ajustes del barrido
+   *
+   * @return settings
+   */
+  public Properties getSettings ()
+  {
+    return settings;
+  }
+
+  /**Guarda los ajustes del barrido
+   *
+   * @throws IOException si no se puede escribir
+   */
+  public void saveSettings () throws IOException
+  {
+    write (new File (dir, SETTINGS), settings);
+  }
+
+  /**Devuelve el número de intentos antes de dar una unidad por fallida
+   *
+   * @return maxAttempts de los ajustes, o MAXATTEMPTS
+   */
+  public int getMaxAttempts ()
+  {
+    return Integer.parseInt (settings.getProperty ("maxAttempts",
+                                                   "" + MAXATTEMPTS));
+  }
+
+  /**Devuelve el fichero de una unidad en un estado
+   *
+   * @param state PENDING, RUNNING, DONE o FAILED
+   * @param name Nombre de la unidad
+   * @return fichero
+   */
+  public File file (String state, String name)
+  {
+    return new File (new File (dir, state), name);
+  }
+
+  /**Devuelve los nombres de las unidades de un estado, ordenados
+   *
+   * @param state PENDING, RUNNING, DONE o FAILED
+   * @return nombres
+   */
+  public String[] list (String state)
+  {
+    String names[] = new File (dir, state).list ();
+    int n = 0;
+
+    if (names == null)
+      return new String[0];
+    // Leave out the temporary files of writes in progress
+    for (int i = 0; i < names.length; i++)
+      if (names[i].endsWith (".unit"))
+        names[n++] = names[i];
+    String units[] = new String[n];
+    System.arraycopy (names, 0, units, 0, n);
+    Arrays.sort (units);
+    return units;
+  }
+
+  /**Añade una unidad a pending, si no está ya en algún estado
+   *
+   * @param n Número de la unidad
+   * @param unit Propiedades de la unidad
+   * @return true si se ha añadido
+   * @throws IOException si no se puede escribir
+   */
+  public boolean add (int n, Properties unit) throws IOException
+  {
+    String name = unitName (n);
+
+    if (file (PENDING, name).exists () || file (RUNNING, name).exists ()
+        || file (DONE, name).exists () || file (FAILED, name).exists ())
+      return false;
+    unit.setProperty ("unit", "" + n);
+    write (file (PENDING, name), unit);
+    return true;
+  }
+
+  /**Reclama la primera unidad pendiente que ningún otro proceso se lleve
+   * antes
+   *
+   * @return fichero de la unidad en running, o null si no queda ninguna
+   */
+  public File claim ()
+  {
+    String names[] = list (PENDING);
+    File claimed;
+
+    for (int i = 0; i < names.length; i++)
+      {
+        claimed = file (RUNNING, names[i]);
+        if (file (PENDING, names[i]).renameTo (claimed))
+          {
+            heartbeat (claimed);
+            return claimed;
+          }
+      }
+    return null;
+  }
+
+  /**Da señal de vida de una unidad en marcha
+   *
+   * @param unit Fichero de la unidad en running
+   */
+  public void heartbeat (File unit)
+  {
+    unit.setLastModified (System.currentTimeMillis ());
+  }
+
+  /**Guarda el resultado de una unidad en marcha y la pasa a done
+   *
+   * @param unit Fichero de la unidad en running
+   * @param result Resultado
+   * @throws IOException si no se puede escribir
+   */
+  public void complete (File unit, Properties result) throws IOException
+  {
+    String name = unit.getName ();
+
+    write (new File (new File (dir, RESULTS),
+                     name.substring (0, name.length () - 5) + ".result"),
+           result);
+    // If the unit was taken back as lost meanwhile, the result stands
+    if (!unit.renameTo (file (DONE, name)))
+      file (PENDING, name).renameTo (file (DONE, name));
+  }
+
+  /**Anota un fallo de una unidad en marcha y la devuelve a pending, o la
+   * pasa a failed si ya ha agotado los intentos. Como claim(), primero se
+   * la lleva renombrándola a un nombre propio, de modo que si otro proceso
+   * la termina o la recupera a la vez sólo uno de los dos la mueve.
+   *
+   * @param unit Fichero de la unidad en running
+   * @param message Causa del fallo
+   * @return true si se ha anotado; false si otro proceso se la ha llevado
+   * antes
+   * @throws IOException si no se puede leer, escribir o mover
+   */
+  public boolean fail (File unit, String message) throws IOException
+  {
+    File claimed = privateFile (unit);
+    String name = unit.getName ();
+    Properties p;
+    int attempts;
+
+    if (!unit.renameTo (claimed))
+      return false;
+    p = read (claimed);
+    // A lost worker may have finished after all
+    if (message.equals (LOST) && result (name) != null)
+      return move (claimed, file (DONE, name));
+    attempts = Integer.parseInt (p.getProperty ("attempts", "0")) + 1;
+    p.setProperty ("attempts", "" + attempts);
+    p.setProperty ("error", message);
+    write (claimed, p);
+    return move (claimed, file (attempts >= getMaxAttempts () ? FAILED : PENDING,
+                                name));
+  }
+
+  /**Nombre propio, que no ve list(), con el que un proceso se lleva una
+   * unidad
+   *
+   * @param unit Fichero de la unidad
+   * @return fichero del mismo directorio con un nombre único
+   */
+  static synchronized File privateFile (File unit)
+  {
+    claims++;
+    return new File (unit.getParentFile (),
+                     unit.getName () + "." + PROCESS + "-" + claims + ".claim");
+  }
+
+  /**Mueve una unidad que el proceso tiene con su nombre propio
+   *
+   * @param claimed Fichero con el nombre propio
+   * @param target Destino
+   * @return true
+   * @throws IOException si no se puede renombrar
+   */
+  static boolean move (File claimed, File target) throws IOException
+  {
+    if (!claimed.renameTo (target))
+      throw new IOException ("cannot rename " + claimed + " to " + target);
+    return true;
+  }
+
+  /**Devuelve a pending (o pasa a failed) las unidades en marcha que no han
+   * dado señal de vida en un tiempo, cuyo proceso se supone muerto. Las
+   * que tienen ya resultado pasan a done.
+   *
+   * @param staleMillis Milisegundos sin señal de vida
+   * @return número de unidades recuperadas
+   */
+  public int recover (long staleMillis)
+  {
+    String names[] = list (RUNNING);
+    long now = System.currentTimeMillis ();
+    File unit;
+    int n = 0;
+
+    for (int i = 0; i < names.length; i++)
+      {
+        unit = file (RUNNING, names[i]);
+        if (now - unit.lastModified () < staleMillis)
+          continue;
+        try
+          {
+            // false if another process recovered or completed it first
+            if (fail (unit, LOST))
+              n++;
+          }
+        catch (IOException e)
+          {
+            System.err.println ("Exception recovering " + names[i] + ": "
+                                + e.getMessage ());
+          }
+      }
+    return n;
+  }
+
+  /**Devuelve a pending las unidades fallidas, con los intentos a 0
+   *
+   * @return número de unidades
+   * @throws IOException si no se puede escribir
+   */
+  public int retryFailed () throws IOException
+  {
+    String names[] = list (FAILED);
+    Properties p;
+
+    for (int i = 0; i < names.length; i++)
+      {
+        p = read (file (FAILED, names[i]));
+        p.setProperty ("attempts", "0");
+        write (file (FAILED, names[i]), p);
+        file (FAILED, names[i]).renameTo (file (PENDING, names[i]));
+      }
+    return names.length;
+  }
+
+  /**Devuelve el número de unidades de un estado
+   *
+   * @param state PENDING, RUNNING, DONE o FAILED
+   * @return número de unidades
+   */
+  public int count (String state)
+  {
+    return list (state).length;
+  }
+
+  /**Mide el trabajo hecho en la cola: unidades terminadas, fallidas y en
+   * marcha más los intentos fallidos de las que no están terminadas. Cada
+   * vez que un proceso se lleva una unidad la medida crece, y no baja
+   * salvo con retryFailed(), así que sirve para ver si una tanda de
+   * procesos ha avanzado.
+   *
+   * @return medida del avance
+   */
+  public long progress ()
+  {
+    String states[] = {PENDING, RUNNING, FAILED};
+    String names[];
+    long n = count (DONE) + count (FAILED) + count (RUNNING);
+
+    for (int k = 0; k < states.length; k++)
+      {
+        names = list (states[k]);
+        for (int i = 0; i < names.length; i++)
+          try
+            {
+              n += Integer.parseInt (read (file (states[k], names[i]))
+                                     .getProperty ("attempts", "0"));
+            }
+          catch (IOException e)
+            {
+              // Claimed or moved by another process while listing
+            }
+      }
+    return n;
+  }
+
+  /**Devuelve el resultado de una unidad terminada
+   *
+   * @param name Nombre de la unidad
+   * @return resultado, o null si no lo hay
+   * @throws IOException si no se puede leer
+   */
+  public Properties result (String name) throws IOException
+  {
+    File file = new File (new File (dir, RESULTS),
+                          name.substring (0, name.length () - 5) + ".result");
+
+    return (file.isFile () ? read (file) : null);
+  }
+}
@@ -0,0 +1,252 @@
+//package asmjava;
+
+import swarm.Globals;
+import swarm.defobj.Zone;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.Vector;
+
+/**
+ * <p>Title: SweepWorker</p>
+ * <p>Description: Proceso que consume unidades de trabajo de un barrido
+ * (SweepQueue): reclama una unidad pendiente, construye sus parámetros,
+ * ejecuta la simulación con EnsembleRunner.run() y guarda el resultado, y
+ * así hasta que no quedan unidades. Lo lanza SweepCoordinator, pero se
+ * puede lanzar a mano en cualquier máquina que vea el directorio del
+ * barrido.</p>
+ * <p>Con varios hilos, cada uno consume unidades por su cuenta; en ese
+ * caso las simulaciones necesitan rngType 1 ó 2, porque el generador de
+ * Swarm es uno para todo el proceso. Mientras una unidad está en marcha, un
+ * temporizador da señales de vida cada SweepQueue.HEARTBEAT milisegundos
+ * para que nadie la dé por perdida.</p>
+ * <p>El resultado de cada unidad guarda, para cada activo (con ".k" detrás
+ * para el activo k a partir del segundo), el último precio, dividendo,
+ * volumen y precio neutral al riesgo, y los estadísticos de cada ventana de
+ * statWindows (p. ej. "volatility500"). Si las reglas de parada
+ * (StoppingRules) terminan la simulación antes de tiempo, "periods" son los
+ * periodos que llegó a ejecutar, "stopped" el motivo y "stopDetail" la
+ * explicación; si no, "stopped" queda vacío.</p>
+ */
+public class SweepWorker {
+
+  /**Cola del barrido*/
+  SweepQueue queue;
+  /**Zona de memoria Swarm de los modelos*/
+  Zone zone;
+  /**Hilos*/
+  int threads;
+  /**Unidades en marcha, a las que se dan señales de vida*/
+  Vector running = new Vector ();
+
+  /**Constructor de la clase
+   *
+   * @param aQueue Cola del barrido
+   * @param aZone Zona de memoria Swarm de los modelos
+   * @param aThreads Número de hilos
+   */
+  public SweepWorker (SweepQueue aQueue, Zone aZone, int aThreads)
+  {
+    queue = aQueue;
+    zone = aZone;
+    threads = aThreads;
+  }
+
+  /**Consume unidades hasta que no quedan pendientes
+   *
+   * @return número de unidades ejecutadas por este proceso
+   */
+  public int work ()
+  {
+    Timer timer = new Timer ("sweep-heartbeat", true);
+    Thread workers[] = new Thread[threads];
+    final int done[] = new int[threads];
+    int n = 0, i;
+
+    timer.schedule (new TimerTask () {
+        public void run () {
+          Enumeration e;
+
+          synchronized (running)
+            {
+              for (e = running.elements (); e.hasMoreElements (); )
+                queue.heartbeat ((File) e.nextElement ());
+            }
+        }
+      }, SweepQueue.HEARTBEAT, SweepQueue.HEARTBEAT);
+
+    for (i = 0; i < threads; i++)
+      {
+        final int t = i;
+        workers[i] = new Thread (new Runnable () {
+            public void run () {
+              File unit;
+
+              while ((unit = queue.claim ()) != null)
+                if (process (unit))
+                  done[t]++;
+            }
+          }, "sweep-worker-" + i);
+        workers[i].start ();
+      }
+    for (i = 0; i < threads; i++)
+      try
+        {
+          workers[i].join ();
+          n += done[i];
+        }
+      catch (InterruptedException e)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+    timer.cancel ();
+    return n;
+  }
+
+  /**Ejecuta una unidad reclamada y la pasa a done, o anota el fallo
+   *
+   * @param unit Fichero de la unidad en running
+   * @return true si ha terminado bien
+   */
+  boolean process (File unit)
+  {
+    running.add (unit);
+    try
+      {
+        queue.complete (unit, run (SweepQueue.read (unit)));
+        return true;
+      }
+    catch (Throwable e)
+      {
+        System.err.println (unit.getName () + ": " + e);
+        try
+          {
+            queue.fail (unit, e.toString ());
+          }
+        catch (IOException f)
+          {
+            System.err.println ("Exception failing " + unit.getName () + ": "
+                                + f.getMessage ());
+          }
+        return false;
+      }
+    finally
+      {
+        running.remove (unit);
+      }
+  }
+
+  /**Construye los parámetros de una unidad y ejecuta su simulación
+   *
+   * @param unit Propiedades de la unidad
+   * @return resultado
+   * @throws IOException si la unidad no se puede ejecutar
+   */
+  Properties run (Properties unit) throws IOException
+  {
+    String names[] = SweepCoordinator.split
+      (queue.getSettings ().getProperty ("params", ""));
+    long periods = Long.parseLong (unit.getProperty ("periods"));
+    long start = System.currentTimeMillis ();
+    Parameters params;
+    EnsembleResult result;
+
+    synchronized (ASMModelSwarm.BUILDLOCK)
+      {
+        params = new Parameters (zone);
+        for (int i = 0; i < names.length; i++)
+          SweepCoordinator.set (params, names[i],
+                                unit.getProperty ("param." + names[i]));
+        params.init ();
+      }
+    if (threads > 1 && params.getModelParams ().rngType == 0)
+      throw new IOException ("rngType 0 needs a single-threaded worker");
+
+    result = EnsembleRunner.run (zone, Integer.parseInt
+                                 (unit.getProperty ("unit")),
+                                 params.getModelParams (),
+                                 params.getBFParams (), periods);
+    Properties p = results (result);
+    p.setProperty ("seconds", "" + (System.currentTimeMillis () - start)/1000.0);
+    return p;
+  }
+
+  /**Pasa el resultado de una simulación a propiedades
+   *
+   * @param result Resultado
+   * @return propiedades
+   */
+  static Properties results (EnsembleResult result)
+  {
+    Properties p = new Properties ();
+    WorldSnapshot s;
+    MarketStatistics m;
+    String suffix;
+
+    p.setProperty ("periods", "" + result.getPeriods ());
+    p.setProperty ("stopped", result.getStopReason ());
+    p.setProperty ("stopDetail", result.getStopDetail ());
+    for (int k = 0; k < result.getNumAssets (); k++)
+      {
+        suffix = (k == 0 ? "" : "." + k);
+        s = result.getSnapshot (k);
+        p.setProperty ("price" + suffix, "" + s.getPrice ());
+        p.setProperty ("dividend" + suffix, "" + s.getDividend ());
+        p.setProperty ("volume" + suffix, "" + s.getVolume ());
+        p.setProperty ("riskNeutral" + suffix, "" + s.getRiskNeutral ());
+        for (int w = 0; w < result.getNumStatWindows (k); w++)
+          {
+            m = result.getStatistics (k, w);
+            suffix = m.getWindow () + (k == 0 ? "" : "." + k);
+            p.setProperty ("meanReturn" + suffix, "" + m.getMeanReturn ());
+            p.setProperty ("volatility" + suffix, "" + m.getVolatility ());
+            p.setProperty ("kurtosis" + suffix, "" + m.getKurtosis ());
+            p.setProperty ("returnAutocorrelation" + suffix,
+                           "" + m.getReturnAutocorrelation ());
+            p.setProperty ("squaredReturnAutocorrelation" + suffix,
+                           "" + m.getSquaredReturnAutocorrelation ());
+            p.setProperty ("volumeVolatilityCorrelation" + suffix,
+                           "" + m.getVolumeVolatilityCorrelation ());
+          }
+      }
+    return p;
+  }
+
+  /**Uso: SweepWorker dir [hilos]. Ejecuta unidades del barrido del
+   * directorio hasta que no quedan pendientes.
+   *
+   * @param args Argumentos
+   */
+  public static void main (String args[])
+  {
+    SweepQueue queue;
+    int threads = (args.length > 1 ? Integer.parseInt (args[1]) : 1);
+
+    if (args.length == 0)
+      {
+        System.err.println ("Usage: SweepWorker dir [threads]");
+        System.exit (2);
+      }
+    Globals.env.initSwarm ("asm", "2.2", "bug-swarm@swarm.org",
+                           new String[] {"-b"});
+    try
+      {
+        queue = new SweepQueue (new File (args[0]));
+        // Take back the units of workers that died on any machine
+        queue.recover (SweepQueue.STALE);
+        System.out.println (new SweepWorker (queue, Globals.env.globalZone,
+                                             threads).work ()
+                            + " units done");
+      }
+    catch (IOException e)
+      {
+        System.err.println ("Exception in sweep worker: " + e.getMessage ());
+        System.exit (1);
+      }
+    System.exit (0);
+  }
+}
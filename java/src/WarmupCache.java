@@ -0,0 +1,274 @@
+//package asmjava;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * <p>Title: WarmupCache</p>
+ * <p>Description: Caché en disco del estado del modelo después del
+ * calentamiento (los WARMUPSTEPS pasos y el periodo de arranque): mundos,
+ * procesos de dividendos, especialistas, libro de cuentas, reglas de cada
+ * agente y estado de los generadores de números aleatorios. Las
+ * simulaciones que comparten todos los parámetros y la semilla lo leen de
+ * un fichero en lugar de repetir el calentamiento y la creación de las
+ * reglas.</p>
+ * <p>Cada entrada es un fichero binario "warmup-clave.state" en el
+ * directorio de la caché, donde la clave es un resumen SHA-1 de todos los
+ * parámetros de ASMModelParams y BFParams (salvo el propio directorio y los
+ * de los puntos de control), del contenido de los ficheros de dividendos
+ * (dividendFile) y de la versión del formato. Se escribe en un
+ * fichero temporal que luego se renombra, para que las simulaciones que
+ * corren a la vez no lean una entrada a medio escribir.</p>
+ * <p>El estado del generador de Swarm no se puede guardar, así que la caché
+ * sólo se usa con los generadores escritos en Java (rngType 1 ó 2).</p>
+ */
+public class WarmupCache {
+
+  /**Marca de los ficheros de la caché*/
+  public static final long MAGIC = 0x41534d5741524d31L;   // "ASMWARM1"
+  /**Versión del formato del estado; forma parte de la clave*/
+  public static final int VERSION = 3;
+  /**Parámetros que no cambian la simulación y no forman parte de la clave*/
+  static final String UNKEYED[] = {"agentShards",
+                                   "checkpointFile", "checkpointInterval",
+                                   "pipelineBlock", "pipelineDepth",
+                                   "resumeFrom", "stopBlock", "stopBlocks",
+                                   "stopClipPeriods", "stopMinPeriods",
+                                   "stopPrecision", "stopStationarity",
+                                   "stopStatistics", "warmupCache"};
+
+  /**Clave de esta configuración*/
+  String key;
+  /**Fichero de la entrada*/
+  File file;
+
+  /**Constructor de la clase
+   *
+   * @param directory Directorio de la caché
+   * @param modelParams Parámetros del modelo
+   * @param bfParams Parámetros de los agentes
+   */
+  WarmupCache (String directory, ASMModelParams modelParams, BFParams bfParams)
+  {
+    key = keyOf (modelParams, bfParams);
+    file = new File (directory, "warmup-" + key + ".state");
+  }
+
+  /**Calcula la clave de una configuración
+   *
+   * @param modelParams Parámetros del modelo
+   * @param bfParams Parámetros de los agentes
+   * @return resumen SHA-1 en hexadecimal
+   */
+  public static String keyOf (ASMModelParams modelParams, BFParams bfParams)
+  {
+    MessageDigest md;
+    byte digest[];
+    StringBuffer hex = new StringBuffer ();
+
+    try
+      {
+        md = MessageDigest.getInstance ("SHA-1");
+      }
+    catch (NoSuchAlgorithmException e)
+      {
+        throw new RuntimeException (e.getMessage ());
+      }
+    md.update (("version=" + VERSION + "\n").getBytes ());
+    hashFields (md, modelParams);
+    hashFields (md, bfParams);
+    // The same dividendFile name may hold a different tape
+    if (modelParams.dividendFile.length () > 0)
+      {
+        if (modelParams.numAssets > 1)
+          for (int k = 0; k < modelParams.numAssets; k++)
+            hashFile (md, modelParams.dividendFile + "." + k);
+        else
+          hashFile (md, modelParams.dividendFile);
+      }
+
+    digest = md.digest ();
+    for (int i = 0; i < digest.length; i++)
+      hex.append (Integer.toHexString ((digest[i] & 0xff) | 0x100).substring (1));
+    return hex.toString ();
+  }
+
+  /**Añade al resumen el nombre y el valor de cada campo público de un
+   * objeto de parámetros, por orden alfabético
+   */
+  static void hashFields (MessageDigest md, Object params)
+  {
+    Field fields[] = params.getClass ().getFields ();
+    String names[] = new String[fields.length];
+    Field field;
+    Object value;
+    int i;
+
+    for (i = 0; i < fields.length; i++)
+      names[i] = fields[i].getName ();
+    Arrays.sort (names);
+
+    md.update (params.getClass ().getName ().getBytes ());
+    for (i = 0; i < names.length; i++)
+      try
+        {
+          field = params.getClass ().getField (names[i]);
+          if (Modifier.isStatic (field.getModifiers ())
+              || Arrays.binarySearch (UNKEYED, names[i]) >= 0)
+            continue;
+          value = field.get (params);
+          if (value instanceof int[])
+            value = Arrays.toString ((int[]) value);
+          else if (value instanceof double[])
+            value = Arrays.toString ((double[]) value);
+          else if (!(value == null || value instanceof Number
+                     || value instanceof Boolean || value instanceof String))
+            continue;
+          md.update ((names[i] + "=" + value + "\n").getBytes ());
+        }
+      catch (Exception e)
+        {
+          throw new RuntimeException (e.getMessage ());
+        }
+  }
+
+  /**Añade al resumen el contenido de un fichero, o su ausencia
+   *
+   * @param md Resumen
+   * @param name Nombre del fichero
+   */
+  static void hashFile (MessageDigest md, String name)
+  {
+    File f = new File (name);
+    byte buffer[] = new byte[65536];
+    FileInputStream in = null;
+    int n;
+
+    md.update ((name + ":" + f.length () + "\n").getBytes ());
+    if (!f.isFile ())
+      return;
+    try
+      {
+        in = new FileInputStream (f);
+        while ((n = in.read (buffer)) > 0)
+          md.update (buffer, 0, n);
+      }
+    catch (IOException e)
+      {
+        throw new RuntimeException ("cannot read " + name + ": "
+                                    + e.getMessage ());
+      }
+    finally
+      {
+        try
+          {
+            if (in != null)
+              in.close ();
+          }
+        catch (IOException e)
+          {
+          }
+      }
+  }
+
+  /**Devuelve la clave de esta configuración
+   *
+   * @return key
+   */
+  public String getKey ()
+  {
+    return key;
+  }
+
+  /**Devuelve el fichero de la entrada
+   *
+   * @return file
+   */
+  public File getFile ()
+  {
+    return file;
+  }
+
+  /**Indica si hay una entrada para esta configuración
+   *
+   * @return true si el fichero existe
+   */
+  public boolean exists ()
+  {
+    return file.isFile ();
+  }
+
+  /**Lee el estado de la entrada en un modelo ya construido con los mismos
+   * parámetros
+   *
+   * @param model Modelo
+   * @throws IOException si no se puede leer o no es de esta configuración
+   */
+  public void load (ASMModelSwarm model) throws IOException
+  {
+    DataInputStream in = new DataInputStream
+      (new BufferedInputStream (new FileInputStream (file), 65536));
+
+    try
+      {
+        if (in.readLong () != MAGIC || !in.readUTF ().equals (key))
+          throw new IOException (file + " is not a warm-up state for this configuration");
+        model.readState (in);
+      }
+    finally
+      {
+        in.close ();
+      }
+  }
+
+  /**Guarda el estado de un modelo recién calentado. Los errores se
+   * avisan pero no detienen la simulación: sólo se pierde la caché.
+   *
+   * @param model Modelo
+   */
+  public void save (ASMModelSwarm model)
+  {
+    File dir = file.getAbsoluteFile ().getParentFile ();
+    File temp = null;
+    DataOutputStream out;
+
+    try
+      {
+        dir.mkdirs ();
+        temp = File.createTempFile ("warmup-", ".tmp", dir);
+        out = new DataOutputStream
+          (new BufferedOutputStream (new FileOutputStream (temp), 65536));
+        try
+          {
+            out.writeLong (MAGIC);
+            out.writeUTF (key);
+            model.writeState (out);
+          }
+        finally
+          {
+            out.close ();
+          }
+        // Another run may have stored the same entry meanwhile; either
+        // copy is good
+        if (!temp.renameTo (file))
+          temp.delete ();
+      }
+    catch (IOException e)
+      {
+        System.err.println ("Exception saving warm-up cache: " + e.getMessage ());
+        if (temp != null)
+          temp.delete ();
+      }
+  }
+}
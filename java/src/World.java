@@ -8,23 +8,27 @@ import swarm.Globals;
 import swarm.SwarmEnvironment;
 import swarm.defobj.Zone;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.LinkedList;
 
 /**
  * <p>Title: World</p>
  * <p>El Mundo es una clase que principalmente sirve para satisfacer las necesidades
- * de informacin de BFagents. World toma los datos del precio y los convierte en tendencias
+ * de información de BFagents. World toma los datos del precio y los convierte en tendencias
  * medias....
  * Una instancia de este Objeto es creada para manejar las variables de world, las
  * variables globalmente visibles que reflejan el propio mercado, incluyendo sus medias
- * mviles....Todo est basado en slo dos variables bsicas, price & dividend, las cuales
- * slo se establecen mediante los mtodos setPrice() y setDividend().
- * World tambin maneja la lista de bits, traduciendo entre el nombre de los bits y su
- * nmero, y dando descripciones de las funciones de los bits.
+ * móviles....Todo está basado en sólo dos variables básicas, price & dividend, las cuales
+ * sólo se establecen mediante los métodos setPrice() y setDividend().
+ * World también maneja la lista de bits, traduciendo entre el nombre de los bits y su
+ * número, y dando descripciones de las funciones de los bits.
  * </p>
  * <p>Copyright: Copyright (c) 2002</p>
- * <p>Depto. de Organizacin y Gestin de Empresas. Universidad de Valladolid</p>
- * @author Jos Manuel Galn & Luis R. Izquierdo
+ * <p>Depto. de Organización y Gestión de Empresas. Universidad de Valladolid</p>
+ * @author José Manuel Galán & Luis R. Izquierdo
  * @version 1.0
  *
  */
@@ -35,56 +39,52 @@ public class World extends SwarmObjectImpl {
    ... pup[UPDOWNLOOKBACK-1], and similarly for dup[n], and for
    -pricetrend:.  The argument to pricetrend() must be UPDOWNLOOKBACK
    or less. "*/
-  /**N de movimientos up/down que se almacenan del precio y el dividendo, incluyendo los valores actuales*/
+  /**Nº de movimientos up/down que se almacenan del precio y el dividendo, incluyendo los valores actuales*/
   public static final int UPDOWNLOOKBACK = 5;
-  /*" Number of moving averages "*/
-  /**N de medias mviles*/
+  /*" Default number of moving averages "*/
+  /**Nº de medias móviles por defecto*/
   public static final int NMAS = 4;
-  /*" The longest allowed Moving Average "*/
-  /**N de periodos de los que se conserva el registro del dividendo y del precio. La media mvil ms larga permitida*/
+  /*" The longest default Moving Average "*/
+  /**La media móvil más larga por defecto. La historia guarda al menos
+   * este nº de periodos del dividendo y del precio*/
   public static final int MAXHISTORY = 500;
 
-  /**El n de aspectos de world que son registrados como bits*/
-  public static int NWORLDBITS;
   public static final int NULLBIT = -1;
-   // The index of the "pup" bit
-   /**El nmero del bit que indica si el precio ha subido o ha bajado*/
-  public static final int PUPDOWNBITNUM = 42;
 
   // Breakpoints for price*interest/dividend and dividend/mean-dividend ratios.
-  /**Puntos crticos para los ratios precio-de-mercado/precio-fundamental y
+  /**Puntos críticos para los ratios precio-de-mercado/precio-fundamental y
    * dividendo/dividendo-medio
    */
   public static final double ratios[] =
           {0.25, 0.5, 0.75, 0.875, 1.0, 1.125, 1.25, 1.5, 2.0, 4.0};
 
-  /**Nmero de puntos crticos para los ratios
+  /**Número de puntos críticos para los ratios
    * precio-de-mercado/precio-fundamental y dividendo/dividendo-medio
    */
   public static final int NRATIOS = ratios.length;
 
   public static final int EQ = 0;
-  /**Tasa de inters*/
+  /**Tasa de interés*/
   public double intrate; /*" interest rate"*/
-  /**La lnea media del dividendo*/
+  /**La línea media del dividendo*/
   public double dividendscale; /*" The baseline dividend that is set by initWithBaseline: "*/
 
-  /**Array de dimensin UPDOWNLOOKBACK que indica si el precio ha subido o
-   * bajado en los ltimos UPDOWNLOOKBACK periodos
+  /**Array de dimensión UPDOWNLOOKBACK que indica si el precio ha subido o
+   * bajado en los últimos UPDOWNLOOKBACK periodos
    */
   public int pupdown[] = new int[UPDOWNLOOKBACK];	       /*" array, dimension UPDOWNLOOKBACK "*/
 
-  /**Array de dimensin UPDOWNLOOKBACK que indica si el dividendo ha subido o
-   * bajado en los ltimos UPDOWNLOOKBACK periodos
+  /**Array de dimensión UPDOWNLOOKBACK que indica si el dividendo ha subido o
+   * bajado en los últimos UPDOWNLOOKBACK periodos
    */
   public int dupdown[] = new int[UPDOWNLOOKBACK];	       /*" array, dimension UPDOWNLOOKBACK "*/
 
-  /**Valor del ndice de los arrays de histricos que se est modificando
+  /**Valor del índice de los arrays de históricos que se está modificando
    */
   public int history_top;                     /*" index value of current input into history arrays "*/
 
-  /**Nmero de periodos a los que se mira atrs para rellenar los bits de
-   * cambio del precio y del dividendo (ha subido o ha bajado?)
+  /**Número de periodos a los que se mira atrás para rellenar los bits de
+   * cambio del precio y del dividendo (¿ha subido o ha bajado?)
    */
   public int updown_top;     /*"number of time steps to look back to form pupdown and dupdown bits"*/
   /**precio que vacia el mercado*/
@@ -109,58 +109,108 @@ public class World extends SwarmObjectImpl {
   public double rationalExpectations;
   public double rea;
   public double reb;
-  /**Beneficio por accin y periodo = price - oldprice + dividend*/
+  /**Beneficio por acción y periodo = price - oldprice + dividend*/
   public double profitperunit; /*"price - oldprice + dividend"*/
   /**Medida de rentabilidad = profitperunit/oldprice*/
   public double returnratio;   /*"profitperunit/oldprice"*/
 
-  /**Este array contiene la longitud de las medias mviles que vamos a calcular.
-   * (p. ej. 0, 20, 100 y 500). Su dimensin es el nmero de medias mviles
-   * diferentes de las que disponemos.
+  /**Este array contiene la longitud de las medias móviles que vamos a calcular.
+   * (p. ej. 5, 20, 100 y 500). Su dimensión es el número de medias móviles
+   * diferentes de las que disponemos. Se puede cambiar con setMALengths.
    */
-  public int malength[]= new int[NMAS];     /*" For each MA, we must specify the length over which the average is calculated. This array has one integer for each of the moving averages we plan to keep, and it is used to set the widths covered by the moving averages."*/
-  /**El n de aspectos de world que son registrados como bits*/
+  public int malength[]= {5, 20, 100, MAXHISTORY};     /*" For each MA, we must specify the length over which the average is calculated. This array has one integer for each of the moving averages we plan to keep, and it is used to set the widths covered by the moving averages."*/
+  /**Nº de medias móviles*/
+  public int nmas = NMAS; /*" number of moving averages, the length of malength "*/
+  /**El número del bit "pup"*/
+  public int pupdownbitnum = 3 + UPDOWNLOOKBACK + 2*NMAS + NMAS*(NMAS-1)/2
+    + 2*NRATIOS; /*" index of the pup bit, which depends on nmas "*/
+  /**El nº de aspectos de world que son registrados como bits*/
   public int nworldbits; /*"The number of aspects of the world that are recorded as bits"*/
 
+  /**Bits que vigila algún agente y que, por tanto, se calculan cada
+   * periodo. null significa todos.*/
+  boolean monitored[]; /*" bits computed every period, null for all "*/
+  /**true si todos los bits de realworld están al día*/
+  boolean bitsComplete; /*" whether the unmonitored bits have been filled in "*/
+  /**Series que se publican cada periodo: las que leen los bits vigilados,
+   * y siempre las que sólo copian un campo (precio, dividendo, ratios, bit
+   * aleatorio, subidas y bajadas)*/
+  boolean seriesNow[]; /*" series published with the monitored bits "*/
+  /**Resto de las series que leen los bits, que se publican cuando alguien
+   * pide todos los bits*/
+  boolean seriesLater[]; /*" series only the unmonitored bits read "*/
+  /**true si seriesLater incluye estadísticos de la rentabilidad, que
+   * closePeriod cambia*/
+  boolean laterNeedsStats;
+  /**true si hay que volver a calcular seriesNow y seriesLater*/
+  boolean seriesStale = true;
   /**Array que contiene la ristra de bits que determinan el estado del
    * mercado. Este es el resultado fundamental de World.
    */
   int realworld[]; /*"An array (dynamically allocated, sorry) of ints, one for each bit being monitored. This is kept up-to-date. There's a lot of pointer math going on with this and I don't feel so glad about it (PJ: 2001-11-01)"*/
 
-  /**True si queremos medias mviles exponenciales.
+  /**True si queremos medias móviles exponenciales.
    */
   public boolean exponentialMAs; /*"Indicator variable, YES if the World is supposed to report back exponentially weighted moving averages"*/
 
-  /**Array de instancias de MovingAverage que contiene el valor de las medias
-   *  mviles calculadas sobre el precio.*/
-  public MovingAverage priceMA[] = new MovingAverage[NMAS];  /*" MovingAverage objects which hold price information. There are NMAS of these, and have various widths for the moving averages "*/
-
-  /**Array de instancias de MovingAverage que contiene el valor de las medias
-   *  mviles calculadas sobre el dividendo.*/
-  public MovingAverage divMA[] = new MovingAverage[NMAS];   /*"  MovingAverage objects which hold dividend moving averages. "*/
-
-  /**Array de instancias de MovingAverage que contiene el valor de las medias
-   *  mviles calculadas sobre el precio del periodo anterior.*/
-  public MovingAverage oldpriceMA[] = new MovingAverage[NMAS]; /*" MovingAverage objects which hold lagged price moving averages "*/
-
-  /**Array de instancias de MovingAverage que contiene el valor de las medias
-   *  mviles calculadas sobre el dividendo del periodo anterior.*/
-  public MovingAverage olddivMA[] = new MovingAverage[NMAS]; /*" MovingAverage objects which hold lagged dividend moving averages "*/
+  /**Historia del precio, con sus medias móviles actuales y retrasadas
+   * para cada longitud de malength.*/
+  public History priceHistory; /*" price history, answering current and lagged moving averages "*/
+
+  /**Historia del dividendo, con sus medias móviles actuales y retrasadas
+   * para cada longitud de malength.*/
+  public History divHistory;   /*" dividend history, answering current and lagged moving averages "*/
+
+  /**Almacén en disco de la historia completa (precio, dividendo, volumen y
+   * precio neutral al riesgo de cada periodo), o null si no se guarda*/
+  HistoryStore historyStore; /*" unbounded memory-mapped history, optional "*/
+
+  /**Estadísticos de la rentabilidad y el volumen, uno por ventana, o null
+   * si no se calculan*/
+  MarketStatistics stats[]; /*" rolling stylized-fact statistics, optional "*/
+  /**Precio al cerrar el periodo anterior, 0 antes del primero*/
+  double lastClosePrice;
+  /**Huecos en el registro de indicadores de los estadísticos de cada ventana*/
+  int slotVol[], slotKurt[], slotAcf[], slotAcf2[], slotVVCorr[];
+  /**Precio, volumen e iteraciones de los especialistas en la sombra en este
+   * periodo, que pasan a la foto al cerrarlo*/
+  double shadowPrice[] = new double[0], shadowVolume[] = new double[0];
+  int shadowIterations[] = new int[0];
+
+  /**Última foto publicada del mundo. Es volatile para que otros hilos vean
+   * siempre una foto completa.*/
+  volatile WorldSnapshot snapshot; /*" immutable view of the last closed period "*/
+  /**Número de periodos cerrados*/
+  long closedPeriods;
+
+  /**Origen de los números aleatorios (el bit aleatorio)*/
+  RandomSource random = new SwarmRandomSource();
 
   /**Lista enlazada de java cuyos elementos son instancias de la clase BitName.
    * Cada uno de estos objetos, que definen a un bit de estado, se compone de un
-   * nombre y de una breve descripcin.
+   * nombre y de una breve descripción.
    */
-  public static LinkedList bitnameList = new LinkedList();
+  public LinkedList bitnameList = new LinkedList();
+
+  /**Número de cada bit por su nombre, para bitNumberOf*/
+  HashMap bitIndex = new HashMap();
+
+  /**Textos de los umbrales de ratios[], para los nombres de los bits*/
+  static final String ratioNames[] =
+          {"1/4", "1/2", "3/4", "7/8", "1", "9/8", "5/4", "3/2", "2", "4"};
+
+  /**Registro de indicadores: declara cada bit como una comparación entre
+   * series y lo evalúa*/
+  IndicatorRegistry indicators; /*" compiled world-bit declarations "*/
+
+  /**Huecos en el registro de las series que publica este World cada periodo*/
+  int slotPrice, slotDividend, slotDivRatio, slotPriceRatio, slotRandom;
+  int slotPup[], slotDup[];
+  int slotPMA[], slotPOldMA[], slotDMA[], slotDOldMA[];
 
   //public final double drand = Globals.env.uniformDblRand.getDoubleSample();
   //public final double urand = Globals.env.uniformDblRand.getDoubleWithMin$withMax(-1,1);
 
-  /**Array que contiene la historia del dividendo (MAXHISTORY valores)*/
-  private double divhistory[];       /*" dividend history array, goes back MAXHISTORY points"*/
-  /**Array de la historia de precios (MAXHISTORY valores)*/
-  private double pricehistory[];     /*" price history array "*/
-
 
     /*" bitname class holds the substantive information about various world indicators
    It is a list of bit names and descriptions
@@ -178,113 +228,140 @@ public class World extends SwarmObjectImpl {
   super(aZone);
   }
 
+ /**Devuelve el registro de indicadores de este World, creándolo con los
+  * bits de siempre si aún no existe. Se pueden declarar bits nuevos en él
+  * antes de llamar a createBitnameList o a initWithBaseline; los bits nuevos
+  * se añaden detrás de los de siempre. Las series disponibles son "price",
+  * "dividend", "d/md", "pr/d", "random", "pup0".."pup4", "dup0".."dup4" y,
+  * para cada longitud n de malength, "pMAn", "pMAnold", "dMAn" y "dMAnold".
+  * Si se han fijado ventanas de estadísticos (setStatWindows), también
+  * "volw", "kurtw", "acfw", "acf2w" y "vvcorrw" para cada ventana w.
+  * @return indicators
+  */
+  public IndicatorRegistry getIndicators ()
+  {
+    if (indicators == null)
+      this.declareIndicators ();
+    return indicators;
+  }
+
+ /**Registra las series de este World y declara los bits de siempre, en el
+  * orden que espera el resto del programa (pupdownbitnum, los NAMES, etc.)
+  */
+  void declareIndicators ()
+  /*" NB: If you change the order or meaning of bits, also check or change:
+   1. The pupdownbitnum value and -setMALengths:.
+   2. The NAMES documentation file -- do "market -n > NAMES". "*/
+  {
+    int j, k;
+
+    indicators = new IndicatorRegistry();
+
+    slotPrice = indicators.addSeries ("price");
+    slotDividend = indicators.addSeries ("dividend");
+    slotDivRatio = indicators.addSeries ("d/md");
+    slotPriceRatio = indicators.addSeries ("pr/d");
+    slotRandom = indicators.addSeries ("random");
+    slotPup = new int[UPDOWNLOOKBACK];
+    slotDup = new int[UPDOWNLOOKBACK];
+    for (j = 0; j < UPDOWNLOOKBACK; j++)
+      {
+        slotPup[j] = indicators.addSeries ("pup" + j);
+        slotDup[j] = indicators.addSeries ("dup" + j);
+      }
+    slotPMA = new int[nmas];
+    slotPOldMA = new int[nmas];
+    slotDMA = new int[nmas];
+    slotDOldMA = new int[nmas];
+    for (j = 0; j < nmas; j++)
+      {
+        slotPMA[j] = indicators.addSeries ("pMA" + malength[j]);
+        slotPOldMA[j] = indicators.addSeries ("pMA" + malength[j] + "old");
+        slotDMA[j] = indicators.addSeries ("dMA" + malength[j]);
+        slotDOldMA[j] = indicators.addSeries ("dMA" + malength[j] + "old");
+      }
+    if (stats != null)
+      {
+        slotVol = new int[stats.length];
+        slotKurt = new int[stats.length];
+        slotAcf = new int[stats.length];
+        slotAcf2 = new int[stats.length];
+        slotVVCorr = new int[stats.length];
+        for (j = 0; j < stats.length; j++)
+          {
+            k = stats[j].getWindow();
+            slotVol[j] = indicators.addSeries ("vol" + k);
+            slotKurt[j] = indicators.addSeries ("kurt" + k);
+            slotAcf[j] = indicators.addSeries ("acf" + k);
+            slotAcf2[j] = indicators.addSeries ("acf2" + k);
+            slotVVCorr[j] = indicators.addSeries ("vvcorr" + k);
+          }
+      }
+
+    indicators.declareStandardBits (malength);
+  }
+
  /**Crea e inicializa la bitnameList: lista enlazada de java cuyos elementos
   * son instancias de la clase BitName.
    * Cada uno de estos objetos, que definen a un bit de estado, se compone de un
-   * nombre y de una breve descripcin.
+   * nombre y de una breve descripción. La lista y la tabla de bitNumberOf
+   * salen del registro de indicadores, que se compila aquí. Son de cada
+   * mundo, de modo que varios modelos pueden convivir en la misma máquina
+   * virtual.
    */
   public void createBitnameList(){
-    //BitName bit = new BitName("on", "dummy bit -- always on");
-    //bitnameList.add(bit);   // 0
-
-    bitnameList.add(new BitName("on", "dummy bit -- always on"));   // 0
-    bitnameList.add(new BitName("off", "dummy bit -- always off"));
-    bitnameList.add(new BitName("random", "random on or off"));
-
-    bitnameList.add(new BitName("dup", "dividend went up this period"));  // 3
-    bitnameList.add(new BitName("dup1", "dividend went up one period ago"));
-    bitnameList.add(new BitName("dup2", "dividend went up two periods ago"));
-    bitnameList.add(new BitName("dup3", "dividend went up three periods ago"));
-    bitnameList.add(new BitName("dup4", "dividend went up four periods ago"));
-
-    bitnameList.add(new BitName("d5up", "5-period MA of dividend went up"));  // 8
-    bitnameList.add(new BitName("d20up", "20-period MA of dividend went up"));
-    bitnameList.add(new BitName("d100up", "100-period MA of dividend went up"));
-    bitnameList.add(new BitName("d500up", "500-period MA of dividend went up"));
-
-    bitnameList.add(new BitName("d>d5",   "dividend > 5-period MA"));  // 12
-    bitnameList.add(new BitName("d>d20",  "dividend > 20-period MA"));
-    bitnameList.add(new BitName("d>d100", "dividend > 100-period MA"));
-    bitnameList.add(new BitName("d>d500", "dividend > 500-period MA"));
-
-    bitnameList.add(new BitName("d5>d20", "dividend: 5-period MA > 20-period MA"));  // 16
-    bitnameList.add(new BitName("d5>d100", "dividend: 5-period MA > 100-period MA"));
-    bitnameList.add(new BitName("d5>d500", "dividend: 5-period MA > 500-period MA"));
-    bitnameList.add(new BitName("d20>d100", "dividend: 20-period MA > 100-period MA"));
-    bitnameList.add(new BitName("d20>d500", "dividend: 20-period MA > 500-period MA"));
-    bitnameList.add(new BitName("d100>d500", "dividend: 100-period MA > 500-period MA"));
-
-    bitnameList.add(new BitName("d/md>1/4", "dividend/mean dividend > 1/4"));  // 22
-    bitnameList.add(new BitName("d/md>1/2", "dividend/mean dividend > 1/2"));
-    bitnameList.add(new BitName("d/md>3/4", "dividend/mean dividend > 3/4"));
-    bitnameList.add(new BitName("d/md>7/8", "dividend/mean dividend > 7/8"));
-    bitnameList.add(new BitName("d/md>1",   "dividend/mean dividend > 1  "));
-    bitnameList.add(new BitName("d/md>9/8", "dividend/mean dividend > 9/8"));
-    bitnameList.add(new BitName("d/md>5/4", "dividend/mean dividend > 5/4"));
-    bitnameList.add(new BitName("d/md>3/2", "dividend/mean dividend > 3/2"));
-    bitnameList.add(new BitName("d/md>2", "dividend/mean dividend > 2"));
-    bitnameList.add(new BitName("d/md>4", "dividend/mean dividend > 4"));
-
-    bitnameList.add(new BitName("pr/d>1/4", "price*interest/dividend > 1/4"));  // 32
-    bitnameList.add(new BitName("pr/d>1/2", "price*interest/dividend > 1/2"));
-    bitnameList.add(new BitName("pr/d>3/4", "price*interest/dividend > 3/4"));
-    bitnameList.add(new BitName("pr/d>7/8", "price*interest/dividend > 7/8"));
-    bitnameList.add(new BitName("pr/d>1",   "price*interest/dividend > 1"));
-    bitnameList.add(new BitName("pr/d>9/8", "price*interest/dividend > 9/8"));
-    bitnameList.add(new BitName("pr/d>5/4", "price*interest/dividend > 5/4"));
-    bitnameList.add(new BitName("pr/d>3/2", "price*interest/dividend > 3/2"));
-    bitnameList.add(new BitName("pr/d>2",   "price*interest/dividend > 2"));
-    bitnameList.add(new BitName("pr/d>4",   "price*interest/dividend > 4"));
-
-    bitnameList.add(new BitName("pup", "price went up this period"));  // 42
-    bitnameList.add(new BitName("pup1", "price went up one period ago"));
-    bitnameList.add(new BitName("pup2", "price went up two periods ago"));
-    bitnameList.add(new BitName("pup3", "price went up three periods ago"));
-    bitnameList.add(new BitName("pup4", "price went up four periods ago"));
-
-    bitnameList.add(new BitName("p5up", "5-period MA of price went up")); // 47
-    bitnameList.add(new BitName("p20up", "20-period MA of price went up"));
-    bitnameList.add(new BitName("p100up", "100-period MA of price went up"));
-    bitnameList.add(new BitName("p500up", "500-period MA of price went up"));
-
-    bitnameList.add(new BitName("p>p5", "price > 5-period MA")); // 51
-    bitnameList.add(new BitName("p>p20", "price > 20-period MA"));
-    bitnameList.add(new BitName("p>p100", "price > 100-period MA"));
-    bitnameList.add(new BitName("p>p500", "price > 500-period MA"));
-
-    bitnameList.add(new BitName("p5>p20", "price: 5-period MA > 20-period MA")); // 55
-    bitnameList.add(new BitName("p5>p100", "price: 5-period MA > 100-period MA"));
-    bitnameList.add(new BitName("p5>p500", "price: 5-period MA > 500-period MA"));
-    bitnameList.add(new BitName("p20>p100", "price: 20-period MA > 100-period MA"));
-    bitnameList.add(new BitName("p20>p500", "price: 20-period MA > 500-period MA"));
-    bitnameList.add(new BitName("p100>p500", "price: 100-period MA > 500-period MA"));
-
-    NWORLDBITS = bitnameList.size();
-  }
-
-  /**Mtodo implementado para obtener ns enteros aleatorios en el
+    this.getIndicators().compile();
+    seriesStale = true;
+
+    bitnameList.clear();
+    bitnameList.addAll(indicators.getBitNames());
+    bitIndex = indicators.getBitIndex();
+    nworldbits = indicators.getNumBits();
+  }
+
+  /**Método implementado para obtener nºs enteros aleatorios en el
    * intervalo [0,x-1].
   *
   * @param x
-  * @return double El nmero aleatorio.
+  * @return double El número aleatorio.
   */
   public  int irand(int x){
-    return Globals.env.uniformIntRand.getIntegerWithMin$withMax(0,x-1);
+    return random.uniformInt(0,x-1);
+  }
+
+  /**Fija el origen de los números aleatorios. Debe llamarse antes de
+   * initWithBaseline.
+   *
+   * @param aSource Origen de los números aleatorios
+   * @return this
+   */
+  public Object setRandomSource (RandomSource aSource)
+  {
+    random = aSource;
+    return this;
   }
 
-  /*" GETMA(x,j) is a method that checks to see if we want an exponential MA or regular when we retrieve values from MA objects "*/
-/**Devuelve la media mvil apropiada, comprobando si hemos elegido usar
- * medias mviles exponenciales o no.
+  /*" GETMA(x,j) is a method that checks to see if we want an exponential MA or regular when we retrieve values from a History "*/
+/**Devuelve la media móvil apropiada, comprobando si hemos elegido usar
+ * medias móviles exponenciales o no.
  */
-  public double GETMA(MovingAverage[] x,int j){
-   return (exponentialMAs ? x[j].getEWMA():x[j].getMA());
+  public double GETMA(History x,int j){
+   return (exponentialMAs ? x.getEWMA(j):x.getMA(j));
+  }
+
+/**Devuelve la media móvil retrasada apropiada (la de los valores de hace
+ * malength[j] periodos), comprobando si hemos elegido usar medias móviles
+ * exponenciales o no.
+ */
+  public double GETOLDMA(History x,int j){
+   return (exponentialMAs ? x.getOldEWMA(j):x.getOldMA(j));
   }
 /**
- * <p>Funcin para pasar de un valor boolean a un entero:</p>
+ * <p>Función para pasar de un valor boolean a un entero:</p>
  * <p>true -> 1.</p>
  * <p>false -> 0.</p>
  * @param a El valor boolean (true o false).
- * @return int El valor entero (1  0).
+ * @return int El valor entero (1 ó 0).
  */
   public int ChangeBooleanToInt(boolean a){
     if (a==true)
@@ -301,23 +378,23 @@ public class World extends SwarmObjectImpl {
 
   The World also manages the list of bits, translating between bit names
   and bit numbers, and providing descriptions of the bits' functions.
-  These are done by class methods because they are needed before the
-  instnce is instantiated."*/
+  These used to be class methods; now each World has its own list,
+  since the bits depend on its moving averages and indicators."*/
 
   /*"	Supplies a description of the specified bit, taken from the
    *	bitnamelist[] table below.  Also works for NULLBIT.
   "*/
   /**
-   * Proporciona una descripcin del bit especificado, tomado de la lista
-   * bitnamelist[].Tambin funciona para NULLBIT.
-   * @param n Nmero del bit del que queremos la descripcin
-   * @return description Descripcin del bit especificado
+   * Proporciona una descripción del bit especificado, tomado de la lista
+   * bitnamelist[].También funciona para NULLBIT.
+   * @param n Número del bit del que queremos la descripción
+   * @return description Descripción del bit especificado
    */
-  public static String descriptionOfBit(int n)
+  public String descriptionOfBit(int n)
   {
     if (n == NULLBIT)
       return "(Unused bit for spacing)";
-    else if (n < 0 || n >= NWORLDBITS)
+    else if (n < 0 || n >= nworldbits)
       return "(Invalid world bit)";
     return ((BitName)(bitnameList.get(n))).description;
   }
@@ -329,47 +406,41 @@ public class World extends SwarmObjectImpl {
 
   /**
    * Proporciona el nombre del bit especificado, tomado de la tabla bitnamelist[]
-   * de abajo.Tambin funciona para NULLBIT. Bsicamente, convierte un nmero de bit
+   * de abajo.También funciona para NULLBIT. Básicamente, convierte un número de bit
    * en el nombre del bit
-   * @param n Nmero del bit del que queremos el nombre.
+   * @param n Número del bit del que queremos el nombre.
    * @return name Nombre del bit especificado.
    */
-  public static String nameOfBit (int n)
+  public String nameOfBit (int n)
   {
     if (n == NULLBIT)
       return "null";
-    else if (n < 0 || n >= NWORLDBITS)
+    else if (n < 0 || n >= nworldbits)
       return "";
     return ((BitName)bitnameList.get(n)).name;
   }
 
 
   /**
-   * Convierte un nombre de un bit, en un nmero de bit. Proporciona el n del bit
-   * dado su nombre. Nombres desconocidos devuelven NULLBIT. Es un mtodo relativamente
-   * lento (bsqueda lineal).
+   * Convierte un nombre de un bit, en un número de bit. Proporciona el nº del bit
+   * dado su nombre. Nombres desconocidos devuelven NULLBIT. Usa la tabla hash
+   * que createBitnameList copia del registro de indicadores.
    * @param name Nombre del bit del que queremos el nombre.
-   * @return int Nmero del bit especificado.
+   * @return int Número del bit especificado.
    */
-  public static int bitNumberOf (String name)
+  public int bitNumberOf (String name)
   /*" Converts a bit name to a bit number. Supplies the number of a bit
-   * given its name.  Unknown names return NULLBIT.  Relatively slow
-   * (linear search). Could be made faster with a hash table etc, but
-   * that's not worth it for the intended usage.  "*/
+   * given its name.  Unknown names return NULLBIT.  Hash lookup in the
+   * table built by -createBitnameList. "*/
   {
-    int n;
-
-    for (n = 0; n < NWORLDBITS; n++)
-      if (name.compareTo(((BitName)bitnameList.get(n)).name) == EQ)
-        break;
-    if (n >= NWORLDBITS) n = NULLBIT;
+    Integer n = (Integer)bitIndex.get(name);
 
-    return n;
+    return (n == null ? NULLBIT : n.intValue());
   }
 
   /**
-   * Fija la tasa de inters
-   * @param rate Tasa de inters.
+   * Fija la tasa de interés
+   * @param rate Tasa de interés.
    * @return this
    */
   public Object setintrate (double rate)
@@ -379,8 +450,25 @@ public class World extends SwarmObjectImpl {
     return this;
   }
 
+  /**Fija las longitudes de las medias móviles. Debe llamarse antes de
+   * createBitnameList, porque los nombres de los bits dependen de ellas.
+   * Las longitudes no están limitadas a MAXHISTORY ni a NMAS medias.
+   * @param lengths Longitud de cada media móvil
+   * @return this
+   */
+  public Object setMALengths (int lengths[])
+  {
+    nmas = lengths.length;
+    malength = new int[nmas];
+    System.arraycopy (lengths, 0, malength, 0, nmas);
+    // pup follows the fixed bits, the dup bits, the 2*nmas + nmas*(nmas-1)/2
+    // dividend MA bits and the two sets of ratio bits
+    pupdownbitnum = 3 + UPDOWNLOOKBACK + 2*nmas + nmas*(nmas-1)/2 + 2*NRATIOS;
+    return this;
+  }
+
   /**Fija el valor de exponentialMAs, que vale true si queremos usar medias
-   * mviles y false en caso contrario. El valor de exponentialMAs se puede
+   * móviles y false en caso contrario. El valor de exponentialMAs se puede
    * modificar desde la sonda de la instancia asmModelParams.
    */
   public Object setExponentialMAs (boolean aBool)
@@ -393,19 +481,19 @@ public class World extends SwarmObjectImpl {
   }
   /**
    * Devuelve nworldbits; Usado por el BFagent.
-   * @return nworldbits El n de aspectos de world que son registrados como bits.
+   * @return nworldbits El nº de aspectos de world que son registrados como bits.
    */
   public int getNumWorldBits()
     /*" Returns numworldbits; used by the BFagent."*/
   {
     return nworldbits;
   }
-/**<p>Inicializa las medias mviles, partiendo de la base de que el dividendo ha
+/**<p>Inicializa las medias móviles, partiendo de la base de que el dividendo ha
  * valido siempre su "valor medio", o baseline. La "baseline" puede modificarse
- * desde la sonda del asmModelSwarm. Esta inicializacin no es relevante
- * porque antes de la simulacin se ejecuta el programa de calentamiento, mucho
- * ms realista que esta suposicin.</p>
- * <p>Este mtodo slo se ejecuta una vez.</p>
+ * desde la sonda del asmModelSwarm. Esta inicialización no es relevante
+ * porque antes de la simulación se ejecuta el programa de calentamiento, mucho
+ * más realista que esta suposición.</p>
+ * <p>Este método sólo se ejecuta una vez.</p>
  *
  * @param baseline
  * @return this
@@ -416,12 +504,12 @@ public class World extends SwarmObjectImpl {
   a price scale of "baseline" for the dividend.  The baseline is
   set in ASMModelSwarm. " */
   {
-    int i;
+    int i, capacity;
     double initprice, initdividend;
 
   // Check pup index
-    if (World.nameOfBit(PUPDOWNBITNUM).compareTo("pup") != EQ)
-      System.out.println("PUPDOWNBITNUM is incorrect");
+    if (this.nameOfBit(pupdownbitnum).compareTo("pup") != EQ)
+      System.out.println("pupdownbitnum is incorrect");
 
   // Set price and dividend etc from baseline
     dividendscale = baseline;
@@ -436,21 +524,19 @@ public class World extends SwarmObjectImpl {
     returnratio = intrate;
     profitperunit = 0.0;
 
-  // Initialize miscellaneous variables
-    nworldbits = NWORLDBITS;
-
-    malength[0] = 5;
-    malength[1] = 20;
-    malength[2] = 100;
-    malength[3] = MAXHISTORY;
+  // Initialize miscellaneous variables; a world whose bit names were
+  // not listed compiles its indicators here
+    if (this.getIndicators().needsCompile())
+      {
+        indicators.compile();
+        seriesStale = true;
+      }
+    nworldbits = indicators.getNumBits();
 
     history_top = 0;
     updown_top = 0;
 
-    divhistory = new double[MAXHISTORY];
-    pricehistory = new double[MAXHISTORY];
-
-    realworld = new int[NWORLDBITS];
+    realworld = new int[indicators.getNumBits()];
 
   // Initialize arrays
     for (i = 0; i < UPDOWNLOOKBACK; i++)
@@ -459,30 +545,15 @@ public class World extends SwarmObjectImpl {
       dupdown[i] = 0;
       }
 
-    for (i = 0; i < MAXHISTORY; i++)
-      {
-      pricehistory[i] = initprice;
-      divhistory[i] = initdividend;
-      }
-
-    for (i = 0; i < NMAS; i++)
-      {
-        MovingAverage a= new MovingAverage(this.getZone());
-        priceMA[i] = a;
-        priceMA[i].initWidth$Value (malength[i], initprice);
-
-        MovingAverage b = new MovingAverage(this.getZone());
-        divMA[i] = b;
-        divMA[i].initWidth$Value (malength[i], initdividend);
+  // The histories must reach back two lengths of the longest MA, for
+  // its lagged average
+    capacity = MAXHISTORY;
+    for (i = 0; i < nmas; i++)
+      if (2*malength[i] + 1 > capacity)
+        capacity = 2*malength[i] + 1;
 
-        MovingAverage c = new MovingAverage(this.getZone());
-        oldpriceMA[i] = c;
-        oldpriceMA[i].initWidth$Value (malength[i], initprice);
-
-        MovingAverage d = new MovingAverage(this.getZone());
-        olddivMA[i] = d;
-        olddivMA[i].initWidth$Value (malength[i], initdividend);
-      }
+    priceHistory = new History (capacity, malength, initprice);
+    divHistory = new History (capacity, malength, initdividend);
 
   // Initialize bits
     this.makebitvector();
@@ -496,8 +567,8 @@ public class World extends SwarmObjectImpl {
   effective benefit of encapsulation with the simplicity of use of
   a global variable. "*/
   /**
-   * Pone el precio de mercado a "p". Todos los cambios de precios (adems de los
-   * trial prices) deben usar este mtodo. Tambin calcula profitperunit and
+   * Pone el precio de mercado a "p". Todos los cambios de precios (además de los
+   * trial prices) deben usar este método. También calcula profitperunit and
    * returnratio. Comprueba que no se hayan producido cambios ilegales en
    * el precio.
    * @param p precio
@@ -546,7 +617,7 @@ public class World extends SwarmObjectImpl {
           -setPrice:."*/
   /**
    * Establece el valor del dividendo. Todos los cambios de dividendos
-   * deben usar este mtodo. Comprueba que no se hayan producido
+   * deben usar este método. Comprueba que no se hayan producido
    * cambios ilegales en el dividendo.
    * @param d Dividendo
    * @return this
@@ -567,7 +638,7 @@ public class World extends SwarmObjectImpl {
 
   /*"Returns the most recent dividend, used by many."*/
   /**
-   * Devuelve el dividendo ms reciente; Se llama varias veces
+   * Devuelve el dividendo más reciente; Se llama varias veces
    * @return dividend
    */
   public double getDividend ()
@@ -603,44 +674,26 @@ public class World extends SwarmObjectImpl {
    * For the p*r/d bits we do use the old one.
    "*/
   /**
-   * Actualiza la historia, las medias mviles, y los bits del mundo para reflejar
+   * Actualiza la historia, las medias móviles, y los bits del mundo para reflejar
    * el precio y el dividendo actual. Conviene darse cuenta de que es llamado cada periodo
-   * despus de que un nuevo dividendo es declarado pero antes del ajuste final de oferta y demanda.
-   * Por lo tanto, los bits vistos por los agentes no reflejan el "trial price". "Price" aqu
+   * después de que un nuevo dividendo es declarado pero antes del ajuste final de oferta y demanda.
+   * Por lo tanto, los bits vistos por los agentes no reflejan el "trial price". "Price" aquí
    * se convierte en "oldprice" al final del periodo. Se llama una vez por periodo.
    *
    * @return this
    */
   public Object updateWorld ()
   {
-    int i;
-
   /* Update the binary up/down indicators for price and dividend */
     updown_top = (updown_top + 1) % UPDOWNLOOKBACK;
     pupdown[updown_top] = ChangeBooleanToInt(price > oldprice);
     dupdown[updown_top] = ChangeBooleanToInt(dividend > olddividend);
 
-  /* Update the price and dividend moving averages */
-    history_top = history_top + 1 + MAXHISTORY;
-
-    //update moving averages of price and dividend
-
-    for (i = 0; i < NMAS; i++)
-      {
-        int rago = (history_top-malength[i])%MAXHISTORY;
-
-        priceMA[i].addValue(price);
-        divMA[i].addValue(dividend);
-
-        oldpriceMA[i].addValue(pricehistory[rago]);
-        olddivMA[i].addValue(divhistory[rago]);
-      }
-
-
-  /* Update the price and dividend histories */
-    history_top %= MAXHISTORY;
-    pricehistory[history_top] = price;
-    divhistory[history_top] = dividend;
+  /* Update the price and dividend histories, and with them all the
+   * current and lagged moving averages */
+    history_top = (history_top + 1) % priceHistory.getCapacity();
+    priceHistory.append(price);
+    divHistory.append(dividend);
 
   /* Construct the bit vector for the current state of the world */
     this.makebitvector();
@@ -648,95 +701,213 @@ public class World extends SwarmObjectImpl {
     return this;
   }
 /**
- * Calcula todos los world bits a partir del dividendo actual, del precio,
- *  de las medias mviles y de los histricos. Este metodo calcula todos los
- *  elementos del array realworld,
- * bit a bit, estableciendo los valores a 0, 1 o 2, de acuerdo con los datos
- *  que han sido observados.
- * Es crucial que el orden aqu sea el mismo que en bitnamelist[]
+ * Calcula los world bits a partir del dividendo actual, del precio,
+ *  de las medias móviles y de los históricos. Sólo se calculan los bits que
+ *  vigila algún agente (los de monitored); el resto se calcula cuando
+ *  alguien lo pide con getAllRealWorld. El bit aleatorio se sortea siempre,
+ *  para no alterar la secuencia de números aleatorios.
  * @return this
  */
   private Object makebitvector()
-  /*"  Set all the world bits, based on the current dividend, price,
-  and  their moving averages and histories.  This moves through the
-  realworld array, bit by bit, setting the values to 0, 1 or 2,
-  according to the data that has been observed.  Note the pointer math, such as realworld[i++], that steps the integer i through the array.   Note that "i" increases monotonically throughout this routine, always
-  being the next bit to assign.  It is crucial that the order here is the
-  same as in bitnamelist[]. "*/
+  /*"  Set the world bits that some agent monitors, based on the current
+  dividend, price, and their moving averages and histories.  Only the
+  series those bits compare, plus the plain field copies, are published
+  to the indicator registry here; -completeBits publishes the rest when
+  the other bits are asked for.  The random bit is always drawn so the
+  random sequence does not depend on which bits are monitored. "*/
   {
-    int i, j, k, temp;
-    double multiple;
+    if (seriesStale)
+      this.updateSeriesMasks();
+    this.publishSeries(seriesNow);
 
-    i = 0;
+    this.fillBits(monitored);
+    bitsComplete = (monitored == null);
 
-    realworld[i++] = 1;
-    realworld[i++] = 0;
-    realworld[i++] = irand(2);
+    return this;
+  }
 
-    /* Dividend went up or down, now and for last few periods */
-    temp = updown_top + UPDOWNLOOKBACK;
-    for (j = 0; j < UPDOWNLOOKBACK; j++, temp--)
-      realworld[i++] = dupdown[temp%UPDOWNLOOKBACK];
-
-    /* Dividend moving averages went up or down */
-    for (j = 0; j < NMAS; j++)
-      realworld[i++] = ChangeBooleanToInt(GETMA(divMA,j) > GETMA(olddivMA,j));
-
-    /* Dividend > MA[j] */
-    for (j = 0; j < NMAS; j++)
-      realworld[i++] = ChangeBooleanToInt(dividend >  GETMA(divMA,j));
-
-    /* Dividend MA[j] > dividend MA[k] */
-    for (j = 0; j < NMAS-1; j++)
-      for (k = j+1; k < NMAS; k++)
-        realworld[i++] = ChangeBooleanToInt(GETMA(divMA,j) > GETMA(divMA,k));
-        //  realworld[i++] = exponentialMAs ? [divMA[j] getEWMA]:[divMA[j] getMA]  > exponentialMAs ? [divMA[k] getEWMA]:[divMA[k] getMA];
-        //realworld[i++] = dmav[j] > dmav[k];
-
-    /* Dividend as multiple of meandividend */
-    multiple = dividend/dividendscale;
-    for (j = 0; j < NRATIOS; j++)
-      realworld[i++] = ChangeBooleanToInt(multiple > ratios[j]);
-
-    /* Price as multiple of dividend/intrate.  Here we use olddividend to
-     * make a more reasonable comparison with the [old] price. */
-    multiple = price*intrate/olddividend;
-    for (j = 0; j < NRATIOS; j++)
-      realworld[i++] = ChangeBooleanToInt(multiple > ratios[j]);
-
-    /* Price went up or down, now and for last few periods */
-    temp = updown_top + UPDOWNLOOKBACK;
-    for (j = 0; j < UPDOWNLOOKBACK; j++, temp--)
-      realworld[i++] = pupdown[temp%UPDOWNLOOKBACK];
+/**
+ * Decide qué series se publican cada periodo (las que leen los bits
+ * vigilados) y cuáles sólo cuando se piden todos los bits
+ */
+  private void updateSeriesMasks()
+  {
+    boolean all[] = indicators.seriesUsedBy(null);
+    int j;
+
+    seriesNow = indicators.seriesUsedBy(monitored);
+    seriesNow[slotPrice] = seriesNow[slotDividend] = true;
+    seriesNow[slotDivRatio] = seriesNow[slotPriceRatio] = true;
+    // The random bit is drawn every period whatever is monitored
+    seriesNow[slotRandom] = true;
+    for (j = 0; j < UPDOWNLOOKBACK; j++)
+      seriesNow[slotPup[j]] = seriesNow[slotDup[j]] = true;
+
+    seriesLater = new boolean[all.length];
+    for (j = 0; j < all.length; j++)
+      seriesLater[j] = all[j] && !seriesNow[j];
+    laterNeedsStats = false;
+    if (stats != null)
+      for (j = 0; j < stats.length; j++)
+        laterNeedsStats |= (seriesLater[slotVol[j]] || seriesLater[slotKurt[j]]
+                            || seriesLater[slotAcf[j]] || seriesLater[slotAcf2[j]]
+                            || seriesLater[slotVVCorr[j]]);
+    seriesStale = false;
+  }
 
-    /* Price moving averages went up or down */
-    for (j = 0; j < NMAS; j++)
-      realworld[i++] = ChangeBooleanToInt(GETMA(priceMA,j) > GETMA(oldpriceMA,j));
-      //realworld[i++] =pmav[j] > oldpmav[j];
+/**
+ * Calcula los bits que no vigila ningún agente, publicando antes las series
+ * que sólo leen ellos. Las medias móviles no cambian hasta el siguiente
+ * updateWorld y closePeriod llama a este método antes de cambiar los
+ * estadísticos si algún bit los lee, de modo que los bits son los del
+ * periodo.
+ */
+  private void completeBits()
+  {
+    if (bitsComplete)
+      return;
+    if (seriesStale)
+      this.updateSeriesMasks();
+    this.publishSeries(seriesLater);
+    this.fillBits(null);
+    bitsComplete = true;
+  }
 
-    /* Price > MA[j] */
-    for (j = 0; j < NMAS; j++)
-       realworld[i++] = ChangeBooleanToInt(price > GETMA(priceMA,j));
-      //  realworld[i++] = price > exponentialMAs ? [priceMA[j] getEWMA]:[priceMA[j] getMA];
-    // realworld[i++] = price > pmav[j];
+/**
+ * Publica en el registro de indicadores el valor en este periodo de las
+ * series marcadas
+ * @param which true en el hueco de cada serie que hay que publicar
+ */
+  private void publishSeries(boolean which[])
+  /*" Copies the current price, dividend, ratios, up/down flags, moving
+  averages and statistics marked in which[] into the registry's value
+  array.  Here we use olddividend for the p*r/d series to make a more
+  reasonable comparison with the [old] price. "*/
+  {
+    int j, temp;
+
+    if (which[slotPrice])
+      indicators.setSeries(slotPrice, price);
+    if (which[slotDividend])
+      indicators.setSeries(slotDividend, dividend);
+    if (which[slotDivRatio])
+      indicators.setSeries(slotDivRatio, dividend/dividendscale);
+    if (which[slotPriceRatio])
+      indicators.setSeries(slotPriceRatio, price*intrate/olddividend);
+    if (which[slotRandom])
+      indicators.setSeries(slotRandom, irand(2));
+
+    /* Price and dividend went up or down, now and for last few periods */
+    temp = updown_top + UPDOWNLOOKBACK;
+    for (j = 0; j < UPDOWNLOOKBACK; j++, temp--)
+      {
+        if (which[slotPup[j]])
+          indicators.setSeries(slotPup[j], pupdown[temp%UPDOWNLOOKBACK]);
+        if (which[slotDup[j]])
+          indicators.setSeries(slotDup[j], dupdown[temp%UPDOWNLOOKBACK]);
+      }
 
-    /* Price MA[j] > price MA[k] */
-    for (j = 0; j < NMAS-1; j++)
-      for (k = j+1; k < NMAS; k++)
-        realworld[i++] = ChangeBooleanToInt(GETMA(priceMA,j) > GETMA(priceMA,k));
+    for (j = 0; j < nmas; j++)
+      {
+        if (which[slotPMA[j]])
+          indicators.setSeries(slotPMA[j], GETMA(priceHistory,j));
+        if (which[slotPOldMA[j]])
+          indicators.setSeries(slotPOldMA[j], GETOLDMA(priceHistory,j));
+        if (which[slotDMA[j]])
+          indicators.setSeries(slotDMA[j], GETMA(divHistory,j));
+        if (which[slotDOldMA[j]])
+          indicators.setSeries(slotDOldMA[j], GETOLDMA(divHistory,j));
+      }
 
-    // Check
-    if (i != NWORLDBITS)
-      System.out.println("Bits calculated != bits defined.");
+    if (stats != null)
+      for (j = 0; j < stats.length; j++)
+        {
+          if (which[slotVol[j]])
+            indicators.setSeries(slotVol[j], stats[j].getVolatility());
+          if (which[slotKurt[j]])
+            indicators.setSeries(slotKurt[j], stats[j].getKurtosis());
+          if (which[slotAcf[j]])
+            indicators.setSeries(slotAcf[j], stats[j].getReturnAutocorrelation());
+          if (which[slotAcf2[j]])
+            indicators.setSeries(slotAcf2[j], stats[j].getSquaredReturnAutocorrelation());
+          if (which[slotVVCorr[j]])
+            indicators.setSeries(slotVVCorr[j], stats[j].getVolumeVolatilityCorrelation());
+        }
+  }
 
-  /* Now convert these bits using the code:
+/**
+ * Calcula los bits indicados del vector realworld con los valores 1 (sí)
+ * ó 2 (no), evaluando el programa del registro de indicadores sobre las
+ * series publicadas en este periodo
+ * @param want Bits que hay que calcular, o null para calcularlos todos
+ */
+  private void fillBits(boolean want[])
+  /*" Sets the wanted bits using the code:
    *  yes -> 1    (01)
    *  no  -> 2    (10)
-   * Then we're able to check rule satisfaction with simple ANDs.
+  so that rule satisfaction can be checked with simple ANDs. "*/
+  {
+    indicators.evaluate(want, realworld);
+  }
+
+  /**
+   * Deja de vigilar todos los bits. A continuación cada agente añade los
+   * suyos con monitorBits.
+   * @return this
+   */
+  public Object clearMonitoredBits ()
+  {
+    monitored = new boolean[indicators.getNumBits()];
+    seriesStale = true;
+    return this;
+  }
+
+  /**
+   * Añade a los bits vigilados los de una lista de bits (como la bitlist de
+   * BFParams). Los NULLBIT se ignoran. Una lista null significa que el
+   * agente puede mirar cualquier bit, así que se vuelven a calcular todos.
+   * @param bits Lista de números de bit
+   * @return this
+   */
+  public Object monitorBits (int bits[])
+  {
+    seriesStale = true;
+    if (bits == null)
+      monitored = null;
+    if (monitored == null)
+      return this;
+    for (int j = 0; j < bits.length; j++)
+      if (bits[j] >= 0 && bits[j] < monitored.length)
+        monitored[bits[j]] = true;
+    return this;
+  }
+
+  /**
+   * Devuelve el número de bits que se calculan en cada periodo
+   * @return nº de bits vigilados
    */
-    for (i = 0; i < NWORLDBITS; i++)
-      realworld[i] = 2 - realworld[i];
+  public int getNumMonitoredBits ()
+  {
+    int n = 0;
 
+    if (monitored == null)
+      return indicators.getNumBits();
+    for (int j = 0; j < monitored.length; j++)
+      if (monitored[j])
+        n++;
+    return n;
+  }
+
+  /**
+   * Devuelve el array realworld completo, calculando primero los bits que
+   * no vigila ningún agente. Es el método que deben usar los observadores.
+   * @param anArray Array en el que se copia realworld
+   * @return this
+   */
+  public Object getAllRealWorld (int[] anArray)
+  {
+    this.completeBits();
+    java.lang.System.arraycopy(realworld, 0, anArray, 0, nworldbits);
     return this;
   }
 
@@ -749,16 +920,18 @@ public class World extends SwarmObjectImpl {
    * @return this
    */
   public Object getRealWorld (int[] anArray)
+  /*" Only the monitored bits are up to date; observers should use
+    -getAllRealWorld: "*/
   {
-    java.lang.System.arraycopy(realworld, 0, anArray, 0, NWORLDBITS);
+    java.lang.System.arraycopy(realworld, 0, anArray, 0, nworldbits);
     return this;
   }
 
 /**
- * Devuelve +1, -1,  0 dependiendo de si el precio ha subido monotnicamente, cado
- * monotnicamente, o nada, a lo largo de n periodos. Si n es muy garnde puede causar
- * algn error
- * @param n nmero de periodos atrs en que se encuentra el precio referencia
+ * Devuelve +1, -1, ó 0 dependiendo de si el precio ha subido monotónicamente, caído
+ * monotónicamente, o nada, a lo largo de n periodos. Si n es muy garnde puede causar
+ * algún error
+ * @param n número de periodos atrás en que se encuentra el precio referencia
  * @return int
  */
   public int pricetrend (int n)
@@ -771,10 +944,11 @@ public class World extends SwarmObjectImpl {
   {
     int trend, i;
 
+    this.completeBits();
     if (n > UPDOWNLOOKBACK)
       System.out.println("argument " + n + " to pricetrend() exceeds " + UPDOWNLOOKBACK);
     for (i=0, trend=0; i<n; i++)
-      trend |= realworld[i+PUPDOWNBITNUM];
+      trend |= realworld[i+pupdownbitnum];
 
     if (trend == 1)
       return 1;
@@ -789,13 +963,427 @@ public class World extends SwarmObjectImpl {
 
   public void drop()
   {
+    if (historyStore != null)
+      historyStore.close();
     super.drop();
   }
 
+  /**
+   * Fija el almacén en disco en el que se guarda la historia completa
+   * @param aStore Almacén, o null para no guardarla
+   * @return this
+   */
+  public Object setHistoryStore (HistoryStore aStore)
+  {
+    historyStore = aStore;
+    return this;
+  }
+
+  /**
+   * Devuelve el almacén de la historia completa, para el código de análisis
+   * @return historyStore, o null si no se guarda
+   */
+  public HistoryStore getHistoryStore ()
+  {
+    return historyStore;
+  }
+
+  /**
+   * Cierra el periodo: guarda en el almacén el precio de mercado, el
+   * dividendo, el volumen negociado y el precio neutral al riesgo,
+   * actualiza los estadísticos con la rentabilidad log(p/p anterior) y el
+   * volumen, y publica la foto inmutable del periodo. Se llama una vez por periodo, después de fijar el precio.
+   * @param volume Volumen negociado en el periodo
+   * @return this
+   */
+  public Object closePeriod (double volume)
+  {
+    double r;
+
+    if (stats != null)
+      {
+        // Bits nobody monitors read the statistics as they were when the
+        // bits were made
+        if (laterNeedsStats)
+          this.completeBits();
+        if (lastClosePrice > 0.0)
+          {
+            r = Math.log(price/lastClosePrice);
+            for (int j = 0; j < stats.length; j++)
+              stats[j].add(r, volume);
+          }
+        lastClosePrice = price;
+      }
+
+    this.publishSnapshot(volume);
+    if (historyStore != null)
+      try
+        {
+          historyStore.append (price, dividend, volume, riskNeutral);
+        }
+      catch (java.io.IOException e)
+        {
+          System.err.println ("Exception closePeriod: " + e.getMessage ());
+          historyStore = null;
+        }
+    return this;
+  }
+
+  /**
+   * Publica la foto inmutable del periodo que se cierra. Los bits que no
+   * vigila ningún agente van como 0 (no calculados).
+   * @param volume Volumen negociado en el periodo
+   */
+  private void publishSnapshot (double volume)
+  {
+    int j, n = indicators.getNumBits();
+    int bits[] = new int[n];
+    double pMA[] = new double[nmas], pOldMA[] = new double[nmas];
+    double dMA[] = new double[nmas], dOldMA[] = new double[nmas];
+    int lengths[] = new int[nmas];
+
+    for (j = 0; j < n; j++)
+      bits[j] = (bitsComplete || monitored[j] ? realworld[j] : 0);
+    for (j = 0; j < nmas; j++)
+      {
+        lengths[j] = malength[j];
+        pMA[j] = GETMA(priceHistory,j);
+        pOldMA[j] = GETOLDMA(priceHistory,j);
+        dMA[j] = GETMA(divHistory,j);
+        dOldMA[j] = GETOLDMA(divHistory,j);
+      }
+
+    int nwindows = this.getNumStatWindows();
+    int windows[] = new int[nwindows];
+    double statistics[][] = new double[nwindows][];
+
+    for (j = 0; j < nwindows; j++)
+      {
+        windows[j] = stats[j].getWindow();
+        statistics[j] = new double[] {stats[j].getVolatility(),
+                                      stats[j].getKurtosis(),
+                                      stats[j].getReturnAutocorrelation(),
+                                      stats[j].getSquaredReturnAutocorrelation(),
+                                      stats[j].getVolumeVolatilityCorrelation()};
+      }
+
+    snapshot = new WorldSnapshot(closedPeriods++, price, oldprice, dividend,
+                                 olddividend, volume, riskNeutral,
+                                 rationalExpectations, profitperunit,
+                                 returnratio, oldprice*intrate/olddividend,
+                                 dividend/dividendscale, lengths,
+                                 pMA, pOldMA, dMA, dOldMA, bits, n,
+                                 windows, statistics, shadowPrice,
+                                 shadowVolume, shadowIterations);
+  }
+
+  /**
+   * Devuelve el número de periodos que guardan las historias del precio y
+   * del dividendo
+   * @return capacidad
+   */
+  public int getHistoryCapacity ()
+  {
+    return priceHistory.getCapacity();
+  }
+
+  /**
+   * Devuelve el precio de hace unos periodos
+   * @param lag Periodos hacia atrás; 0 es el precio actual. Menor que la
+   * capacidad de la historia.
+   * @return precio
+   */
+  public double getLaggedPrice (int lag)
+  {
+    // The history gets each price when the next period starts
+    return (lag == 0 ? this.getPrice() : priceHistory.valueAt(lag - 1));
+  }
+
+  /**
+   * Devuelve el dividendo de hace unos periodos
+   * @param lag Periodos hacia atrás; 0 es el dividendo actual. Menor que
+   * la capacidad de la historia.
+   * @return dividendo
+   */
+  public double getLaggedDividend (int lag)
+  {
+    return (lag == 0 ? this.getDividend() : divHistory.valueAt(lag));
+  }
+
+  /**
+   * Recibe los resultados de los especialistas en la sombra de este
+   * periodo, que irán en la foto al cerrarlo. Se copian los n primeros.
+   * @param prices Precio de cada uno
+   * @param volumes Volumen de cada uno
+   * @param iterations Iteraciones de cada uno
+   * @param n Número de especialistas en la sombra
+   */
+  public void setShadowResults (double prices[], double volumes[],
+                                int iterations[], int n)
+  {
+    // New arrays: the last snapshot keeps the old ones
+    shadowPrice = new double[n];
+    shadowVolume = new double[n];
+    shadowIterations = new int[n];
+    System.arraycopy(prices, 0, shadowPrice, 0, n);
+    System.arraycopy(volumes, 0, shadowVolume, 0, n);
+    System.arraycopy(iterations, 0, shadowIterations, 0, n);
+  }
+
+  /**
+   * Devuelve la última foto publicada. Se puede leer desde cualquier hilo,
+   * y la foto no cambia aunque el mundo siga avanzando.
+   * @return snapshot, o null antes de cerrar el primer periodo
+   */
+  public WorldSnapshot getSnapshot ()
+  {
+    return snapshot;
+  }
+
+  /**
+   * Fija las ventanas de los estadísticos de la rentabilidad y el volumen.
+   * Debe llamarse antes de createBitnameList para que los estadísticos
+   * aparezcan como series del registro de indicadores.
+   * @param windows Anchura de cada ventana en periodos; 0 es toda la
+   * simulación. Un array vacío desactiva los estadísticos.
+   * @return this
+   */
+  public Object setStatWindows (int windows[])
+  {
+    if (windows.length == 0)
+      {
+        stats = null;
+        return this;
+      }
+    stats = new MarketStatistics[windows.length];
+    for (int j = 0; j < windows.length; j++)
+      stats[j] = new MarketStatistics(windows[j]);
+    return this;
+  }
+
+  /**
+   * Devuelve el número de ventanas de estadísticos
+   * @return nº de ventanas, 0 si no se calculan
+   */
+  public int getNumStatWindows ()
+  {
+    return (stats == null ? 0 : stats.length);
+  }
+
+  /**
+   * Devuelve los estadísticos de una ventana
+   * @param i Ventana
+   * @return estadísticos
+   */
+  public MarketStatistics getStatistics (int i)
+  {
+    return stats[i];
+  }
+
+  /**
+   * Devuelve la volatilidad de la rentabilidad en una ventana
+   * @param i Ventana
+   * @return desviación típica de log(p/p anterior)
+   */
+  public double getVolatility (int i)
+  {
+    return stats[i].getVolatility();
+  }
+
+  /**
+   * Devuelve el exceso de curtosis de la rentabilidad en una ventana
+   * @param i Ventana
+   * @return curtosis - 3
+   */
+  public double getKurtosis (int i)
+  {
+    return stats[i].getKurtosis();
+  }
+
+  /**
+   * Devuelve la autocorrelación de la rentabilidad en una ventana
+   * @param i Ventana
+   * @return autocorrelación de primer orden
+   */
+  public double getReturnAutocorrelation (int i)
+  {
+    return stats[i].getReturnAutocorrelation();
+  }
+
+  /**
+   * Devuelve la autocorrelación del cuadrado de la rentabilidad en una
+   * ventana
+   * @param i Ventana
+   * @return autocorrelación de primer orden
+   */
+  public double getSquaredReturnAutocorrelation (int i)
+  {
+    return stats[i].getSquaredReturnAutocorrelation();
+  }
+
+  /**
+   * Devuelve la correlación volumen-volatilidad en una ventana
+   * @param i Ventana
+   * @return correlación entre el volumen y |rentabilidad|
+   */
+  public double getVolumeVolatilityCorrelation (int i)
+  {
+    return stats[i].getVolumeVolatilityCorrelation();
+  }
+
+  /**
+   * Devuelve el precio de hace "lag" periodos cerrados, sin límite de
+   * antigüedad, leyéndolo del almacén (0 es el último periodo cerrado)
+   * @param lag Retraso, menor que el número de periodos guardados
+   * @return precio
+   * @throws IllegalStateException si no hay almacén (historyFile vacío)
+   */
+  public double getStoredPrice (long lag)
+  {
+    return this.requireHistoryStore().getPrice (historyStore.size() - 1 - lag);
+  }
+
+  /**
+   * Devuelve el dividendo de hace "lag" periodos cerrados, leyéndolo del
+   * almacén (0 es el último periodo cerrado)
+   * @param lag Retraso, menor que el número de periodos guardados
+   * @return dividendo
+   * @throws IllegalStateException si no hay almacén (historyFile vacío)
+   */
+  public double getStoredDividend (long lag)
+  {
+    return this.requireHistoryStore().getDividend (historyStore.size() - 1 - lag);
+  }
+
+  /**
+   * Devuelve el almacén de la historia, que getStoredPrice y
+   * getStoredDividend necesitan
+   * @return historyStore
+   * @throws IllegalStateException si no hay almacén
+   */
+  HistoryStore requireHistoryStore ()
+  {
+    if (historyStore == null)
+      throw new IllegalStateException
+        ("no history store; set historyFile to keep the full history");
+    return historyStore;
+  }
+
+  /**
+   * Devuelve la historia del precio, para consultar medias de cualquier
+   * ventana, actual o retrasada.
+   * @return priceHistory
+   */
+  public History getPriceHistory ()
+  {
+    return priceHistory;
+  }
+
+  /**
+   * Devuelve la historia del dividendo, para consultar medias de cualquier
+   * ventana, actual o retrasada.
+   * @return divHistory
+   */
+  public History getDividendHistory ()
+  {
+    return divHistory;
+  }
+
   public Object setRea$Reb(double rea1, double reb1)
   {
     rea=rea1;
     reb=reb1;
     return this;
   }
+
+  /**
+   * Escribe el estado del mundo: precios y dividendos actuales y anteriores,
+   * indicadores de subida y bajada, historias y medias móviles, world bits,
+   * series publicadas y estadísticos. La historia guardada en disco
+   * (historyStore) no forma parte del estado: al leerlo, si está vacía, se
+   * le añade sólo el registro del último periodo cerrado.
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  void writeState (DataOutputStream out) throws IOException
+  {
+    int j;
+
+    out.writeDouble(price);
+    out.writeDouble(oldprice);
+    out.writeDouble(savedprice);
+    out.writeDouble(dividend);
+    out.writeDouble(olddividend);
+    out.writeDouble(saveddividend);
+    out.writeDouble(riskNeutral);
+    out.writeDouble(rationalExpectations);
+    out.writeDouble(profitperunit);
+    out.writeDouble(returnratio);
+    out.writeInt(history_top);
+    out.writeInt(updown_top);
+    StateIO.writeInts(out, pupdown);
+    StateIO.writeInts(out, dupdown);
+    priceHistory.writeState(out);
+    divHistory.writeState(out);
+    StateIO.writeInts(out, realworld);
+    out.writeBoolean(bitsComplete);
+    indicators.writeState(out);
+
+    out.writeInt(stats == null ? 0 : stats.length);
+    if (stats != null)
+      for (j = 0; j < stats.length; j++)
+        stats[j].writeState(out);
+    out.writeDouble(lastClosePrice);
+    out.writeLong(closedPeriods);
+    out.writeDouble(snapshot == null ? 0.0 : snapshot.getVolume());
+  }
+
+  /**
+   * Lee el estado escrito por writeState en un mundo creado con los mismos
+   * parámetros (initWithBaseline ya llamado) y vuelve a publicar la foto del
+   * último periodo cerrado.
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer o no coincide
+   */
+  void readState (DataInputStream in) throws IOException
+  {
+    int j;
+    double volume;
+
+    price = in.readDouble();
+    oldprice = in.readDouble();
+    savedprice = in.readDouble();
+    dividend = in.readDouble();
+    olddividend = in.readDouble();
+    saveddividend = in.readDouble();
+    riskNeutral = in.readDouble();
+    rationalExpectations = in.readDouble();
+    profitperunit = in.readDouble();
+    returnratio = in.readDouble();
+    history_top = in.readInt();
+    updown_top = in.readInt();
+    StateIO.readInts(in, pupdown);
+    StateIO.readInts(in, dupdown);
+    priceHistory.readState(in);
+    divHistory.readState(in);
+    StateIO.readInts(in, realworld);
+    bitsComplete = in.readBoolean();
+    indicators.readState(in);
+
+    StateIO.checkLength(in.readInt(), stats == null ? 0 : stats.length);
+    if (stats != null)
+      for (j = 0; j < stats.length; j++)
+        stats[j].readState(in);
+    lastClosePrice = in.readDouble();
+    closedPeriods = in.readLong();
+    volume = in.readDouble();
+    snapshot = null;
+    if (closedPeriods > 0)
+      {
+        closedPeriods--;
+        this.publishSnapshot(volume);
+        if (historyStore != null && historyStore.size() == 0)
+          historyStore.append(price, dividend, volume, riskNeutral);
+      }
+  }
 }
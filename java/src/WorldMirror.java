@@ -0,0 +1,109 @@
+//package asmjava;
+
+import swarm.defobj.Zone;
+
+/**
+ * <p>Title: WorldMirror</p>
+ * <p>Description: Copia del mundo en un proceso AgentShard. Sólo guarda lo
+ * que leen los agentes (precio, dividendo y bits del mundo), que el
+ * coordinador envía en cada periodo; no calcula medias ni indicadores.</p>
+ */
+public class WorldMirror extends World {
+
+  /**Precio y dividendo del periodo*/
+  double mirrorPrice;
+  double mirrorDividend;
+  /**Bits del mundo*/
+  int mirrorBits[];
+
+  /**Constructor de la clase
+   *
+   * @param aZone Zona de memoria Swarm en la que se aloja el objeto Swarm
+   * @param numWorldBits Número de bits del mundo del coordinador
+   */
+  WorldMirror (Zone aZone, int numWorldBits)
+  {
+    super (aZone);
+    mirrorBits = new int[numWorldBits];
+  }
+
+  /**Recibe el precio del periodo
+   *
+   * @param p Precio
+   * @return this
+   */
+  public Object mirrorPrice (double p)
+  {
+    mirrorPrice = p;
+    return this;
+  }
+
+  /**Recibe el dividendo del periodo
+   *
+   * @param d Dividendo
+   * @return this
+   */
+  public Object mirrorDividend (double d)
+  {
+    mirrorDividend = d;
+    return this;
+  }
+
+  /**Devuelve el array de bits, para que el fragmento lo rellene
+   *
+   * @return mirrorBits
+   */
+  public int[] getMirrorBits ()
+  {
+    return mirrorBits;
+  }
+
+  public double getPrice ()
+  {
+    return mirrorPrice;
+  }
+
+  public double getDividend ()
+  {
+    return mirrorDividend;
+  }
+
+  /**Devuelve el precio de hace unos periodos. El espejo no guarda
+   * historia, y con fragmentos todos los agentes deciden cada periodo, así
+   * que sólo hace falta el actual.
+   *
+   * @param lag Periodos hacia atrás; sólo 0
+   * @return precio
+   * @throws IllegalArgumentException si lag no es 0
+   */
+  public double getLaggedPrice (int lag)
+  {
+    if (lag != 0)
+      throw new IllegalArgumentException ("a WorldMirror keeps no price history");
+    return mirrorPrice;
+  }
+
+  /**Devuelve el dividendo de hace unos periodos; sólo el actual
+   *
+   * @param lag Periodos hacia atrás; sólo 0
+   * @return dividendo
+   * @throws IllegalArgumentException si lag no es 0
+   */
+  public double getLaggedDividend (int lag)
+  {
+    if (lag != 0)
+      throw new IllegalArgumentException ("a WorldMirror keeps no dividend history");
+    return mirrorDividend;
+  }
+
+  public int getNumWorldBits ()
+  {
+    return mirrorBits.length;
+  }
+
+  public Object getRealWorld (int[] anArray)
+  {
+    System.arraycopy (mirrorBits, 0, anArray, 0, mirrorBits.length);
+    return this;
+  }
+}
@@ -0,0 +1,255 @@
+//package asmjava;
+
+/**
+ * <p>Title: WorldSnapshot</p>
+ * <p>Description: Foto inmutable del mundo al cerrar un periodo: precio,
+ * dividendo, volumen, medias móviles, ratios derivados, world bits
+ * empaquetados, estadísticos de cada ventana y resultados de los
+ * especialistas en la sombra. World publica una nueva cada periodo en un campo volatile y
+ * nunca la modifica después, de modo que los observadores, los ficheros de
+ * resultados y cualquier consumidor lento pueden seguir leyendo la del
+ * periodo anterior desde otro hilo, sin cerrojos, mientras el modelo ya
+ * actualiza el mundo del periodo siguiente.</p>
+ * <p>Los bits se empaquetan como en BitVector, 16 por entero y dos bits por
+ * cada uno: 1 sí, 2 no y 0 si ese periodo no se calculó porque ningún agente
+ * lo vigila.</p>
+ */
+public final class WorldSnapshot {
+
+  /**Número del periodo cerrado, empezando por 0*/
+  final long period;
+  /**Precio de mercado y precio del periodo anterior*/
+  final double price, oldprice;
+  /**Dividendo y dividendo del periodo anterior*/
+  final double dividend, olddividend;
+  /**Volumen negociado*/
+  final double volume;
+  /**Precio neutral al riesgo y precio de expectativas racionales*/
+  final double riskNeutral, rationalExpectations;
+  /**price - oldprice + dividend, y su cociente con oldprice*/
+  final double profitperunit, returnratio;
+  /**oldprice*intrate/olddividend y dividend/dividendo medio, los valores
+   * de "pr/d" y "d/md" con que se calcularon los bits de la foto*/
+  final double oldPriceRatio, dividendRatio;
+  /**Longitud de cada media móvil*/
+  final int malength[];
+  /**Medias móviles actuales y retrasadas del precio y del dividendo*/
+  final double priceMA[], oldPriceMA[], divMA[], oldDivMA[];
+  /**Número de world bits*/
+  final int nbits;
+  /**World bits empaquetados*/
+  final int words[];
+  /**Ventana de cada grupo de estadísticos*/
+  final int statWindow[];
+  /**Volatilidad, curtosis, autocorrelación de la rentabilidad y de su
+   * cuadrado y correlación volumen-volatilidad de cada ventana*/
+  final double stats[][];
+  /**Precio, volumen e iteraciones de cada especialista en la sombra*/
+  final double shadowPrice[], shadowVolume[];
+  final int shadowIterations[];
+
+  /**Constructor de la clase. Lo llama World.closePeriod; los arrays pasan a
+   * ser propiedad de la foto y nadie debe modificarlos después.
+   */
+  WorldSnapshot (long aPeriod, double aPrice, double anOldprice,
+                 double aDividend, double anOlddividend, double aVolume,
+                 double aRiskNeutral, double aRationalExpectations,
+                 double aProfitperunit, double aReturnratio,
+                 double anOldPriceRatio, double aDividendRatio, int lengths[],
+                 double pMA[], double pOldMA[], double dMA[], double dOldMA[],
+                 int bits[], int numBits, int windows[],
+                 double statistics[][], double aShadowPrice[],
+                 double aShadowVolume[], int aShadowIterations[])
+  {
+    int i;
+
+    period = aPeriod;
+    price = aPrice;
+    oldprice = anOldprice;
+    dividend = aDividend;
+    olddividend = anOlddividend;
+    volume = aVolume;
+    riskNeutral = aRiskNeutral;
+    rationalExpectations = aRationalExpectations;
+    profitperunit = aProfitperunit;
+    returnratio = aReturnratio;
+    oldPriceRatio = anOldPriceRatio;
+    dividendRatio = aDividendRatio;
+    malength = lengths;
+    priceMA = pMA;
+    oldPriceMA = pOldMA;
+    divMA = dMA;
+    oldDivMA = dOldMA;
+    statWindow = windows;
+    stats = statistics;
+    shadowPrice = aShadowPrice;
+    shadowVolume = aShadowVolume;
+    shadowIterations = aShadowIterations;
+
+    nbits = numBits;
+    words = new int[(nbits + 15) >> 4];
+    for (i = 0; i < nbits; i++)
+      words[i >> 4] |= (bits[i] & 3) << ((i & 15) << 1);
+  }
+
+  public long getPeriod ()
+  {
+    return period;
+  }
+
+  public double getPrice ()
+  {
+    return price;
+  }
+
+  public double getOldPrice ()
+  {
+    return oldprice;
+  }
+
+  public double getDividend ()
+  {
+    return dividend;
+  }
+
+  public double getOldDividend ()
+  {
+    return olddividend;
+  }
+
+  public double getVolume ()
+  {
+    return volume;
+  }
+
+  public double getRiskNeutral ()
+  {
+    return riskNeutral;
+  }
+
+  public double getRationalExpectations ()
+  {
+    return rationalExpectations;
+  }
+
+  public double getProfitPerUnit ()
+  {
+    return profitperunit;
+  }
+
+  public double getReturnRatio ()
+  {
+    return returnratio;
+  }
+
+  /**Devuelve oldprice*intrate/olddividend, el cociente "pr/d" de los bits:
+   * se calcula antes de negociar, con el precio del periodo anterior*/
+  public double getOldPriceRatio ()
+  {
+    return oldPriceRatio;
+  }
+
+  /**Devuelve dividend/dividendo medio*/
+  public double getDividendRatio ()
+  {
+    return dividendRatio;
+  }
+
+  /**Devuelve el número de medias móviles*/
+  public int getNumMAs ()
+  {
+    return malength.length;
+  }
+
+  /**Devuelve la longitud de la media móvil j*/
+  public int getMALength (int j)
+  {
+    return malength[j];
+  }
+
+  public double getPriceMA (int j)
+  {
+    return priceMA[j];
+  }
+
+  public double getOldPriceMA (int j)
+  {
+    return oldPriceMA[j];
+  }
+
+  public double getDividendMA (int j)
+  {
+    return divMA[j];
+  }
+
+  public double getOldDividendMA (int j)
+  {
+    return oldDivMA[j];
+  }
+
+  public int getNumStatWindows ()
+  {
+    return statWindow.length;
+  }
+
+  public int getStatWindow (int k)
+  {
+    return statWindow[k];
+  }
+
+  /**Devuelve los estadísticos de una ventana, en el orden de stats
+   *
+   * @param k Ventana
+   * @return copia de los estadísticos
+   */
+  public double[] getStatistics (int k)
+  {
+    return stats[k].clone ();
+  }
+
+  public int getNumShadows ()
+  {
+    return shadowPrice.length;
+  }
+
+  public double getShadowPrice (int k)
+  {
+    return shadowPrice[k];
+  }
+
+  public double getShadowVolume (int k)
+  {
+    return shadowVolume[k];
+  }
+
+  public int getShadowIterations (int k)
+  {
+    return shadowIterations[k];
+  }
+
+  /**Devuelve el número de world bits*/
+  public int getNumBits ()
+  {
+    return nbits;
+  }
+
+  /**Devuelve un world bit
+   *
+   * @param n Número del bit
+   * @return 1 sí, 2 no, 0 no calculado
+   */
+  public int getBit (int n)
+  {
+    return (words[n >> 4] >> ((n & 15) << 1)) & 3;
+  }
+
+  /**Copia los world bits en un array con el código de realworld
+   *
+   * @param anArray Array de al menos getNumBits() elementos
+   */
+  public void getBits (int anArray[])
+  {
+    for (int i = 0; i < nbits; i++)
+      anArray[i] = getBit (i);
+  }
+}
@@ -0,0 +1,87 @@
+//package asmjava;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>Title: XoshiroRandomSource</p>
+ * <p>Description: Generador de números aleatorios escrito en Java:
+ * xoshiro256** (Blackman y Vigna) con el estado inicial sacado de la semilla
+ * con SplitMix64. Las conversiones a uniformes, enteros y normales están en
+ * LongRandomSource.</p>
+ * <p>No reproduce las secuencias de Swarm (para eso está SwarmRandomSource),
+ * pero evita la llamada a la biblioteca nativa en cada extracción.</p>
+ */
+public class XoshiroRandomSource extends LongRandomSource {
+
+  /**Estado del generador*/
+  long s0, s1, s2, s3;
+
+  /**Constructor de la clase
+   *
+   * @param seed Semilla
+   */
+  XoshiroRandomSource (long seed)
+  {
+    setSeed (seed);
+  }
+
+  /**Reinicia el generador a partir de una semilla, con SplitMix64
+   *
+   * @param seed Semilla
+   */
+  public void setSeed (long seed)
+  {
+    long x = seed;
+
+    x += 0x9e3779b97f4a7c15L; s0 = mix (x);
+    x += 0x9e3779b97f4a7c15L; s1 = mix (x);
+    x += 0x9e3779b97f4a7c15L; s2 = mix (x);
+    x += 0x9e3779b97f4a7c15L; s3 = mix (x);
+  }
+
+  /**Devuelve los siguientes 64 bits aleatorios
+   *
+   * @return 64 bits
+   */
+  public long nextLong ()
+  {
+    long result = Long.rotateLeft (s1*5, 7)*9;
+    long t = s1 << 17;
+
+    s2 ^= s0;
+    s3 ^= s1;
+    s1 ^= s2;
+    s0 ^= s3;
+    s2 ^= t;
+    s3 = Long.rotateLeft (s3, 45);
+    return result;
+  }
+
+  /**Escribe el estado del generador
+   *
+   * @param out Flujo de salida
+   * @throws IOException si no se puede escribir
+   */
+  public void writeState (DataOutputStream out) throws IOException
+  {
+    out.writeLong (s0);
+    out.writeLong (s1);
+    out.writeLong (s2);
+    out.writeLong (s3);
+  }
+
+  /**Lee el estado escrito por writeState
+   *
+   * @param in Flujo de entrada
+   * @throws IOException si no se puede leer
+   */
+  public void readState (DataInputStream in) throws IOException
+  {
+    s0 = in.readLong ();
+    s1 = in.readLong ();
+    s2 = in.readLong ();
+    s3 = in.readLong ();
+  }
+}
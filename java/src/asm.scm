@@ -42,6 +42,7 @@
   (cons 'asmModelParams
 	(make-instance 'ASMModelParams	 
   #:numBFagents 30
+  #:numAssets 1
   #:initholding 1D0
   #:initialcash 10000D0
   #:minholding 0D0
@@ -52,6 +53,7 @@
   #:maxdividend 100D0
   #:amplitude 0.14178D0
   #:period 1.0
+  #:dividendBlock 0
   #:maxprice 500D0
   #:minprice 0.001D0
   #:taup 50.0D0
@@ -61,9 +63,12 @@
   #:eta 0.0005D0
   #:etamax 0.05D0
   #:etamin 0.00001D0
+  #:gridwidth 0.05D0
+  #:shadowSpecialists 0
   #:rea 9.0D0
   #:reb 2.0D0
   #:randomSeed 0  
+  #:rngType 0
   #:tauv  50.0D0         
   #:lambda 0.3D0
   #:maxbid  10.0D0